@@ -0,0 +1,277 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import de.zbit.data.Signal.SignalType;
+import de.zbit.data.genes.GenericGene;
+import de.zbit.data.mRNA.mRNA;
+import de.zbit.data.mRNA.mRNATimeSeries;
+import de.zbit.data.methylation.DNAmethylation;
+import de.zbit.data.miRNA.miRNA;
+import de.zbit.data.miRNA.miRNAtargets;
+import de.zbit.io.SerializableTools;
+import de.zbit.io.mRNAReader;
+import de.zbit.io.miRNAReader;
+import de.zbit.mapper.MappingUtils.IdentifierType;
+import de.zbit.sequence.region.SimpleRegion;
+import de.zbit.util.Species;
+import de.zbit.util.objectwrapper.ValueTriplet;
+
+/**
+ * Provides the data for all benchmarks. This is either one of the
+ * example files, that are distributed with Integrator, or synthetic
+ * data. Synthetic data is always created with the same {@link #SEED},
+ * such that all runs of a benchmark work on identical input.
+ * 
+ * <p>The example files are searched in the directory given by the
+ * <code>integrator.benchmark.data</code> system property (default is
+ * the current working directory).
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class BenchmarkData {
+  
+  /**
+   * Seed for all synthetic data.
+   */
+  public final static long SEED = 4711;
+  
+  /**
+   * Time series example (Mouse, gene symbols and three time points).
+   */
+  public final static String TIME_SERIES_FILE = "mRNA_timeseries_dichlorothene_600ppm.txt";
+  
+  /**
+   * microRNA expression example (Mouse, Agilent probes).
+   */
+  public final static String MIRNA_FILE = "miRNA_data.txt";
+  
+  /**
+   * Serialized high-confidence {@link miRNAtargets}.
+   */
+  public final static String MIRNA_TARGETS_FILE = "miRNAtargets_HC.dat";
+  
+  /**
+   * Species of all example files.
+   */
+  public final static Species MOUSE = new Species("Mus musculus", "_MOUSE", "mouse", "mmu", 10090);
+  
+  /**
+   * Time points of {@link #TIME_SERIES_FILE} in days.
+   */
+  private final static double[] EXAMPLE_TIME_POINTS = new double[]{1, 3, 5};
+  
+  /**
+   * Length of the synthetic chromosome.
+   */
+  private final static int CHROMOSOME_LENGTH = 200000000;
+  
+  /**
+   * Utility class.
+   */
+  private BenchmarkData() {
+    super();
+  }
+  
+  /**
+   * @param name
+   * @return the example file with the given name.
+   * @throws IOException if the file does not exist.
+   */
+  public static File getExampleFile(String name) throws IOException {
+    File f = new File(System.getProperty("integrator.benchmark.data", "."), name);
+    if (!f.exists()) {
+      throw new IOException(String.format("Could not find example file '%s'. Please set " +
+          "-Dintegrator.benchmark.data to the Integrator directory.", f.getAbsolutePath()));
+    }
+    return f;
+  }
+  
+  /**
+   * @return a reader for the {@link #TIME_SERIES_FILE}. The gene
+   * symbols are mapped to NCBI gene ids.
+   * @throws IOException
+   */
+  public static mRNAReader getTimeSeriesReader() throws IOException {
+    mRNAReader r = new mRNAReader(1, IdentifierType.GeneSymbol, MOUSE);
+    r.addAdditionalData(0, miRNA.probeNameKey);
+    for (int i=0; i<EXAMPLE_TIME_POINTS.length; i++) {
+      r.addSignalColumn(2+i, SignalType.FoldChange, getTimePointName(i));
+    }
+    return r;
+  }
+  
+  /**
+   * @return a reader for the {@link #MIRNA_FILE}.
+   */
+  public static miRNAReader getMiRNAReader() {
+    miRNAReader r = new miRNAReader(1,0);
+    r.addSignalColumn(25, SignalType.FoldChange, "Ctnnb1");
+    r.addSignalColumn(29, SignalType.pValue, "Ctnnb1");
+    return r;
+  }
+  
+  /**
+   * @return all probes of the {@link #TIME_SERIES_FILE}.
+   * @throws Exception
+   */
+  public static Collection<mRNA> readTimeSeriesExample() throws Exception {
+    return getTimeSeriesReader().read(getExampleFile(TIME_SERIES_FILE));
+  }
+  
+  /**
+   * @return all probes of the {@link #MIRNA_FILE}.
+   * @throws Exception
+   */
+  public static Collection<miRNA> readMiRNAExample() throws Exception {
+    return getMiRNAReader().read(getExampleFile(MIRNA_FILE));
+  }
+  
+  /**
+   * @return the {@link #MIRNA_TARGETS_FILE}.
+   * @throws Exception
+   */
+  public static miRNAtargets readTargetsExample() throws Exception {
+    return (miRNAtargets) SerializableTools.loadGZippedObject(getExampleFile(MIRNA_TARGETS_FILE).getPath());
+  }
+  
+  /**
+   * @param i index of the time point
+   * @return the experiment name of the <code>i</code>th time point.
+   */
+  private static String getTimePointName(int i) {
+    return String.format("%sd", (int) EXAMPLE_TIME_POINTS[i]);
+  }
+  
+  /**
+   * Creates probes with random gene ids and fold changes.
+   * @param numberOfProbes
+   * @param numberOfGenes gene ids are taken from [1, numberOfGenes].
+   * Multiple probes per gene are created, if this is smaller than
+   * <code>numberOfProbes</code>.
+   * @param signalsPerProbe
+   * @param seed
+   * @return
+   */
+  public static List<mRNA> createProbes(int numberOfProbes, int numberOfGenes, int signalsPerProbe, long seed) {
+    Random r = new Random(seed);
+    List<mRNA> ret = new ArrayList<mRNA>(numberOfProbes);
+    for (int i=0; i<numberOfProbes; i++) {
+      mRNA m = new mRNA("Probe_" + i, 1+r.nextInt(numberOfGenes));
+      for (int s=0; s<signalsPerProbe; s++) {
+        m.addSignal(r.nextGaussian()*2, "Experiment_" + s, SignalType.FoldChange);
+      }
+      ret.add(m);
+    }
+    return ret;
+  }
+  
+  /**
+   * @param numberOfTimePoints
+   * @return time points 0,1,...,<code>numberOfTimePoints</code>-1.
+   */
+  public static List<ValueTriplet<Double, String, SignalType>> createTimePoints(int numberOfTimePoints) {
+    List<ValueTriplet<Double, String, SignalType>> tp = new ArrayList<ValueTriplet<Double,String,SignalType>>(numberOfTimePoints);
+    for (int i=0; i<numberOfTimePoints; i++) {
+      tp.add(new ValueTriplet<Double, String, SignalType>((double) i, "t" + i, SignalType.FoldChange));
+    }
+    return tp;
+  }
+  
+  /**
+   * Creates time series that follow one of a few smooth profiles with
+   * gaussian noise (such that models can find a structure).
+   * @param numberOfGenes
+   * @param timePoints see {@link #createTimePoints(int)}.
+   * @param seed
+   * @return
+   */
+  public static ArrayList<mRNATimeSeries> createTimeSeries(int numberOfGenes,
+    List<ValueTriplet<Double, String, SignalType>> timePoints, long seed) {
+    Random r = new Random(seed);
+    ArrayList<mRNATimeSeries> ret = new ArrayList<mRNATimeSeries>(numberOfGenes);
+    for (int i=0; i<numberOfGenes; i++) {
+      mRNATimeSeries m = new mRNATimeSeries("Gene_" + i, i+1);
+      int profile = r.nextInt(4);
+      for (ValueTriplet<Double, String, SignalType> tp : timePoints) {
+        double x = tp.getA();
+        double y = (profile==0?Math.sin(x):profile==1?Math.cos(x):profile==2?x/2:-x/2);
+        m.addSignal(y*2+r.nextGaussian()*0.3, tp.getB(), tp.getC());
+      }
+      ret.add(m);
+    }
+    return ret;
+  }
+  
+  /**
+   * Creates randomly distributed genes on one chromosome and converts
+   * them to promoter regions (as
+   * {@link de.zbit.io.dna_methylation.DNAmethIOtools#convertToPromoterRegions(int, int, List)}).
+   * @param numberOfGenes
+   * @param upstream
+   * @param downstream
+   * @param seed
+   * @return promoter regions, sorted by position.
+   */
+  public static List<GenericGene> createPromoters(int numberOfGenes, int upstream, int downstream, long seed) {
+    Random r = new Random(seed);
+    List<GenericGene> ret = new ArrayList<GenericGene>(numberOfGenes);
+    for (int i=0; i<numberOfGenes; i++) {
+      int start = r.nextInt(CHROMOSOME_LENGTH);
+      int end = start + 1000 + r.nextInt(50000);
+      boolean forward = r.nextBoolean();
+      int pStart = forward ? (start-upstream) : (end - downstream);
+      int pEnd = forward ? (start+downstream) : (end + upstream);
+      ret.add(new GenericGene("Gene_" + i, i+1, "chr1", pStart, pEnd, (byte) (forward?1:-1)));
+    }
+    Collections.sort(ret, SimpleRegion.getComparator());
+    return ret;
+  }
+  
+  /**
+   * @param numberOfProbes
+   * @param seed
+   * @return randomly distributed CpG probes on the same chromosome as
+   * {@link #createPromoters(int, int, int, long)}.
+   */
+  public static List<DNAmethylation> createMethylationProbes(int numberOfProbes, long seed) {
+    Random r = new Random(seed);
+    List<DNAmethylation> ret = new ArrayList<DNAmethylation>(numberOfProbes);
+    for (int i=0; i<numberOfProbes; i++) {
+      int pos = r.nextInt(CHROMOSOME_LENGTH);
+      DNAmethylation m = new DNAmethylation("CpG_" + i, null, pos, pos, "chr1");
+      m.addSignal(r.nextGaussian(), "Experiment", SignalType.FoldChange);
+      ret.add(m);
+    }
+    return ret;
+  }
+  
+}
@@ -0,0 +1,123 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.zbit.analysis.enrichment.AbstractEnrichment;
+import de.zbit.analysis.enrichment.GOEnrichment;
+import de.zbit.analysis.enrichment.KEGGPathwayEnrichment;
+import de.zbit.data.NameAndSignals;
+import de.zbit.data.Signal.MergeType;
+import de.zbit.data.mRNA.mRNA;
+
+/**
+ * Benchmarks {@link AbstractEnrichment#getEnrichments(Collection)} and
+ * {@link AbstractEnrichment#getBatchEnrichments(List, de.zbit.mapper.MappingUtils.IdentifierType, de.zbit.mapper.MappingUtils.IdentifierType, boolean)}
+ * with random genes of the time series example. The annotation is
+ * loaded once in the setup.
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnrichmentBenchmark {
+  
+  /**
+   * Either "KEGG" or "GO".
+   */
+  @Param({"KEGG", "GO"})
+  public String type;
+  
+  /**
+   * Number of genes in each input list.
+   */
+  @Param({"100", "1000"})
+  public int listSize;
+  
+  /**
+   * Number of lists for {@link #batch()}.
+   */
+  @Param({"10"})
+  public int lists;
+  
+  private AbstractEnrichment<?> enrichment;
+  
+  private List<List<mRNA>> geneLists;
+  
+  @Setup
+  public void setup() throws Exception {
+    if (type.equals("KEGG")) {
+      enrichment = new KEGGPathwayEnrichment(BenchmarkData.MOUSE, true, false);
+    } else if (type.equals("GO")) {
+      enrichment = new GOEnrichment(BenchmarkData.MOUSE);
+    } else {
+      throw new IllegalArgumentException("Unknown enrichment " + type);
+    }
+    
+    // Take random genes with a gene id
+    List<mRNA> genes = new ArrayList<mRNA>();
+    for (mRNA m : NameAndSignals.geneCentered(BenchmarkData.readTimeSeriesExample(), MergeType.Mean)) {
+      if (m.getID()>0) genes.add(m);
+    }
+    Random r = new Random(BenchmarkData.SEED);
+    geneLists = new ArrayList<List<mRNA>>(lists);
+    for (int i=0; i<lists; i++) {
+      Collections.shuffle(genes, r);
+      geneLists.add(new ArrayList<mRNA>(genes.subList(0, Math.min(listSize, genes.size()))));
+    }
+  }
+  
+  @Benchmark
+  public List<?> enrichment() {
+    return enrichment.getEnrichments(geneLists.get(0));
+  }
+  
+  @Benchmark
+  public Object batch() throws ExecutionException {
+    return enrichment.getBatchEnrichments(geneLists, null, null, false);
+  }
+  
+}
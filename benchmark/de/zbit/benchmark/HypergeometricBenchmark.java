@@ -0,0 +1,145 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.zbit.math.ExactHypergeometricTest;
+import de.zbit.math.HypergeometricTest;
+
+/**
+ * Benchmarks the p-value computation of an enrichment. For a synthetic
+ * set of terms (e.g., pathways) of different sizes, one p-value is
+ * computed per term, just as in
+ * {@link de.zbit.analysis.enrichment.AbstractEnrichment}. A new test
+ * is created in every invocation, such that the internal caches
+ * start empty (as for every new input list).
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HypergeometricBenchmark {
+  
+  /**
+   * Number of genes in the genome.
+   */
+  @Param({"20000"})
+  public int genomeSize;
+  
+  /**
+   * Number of genes in the input list.
+   */
+  @Param({"50", "500", "5000"})
+  public int geneListSize;
+  
+  /**
+   * Number of terms. KEGG has about 300 pathways per organism.
+   */
+  @Param({"300"})
+  public int terms;
+  
+  /**
+   * Size of each term.
+   */
+  private int[] termSizes;
+  
+  /**
+   * Number of input genes in each term.
+   */
+  private int[] hits;
+  
+  @Setup
+  public void setup() {
+    Random r = new Random(BenchmarkData.SEED);
+    termSizes = new int[terms];
+    hits = new int[terms];
+    for (int i=0; i<terms; i++) {
+      termSizes[i] = 5 + r.nextInt(500);
+      // Expected number of hits plus a few enriched ones
+      int expected = (int) ((long) termSizes[i] * geneListSize / genomeSize);
+      hits[i] = Math.min(Math.min(termSizes[i], geneListSize), expected + r.nextInt(10));
+    }
+  }
+  
+  /**
+   * Uses {@link HypergeometricTest}, which decides between the
+   * approximation and the {@link ExactHypergeometricTest}.
+   * @return sum of all p-values.
+   */
+  @Benchmark
+  public double hypergeometric() {
+    HypergeometricTest test = new HypergeometricTest(genomeSize, geneListSize);
+    double sum = 0;
+    for (int i=0; i<terms; i++) {
+      sum += test.getPvalue(termSizes[i], hits[i]);
+    }
+    return sum;
+  }
+  
+  /**
+   * Uses only the approximation (as for time series visualizations).
+   * @return sum of all p-values.
+   */
+  @Benchmark
+  public double approximation() {
+    HypergeometricTest test = new HypergeometricTest(genomeSize, geneListSize, true);
+    double sum = 0;
+    for (int i=0; i<terms; i++) {
+      sum += test.getPvalue(termSizes[i], hits[i]);
+    }
+    return sum;
+  }
+  
+  /**
+   * Uses only the {@link ExactHypergeometricTest}.
+   * @return sum of all p-values.
+   */
+  @Benchmark
+  public double exact() {
+    ExactHypergeometricTest test = new ExactHypergeometricTest(genomeSize, geneListSize);
+    double sum = 0;
+    for (int i=0; i<terms; i++) {
+      sum += test.getPvalue(termSizes[i], hits[i]);
+    }
+    return sum;
+  }
+  
+}
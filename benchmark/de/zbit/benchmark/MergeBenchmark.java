@@ -0,0 +1,134 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.benchmark;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.zbit.data.NameAndSignals;
+import de.zbit.data.Signal;
+import de.zbit.data.Signal.MergeType;
+import de.zbit.data.mRNA.mRNA;
+
+/**
+ * Benchmarks {@link Signal#calculate(MergeType, double...)} and
+ * {@link NameAndSignals#geneCentered(Collection, MergeType)} for
+ * all {@link MergeType}s.
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MergeBenchmark {
+  
+  /**
+   * {@link MergeType#Automatic} and {@link MergeType#AskUser} are not
+   * included, as they require a GUI.
+   */
+  @Param({"Mean", "Median", "Minimum", "Maximum", "MaximumDistanceToZero", "NormalizedSumOfLog2Values"})
+  public MergeType mergeType;
+  
+  /**
+   * Number of synthetic probes for {@link #geneCentered()}. Three
+   * probes belong to one gene on average.
+   */
+  @Param({"50000"})
+  public int probes;
+  
+  /**
+   * Synthetic probes with multiple probes per gene.
+   */
+  private List<mRNA> data;
+  
+  /**
+   * Random arrays for {@link MergeBenchmark#calculate(Values)}. This
+   * is a separate state, such that {@link MergeBenchmark#geneCentered()}
+   * is not repeated for every array length.
+   */
+  @State(Scope.Benchmark)
+  public static class Values {
+    
+    /**
+     * Length of each array. Usually, only a few probes belong to
+     * one gene.
+     */
+    @Param({"3", "50"})
+    public int length;
+    
+    private double[][] arrays;
+    
+    @Setup
+    public void setup() {
+      Random r = new Random(BenchmarkData.SEED);
+      arrays = new double[1024][length];
+      for (double[] a : arrays) {
+        for (int i=0; i<a.length; i++) {
+          // Positive values, required for the log2 based type
+          a[i] = Math.abs(r.nextGaussian()*4)+0.01;
+        }
+      }
+    }
+  }
+  
+  @Setup
+  public void setup() {
+    data = BenchmarkData.createProbes(probes, probes/3, 4, BenchmarkData.SEED);
+  }
+  
+  /**
+   * @param values
+   * @return sum of all merged values.
+   */
+  @Benchmark
+  public double calculate(Values values) {
+    double sum = 0;
+    for (double[] a : values.arrays) {
+      sum += Signal.calculate(mergeType, a);
+    }
+    return sum;
+  }
+  
+  @Benchmark
+  public Collection<mRNA> geneCentered() {
+    return NameAndSignals.geneCentered(data, mergeType);
+  }
+  
+}
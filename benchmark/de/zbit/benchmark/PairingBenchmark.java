@@ -0,0 +1,124 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.zbit.data.PairedNS;
+import de.zbit.data.mRNA.mRNA;
+import de.zbit.data.miRNA.miRNA;
+import de.zbit.data.miRNA.miRNAtarget;
+import de.zbit.data.miRNA.miRNAtargets;
+
+/**
+ * Benchmarks the integration of two datasets:
+ * {@link PairedNS#pairByGeneID(Collection, Collection)} with synthetic
+ * probes and {@link miRNAtargets#getTargets(String)} for all microRNAs
+ * of the microRNA example with the bundled high-confidence targets.
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PairingBenchmark {
+  
+  /**
+   * Number of probes in the first dataset. The second dataset has
+   * half as many probes.
+   */
+  @Param({"20000"})
+  public int probes;
+  
+  private List<mRNA> first;
+  
+  private List<mRNA> second;
+  
+  private miRNAtargets targets;
+  
+  /**
+   * Names of all microRNAs in the example file.
+   */
+  private List<String> miRNAs;
+  
+  @Setup
+  public void setup() throws Exception {
+    // Same gene space, different number of probes per gene
+    first = BenchmarkData.createProbes(probes, probes/2, 2, BenchmarkData.SEED);
+    second = BenchmarkData.createProbes(probes/2, probes/2, 2, BenchmarkData.SEED+1);
+    
+    targets = BenchmarkData.readTargetsExample();
+    Collection<miRNA> c = BenchmarkData.readMiRNAExample();
+    miRNAs = new ArrayList<String>(c.size());
+    for (miRNA m : c) {
+      miRNAs.add(m.getName());
+    }
+  }
+  
+  /**
+   * Pairs both datasets and visits all pairs (the returned list is
+   * lazy).
+   * @return number of pairs.
+   */
+  @Benchmark
+  public int pairByGeneID() {
+    List<PairedNS<mRNA, mRNA>> pairs = PairedNS.pairByGeneID(first, second);
+    int n = 0;
+    for (PairedNS<mRNA, mRNA> p : pairs) {
+      if (p!=null) n++;
+    }
+    return n;
+  }
+  
+  /**
+   * @return number of found targets.
+   */
+  @Benchmark
+  public int getTargets() {
+    int n = 0;
+    for (String name : miRNAs) {
+      Collection<miRNAtarget> t = targets.getTargets(name);
+      if (t!=null) n += t.size();
+    }
+    return n;
+  }
+  
+}
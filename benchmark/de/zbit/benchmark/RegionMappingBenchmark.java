@@ -0,0 +1,112 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.zbit.data.genes.GenericGene;
+import de.zbit.data.methylation.DNAmethylation;
+import de.zbit.io.dna_methylation.DNAmethIOtools;
+
+/**
+ * Benchmarks mapping DNA methylation probes to promoter regions with
+ * {@link DNAmethIOtools#map(int, boolean, List, de.zbit.sequence.region.Region, int)}.
+ * Genes and probes are randomly placed on one synthetic chromosome.
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegionMappingBenchmark {
+  
+  /**
+   * Upstream of the TSS (as in the default import options).
+   */
+  private final static int UPSTREAM = 2000;
+  
+  /**
+   * Downstream of the TSS.
+   */
+  private final static int DOWNSTREAM = 500;
+  
+  /**
+   * Number of genes. About the number of genes in a mammalian genome.
+   */
+  @Param({"25000"})
+  public int genes;
+  
+  /**
+   * Number of methylation probes.
+   */
+  @Param({"10000"})
+  public int probes;
+  
+  /**
+   * If true, probes that map to more than one promoter are skipped.
+   * Else, the closest TSS is searched.
+   */
+  @Param({"true", "false"})
+  public boolean takeOnlyUniqueHits;
+  
+  private List<GenericGene> promoters;
+  
+  private List<DNAmethylation> data;
+  
+  @Setup
+  public void setup() {
+    promoters = BenchmarkData.createPromoters(genes, UPSTREAM, DOWNSTREAM, BenchmarkData.SEED);
+    data = BenchmarkData.createMethylationProbes(probes, BenchmarkData.SEED);
+  }
+  
+  /**
+   * @return number of mapped probes.
+   */
+  @Benchmark
+  public int map() {
+    int mapped = 0;
+    for (DNAmethylation dnam : data) {
+      if (DNAmethIOtools.map(UPSTREAM+DOWNSTREAM, takeOnlyUniqueHits, promoters, dnam, UPSTREAM)!=null) {
+        mapped++;
+      }
+    }
+    return mapped;
+  }
+  
+}
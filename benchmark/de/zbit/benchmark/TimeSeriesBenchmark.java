@@ -0,0 +1,129 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.zbit.data.Signal.SignalType;
+import de.zbit.data.mRNA.mRNATimeSeries;
+import de.zbit.math.CubicSplineInterpolation;
+import de.zbit.math.TimeFit;
+import de.zbit.util.objectwrapper.ValueTriplet;
+import de.zbit.util.progressbar.ProgressBar;
+
+/**
+ * Benchmarks the time series models on synthetic time series:
+ * a {@link CubicSplineInterpolation} is generated for every gene
+ * and evaluated on a fine grid (as for the time series visualization),
+ * and one {@link TimeFit} model is generated for all genes.
+ * 
+ * <p>Note: the EM algorithm of {@link TimeFit} is randomly initialized
+ * and stops on convergence. Thus, the error of the {@link #timeFit()}
+ * score is larger than for the other benchmarks.
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeSeriesBenchmark {
+  
+  /**
+   * Number of genes.
+   */
+  @Param({"1000"})
+  public int genes;
+  
+  /**
+   * Number of time points per gene.
+   */
+  @Param({"3", "8"})
+  public int timePoints;
+  
+  /**
+   * Number of evaluated points per spline.
+   */
+  private final static int STEPS = 100;
+  
+  /**
+   * Number of classes for {@link TimeFit}.
+   */
+  private final static int CLASSES = 5;
+  
+  /**
+   * Maximum number of EM iterations for {@link TimeFit}.
+   */
+  private final static int MAX_ITERATIONS = 20;
+  
+  private List<ValueTriplet<Double, String, SignalType>> tp;
+  
+  private ArrayList<mRNATimeSeries> data;
+  
+  @Setup
+  public void setup() {
+    tp = BenchmarkData.createTimePoints(timePoints);
+    data = BenchmarkData.createTimeSeries(genes, tp, BenchmarkData.SEED);
+  }
+  
+  /**
+   * @return sum of all interpolated values.
+   */
+  @Benchmark
+  public double cubicSpline() {
+    double first = tp.get(0).getA();
+    double step = (tp.get(tp.size()-1).getA() - first) / STEPS;
+    double sum = 0;
+    for (mRNATimeSeries m : data) {
+      CubicSplineInterpolation c = new CubicSplineInterpolation(m, tp, 0, false);
+      for (int i=0; i<=STEPS; i++) {
+        sum += c.computeValueAtTimePoint(first + i*step, false);
+      }
+    }
+    return sum;
+  }
+  
+  @Benchmark
+  public TimeFit timeFit() {
+    TimeFit model = new TimeFit(CLASSES, MAX_ITERATIONS);
+    model.generateModel(data, tp, false, new ProgressBar(MAX_ITERATIONS));
+    return model;
+  }
+  
+}
@@ -22,6 +22,7 @@
 package de.zbit;
 
 import java.awt.Window;
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.LinkedList;
@@ -29,15 +30,23 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import de.zbit.data.PairedNS;
 import de.zbit.gui.GUIOptions;
 import de.zbit.gui.IntegratorUI;
+import de.zbit.gui.prefs.DatasetOptions;
 import de.zbit.gui.prefs.EnrichmentOptions;
 import de.zbit.gui.prefs.IntegratorIOOptions;
+import de.zbit.gui.prefs.MetricsOptions;
 import de.zbit.gui.prefs.PathwayVisualizationOptions;
+import de.zbit.gui.prefs.PipelineOptions;
 import de.zbit.gui.prefs.SignalOptions;
+import de.zbit.gui.tabs.DatasetManager;
 import de.zbit.kegg.KEGGtranslatorOptions;
+import de.zbit.integrator.HeadlessPipeline;
 import de.zbit.kegg.ext.KEGGTranslatorPanelOptions;
 import de.zbit.util.prefs.KeyProvider;
+import de.zbit.util.prefs.SBProperties;
+import de.zbit.utils.Metrics;
 
 /**
  * This class is the main class for the Integrator project.
@@ -97,14 +106,75 @@ public class Integrator extends Launcher {
    * @see de.zbit.Launcher#commandLineMode(de.zbit.AppConf)
    */
   @Override
-  public void commandLineMode(AppConf appConf) {}
+  public void commandLineMode(AppConf appConf) {
+    initMetrics(appConf);
+    initDatasetManager(appConf);
+    
+    // Run a pipeline without GUI (see PipelineOptions)
+    SBProperties props = appConf.getCmdArgs();
+    if (props==null || !props.containsKey(PipelineOptions.PIPELINE)) {
+      log.warning("Please specify a pipeline configuration to run without graphical user interface.");
+      return;
+    }
+    System.setProperty("java.awt.headless", "true");
+    File config = PipelineOptions.PIPELINE.getValue(props);
+    try {
+      int errors = new HeadlessPipeline(config).run();
+      if (errors>0) System.exit(1);
+    } catch (Exception e) {
+      log.log(Level.SEVERE, "Pipeline failed.", e);
+      System.exit(1);
+    }
+  }
   
   /* (non-Javadoc)
    * @see de.zbit.Launcher#getCmdLineOptions()
    */
   @Override
   public List<Class<? extends KeyProvider>> getCmdLineOptions() {
-    return IntegratorUI.getStaticCommandLineOptions();
+    List<Class<? extends KeyProvider>> configList = IntegratorUI.getStaticCommandLineOptions();
+    configList.add(PipelineOptions.class);
+    configList.add(MetricsOptions.class);
+    configList.add(DatasetOptions.class);
+    return configList;
+  }
+  
+  /**
+   * Exposes the {@link Metrics} via JMX and enables them, if
+   * requested on the command-line (see {@link MetricsOptions}).
+   * @param appConf
+   */
+  private void initMetrics(AppConf appConf) {
+    SBProperties props = appConf.getCmdArgs();
+    Metrics.registerMBean();
+    if (props!=null && props.containsKey(MetricsOptions.METRICS) && MetricsOptions.METRICS.getValue(props)) {
+      Metrics.setEnabled(true);
+      int interval = MetricsOptions.METRICS_REPORT_INTERVAL.getDefaultValue();
+      if (props.containsKey(MetricsOptions.METRICS_REPORT_INTERVAL)) {
+        interval = MetricsOptions.METRICS_REPORT_INTERVAL.getValue(props);
+      }
+      Metrics.startReporter(interval);
+    }
+  }
+  
+  /**
+   * Configures the memory budget of the {@link DatasetManager} and
+   * the maximum number of pairs (see {@link DatasetOptions}).
+   * @param appConf
+   */
+  private void initDatasetManager(AppConf appConf) {
+    SBProperties props = appConf.getCmdArgs();
+    if (props==null) return;
+    DatasetManager manager = DatasetManager.getInstance();
+    if (props.containsKey(DatasetOptions.SPILL_TO_DISK)) {
+      manager.setSpillToDisk(DatasetOptions.SPILL_TO_DISK.getValue(props));
+    }
+    if (props.containsKey(DatasetOptions.DATASET_MEMORY_BUDGET)) {
+      manager.setBudget(DatasetOptions.DATASET_MEMORY_BUDGET.getValue(props)*1024L*1024L);
+    }
+    if (props.containsKey(DatasetOptions.MAX_PAIRS)) {
+      PairedNS.setMaxPairs(DatasetOptions.MAX_PAIRS.getValue(props));
+    }
   }
   
   /* (non-Javadoc)
@@ -201,6 +271,8 @@ public class Integrator extends Launcher {
    */
   @Override
   public Window initGUI(AppConf appConf) {
+    initMetrics(appConf);
+    initDatasetManager(appConf);
     return new IntegratorUI(appConf);
   }
   
@@ -21,19 +21,26 @@
  */
 package de.zbit.analysis;
 
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 import javax.swing.JCheckBox;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 
 import de.zbit.data.EnrichmentObject;
 import de.zbit.data.NameAndSignals;
 import de.zbit.data.PairedNS;
+import de.zbit.data.PairedNSList;
+import de.zbit.data.RegionJoin;
 import de.zbit.data.Signal;
 import de.zbit.data.Signal.MergeType;
 import de.zbit.data.Signal.SignalType;
@@ -48,6 +55,8 @@ import de.zbit.gui.dialogs.MergedSignalDialog.MergeTypeForTwo;
 import de.zbit.gui.layout.LayoutHelper;
 import de.zbit.gui.tabs.IntegratorTab;
 import de.zbit.gui.tabs.NameAndSignalsTab;
+import de.zbit.sequence.region.Chromosome;
+import de.zbit.sequence.region.Region;
 import de.zbit.util.Species;
 import de.zbit.util.objectwrapper.LabeledObject;
 import de.zbit.util.objectwrapper.ValuePair;
@@ -125,9 +134,25 @@ public class PairData {
       lh.add(dataSelect);
       
       // Add other options (gene-centere, merged-signal)
-      JCheckBox gene_center = new JCheckBox("Gene center both datatsets before pairing", true);
+      final JCheckBox gene_center = new JCheckBox("Gene center both datatsets before pairing", true);
       lh.add(gene_center);
       
+      // Region-based data (e.g., SNPs and DNA methylation) can also be paired by position
+      final JCheckBox byRegion = new JCheckBox("Pair by genomic position, up to a distance of (bp)", false);
+      final JSpinner window = new JSpinner(new SpinnerNumberModel(1000, 0, 10000000, 100));
+      window.setEnabled(false);
+      Object example = data.iterator().next();
+      if (example instanceof Region && example instanceof Chromosome) {
+        byRegion.addItemListener(new ItemListener() {
+          public void itemStateChanged(ItemEvent e) {
+            // Gene-centering would discard the positions
+            window.setEnabled(byRegion.isSelected());
+            gene_center.setEnabled(!byRegion.isSelected());
+          }
+        });
+        lh.add(byRegion, window);
+      }
+      
       String firstPartName = firstPart!=null?firstPart.getTabName():data.iterator().next().getClass().getSimpleName();
       MergedSignalDialog mergeSignal = new MergedSignalDialog(data.iterator().next(), firstPartName, dataSelect);
       lh.add(mergeSignal);
@@ -138,7 +163,8 @@ public class PairData {
       
       // Perform data pairing
       lastSelectedOtherTab = ((LabeledObject<NameAndSignalsTab>)dataSelect.getSelectedItem()).getObject();
-      List pairedData = pairData(lastSelectedOtherTab, gene_center.isSelected(), true);
+      int distance = byRegion.isSelected()?((Number)window.getValue()).intValue():-1;
+      List pairedData = pairData(lastSelectedOtherTab, gene_center.isSelected(), distance, true);
       if (pairedData==null || pairedData.size()<1) return null; // Message already issued
       log.info(String.format("Created a total of %s pairs.", pairedData.size()));
       
@@ -227,6 +253,12 @@ public class PairData {
     // Set new name and type (MergeType is NOT USED for strings).
     String newSigName = getNiceMergedSignalName(signal1.getA().toString(), signal2.getA().toString(), mergeType);
     
+    // Lazy pairs compute the signal into a primitive column, once it is required
+    if (pairedData instanceof PairedNSList) {
+      ((PairedNSList)pairedData).addMergedSignal(signal1, signal2, mergeType, newSigName, generateUpDownColumn);
+      return;
+    }
+    
     // Perform calculation
     Double zero = new Double(0.0d);
     for (PairedNS<?, ?> pairedNS : pairedData) {
@@ -291,8 +323,19 @@ public class PairData {
   public static Number calculate(Signal signal1, Signal signal2, MergeTypeForTwo mergeType) {
     if ((signal1==null||Double.isNaN(signal1.getSignal().doubleValue())) ||
         (signal2==null||Double.isNaN(signal2.getSignal().doubleValue()))) return Double.NaN;
-    double val1 = signal1.getSignal().doubleValue();
-    double val2 = signal2.getSignal().doubleValue();
+    return calculate(signal1.getSignal().doubleValue(), signal2.getSignal().doubleValue(), mergeType);
+  }
+  
+  /**
+   * Calculate a calculation, defined by <code>mergeType</code> on
+   * <code>val1</code> and <code>val2</code>.
+   * @param val1
+   * @param val2
+   * @param mergeType
+   * @return the result or {@link Double#NaN} if any value is NaN.
+   */
+  public static double calculate(double val1, double val2, MergeTypeForTwo mergeType) {
+    if (Double.isNaN(val1) || Double.isNaN(val2)) return Double.NaN;
     
     if (mergeType.equals(MergeTypeForTwo.AbsoluteSum)) {
       return Math.abs(val1) + Math.abs(val2);
@@ -315,15 +358,28 @@ public class PairData {
    * Interactive data pairing (shows messages and asks user to annotate {@link miRNA} targets).
    * @param tab {@link NameAndSignalsTab} containing the data to pair current {@link #data} with
    * @param geneCenter if true, lists will be gene-centered before pairing
+   * @param distance if non-negative, data is paired by genomic position
+   * (see {@link RegionJoin}) instead of by identifier. Elements are paired
+   * if they are at most <code>distance</code> bps apart.
    * @param annotateTargetsAndRecurse if true, automatically promts the user to annotate his miRNA with
    * targets, if they are missing and recursively calls this method again.
    * @return 
    */
   @SuppressWarnings({ "rawtypes", "unchecked" })
-  private List pairData(NameAndSignalsTab tab, boolean geneCenter, boolean annotateTargetsAndRecurse) {
+  private List pairData(NameAndSignalsTab tab, boolean geneCenter, int distance, boolean annotateTargetsAndRecurse) {
     if (tab==null) return null; // Aborted by user or application.
     
-    List pairedData = pairWith_Unchecked(tab.getData(),geneCenter);
+    List pairedData;
+    try {
+      pairedData = pairWith_Unchecked(tab.getData(),geneCenter,distance);
+    } catch (IllegalArgumentException e) {
+      // Too many pairs
+      GUITools.showErrorMessage(firstPart, e.getMessage());
+      return null;
+    } catch (ExecutionException e) {
+      GUITools.showErrorMessage(firstPart, e);
+      return null;
+    }
     if (pairedData==null || pairedData.size()<1) {
       // Something went wrong...
       String message = "Could not detect any matching data pair.";
@@ -333,16 +389,19 @@ public class PairData {
         message = "Can not pair data from different species.";
         
         // Are there missing annotated targets?
+      } else if (distance>=0) {
+        message = "Could not find any pair within the given distance. Please make sure that both datasets contain genomic positions.";
+        
       } else if (firstPart!=null && NameAndSignals.isMicroRNA(firstPart.getData())) {
         if (annotateTargetsAndRecurse && !miRNA.hasTargets((Iterable<? extends miRNA>) firstPart.getData())) {
           firstPart.getActions().annotateMiRNAtargets();
-          return pairData(tab, geneCenter, false);
+          return pairData(tab, geneCenter, distance, false);
         }
           
       } else if (NameAndSignals.isMicroRNA(tab.getData())) {
         if (annotateTargetsAndRecurse && !miRNA.hasTargets((Iterable<? extends miRNA>) tab.getData())) {
           tab.getActions().annotateMiRNAtargets();
-          return pairData(tab, geneCenter, false);
+          return pairData(tab, geneCenter, distance, false);
         }
       }
       
@@ -361,12 +420,19 @@ public class PairData {
    * @param <T2> any {@link NameAndSignals}
    * @param nsTwos list to pair the {@link #data} with
    * @param geneCenter if true, lists will be gene-centered before pairing
+   * (ignored when pairing by position).
+   * @param distance if non-negative, pairs all elements that are at most
+   * this number of bps apart (see {@link RegionJoin}).
    * @return if exactly one of <code>nsOnes</code> or <code>nsTwos</code> 
    * is an instance of {@link miRNA}, returns a <code>List&lt;PairedNS&lt;miRNA, Other&gt;&gt;</code>
    * else, a <code>List&lt;PairedNS&lt;T1, T2&gt;&gt;</code> is returned.
+   * @throws ExecutionException if pairing by position failed.
    */
   @SuppressWarnings({ "rawtypes" })
-  private <T2 extends NameAndSignals> List pairWith_Unchecked(Collection<T2> nsTwos, boolean geneCenter) {
+  private <T2 extends NameAndSignals> List pairWith_Unchecked(Collection<T2> nsTwos, boolean geneCenter, int distance) throws ExecutionException {
+    if (distance>=0) {
+      return RegionJoin.join(data, nsTwos, distance, distance);
+    }
     return PairedNS.pair(data, nsTwos, geneCenter);
   }
   
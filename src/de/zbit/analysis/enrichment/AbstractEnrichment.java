@@ -22,6 +22,7 @@
 package de.zbit.analysis.enrichment;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -32,6 +33,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,16 +53,20 @@ import de.zbit.data.miRNA.miRNAtarget;
 import de.zbit.gui.IntegratorUITools;
 import de.zbit.gui.prefs.EnrichmentOptions;
 import de.zbit.mapper.AbstractMapper;
-import de.zbit.mapper.MappingUtils;
 import de.zbit.mapper.MappingUtils.IdentifierType;
 import de.zbit.mapper.enrichment.EnrichmentMapper;
+import de.zbit.math.AbstractFDRCorrection;
 import de.zbit.math.BenjaminiHochberg;
+import de.zbit.math.CachedEnrichmentPvalue;
 import de.zbit.math.EnrichmentPvalue;
 import de.zbit.math.FDRCorrection;
 import de.zbit.math.HypergeometricTest;
 import de.zbit.util.Species;
 import de.zbit.util.prefs.SBPreferences;
 import de.zbit.util.progressbar.AbstractProgressBar;
+import de.zbit.utils.MapperRegistry;
+import de.zbit.utils.Metrics;
+import de.zbit.utils.ParallelUtils;
 
 /**
  * Abstract enrichment class to test a list of genes for enrichments
@@ -72,6 +81,13 @@ import de.zbit.util.progressbar.AbstractProgressBar;
 public abstract class AbstractEnrichment<EnrichIDType> {
   public static final transient Logger log = Logger.getLogger(AbstractEnrichment.class.getName());
   
+  /*
+   * Metrics
+   */
+  private final static Metrics.Timer ENRICHMENT_TIME = Metrics.timer("enrichment.time");
+  private final static Metrics.Timer PVALUE_TIME = Metrics.timer("enrichment.pValueTime");
+  private final static Metrics.Counter TERMS = Metrics.counter("enrichment.terms");
+  
   /**
    * Mapping from GeneID 2 Enrichment class ids (e.g., KEGG Pathway ID) 
    */
@@ -196,7 +212,7 @@ public abstract class AbstractEnrichment<EnrichIDType> {
     AbstractMapper<String, Integer> mapper=null;
     if (idType!=null && !idType.equals(IdentifierType.NCBI_GeneID)) {
       try {
-        mapper = MappingUtils.initialize2GeneIDMapper(idType, prog, species);
+        mapper = MapperRegistry.get2GeneIDMapper(idType, species, prog, false);
       } catch (IOException e) {
         log.log(Level.WARNING, "Could not read mapping file to map your gene identifiers to Entrez GeneIDs.", e);
         return null;
@@ -294,7 +310,7 @@ public abstract class AbstractEnrichment<EnrichIDType> {
     AbstractMapper<String,Set<String>> mapper=null;
     if (idType!=null && !idType.equals(IdentifierType.InChIKey)) {
       try {
-        mapper = MappingUtils.initialize2InChIKeyMapper(idType, prog);
+        mapper = MapperRegistry.get2InChIKeyMapper(idType, prog, false);
       } catch (IOException e) {
         log.log(Level.WARNING, "Could not read mapping file to map your compound identifiers to InChIKeys.", e);
         return null;
@@ -474,9 +490,93 @@ public abstract class AbstractEnrichment<EnrichIDType> {
    * @param idType
    * @parem alwaysPValueApproximation
    */
-  @SuppressWarnings({ "unchecked", "rawtypes" })
   public <T> List<EnrichmentObject<EnrichIDType>> getEnrichments(Collection<T> geneList,
   		 IdentifierType geneIdType, IdentifierType cpdIdType, boolean neverExactPValue) {
+    return getEnrichments(geneList, geneIdType, cpdIdType, neverExactPValue, null, null, prog);
+  }
+  
+  /**
+   * Scores many input lists against the annotation of this enrichment
+   * at once. The annotation is only loaded once, all lists are
+   * scored concurrently and term sizes as well as pValue tables (for
+   * lists of equal size) are shared.
+   * @param <T>
+   * @param geneLists any number of input lists (see
+   * {@link #getEnrichments(Collection, IdentifierType, IdentifierType, boolean)}).
+   * @param geneIdType
+   * @param cpdIdType
+   * @param neverExactPValue
+   * @return the enrichments of all lists and a term &times; list matrix
+   * of p- and q-values.
+   * @throws ExecutionException if the enrichment of any list failed.
+   */
+  public <T> BatchEnrichmentResult<EnrichIDType> getBatchEnrichments(List<? extends Collection<T>> geneLists,
+    final IdentifierType geneIdType, final IdentifierType cpdIdType, final boolean neverExactPValue) throws ExecutionException {
+    // Shared among all lists
+    if (enrich_ID2Name==null) {
+      enrich_ID2Name = getDefaultEnrichmentID2NameMapping();
+    }
+    final Map<EnrichIDType, Integer> termSizes = new ConcurrentHashMap<EnrichIDType, Integer>();
+    final Map<Integer, EnrichmentPvalue> pValueTables = new ConcurrentHashMap<Integer, EnrichmentPvalue>();
+    if (prog!=null) {
+      prog.reset();
+      prog.setNumberOfTotalCalls(geneLists.size());
+    }
+    
+    List<Callable<List<EnrichmentObject<EnrichIDType>>>> tasks = new ArrayList<Callable<List<EnrichmentObject<EnrichIDType>>>>(geneLists.size());
+    for (final Collection<T> geneList: geneLists) {
+      tasks.add(new Callable<List<EnrichmentObject<EnrichIDType>>>() {
+        public List<EnrichmentObject<EnrichIDType>> call() throws Exception {
+          List<EnrichmentObject<EnrichIDType>> ret;
+          if (geneList==null || geneList.size()<1) {
+            ret = new ArrayList<EnrichmentObject<EnrichIDType>>(0);
+          } else {
+            ret = getEnrichments(geneList, geneIdType, cpdIdType, neverExactPValue, termSizes, pValueTables, null);
+          }
+          if (prog!=null) {
+            synchronized (prog) {
+              prog.DisplayBar();
+            }
+          }
+          return ret;
+        }
+      });
+    }
+    
+    List<List<EnrichmentObject<EnrichIDType>>> results;
+    if (ParallelUtils.isWorkerThread()) {
+      // Avoid waiting for tasks in the same pool
+      results = new ArrayList<List<EnrichmentObject<EnrichIDType>>>(tasks.size());
+      for (Callable<List<EnrichmentObject<EnrichIDType>>> task: tasks) {
+        try {
+          results.add(task.call());
+        } catch (Exception e) {
+          throw new ExecutionException(e);
+        }
+      }
+    } else {
+      List<Future<List<EnrichmentObject<EnrichIDType>>>> futures = new ArrayList<Future<List<EnrichmentObject<EnrichIDType>>>>(tasks.size());
+      for (Callable<List<EnrichmentObject<EnrichIDType>>> task: tasks) {
+        futures.add(ParallelUtils.getComputePool().submit(task));
+      }
+      results = ParallelUtils.waitForAll(futures);
+    }
+    
+    return new BatchEnrichmentResult<EnrichIDType>(results);
+  }
+  
+  /**
+   * @param termSizes cache for term sizes (or <code>null</code>).
+   * @param pValueTables shared pValue calculators by list size (or
+   * <code>null</code>).
+   * @param prog progress bar for this list (or <code>null</code>).
+   * @see #getEnrichments(Collection, IdentifierType, IdentifierType, boolean)
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private <T> List<EnrichmentObject<EnrichIDType>> getEnrichments(Collection<T> geneList,
+    IdentifierType geneIdType, IdentifierType cpdIdType, boolean neverExactPValue,
+    Map<EnrichIDType, Integer> termSizes, Map<Integer, EnrichmentPvalue> pValueTables, AbstractProgressBar prog) {
+    long start = ENRICHMENT_TIME.start();
     SBPreferences prefs = SBPreferences.getPreferencesFor(EnrichmentOptions.class);
     
     // We have to take the gene lists in EnrichmentObjects, thus
@@ -557,7 +657,16 @@ public abstract class AbstractEnrichment<EnrichIDType> {
     	backGroundSize+=inchikey2enrich_ID.getTotalSumOfEntitiesInAllClasses();
     
     
-    EnrichmentPvalue pval = new HypergeometricTest(backGroundSize, geneListSize, neverExactPValue);
+    EnrichmentPvalue pval;
+    if (pValueTables!=null) {
+      pval = pValueTables.get(geneListSize);
+      if (pval==null) {
+        pval = new CachedEnrichmentPvalue(new HypergeometricTest(backGroundSize, geneListSize, neverExactPValue));
+        pValueTables.put(geneListSize, pval);
+      }
+    } else {
+      pval = new HypergeometricTest(backGroundSize, geneListSize, neverExactPValue);
+    }
     if (prog!=null) {
       prog.reset();
       prog.setNumberOfTotalCalls(pwMergedList.size());
@@ -568,18 +677,22 @@ public abstract class AbstractEnrichment<EnrichIDType> {
     int removeTermThreshold = EnrichmentOptions.MINIMUM_SIZE_OF_TERMS_TO_REMOVE.getValue(prefs);
     
     // Create EnrichmentObjects
-    List<EnrichmentObject<EnrichIDType>> ret = new LinkedList<EnrichmentObject<EnrichIDType>>();
+    List<EnrichmentObject<EnrichIDType>> ret = new ArrayList<EnrichmentObject<EnrichIDType>>(pwMergedList.size());
     for (Map.Entry<EnrichIDType, Set<?>> entry : pwMergedList.entrySet()) {
       if (prog!=null) prog.DisplayBar();
       
       String pw_name = getEnrichedObjectName(entry.getKey(), enrich_ID2Name);
       
       // Total # genes+compounds in pw
-      int pwSize=0;
-      if(geneID2enrich_ID!=null)
-      	pwSize += geneID2enrich_ID.getEnrichmentClassSize(entry.getKey());
-      if(inchikey2enrich_ID!=null)
-      	pwSize += inchikey2enrich_ID.getEnrichmentClassSize(entry.getKey());
+      Integer pwSize = termSizes!=null?termSizes.get(entry.getKey()):null;
+      if (pwSize==null) {
+        pwSize=0;
+        if(geneID2enrich_ID!=null)
+        	pwSize += geneID2enrich_ID.getEnrichmentClassSize(entry.getKey());
+        if(inchikey2enrich_ID!=null)
+        	pwSize += inchikey2enrich_ID.getEnrichmentClassSize(entry.getKey());
+        if (termSizes!=null) termSizes.put(entry.getKey(), pwSize);
+      }
       
       if (removeTerms && pwSize>=removeTermThreshold) {
         continue;
@@ -593,10 +706,12 @@ public abstract class AbstractEnrichment<EnrichIDType> {
           IntegratorUITools.getMergeTypeSilent()).size();
       }
       
-      // Create result object
+      // Create result object (computes the pValue)
+      long pValueStart = PVALUE_TIME.start();
       EnrichmentObject<EnrichIDType> o = new EnrichmentObject<EnrichIDType>(pw_name,entry.getKey(),
           subsetOfList, geneListSize, pwSize, backGroundSize,
           pval, entry.getValue());
+      PVALUE_TIME.stop(pValueStart);
       ret.add(o);
     }
     
@@ -606,8 +721,13 @@ public abstract class AbstractEnrichment<EnrichIDType> {
     }
     
     // Initially sort returned list by pValue (better than q-value because finer grained)
-    Collections.sort(ret, Signal.getComparator(EnrichmentObject.signalNameForPvalues, SignalType.pValue));
+    if (!(qVal instanceof AbstractFDRCorrection)) {
+      // Else, the list is already sorted by pValue
+      Collections.sort(ret, Signal.getComparator(EnrichmentObject.signalNameForPvalues, SignalType.pValue));
+    }
     
+    TERMS.add(ret.size());
+    ENRICHMENT_TIME.stop(start);
     return ret;
   }
   
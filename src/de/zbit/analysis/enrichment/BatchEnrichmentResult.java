@@ -0,0 +1,184 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.analysis.enrichment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.zbit.data.EnrichmentObject;
+
+/**
+ * The result of an enrichment of many input lists against the same
+ * annotation (see {@link AbstractEnrichment#getBatchEnrichments(List, de.zbit.mapper.MappingUtils.IdentifierType, de.zbit.mapper.MappingUtils.IdentifierType, boolean)}).
+ * <p>Next to the usual {@link EnrichmentObject} lists (one per input
+ * list), this contains a term &times; list matrix of p- and q-values.
+ * If a term contains no element of a list, its p- and q-value for
+ * this list is 1.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ * @param <EnrichIDType> type of the enrichment term identifiers
+ */
+public class BatchEnrichmentResult<EnrichIDType> {
+
+  /**
+   * One list of enrichments per input list (might be empty).
+   */
+  private final List<List<EnrichmentObject<EnrichIDType>>> enrichments;
+
+  /**
+   * All terms that are enriched in at least one list.
+   */
+  private final List<EnrichIDType> terms;
+
+  /**
+   * Index of each term in {@link #terms}.
+   */
+  private final Map<EnrichIDType, Integer> termIndex;
+
+  /**
+   * pValues [term][list]
+   */
+  private final double[][] pValues;
+
+  /**
+   * qValues [term][list]
+   */
+  private final double[][] qValues;
+
+  /**
+   * @param enrichments one list of enrichments per input list.
+   */
+  BatchEnrichmentResult(List<List<EnrichmentObject<EnrichIDType>>> enrichments) {
+    super();
+    this.enrichments = Collections.unmodifiableList(enrichments);
+
+    // Collect all terms
+    termIndex = new HashMap<EnrichIDType, Integer>();
+    List<EnrichIDType> terms = new ArrayList<EnrichIDType>();
+    for (List<EnrichmentObject<EnrichIDType>> list: enrichments) {
+      for (EnrichmentObject<EnrichIDType> o: list) {
+        if (!termIndex.containsKey(o.getIdentifier())) {
+          termIndex.put(o.getIdentifier(), terms.size());
+          terms.add(o.getIdentifier());
+        }
+      }
+    }
+    this.terms = Collections.unmodifiableList(terms);
+
+    // Create the matrices
+    pValues = new double[terms.size()][enrichments.size()];
+    qValues = new double[terms.size()][enrichments.size()];
+    for (int t=0; t<terms.size(); t++) {
+      Arrays.fill(pValues[t], 1d);
+      Arrays.fill(qValues[t], 1d);
+    }
+    for (int l=0; l<enrichments.size(); l++) {
+      for (EnrichmentObject<EnrichIDType> o: enrichments.get(l)) {
+        int t = termIndex.get(o.getIdentifier());
+        pValues[t][l] = o.getPValue().doubleValue();
+        Number q = o.getQValue();
+        qValues[t][l] = q!=null?q.doubleValue():Double.NaN;
+      }
+    }
+  }
+
+  /**
+   * @return number of input lists.
+   */
+  public int getNumberOfLists() {
+    return enrichments.size();
+  }
+
+  /**
+   * @param list index of the input list
+   * @return the enrichments for the given input list, sorted
+   * by pValue.
+   */
+  public List<EnrichmentObject<EnrichIDType>> getEnrichments(int list) {
+    return enrichments.get(list);
+  }
+
+  /**
+   * @return all enrichment lists (one per input list).
+   */
+  public List<List<EnrichmentObject<EnrichIDType>>> getEnrichments() {
+    return enrichments;
+  }
+
+  /**
+   * @return all terms that are enriched in at least one list (the
+   * rows of {@link #getPValues()} and {@link #getQValues()}).
+   */
+  public List<EnrichIDType> getTerms() {
+    return terms;
+  }
+
+  /**
+   * @param term
+   * @return the row of the given term in the matrices or -1 if the
+   * term is not enriched in any list.
+   */
+  public int getTermIndex(EnrichIDType term) {
+    Integer i = termIndex.get(term);
+    return i!=null?i:-1;
+  }
+
+  /**
+   * @return the term &times; list matrix of pValues. Do not modify.
+   */
+  public double[][] getPValues() {
+    return pValues;
+  }
+
+  /**
+   * @return the term &times; list matrix of qValues. Do not modify.
+   */
+  public double[][] getQValues() {
+    return qValues;
+  }
+
+  /**
+   * @param term
+   * @param list
+   * @return the pValue of the given term in the given list.
+   */
+  public double getPValue(EnrichIDType term, int list) {
+    int t = getTermIndex(term);
+    return t<0?1d:pValues[t][list];
+  }
+
+  /**
+   * @param term
+   * @param list
+   * @return the qValue of the given term in the given list.
+   */
+  public double getQValue(EnrichIDType term, int list) {
+    int t = getTermIndex(term);
+    return t<0?1d:qValues[t][list];
+  }
+
+}
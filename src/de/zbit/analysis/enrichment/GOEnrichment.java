@@ -67,6 +67,17 @@ public class GOEnrichment extends AbstractEnrichment<String>  {
     super(mapper, null, prog);
   }
   
+  /**
+   * @param spec
+   * @param mapper
+   * @param goID2name_mapper might be <code>null</code>.
+   * @param prog
+   * @throws IOException
+   */
+  public GOEnrichment(Species spec, GeneID2GO_ID_Mapper mapper, GO_ID2GO_NameMapper goID2name_mapper, AbstractProgressBar prog) throws IOException {
+    super(mapper, null, goID2name_mapper, spec, prog);
+  }
+  
   /* (non-Javadoc)
    * @see de.zbit.analysis.enrichment.AbstractEnrichment#getDefaultEnrichmentID2NameMapping()
    */
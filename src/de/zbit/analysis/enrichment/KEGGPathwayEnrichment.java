@@ -110,6 +110,20 @@ public class KEGGPathwayEnrichment extends AbstractEnrichment<String> {
     initializeEnrichmentMappings();
   }
   
+  /**
+   * @param spec
+   * @param geneMapper an already initialized mapping for <code>spec</code>
+   * @param pwID2name_mapper an already initialized mapping or <code>null</code>
+   * @param prog
+   * @throws IOException
+   */
+  public KEGGPathwayEnrichment(Species spec, GeneID2ListOfKEGGpathways geneMapper, KeggPathwayID2PathwayName pwID2name_mapper, AbstractProgressBar prog) throws IOException {
+    super(geneMapper, null, pwID2name_mapper, spec, prog);
+    this.initGenes = true;
+    this.executeInitialization = true;
+    initializeEnrichmentMappings();
+  }
+  
   /**
    * @param cpdMapper
    * @param prog
@@ -0,0 +1,521 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.data;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+import de.zbit.data.Signal.MergeType;
+import de.zbit.data.Signal.SignalType;
+import de.zbit.data.id.GeneID;
+import de.zbit.sequence.region.Chromosome;
+import de.zbit.sequence.region.Region;
+import de.zbit.util.objectwrapper.ValuePair;
+import de.zbit.utils.IndexSort;
+import de.zbit.utils.ParallelUtils;
+
+/**
+ * A columnar, position-sorted index over a dataset of {@link NameAndSignals}.
+ * Allows to get all probes of a gene and all probes in a genomic region
+ * without scanning the whole dataset. Signals are stored as primitive
+ * columns (in index order), such that XY-series for plots can directly
+ * be sliced from these columns.
+ *
+ * <p>Use {@link #getIndex(Iterable)} to get a cached instance for a dataset.
+ * The cache references the datasets weakly and the indices softly. Thus,
+ * neither the dataset nor the indexed elements are kept in memory by
+ * the cache.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ * @param <T>
+ */
+public class GenomicPositionIndex<T extends NameAndSignals> {
+  public static final transient Logger log = Logger.getLogger(GenomicPositionIndex.class.getName());
+
+  /**
+   * Number of datasets to keep indices for.
+   */
+  private final static int MAX_CACHED_INDICES = 8;
+
+  /**
+   * Recently used indices (most recently used first). Each index keeps
+   * all elements of its dataset, hence they are only softly referenced.
+   */
+  private final static LinkedList<SoftReference<GenomicPositionIndex<?>>> cache = new LinkedList<SoftReference<GenomicPositionIndex<?>>>();
+
+  /**
+   * The indexed dataset.
+   */
+  private final WeakReference<Iterable<T>> source;
+
+  /**
+   * Number of elements in {@link #source} when this index has been built.
+   */
+  private final int size;
+
+  /**
+   * All elements, sorted by chromosome and start position.
+   */
+  private final List<T> items;
+
+  /**
+   * Chromosome of each element (in {@link #items} order).
+   */
+  private final byte[] chromosome;
+
+  /**
+   * Start, end and middle position of each element (in {@link #items} order).
+   * Are {@link Region#DEFAULT_START} if not available.
+   */
+  private final int[] start, end, middle;
+
+  /**
+   * The maximum length (end-start) of all elements.
+   */
+  private int maxLength=0;
+
+  /**
+   * Maps gene IDs to sorted positions in {@link #items}.
+   */
+  private final Map<Integer, int[]> geneIndex;
+
+  /**
+   * Maps names to sorted positions in {@link #items}. Built on demand.
+   */
+  private Map<String, int[]> nameIndex=null;
+
+  /**
+   * Cached signal columns (in {@link #items} order).
+   */
+  private final Map<String, double[]> signalColumns = new HashMap<String, double[]>();
+
+  /**
+   * Builds a new index. Please use {@link #getIndex(Iterable)} instead.
+   * @param data
+   */
+  @SuppressWarnings("unchecked")
+  private GenomicPositionIndex(Iterable<T> data) {
+    super();
+    source = new WeakReference<Iterable<T>>(data);
+
+    // Collect all elements and extract positions
+    final List<T> unsorted = (data instanceof Collection<?>) ?
+        new ArrayList<T>((Collection<T>) data) : new ArrayList<T>();
+    if (!(data instanceof Collection<?>)) {
+      for (T ns : data) unsorted.add(ns);
+    }
+    size = unsorted.size();
+
+    final byte[] chr = new byte[size];
+    final int[] s = new int[size];
+    final int[] e = new int[size];
+    final int[] m = new int[size];
+    for (int i=0; i<size; i++) {
+      T ns = unsorted.get(i);
+      chr[i] = (ns instanceof Chromosome) ? ((Chromosome) ns).getChromosomeAsByteRepresentation() : Chromosome.default_Chromosome_byte;
+      if (ns instanceof Region) {
+        s[i] = ((Region) ns).getStart();
+        e[i] = ((Region) ns).getEnd();
+        m[i] = ((Region) ns).getMiddle();
+      } else {
+        s[i] = Region.DEFAULT_START;
+        e[i] = Region.DEFAULT_START;
+        m[i] = Region.DEFAULT_START;
+      }
+    }
+
+    // Sort by chromosome and position (stable, i.e., elements without
+    // position keep their original order).
+    int[] order = IndexSort.identity(size);
+    IndexSort.sort(order, new IndexSort.IndexComparator() {
+      public int compare(int a, int b) {
+        if (chr[a]!=chr[b]) return chr[a]<chr[b]?-1:1;
+        if (s[a]!=s[b]) return s[a]<s[b]?-1:1;
+        return 0;
+      }
+    });
+
+    items = new ArrayList<T>(size);
+    chromosome = new byte[size];
+    start = new int[size];
+    end = new int[size];
+    middle = new int[size];
+    geneIndex = new HashMap<Integer, int[]>();
+    Map<Integer, Integer> geneCounts = new HashMap<Integer, Integer>();
+    for (int i=0; i<size; i++) {
+      int o = order[i];
+      T ns = unsorted.get(o);
+      items.add(ns);
+      chromosome[i] = chr[o];
+      start[i] = s[o];
+      end[i] = e[o];
+      middle[i] = m[o];
+      if (s[o]!=Region.DEFAULT_START && e[o]!=Region.DEFAULT_START) {
+        maxLength = Math.max(maxLength, e[o]-s[o]);
+      }
+      if (ns instanceof GeneID) {
+        int id = ((GeneID) ns).getID();
+        Integer c = geneCounts.get(id);
+        geneCounts.put(id, c==null?1:c+1);
+      }
+    }
+
+    // Create gene ID => positions index (positions are sorted by location)
+    Map<Integer, Integer> filled = new HashMap<Integer, Integer>();
+    for (int i=0; i<size; i++) {
+      T ns = items.get(i);
+      if (ns instanceof GeneID) {
+        int id = ((GeneID) ns).getID();
+        int[] rows = geneIndex.get(id);
+        if (rows==null) {
+          rows = new int[geneCounts.get(id)];
+          geneIndex.put(id, rows);
+        }
+        Integer f = filled.get(id);
+        int pos = f==null?0:f;
+        rows[pos] = i;
+        filled.put(id, pos+1);
+      }
+    }
+  }
+
+  /**
+   * Returns a (cached) index for the given dataset. The index is rebuilt
+   * if the number of elements in the dataset changed.
+   * @param <T>
+   * @param data
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends NameAndSignals> GenomicPositionIndex<T> getIndex(Iterable<T> data) {
+    int currentSize = -1;
+    if (data instanceof Collection<?>) {
+      currentSize = ((Collection<?>) data).size();
+    }
+    synchronized (cache) {
+      Iterator<SoftReference<GenomicPositionIndex<?>>> it = cache.iterator();
+      while (it.hasNext()) {
+        SoftReference<GenomicPositionIndex<?>> ref = it.next();
+        GenomicPositionIndex<?> idx = ref.get();
+        Iterable<?> src = idx!=null?idx.source.get():null;
+        if (src==null) {
+          it.remove();
+        } else if (src==data) {
+          it.remove();
+          if (currentSize<0 || currentSize==idx.size) {
+            cache.addFirst(ref);
+            return (GenomicPositionIndex<T>) idx;
+          }
+          break;
+        }
+      }
+    }
+
+    long time = System.currentTimeMillis();
+    GenomicPositionIndex<T> idx = new GenomicPositionIndex<T>(data);
+    log.fine(String.format("Built genomic position index for %s elements in %sms.",
+      idx.size(), System.currentTimeMillis()-time));
+    synchronized (cache) {
+      cache.addFirst(new SoftReference<GenomicPositionIndex<?>>(idx));
+      while (cache.size()>MAX_CACHED_INDICES) {
+        cache.removeLast();
+      }
+    }
+    return idx;
+  }
+
+  /**
+   * Removes the index for the given dataset from the cache.
+   * Must be called if elements of the dataset have been changed
+   * (see {@link de.zbit.gui.tabs.IntegratorTabWithTable#fireTableChanged(de.zbit.gui.tabs.TableChange)})
+   * and should be called if the dataset is no longer used, because
+   * the index keeps all elements in memory.
+   * @param data
+   */
+  public static void invalidate(Iterable<?> data) {
+    synchronized (cache) {
+      Iterator<SoftReference<GenomicPositionIndex<?>>> it = cache.iterator();
+      while (it.hasNext()) {
+        GenomicPositionIndex<?> idx = it.next().get();
+        Iterable<?> src = idx!=null?idx.source.get():null;
+        if (src==null || src==data) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return number of indexed elements.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param row
+   * @return the element at the given position (sorted by location).
+   */
+  public T get(int row) {
+    return items.get(row);
+  }
+
+  /**
+   * @param rows
+   * @return all elements at the given positions.
+   */
+  public List<T> get(int[] rows) {
+    List<T> ret = new ArrayList<T>(rows.length);
+    for (int row : rows) {
+      ret.add(items.get(row));
+    }
+    return ret;
+  }
+
+  /**
+   * @return all rows, i.e. <code>0, ..., size()-1</code>.
+   */
+  public int[] getAllRows() {
+    return IndexSort.identity(size);
+  }
+
+  /**
+   * @param geneID
+   * @return positions of all elements with the given gene id, sorted by
+   * location. Do not modify the returned array!
+   */
+  public int[] getRowsForGeneID(int geneID) {
+    int[] rows = geneIndex.get(geneID);
+    return rows==null?new int[0]:rows;
+  }
+
+  /**
+   * @param name
+   * @return positions of all elements with the given name, sorted by
+   * location. Do not modify the returned array!
+   */
+  public synchronized int[] getRowsForName(String name) {
+    if (nameIndex==null) {
+      Map<String, List<Integer>> temp = new HashMap<String, List<Integer>>();
+      for (int i=0; i<size; i++) {
+        String n = items.get(i).getName();
+        List<Integer> l = temp.get(n);
+        if (l==null) {
+          l = new ArrayList<Integer>(1);
+          temp.put(n, l);
+        }
+        l.add(i);
+      }
+      nameIndex = new HashMap<String, int[]>(temp.size());
+      for (Map.Entry<String, List<Integer>> e : temp.entrySet()) {
+        int[] rows = new int[e.getValue().size()];
+        for (int i=0; i<rows.length; i++) rows[i] = e.getValue().get(i);
+        nameIndex.put(e.getKey(), rows);
+      }
+    }
+    int[] rows = nameIndex.get(name);
+    return rows==null?new int[0]:rows;
+  }
+
+  /**
+   * Get all rows that belong to the same gene as <code>template</code>.
+   * Take the {@link GeneID} if the interface is implemented and valid
+   * for <code>template</code>, else the name.
+   * @param template
+   * @return sorted positions. Do not modify the returned array!
+   */
+  public int[] getRowsForGene(NameAndSignals template) {
+    if (template instanceof GeneID) {
+      int geneID = ((GeneID) template).getID();
+      if (geneID>0) {
+        return getRowsForGeneID(geneID);
+      }
+    }
+    return getRowsForName(template.getName());
+  }
+
+  /**
+   * Get all elements that intersect the given genomic region.
+   * @param chr chromosome
+   * @param regionStart
+   * @param regionEnd
+   * @return sorted positions of all elements on the given chromosome that
+   * intersect the given region.
+   */
+  public int[] getRowsInRegion(byte chr, int regionStart, int regionEnd) {
+    // Find block of the chromosome
+    int chrStart = lowerBound(chr, Integer.MIN_VALUE);
+    int chrEnd = lowerBound((byte)(chr+1), Integer.MIN_VALUE);
+    if (chr==Byte.MAX_VALUE) chrEnd = size;
+
+    // All candidates start in [regionStart-maxLength, regionEnd]
+    long minStart = (long) regionStart - maxLength;
+    int from = lowerBoundInRange(chrStart, chrEnd, (int) Math.max(Integer.MIN_VALUE, minStart));
+    int to = lowerBoundInRange(from, chrEnd, regionEnd==Integer.MAX_VALUE?regionEnd:regionEnd+1);
+
+    int[] ret = new int[to-from];
+    int n=0;
+    for (int i=from; i<to; i++) {
+      if (start[i]==Region.DEFAULT_START) continue;
+      int e = Math.max(start[i], end[i]);
+      if (e>=regionStart && start[i]<=regionEnd) {
+        ret[n++] = i;
+      }
+    }
+    if (n<ret.length) {
+      int[] temp = new int[n];
+      System.arraycopy(ret, 0, temp, 0, n);
+      ret = temp;
+    }
+    return ret;
+  }
+
+  /**
+   * @param region
+   * @return all elements that intersect the given region.
+   * @see #getRowsInRegion(byte, int, int)
+   */
+  public int[] getRowsInRegion(Region region) {
+    return getRowsInRegion(region.getChromosomeAsByteRepresentation(), region.getStart(), region.getEnd());
+  }
+
+  /**
+   * @param chr
+   * @param pos
+   * @return the first row with chromosome &gt;= chr and start &gt;= pos.
+   */
+  private int lowerBound(byte chr, int pos) {
+    int lo=0, hi=size;
+    while (lo<hi) {
+      int mid = (lo+hi)>>>1;
+      if (chromosome[mid]<chr || (chromosome[mid]==chr && start[mid]<pos)) {
+        lo = mid+1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * @param from
+   * @param to
+   * @param pos
+   * @return the first row in [from, to) with start &gt;= pos. All rows in
+   * this range must be on the same chromosome.
+   */
+  private int lowerBoundInRange(int from, int to, int pos) {
+    int lo=from, hi=to;
+    while (lo<hi) {
+      int mid = (lo+hi)>>>1;
+      if (start[mid]<pos) {
+        lo = mid+1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Returns a column of signal values for all elements. The column is
+   * computed once (in parallel) and cached afterwards.
+   * @param signal
+   * @return mean signal values in index order. Do not modify the returned array!
+   */
+  public double[] getSignalColumn(final ValuePair<String, SignalType> signal) {
+    String key = signal.getB() + "\t" + signal.getA();
+    synchronized (signalColumns) {
+      double[] column = signalColumns.get(key);
+      if (column!=null) return column;
+
+      final double[] values = new double[size];
+      try {
+        ParallelUtils.parallelFor(0, size, new ParallelUtils.RangeTask() {
+          public void run(int from, int to) {
+            for (int i=from; i<to; i++) {
+              values[i] = items.get(i).getSignalMergedValue(signal.getB(), signal.getA(), MergeType.Mean);
+            }
+          }
+        });
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+      signalColumns.put(key, values);
+      return values;
+    }
+  }
+
+  /**
+   * Creates XY-data for plots, sliced from the position and signal columns.
+   * The X-value is the middle of each region (or the running index, if
+   * no position is available). The data is sorted by X.
+   * @param rows
+   * @param signal
+   * @return <code>double[2][rows.length]</code> with X values in [0] and Y values in [1].
+   */
+  public double[][] getXYdata(int[] rows, ValuePair<String, SignalType> signal) {
+    double[] column = getSignalColumn(signal);
+    final double[][] XYdata = new double[2][rows.length];
+    boolean sorted = true;
+    for (int i=0; i<rows.length; i++) {
+      double x = middle[rows[i]];
+      // If no position is set, simply increment position
+      if (x == Region.DEFAULT_START) x=i;
+      XYdata[0][i] = x;
+      XYdata[1][i] = column[rows[i]];
+      if (i>0 && XYdata[0][i]<XYdata[0][i-1]) sorted = false;
+    }
+
+    // Rows are sorted by start, but plots require sorting by middle
+    if (!sorted) {
+      int[] order = IndexSort.sortByValue(XYdata[0], true);
+      double[][] temp = new double[2][rows.length];
+      for (int i=0; i<order.length; i++) {
+        temp[0][i] = XYdata[0][order[i]];
+        temp[1][i] = XYdata[1][order[i]];
+      }
+      return temp;
+    }
+    return XYdata;
+  }
+
+  /**
+   * @param rows
+   * @return the chromosome of the first given row or <code>null</code>.
+   */
+  public Byte getChromosome(int[] rows) {
+    if (rows.length<1) return null;
+    return chromosome[rows[0]];
+  }
+
+}
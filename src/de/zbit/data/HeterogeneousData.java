@@ -21,17 +21,20 @@
  */
 package de.zbit.data;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.swing.SwingUtilities;
 import javax.swing.tree.TreeNode;
 import javax.swing.treetable.AbstractTreeTableModel;
 import javax.swing.treetable.TreeTableModel;
@@ -40,11 +43,14 @@ import de.zbit.data.Signal.MergeType;
 import de.zbit.data.Signal.SignalType;
 import de.zbit.data.id.GeneID;
 import de.zbit.data.miRNA.miRNA;
+import de.zbit.data.miRNA.miRNAtarget;
 import de.zbit.gui.IntegratorUITools;
 import de.zbit.gui.customcomponents.TableResultTableModel;
 import de.zbit.mapper.GeneID2GeneSymbolMapper;
 import de.zbit.util.Species;
 import de.zbit.util.objectwrapper.ValuePair;
+import de.zbit.utils.IndexSort;
+import de.zbit.utils.ParallelUtils;
 
 /**
  * Builds a tree of various, Gene-Based {@link NameAndSignals}.
@@ -54,6 +60,11 @@ import de.zbit.util.objectwrapper.ValuePair;
  * child (possibly probes).
  * <p>Every {@link NameAndSignals} is re-created as {@link HeterogeneousNS},
  * containing only the given {@link Signal}(s), the name and childs.
+ * <p>The tree is built lazily: {@link #initTree(Species)} only groups all
+ * datasets by gene id (using primitive indices). Gene nodes are created
+ * when they are first requested, gene symbols are mapped when a node is
+ * rendered and gene-centered signals are computed in the background
+ * (or on demand, if a node is rendered before the background task is done).
  * @author Clemens Wrzodek
  * @version $Rev$
  */
@@ -69,7 +80,7 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
   /**
    * Data to build a tree of.
    * (List of data types(mRNA), that contain all {@link NameAndSignals} of this type).
-   * <p>Will be erased and replaced by {@link #maps} on runtime.
+   * <p>Will be erased and replaced by {@link #indices} on runtime.
    */
   List<List<? extends NameAndSignals>> data;
   
@@ -91,11 +102,43 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
   int size=0;
 
   /**
-   * Maps from GeneID (as String) to a Collection of all probes,
-   * matching to this gene ID.
-   * For all lists in {@link #data}
+   * Groups all elements of each list in {@link #data} by gene id.
    */
-  private List<Map<String, ?>> maps;
+  private List<GeneIndex> indices;
+  
+  /**
+   * Sorted union of all gene ids in {@link #indices}. Each gene id
+   * is one child of the root.
+   */
+  private int[] geneIDs;
+  
+  /**
+   * Lazily created gene nodes (matching indices with {@link #geneIDs}).
+   */
+  private GeneNode[] geneNodes;
+  
+  /**
+   * Gene-centered signals for all genes (first index is the data type,
+   * second index matches {@link #geneIDs}). Written by a background task.
+   */
+  private double[][] geneCenteredSignals;
+  
+  /**
+   * Number of data types, for which {@link #geneCenteredSignals} are
+   * completely available. Volatile to publish the background results.
+   */
+  private volatile int geneCenteredSignalsAvailable=0;
+  
+  /**
+   * Required for the GeneSymbol mapping.
+   */
+  private Species species;
+  
+  /**
+   * Loads the gene symbol mapper in the background. Until it is
+   * done, gene nodes are named by their gene id.
+   */
+  private volatile Future<GeneID2GeneSymbolMapper> gsMapLoader=null;
 
   /**
    * Human readable data type names for all {@link #data}
@@ -110,6 +153,158 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
    */
   List<Integer> visibleRows = null;
   
+  /**
+   * Groups a list of {@link NameAndSignals} by gene id. The elements of
+   * each gene are stored consecutively in {@link #rows}, starting at
+   * {@link #offsets}[i] for the i-th (sorted) gene id in {@link #keys}.
+   */
+  private static class GeneIndex {
+    final List<? extends NameAndSignals> items;
+    final int[] keys;
+    final int[] offsets;
+    final int[] rows;
+    
+    /**
+     * @param items
+     * @param ids gene id of each pair
+     * @param itemRows row in <code>items</code> of each pair
+     * @param pairs number of valid entries in <code>ids</code> and <code>itemRows</code>.
+     */
+    GeneIndex(List<? extends NameAndSignals> items, final int[] ids, int[] itemRows, int pairs) {
+      this.items = items;
+      int[] order = IndexSort.identity(pairs);
+      IndexSort.sort(order, new IndexSort.IndexComparator() {
+        public int compare(int a, int b) {
+          return ids[a]<ids[b]?-1:(ids[a]==ids[b]?0:1);
+        }
+      });
+      
+      int distinct=0;
+      for (int i=0; i<pairs; i++) {
+        if (i==0 || ids[order[i]]!=ids[order[i-1]]) distinct++;
+      }
+      keys = new int[distinct];
+      offsets = new int[distinct+1];
+      rows = new int[pairs];
+      int k=-1;
+      for (int i=0; i<pairs; i++) {
+        if (i==0 || ids[order[i]]!=ids[order[i-1]]) {
+          k++;
+          keys[k] = ids[order[i]];
+          offsets[k] = i;
+        }
+        rows[i] = itemRows[order[i]];
+      }
+      offsets[distinct] = pairs;
+    }
+    
+    /**
+     * @param geneID
+     * @return all elements that belong to the given gene id or
+     * <code>null</code> if there are none.
+     */
+    List<NameAndSignals> get(int geneID) {
+      final int k = Arrays.binarySearch(keys, geneID);
+      if (k<0) return null;
+      return new AbstractList<NameAndSignals>() {
+        @Override
+        public NameAndSignals get(int index) {
+          return items.get(rows[offsets[k]+index]);
+        }
+        @Override
+        public int size() {
+          return offsets[k+1]-offsets[k];
+        }
+      };
+    }
+  }
+  
+  /**
+   * A gene node (child of the root) that maps its gene symbol and
+   * computes its signals only when required.
+   */
+  private class GeneNode extends HeterogeneousNS {
+    private static final long serialVersionUID = -3526452818719416398L;
+    
+    /**
+     * Index in {@link HeterogeneousData#geneIDs}.
+     */
+    private final int position;
+    
+    /**
+     * True if all signals have been added.
+     */
+    private boolean signalsInitialized=false;
+    
+    GeneNode(int position) {
+      super(null, geneIDs[position]);
+      this.position = position;
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.data.NameAndSignals#getName()
+     */
+    @Override
+    public String getName() {
+      if (name==null) {
+        // (NSwithProbes#getGeneSymbol() hides the outer method)
+        String symbol = HeterogeneousData.this.getGeneSymbol(getID());
+        // Keep asking, until the mapper is available
+        if (symbol==null) return Integer.toString(getID());
+        name = symbol;
+      }
+      return name;
+    }
+    
+    /**
+     * Adds one gene-centered signal for each data type.
+     */
+    private synchronized void ensureSignals() {
+      if (signalsInitialized) return;
+      // (We need to have a consistent number of Signals (add dummy items if empty))
+      for (int l=0; l<indices.size(); l++) {
+        double signal;
+        if (l<geneCenteredSignalsAvailable) {
+          signal = geneCenteredSignals[l][position];
+        } else {
+          signal = computeGeneCenteredSignal(l, getID());
+        }
+        super.addSignal(signal, dataTypeName.get(l), signalFromData.get(l).getB());
+      }
+      signalsInitialized=true;
+    }
+    
+    @Override
+    public List<Signal> getSignals() {
+      ensureSignals();
+      return super.getSignals();
+    }
+    
+    @Override
+    public Signal getSignal(SignalType type, String experimentName) {
+      ensureSignals();
+      return super.getSignal(type, experimentName);
+    }
+    
+    @Override
+    public double getSignalMergedValue(SignalType type, String experimentName, MergeType m) {
+      ensureSignals();
+      return super.getSignalMergedValue(type, experimentName, m);
+    }
+    
+    @Override
+    public Collection<ValuePair<String, SignalType>> getSignalNames() {
+      ensureSignals();
+      return super.getSignalNames();
+    }
+    
+    @Override
+    public boolean hasSignals() {
+      ensureSignals();
+      return super.hasSignals();
+    }
+  }
+  
   /**
    */
   public HeterogeneousData() {
@@ -132,104 +327,318 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
   }
   
   /**
-   * Initializes the tree structure by building nodes for the root
-   * and all genes.
+   * Initializes the tree structure by grouping all data types by
+   * gene id. Gene nodes are created on demand, gene-centered signals
+   * are computed in the background.
    * @param species required for the GeneSymbol mapping
    * @return TreeModel
    */
-  @SuppressWarnings("unchecked")
   public TreeTableModel initTree(Species species) {
-    GeneID2GeneSymbolMapper gsMap = IntegratorUITools.get2GeneSymbolMapping(species);
+    this.species = species;
     
     // Every tree needs exactly one root. This will not be visible later on.
-    HeterogeneousNS root = new HeterogeneousNS("Genome", HeterogeneousNS.geneIDofRootNode);
+    HeterogeneousNS root = new HeterogeneousNS("Genome", HeterogeneousNS.geneIDofRootNode) {
+      private static final long serialVersionUID = 7227520047446564271L;
+      private final List<HeterogeneousNS> lazyChilds = new AbstractList<HeterogeneousNS>() {
+        @Override
+        public HeterogeneousNS get(int index) {
+          return getGeneNode(index);
+        }
+        @Override
+        public int size() {
+          return geneIDs.length;
+        }
+        @Override
+        public int indexOf(Object o) {
+          // Look the gene up instead of creating all nodes
+          if (!(o instanceof GeneNode)) return -1;
+          int index = ((GeneNode) o).position;
+          synchronized (geneNodes) {
+            return geneNodes[index]==o?index:-1;
+          }
+        }
+        @Override
+        public int lastIndexOf(Object o) {
+          return indexOf(o);
+        }
+        @Override
+        public boolean contains(Object o) {
+          return indexOf(o)>=0;
+        }
+      };
+      @Override
+      public List<? extends TreeNode> getChildrenList() {
+        return lazyChilds;
+      }
+    };
     size=1;
     
     // Group all lists by geneID
-    maps = new ArrayList<Map<String,?>>(data.size());
+    indices = new ArrayList<GeneIndex>(data.size());
     dataTypeName = new ArrayList<String>(data.size());
     for (List<? extends NameAndSignals> d: data) {
       Class<? extends NameAndSignals> type = NameAndSignals.getType(d);
-      if (miRNA.class.isAssignableFrom(type)) {
-        maps.add((Map<String,?>)miRNA.groupByTargetAndReturnKeysAsString((Iterable<? extends miRNA>) d));
-        dataTypeName.add(PairedNS.getTypeNameFull(type));
-      } else if (GeneID.class.isAssignableFrom(type)) {
-        maps.add(NameAndSignals.group_by_name(d, true, false));
+      indices.add(createGeneIndex(d, type));
+      if (miRNA.class.isAssignableFrom(type) || GeneID.class.isAssignableFrom(type)) {
         dataTypeName.add(PairedNS.getTypeNameFull(type));
       } else {
         log.warning("Can not group by gene_id: " + type.getSimpleName());
-        // we need to have matching indices => add dummy map
-        maps.add(new HashMap<String, NameAndSignals>());
       }
     }
-    data=null; // Free unused memory... All we need is in maps!
+    data=null; // Free unused memory... All we need is in indices!
     
-    // Add all genes to the root node
-    String defaultGeneID = Integer.toString(GeneID.default_geneID);
-    Set<Integer> createdGeneIds = new HashSet<Integer>(maps.iterator().next().size());
-    for (int i=0; i<maps.size(); i++) {
-      Iterator<String> mapIgeneIDs = maps.get(i).keySet().iterator();
-      while (mapIgeneIDs.hasNext()) {
-        // Get geneID and symbol
-        String geneID = mapIgeneIDs.next();
-        Integer geneIDint = Integer.parseInt(geneID);
-        if (!createdGeneIds.add(geneIDint)) continue; // One row per gene
-        String geneName=null;
-        try {
-          geneName = gsMap.map(geneIDint);
-        } catch (Exception e) {}
-        if (geneName==null) geneName = geneID;
-        if (geneName.equals(defaultGeneID)) geneName="Unknown";
-          
-        // Create gene as child of root
-        HeterogeneousNS gene = new HeterogeneousNS(geneName, geneIDint);
-        root.addChild(gene);
-        size++;
-        
-        // Theoretically one node per data type (mRNA, miRNA,...) and then one per probe
-        // will be created on-the-fly, but the signal still needs to be calculated.
-        for (int l=0; l<maps.size(); l++) {
-          addSignal(geneID, gene, l);
-        }
-        size+=maps.size(); // TYPE-nodes
-        
-      }
+    // Build the union of all gene ids
+    int[] union = new int[0];
+    for (GeneIndex index : indices) {
+      union = mergeSortedUnique(union, index.keys);
     }
+    geneIDs = union;
+    geneNodes = new GeneNode[geneIDs.length];
     
-    // Initial alphabetical sorting.
-    root.sortChilds();
+    // Count nodes (root, genes, TYPE-nodes and PROBE-nodes)
+    size += geneIDs.length + geneIDs.length*indices.size();
+    for (GeneIndex index : indices) {
+      size += index.rows.length;
+    }
     
     setRoot(root);
+    ((NameAndSignals)root).setParent(null);
+    
+    // Load the mapper in the background, nodes show gene ids meanwhile
+    if (species!=null) {
+      final Species mapperSpecies = species;
+      FutureTask<GeneID2GeneSymbolMapper> loader = new FutureTask<GeneID2GeneSymbolMapper>(new Callable<GeneID2GeneSymbolMapper>() {
+        public GeneID2GeneSymbolMapper call() throws Exception {
+          return IntegratorUITools.get2GeneSymbolMapping(mapperSpecies);
+        }
+      }) {
+        @Override
+        protected void done() {
+          // Gene nodes that have already been shown still display gene ids
+          SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+              fireGeneNodesChanged();
+            }
+          });
+        }
+      };
+      gsMapLoader = loader;
+      ParallelUtils.getBackgroundPool().execute(loader);
+    }
+    
+    // Compute the gene-centered signals in the background
+    startComputingGeneCenteredSignals();
+    
     return this;
   }
-
+  
+  /**
+   * @param d
+   * @param type
+   * @return a {@link GeneIndex} of all elements in <code>d</code>.
+   */
+  private static GeneIndex createGeneIndex(List<? extends NameAndSignals> d, Class<? extends NameAndSignals> type) {
+    // Ensure fast random access
+    if (!(d instanceof RandomAccess)) {
+      d = new ArrayList<NameAndSignals>(d);
+    }
+    int[] ids = new int[d.size()];
+    int[] rows = new int[d.size()];
+    int pairs=0;
+    if (miRNA.class.isAssignableFrom(type)) {
+      // Group miRNAs by their targets
+      for (int i=0; i<d.size(); i++) {
+        miRNA mi = (miRNA) d.get(i);
+        if (!mi.hasTargets()) {
+          if (pairs>=ids.length) { ids = grow(ids); rows = grow(rows); }
+          ids[pairs] = GeneID.default_geneID;
+          rows[pairs++] = i;
+        } else {
+          for (miRNAtarget t: mi.getUniqueTargets()) {
+            if (pairs>=ids.length) { ids = grow(ids); rows = grow(rows); }
+            ids[pairs] = t.getTarget();
+            rows[pairs++] = i;
+          }
+        }
+      }
+    } else if (GeneID.class.isAssignableFrom(type)) {
+      for (int i=0; i<d.size(); i++) {
+        ids[pairs] = ((GeneID)d.get(i)).getID();
+        rows[pairs++] = i;
+      }
+    }
+    // else: we need to have matching indices => add empty index
+    return new GeneIndex(d, ids, rows, pairs);
+  }
+  
+  /**
+   * @param array
+   * @return a copy of <code>array</code> with twice the size.
+   */
+  private static int[] grow(int[] array) {
+    return Arrays.copyOf(array, Math.max(16, array.length*2));
+  }
+  
+  /**
+   * @param a sorted, unique
+   * @param b sorted, unique
+   * @return sorted union of <code>a</code> and <code>b</code>.
+   */
+  private static int[] mergeSortedUnique(int[] a, int[] b) {
+    int[] ret = new int[a.length+b.length];
+    int i=0, j=0, n=0;
+    while (i<a.length || j<b.length) {
+      int v;
+      if (j>=b.length || (i<a.length && a[i]<b[j])) {
+        v = a[i++];
+      } else if (i>=a.length || b[j]<a[i]) {
+        v = b[j++];
+      } else {
+        v = a[i++]; j++;
+      }
+      ret[n++] = v;
+    }
+    return Arrays.copyOf(ret, n);
+  }
+  
+  /**
+   * Computes {@link #geneCenteredSignals} for all data types and genes
+   * in the background. Genes are processed in parallel.
+   */
+  private void startComputingGeneCenteredSignals() {
+    geneCenteredSignals = new double[indices.size()][];
+    geneCenteredSignalsAvailable = 0;
+    ParallelUtils.getBackgroundPool().submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (int l=0; l<indices.size(); l++) {
+            final int list = l;
+            final double[] signals = new double[geneIDs.length];
+            ParallelUtils.parallelFor(0, geneIDs.length, new ParallelUtils.RangeTask() {
+              public void run(int from, int to) {
+                for (int i=from; i<to; i++) {
+                  signals[i] = computeGeneCenteredSignal(list, geneIDs[i]);
+                }
+              }
+            });
+            geneCenteredSignals[l] = signals;
+            geneCenteredSignalsAvailable = l+1;
+          }
+        } catch (Throwable t) {
+          log.log(Level.WARNING, "Could not compute gene-centered signals.", t);
+        }
+      }
+    });
+  }
+  
+  /**
+   * @param l current index of {@link #indices} (and all other lists).
+   * @param geneID
+   * @return the gene-centered signal of all elements in data type
+   * <code>l</code> that belong to <code>geneID</code> or {@link Double#NaN}.
+   */
+  private double computeGeneCenteredSignal(int l, int geneID) {
+    List<NameAndSignals> list = indices.get(l).get(geneID);
+    if (list==null || list.size()<1) return Double.NaN;
+    ValuePair<String, SignalType> signalToGeneCenter = signalFromData.get(l);
+    Signal sig = Signal.merge(list, mergeTypeForData.get(l), signalToGeneCenter.getA(), signalToGeneCenter.getB());
+    return sig==null?Double.NaN:sig.getSignal().doubleValue();
+  }
+  
+  /**
+   * Informs all listeners that the names of all gene nodes, which have
+   * been created so far, changed. Must be called in the event dispatch
+   * thread.
+   */
+  private void fireGeneNodesChanged() {
+    if (geneNodes==null || root==null) return;
+    List<Integer> created = new ArrayList<Integer>();
+    List<Object> nodes = new ArrayList<Object>();
+    synchronized (geneNodes) {
+      for (int i=0; i<geneNodes.length; i++) {
+        if (geneNodes[i]!=null) {
+          created.add(i);
+          nodes.add(geneNodes[i]);
+        }
+      }
+    }
+    if (created.isEmpty()) return;
+    int[] childIndices = new int[created.size()];
+    for (int i=0; i<childIndices.length; i++) {
+      childIndices[i] = created.get(i);
+    }
+    fireTreeNodesChanged(this, new Object[]{root}, childIndices, nodes.toArray());
+  }
+  
+  /**
+   * Never blocks (i.e., is safe to call while rendering).
+   * @return the gene symbol mapper or <code>null</code> if it is
+   * still loading or not available.
+   */
+  private GeneID2GeneSymbolMapper getGeneSymbolMapper() {
+    Future<GeneID2GeneSymbolMapper> loader = gsMapLoader;
+    if (loader==null || !loader.isDone()) return null;
+    try {
+      return loader.get();
+    } catch (Exception e) {
+      log.log(Level.WARNING, "Could not load gene symbol mapping.", e);
+      gsMapLoader = null;
+      return null;
+    }
+  }
+  
+  /**
+   * @param geneID
+   * @return the gene symbol of the given gene id (or the id, if no
+   * symbol is available) or <code>null</code> if the mapper is still
+   * loading.
+   */
+  private String getGeneSymbol(int geneID) {
+    if (geneID==GeneID.default_geneID) return "Unknown";
+    Future<GeneID2GeneSymbolMapper> loader = gsMapLoader;
+    if (loader!=null && !loader.isDone()) return null;
+    String geneName=null;
+    try {
+      GeneID2GeneSymbolMapper mapper = getGeneSymbolMapper();
+      if (mapper!=null) geneName = mapper.map(geneID);
+    } catch (Exception e) {}
+    if (geneName==null) geneName = Integer.toString(geneID);
+    return geneName;
+  }
+  
+  /**
+   * @param index index of the gene (child of the root).
+   * @return the gene node (is created if not available).
+   */
+  private GeneNode getGeneNode(int index) {
+    synchronized (geneNodes) {
+      GeneNode gene = geneNodes[index];
+      if (gene==null) {
+        gene = new GeneNode(index);
+        gene.setParent((TreeNode) root);
+        geneNodes[index] = gene;
+      }
+      return gene;
+    }
+  }
 
   /**
    * Add a signal to a node
    * @param geneID geneID as integer
-   * @param gene NS to add the signal to
-   * @param l current index of {@link #data} (and all other lists).
-   */
-  @SuppressWarnings("unchecked")
-  private void addSignal(String geneID, HeterogeneousNS gene, int l) {
-    // Add merged-type-Signal to gene
-    // (We need to have a consistent number of Signals (add dummy items if i>0))
-    List<NameAndSignals> list = (List<NameAndSignals>) maps.get(l).get(geneID);
-    ValuePair<String, SignalType> signalToGeneCenter = signalFromData.get(l);
-    Double signal = Double.NaN;
-    if (list!=null && list.size()>0) {
-      // Gene-center signal
-      signal = Signal.merge(list, mergeTypeForData.get(l), signalToGeneCenter.getA(), signalToGeneCenter.getB()).getSignal().doubleValue();
-      size+=list.size(); // PROBE-nodes
-    }
-    gene.addSignal(signal, dataTypeName.get(l), signalToGeneCenter.getB());
+   * @param node NS to add the signal to
+   * @param l current index of {@link #indices} (and all other lists).
+   */
+  private void addSignal(int geneID, HeterogeneousNS node, int l) {
+    // Add merged-type-Signal to node
+    double signal = computeGeneCenteredSignal(l, geneID);
+    node.addSignal(signal, dataTypeName.get(l), signalFromData.get(l).getB());
   }
   
 
   /* (non-Javadoc)
    * @see javax.swing.tree.TreeModel#getChild(java.lang.Object, int)
    */
-  @SuppressWarnings("unchecked")
   @Override
   public Object getChild(Object parent, int index) {
     if (parent==root) {
@@ -241,36 +650,40 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
     
     int geneId = ((GeneID)parent).getID();
     if (geneId==HeterogeneousNS.geneIDofRootNode) {
-      // All gene-nodes are pre-created
-      return ((TreeNode)parent).getChildAt(index);
+      // Gene-nodes are created on demand
+      return getGeneNode(index);
     } else if (geneId==geneIDofTypeNode) {
       // Is a TYPE-Node => Return probe
-      if (((HeterogeneousNS)parent).getChildCount()<=0) {
-        geneId = ((GeneID) ((HeterogeneousNS)parent).getParent() ).getID();
-        int l = (Integer) ((HeterogeneousNS)parent).getData("_PARENT_LIST_NUMBER");
-        List<NameAndSignals> probes = (List<NameAndSignals>) maps.get(l).get(Integer.toString(geneId));
-        if (probes==null || probes.size()<=0) return null;
-        for (int i=0; i<probes.size(); i++) {
-          NameAndSignals ns = probes.get(i);
-          HeterogeneousNS probe = new HeterogeneousNS(String.format("%s (%s)", ns.getName(), ns.getUniqueLabel()), geneId);
-          ((HeterogeneousNS)parent).addChild(probe);
-          Signal original = ns.getSignal(signalFromData.get(l).getB(), signalFromData.get(l).getA());
-          probe.addSignal(original.getSignal().doubleValue(), dataTypeName.get(l), original.getType());
+      synchronized (parent) {
+        if (((HeterogeneousNS)parent).getChildCount()<=0) {
+          geneId = ((GeneID) ((HeterogeneousNS)parent).getParent() ).getID();
+          int l = (Integer) ((HeterogeneousNS)parent).getData("_PARENT_LIST_NUMBER");
+          List<NameAndSignals> probes = indices.get(l).get(geneId);
+          if (probes==null || probes.size()<=0) return null;
+          for (int i=0; i<probes.size(); i++) {
+            NameAndSignals ns = probes.get(i);
+            HeterogeneousNS probe = new HeterogeneousNS(String.format("%s (%s)", ns.getName(), ns.getUniqueLabel()), geneId);
+            ((HeterogeneousNS)parent).addChild(probe);
+            Signal original = ns.getSignal(signalFromData.get(l).getB(), signalFromData.get(l).getA());
+            probe.addSignal(original.getSignal().doubleValue(), dataTypeName.get(l), original.getType());
+          }
+          ((HeterogeneousNS)parent).sortChilds();
         }
-        ((HeterogeneousNS)parent).sortChilds();
       }
       return ((HeterogeneousNS)parent).getChildAt(index);
       
     } else if (((TreeNode)parent).getParent().equals(getRoot())) {
       // Is a GENE-node (2nd level) => Create a TYPE node
-      if (((HeterogeneousNS)parent).getChildCount()<=0) {
-        for (int l=0; l<maps.size(); l++) {
-          List<NameAndSignals> probes = (List<NameAndSignals>) maps.get(l).get(Integer.toString(geneId));
-          if (probes==null || probes.size()<=0) continue;
-          HeterogeneousNS type = new HeterogeneousNS(dataTypeName.get(l), geneIDofTypeNode);
-          ((HeterogeneousNS)parent).addChild(type);
-          type.addData("_PARENT_LIST_NUMBER", l);
-          addSignal(Integer.toString(geneId), type, l);
+      synchronized (parent) {
+        if (((HeterogeneousNS)parent).getChildCount()<=0) {
+          for (int l=0; l<indices.size(); l++) {
+            List<NameAndSignals> probes = indices.get(l).get(geneId);
+            if (probes==null || probes.size()<=0) continue;
+            HeterogeneousNS type = new HeterogeneousNS(dataTypeName.get(l), geneIDofTypeNode);
+            ((HeterogeneousNS)parent).addChild(type);
+            type.addData("_PARENT_LIST_NUMBER", l);
+            addSignal(geneId, type, l);
+          }
         }
       }
       return ((HeterogeneousNS)parent).getChildAt(index);
@@ -281,7 +694,6 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
     
     return null;
   }
-
   
   /**
    * Filter this TreeTable, such that only the given row indices are visible.
@@ -314,7 +726,6 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
   /* (non-Javadoc)
    * @see javax.swing.tree.TreeModel#getChildCount(java.lang.Object)
    */
-  @SuppressWarnings("unchecked")
   @Override
   public int getChildCount(Object parent) {
     if (parent.equals(root)) {
@@ -325,20 +736,20 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
     
     int geneId = ((GeneID)parent).getID();
     if (geneId==HeterogeneousNS.geneIDofRootNode) {
-      // All gene-nodes are pre-created
-      return ((TreeNode)parent).getChildCount();
+      // One child per gene
+      return geneIDs.length;
     } else if (geneId==geneIDofTypeNode) {
       // Is a TYPE-Node => Return probe
       geneId = ((GeneID) ((HeterogeneousNS)parent).getParent() ).getID();
       int l = (Integer) ((HeterogeneousNS)parent).getData("_PARENT_LIST_NUMBER");
-      List<NameAndSignals> probes = (List<NameAndSignals>) maps.get(l).get(Integer.toString(geneId));
+      List<NameAndSignals> probes = indices.get(l).get(geneId);
       return probes==null?0:probes.size();
 
     } else if (((TreeNode)parent).getParent().equals(getRoot())) {
       // Is a GENE-node (2nd level) => Create a TYPE node
       int nonNullCounter=0;
-      for (int l=0; l<maps.size(); l++) {
-        List<NameAndSignals> probes = (List<NameAndSignals>) maps.get(l).get(Integer.toString(geneId));
+      for (int l=0; l<indices.size(); l++) {
+        List<NameAndSignals> probes = indices.get(l).get(geneId);
         if (probes!=null && probes.size()>0) {
           nonNullCounter++;
         }
@@ -373,7 +784,7 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
    */
   @Override
   public int getColumnCount() {
-    return 1+maps.size(); //+1 for GeneName
+    return 1+indices.size(); //+1 for GeneName
   }
 
   /* (non-Javadoc)
@@ -433,7 +844,7 @@ public class HeterogeneousData extends AbstractTreeTableModel<HeterogeneousNS> i
 
   public Object getFirstGeneNode() {
     if (root==null || getChildCount(root)<=0) return null;
-    return ((TreeNode)root).getChildAt(0);
+    return getGeneNode(0);
   }
 
   
@@ -21,6 +21,7 @@
  */
 package de.zbit.data;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -372,38 +373,51 @@ public abstract class NSwithProbes extends NameAndSignals implements GeneID {
     * to the symbol.
     * @param data
     * @param species
+    * @return positions (in the iteration order of <code>data</code>) of
+    * all elements that have been changed.
     * @throws Exception
     */
-   public static void convertNamesToGeneSymbols(Iterable<? extends NameAndSignals> data, Species species) throws Exception {
+   public static BitSet convertNamesToGeneSymbols(Iterable<? extends NameAndSignals> data, Species species) throws Exception {
      log.config("Loading GeneSymbol mapping...");
      GeneID2GeneSymbolMapper mapper = IntegratorUITools.get2GeneSymbolMapping(species);
+     BitSet changed = new BitSet();
+     int i=-1;
      for (NameAndSignals m: data) {
+       i++;
        if (m instanceof miRNA) {
          if (((miRNA)m).hasTargets()) {
            for (miRNAtarget t: ((miRNA)m).getTargets()) {
              t.setTargetSymbol(mapper.map(t.getTarget()));
            }
+           // Merged unique targets are copies
+           for (miRNAtarget t: ((miRNA)m).getUniqueTargets()) {
+             if (t.getTargetSymbol()==null) t.setTargetSymbol(mapper.map(t.getTarget()));
+           }
+           changed.set(i);
          }
        } else if (m instanceof GeneID) {
          
          // Reviewer request of AppNote: Preserve originall identifier...
          if (m.getName()!=null && m.getData("Original name")==null) {
             m.addData("Original name", m.getName());
+            changed.set(i);
          }
          
          // Map gene id to symbol
          if (((GeneID) m).getID()>0) {
            String symbol = mapper.map(((GeneID) m).getID());
-           if (symbol!=null && symbol.length()>0) {
+           if (symbol!=null && symbol.length()>0 && !symbol.equals(m.name)) {
              m.name = symbol;
+             changed.set(i);
            }
          }
        } else {
          log.warning("Can not annotate gene symbols for " + m.getClass());
-         return;
+         return changed;
        }
      }
      log.config("Converted GeneIDs to Gene symbols.");
+     return changed;
    }
    
 }
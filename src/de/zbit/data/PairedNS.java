@@ -25,10 +25,12 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.RandomAccess;
 import java.util.Set;
 
 import javax.swing.tree.TreeNode;
@@ -42,6 +44,7 @@ import de.zbit.data.miRNA.miRNAtarget;
 import de.zbit.data.protein.ProteinModificationExpression;
 import de.zbit.gui.IntegratorUI;
 import de.zbit.gui.IntegratorUITools;
+import de.zbit.gui.prefs.DatasetOptions;
 import de.zbit.mapper.MappingUtils.IdentifierClass;
 import de.zbit.mapper.MappingUtils.IdentifierType;
 import de.zbit.util.objectwrapper.ValueTriplet;
@@ -67,6 +70,54 @@ public class PairedNS<T1 extends NameAndSignals, T2 extends NameAndSignals> exte
    */
   private T2 ns2;
   
+  /**
+   * Default for the maximum number of pairs that can be created by
+   * {@link #pairByGeneID(Collection, Collection)}. Each pair requires
+   * at least a few hundred bytes, once it is displayed.
+   */
+  public final static int DEFAULT_MAX_PAIRS = 20000000;
+  
+  /**
+   * Maximum number of pairs that can be created by
+   * {@link #pairByGeneID(Collection, Collection)} (see {@link #setMaxPairs(int)}).
+   */
+  private static volatile int maxPairs = DEFAULT_MAX_PAIRS;
+  
+  /**
+   * @return the maximum number of pairs that can be created.
+   */
+  public static int getMaxPairs() {
+    return maxPairs;
+  }
+  
+  /**
+   * Sets the maximum number of pairs that can be created by
+   * {@link #pairByGeneID(Collection, Collection)} and
+   * {@link RegionJoin#join(Collection, Collection, int, int)}.
+   * @param max
+   */
+  public static void setMaxPairs(int max) {
+    if (max<1) {
+      throw new IllegalArgumentException("The maximum number of pairs must be positive.");
+    }
+    maxPairs = max;
+  }
+  
+  /**
+   * @param numberOfPairs
+   * @param hint what the user can do to reduce the number of pairs.
+   * @throws IllegalArgumentException if <code>numberOfPairs</code>
+   * exceeds {@link #getMaxPairs()}.
+   */
+  static void checkNumberOfPairs(long numberOfPairs, String hint) {
+    int max = maxPairs;
+    if (numberOfPairs>max) {
+      throw new IllegalArgumentException(String.format("This would create %,d pairs, but at most %,d pairs are allowed. " +
+        "%s Alternatively, increase the maximum number of pairs (option '%s').",
+        numberOfPairs, max, hint, DatasetOptions.MAX_PAIRS.getOptionName()));
+    }
+  }
+  
   /**
    * Pair any matching {@link NameAndSignals}.
    * @param ns1
@@ -386,30 +437,131 @@ public class PairedNS<T1 extends NameAndSignals, T2 extends NameAndSignals> exte
     return pairByGeneID(nsOnes, nsTwos);
   }
   
+  /**
+   * Pairs all elements of both lists with the same identifier (gene id or
+   * name, see {@link #getIdentifier(NameAndSignals)}).
+   * <p>The pairs are not created here: the returned {@link PairedNSList}
+   * only stores the indices of both parts and creates the {@link PairedNS}
+   * instances on demand.
+   * @param <T1>
+   * @param <T2>
+   * @param nsOnes
+   * @param nsTwos
+   * @return a lazy list of all pairs.
+   * @throws IllegalArgumentException if the number of pairs exceeds
+   * {@link #getMaxPairs()} (see {@link #estimateNumberOfPairsByGeneID(Collection, Collection)}).
+   */
   public static <T1 extends NameAndSignals, T2 extends NameAndSignals> List<PairedNS<T1, T2>> pairByGeneID(
     Collection<T1> nsOnes, Collection<T2> nsTwos) {
-    List<PairedNS<T1, T2>> ret = new ArrayList<PairedNS<T1, T2>>(nsOnes.size());
+    List<T1> list1 = asRandomAccessList(nsOnes);
+    List<T2> list2 = asRandomAccessList(nsTwos);
+    
+    // Map from geneID to row indices
+    Map<Object, int[]> map1 = getIdentifierToRowsMap(list1);
+    Map<Object, int[]> map2 = getIdentifierToRowsMap(list2);
     
-    // Map from geneID to listOfNs
-    Map<Object, List<T1>> map1 = getNSIdentifierToNSmap(nsOnes);
-    Map<Object, List<T2>> map2 = getNSIdentifierToNSmap(nsTwos);
+    // Check the number of pairs before creating anything
+    long numberOfPairs = estimateNumberOfPairs(map1, map2);
+    checkNumberOfPairs(numberOfPairs, "Please gene-center the data before pairing.");
     
     // Add all matching pairs
-    for (Entry<Object, List<T1>> e1 : map1.entrySet()) {
+    int[] index1 = new int[(int) numberOfPairs];
+    int[] index2 = new int[(int) numberOfPairs];
+    int k=0;
+    for (Entry<Object, int[]> e1 : map1.entrySet()) {
       if (e1.getKey().equals(default_geneID)) continue; // These pairs do not make sense.
-      List<T2> v2 = map2.get(e1.getKey());
-      if (v2==null || v2.size()<1) continue; // Only add pairs
+      int[] v2 = map2.get(e1.getKey());
+      if (v2==null || v2.length<1) continue; // Only add pairs
       
       // ... this is why input data should be gene, and not probe-centered.
-      for (T1 t1 : e1.getValue()) {
-        for (T2 t2 : v2) {
-          ret.add(new PairedNS<T1, T2>(t1, t2));
+      for (int t1 : e1.getValue()) {
+        for (int t2 : v2) {
+          index1[k] = t1;
+          index2[k++] = t2;
         }
       }
-      
     }
     
-    return ret;
+    return new PairedNSList<T1, T2>(list1, list2, index1, index2);
+  }
+  
+  /**
+   * Estimates the number of pairs that {@link #pairByGeneID(Collection, Collection)}
+   * would create, without creating them.
+   * @param nsOnes
+   * @param nsTwos
+   * @return number of pairs.
+   */
+  public static long estimateNumberOfPairsByGeneID(Collection<? extends NameAndSignals> nsOnes, Collection<? extends NameAndSignals> nsTwos) {
+    return estimateNumberOfPairs(getIdentifierToRowsMap(asRandomAccessList(nsOnes)),
+      getIdentifierToRowsMap(asRandomAccessList(nsTwos)));
+  }
+  
+  /**
+   * @param map1
+   * @param map2
+   * @return the size of the cross product of all rows with matching identifiers.
+   */
+  private static long estimateNumberOfPairs(Map<Object, int[]> map1, Map<Object, int[]> map2) {
+    long numberOfPairs = 0;
+    for (Entry<Object, int[]> e1 : map1.entrySet()) {
+      if (e1.getKey().equals(default_geneID)) continue;
+      int[] v2 = map2.get(e1.getKey());
+      if (v2!=null) {
+        numberOfPairs += (long) e1.getValue().length * v2.length;
+      }
+    }
+    return numberOfPairs;
+  }
+  
+  /**
+   * Like {@link #getNSIdentifierToNSmap(Collection)}, but maps to row
+   * indices in the given list.
+   * @param nsList
+   * @return map from identifier to all rows with this identifier.
+   */
+  private static Map<Object, int[]> getIdentifierToRowsMap(List<? extends NameAndSignals> nsList) {
+    // Count the rows of every identifier
+    Object[] ids = new Object[nsList.size()];
+    Map<Object, int[]> counts = new HashMap<Object, int[]>();
+    for (int i=0; i<ids.length; i++) {
+      Object id = NameAndSignals.getIdentifier(nsList.get(i));
+      if (id instanceof String) id=id.toString().toUpperCase().trim();
+      ids[i] = id;
+      int[] count = counts.get(id);
+      if (count==null) {
+        counts.put(id, new int[]{1});
+      } else {
+        count[0]++;
+      }
+    }
+    
+    // Fill the rows (counts are reused as fill pointers)
+    Map<Object, int[]> rows = new HashMap<Object, int[]>(counts.size()*4/3+1);
+    for (int i=0; i<ids.length; i++) {
+      int[] count = counts.get(ids[i]);
+      int[] r = rows.get(ids[i]);
+      if (r==null) {
+        r = new int[count[0]];
+        count[0] = 0;
+        rows.put(ids[i], r);
+      }
+      r[count[0]++] = i;
+    }
+    return rows;
+  }
+  
+  /**
+   * @param <T>
+   * @param c
+   * @return <code>c</code> if it is a {@link List} with fast random
+   * access, else a copy of it.
+   */
+  private static <T> List<T> asRandomAccessList(Collection<T> c) {
+    if (c instanceof List && c instanceof RandomAccess) {
+      return (List<T>) c;
+    }
+    return new ArrayList<T>(c);
   }
   
   /**
@@ -0,0 +1,366 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.data;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.zbit.analysis.PairData;
+import de.zbit.data.Signal.SignalType;
+import de.zbit.gui.dialogs.MergedSignalDialog.MergeTypeForTwo;
+import de.zbit.util.objectwrapper.ValuePair;
+import de.zbit.utils.ParallelUtils;
+
+/**
+ * A lazy list of {@link PairedNS}. Each pair is only stored as two
+ * indices into the original lists and the {@link PairedNS} instance is
+ * created when the row is requested for the first time (e.g., when
+ * it is selected in a table). Code that scans all rows should use
+ * {@link #getObjectAtColumn(int, int)} or {@link #peek(int)}, which
+ * do not keep any new {@link PairedNS} instances.
+ * <p>Merged signals (see {@link #addMergedSignal(ValuePair, ValuePair, MergeTypeForTwo, String, boolean)})
+ * are computed into primitive columns, once they are required, and
+ * only attached to pairs that are created.
+ * <p>When serialized, only the original lists, the index pairs and the
+ * definitions of merged signals are stored.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class PairedNSList<T1 extends NameAndSignals, T2 extends NameAndSignals> extends AbstractList<PairedNS<T1, T2>> implements RandomAccess, Serializable {
+  private static final long serialVersionUID = -4302713955406218147L;
+  public static final transient Logger log = Logger.getLogger(PairedNSList.class.getName());
+
+  private final List<T1> nsOnes;
+  private final List<T2> nsTwos;
+
+  /**
+   * Row i of this list pairs <code>nsOnes[index1[i]]</code> with
+   * <code>nsTwos[index2[i]]</code>.
+   */
+  private final int[] index1;
+  private final int[] index2;
+
+  /**
+   * All pairs that have been created.
+   */
+  private transient AtomicReferenceArray<PairedNS<T1, T2>> pairs;
+
+  /**
+   * Merged signals to attach to each pair.
+   */
+  private transient List<MergedSignalColumn> mergedSignals = new ArrayList<MergedSignalColumn>();
+
+  /**
+   * A merged signal, calculated from one signal of each part of the pair.
+   */
+  private class MergedSignalColumn {
+    final ValuePair<String, SignalType> signal1;
+    final ValuePair<String, SignalType> signal2;
+    final MergeTypeForTwo mergeType;
+    final String name;
+    final boolean generateUpDownColumn;
+
+    /**
+     * Lazily computed values (matching indices with this list).
+     */
+    private double[] values = null;
+
+    /**
+     * Fold-change directions (bit 1: signal1 up, bit 0: signal2 up).
+     */
+    private byte[] directions = null;
+
+    MergedSignalColumn(ValuePair<String, SignalType> signal1, ValuePair<String, SignalType> signal2,
+      MergeTypeForTwo mergeType, String name, boolean generateUpDownColumn) {
+      this.signal1 = signal1;
+      this.signal2 = signal2;
+      this.mergeType = mergeType;
+      this.name = name;
+      this.generateUpDownColumn = generateUpDownColumn;
+    }
+
+    /**
+     * Computes the values for all pairs in parallel.
+     */
+    synchronized void compute() {
+      if (values!=null) return;
+      final double[] v = new double[size()];
+      final byte[] d = generateUpDownColumn?new byte[size()]:null;
+      try {
+        ParallelUtils.parallelFor(0, v.length, new ParallelUtils.RangeTask() {
+          public void run(int from, int to) {
+            for (int i=from; i<to; i++) {
+              double val1 = getSignalValue(nsOnes.get(index1[i]), signal1);
+              double val2 = getSignalValue(nsTwos.get(index2[i]), signal2);
+              v[i] = PairData.calculate(val1, val2, mergeType);
+              if (d!=null) {
+                // Same as Signal.compareTo(0)>0, i.e., NaN is considered "Up"
+                d[i] = (byte) ((Double.compare(val1, 0d)>0?2:0) | (Double.compare(val2, 0d)>0?1:0));
+              }
+            }
+          }
+        });
+      } catch (ExecutionException e) {
+        log.log(Level.WARNING, "Could not calculate merged signal.", e);
+      }
+      values = v;
+      directions = d;
+    }
+
+    /**
+     * Adds this signal to the given pair.
+     * @param pair
+     * @param row
+     */
+    void attach(PairedNS<T1, T2> pair, int row) {
+      compute();
+      pair.addSignal(values[row], name, SignalType.Merged);
+      if (directions!=null) {
+        StringBuilder ud = new StringBuilder();
+        ud.append((directions[row]&2)!=0?"Up_":"Down_");
+        ud.append((directions[row]&1)!=0?"Up":"Down");
+        pair.addData(name.concat(" relation"), ud.toString());
+      }
+    }
+  }
+
+  /**
+   * @param nsOnes
+   * @param nsTwos
+   * @param index1 indices in <code>nsOnes</code>
+   * @param index2 indices in <code>nsTwos</code> (same length as <code>index1</code>).
+   */
+  public PairedNSList(List<T1> nsOnes, List<T2> nsTwos, int[] index1, int[] index2) {
+    super();
+    this.nsOnes = nsOnes;
+    this.nsTwos = nsTwos;
+    this.index1 = index1;
+    this.index2 = index2;
+    this.pairs = new AtomicReferenceArray<PairedNS<T1, T2>>(index1.length);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractList#get(int)
+   */
+  @Override
+  public PairedNS<T1, T2> get(int index) {
+    PairedNS<T1, T2> pair = pairs.get(index);
+    if (pair==null) {
+      synchronized (this) {
+        pair = pairs.get(index);
+        if (pair==null) {
+          pair = createPair(index);
+          pairs.set(index, pair);
+        }
+      }
+    }
+    return pair;
+  }
+
+  /**
+   * @param index
+   * @return a new {@link PairedNS} for the given row, including all
+   * merged signals.
+   */
+  private synchronized PairedNS<T1, T2> createPair(int index) {
+    PairedNS<T1, T2> pair = new PairedNS<T1, T2>(nsOnes.get(index1[index]), nsTwos.get(index2[index]));
+    for (MergedSignalColumn c: mergedSignals) {
+      c.attach(pair, index);
+    }
+    return pair;
+  }
+
+  /**
+   * @param index
+   * @return the pair in the given row, if it has already been created
+   * (see {@link #get(int)}) or <code>null</code>.
+   */
+  public PairedNS<T1, T2> getCreatedPair(int index) {
+    return pairs.get(index);
+  }
+
+  /**
+   * Returns the pair in the given row, like {@link #get(int)}. But if
+   * the pair has not been created before, a temporary instance is
+   * returned that is not kept by this list. Changes to a temporary
+   * instance are thus lost.
+   * @param index
+   * @return the pair in the given row.
+   */
+  public PairedNS<T1, T2> peek(int index) {
+    PairedNS<T1, T2> pair = pairs.get(index);
+    return pair!=null ? pair : createPair(index);
+  }
+
+  /**
+   * Returns the value of the given column in the given row, as
+   * {@link PairedNS#getObjectAtColumn(int)}, but reads through
+   * {@link #getNS1(int)} and {@link #getNS2(int)} without creating
+   * (and keeping) a {@link PairedNS}.
+   * @param index row
+   * @param columnIndex
+   * @return the object at the given cell.
+   */
+  public Object getObjectAtColumn(int index, int columnIndex) {
+    PairedNS<T1, T2> pair = pairs.get(index);
+    if (pair!=null) {
+      return pair.getObjectAtColumn(columnIndex);
+    }
+    synchronized (this) {
+      if (!mergedSignals.isEmpty()) {
+        // Merged signals are columns of the pair itself
+        return peek(index).getObjectAtColumn(columnIndex);
+      }
+    }
+    
+    T1 ns1 = getNS1(index);
+    int ns1ColCount = ns1.getColumnCount();
+    if (columnIndex<ns1ColCount) {
+      return ns1.getObjectAtColumn(columnIndex);
+    }
+    return getNS2(index).getObjectAtColumn(columnIndex-ns1ColCount);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#size()
+   */
+  @Override
+  public int size() {
+    return index1.length;
+  }
+
+  /**
+   * @param row
+   * @return the first part of the pair in the given row (without
+   * creating a {@link PairedNS}).
+   */
+  public T1 getNS1(int row) {
+    return nsOnes.get(index1[row]);
+  }
+
+  /**
+   * @param row
+   * @return the second part of the pair in the given row (without
+   * creating a {@link PairedNS}).
+   */
+  public T2 getNS2(int row) {
+    return nsTwos.get(index2[row]);
+  }
+
+  /**
+   * @return number of {@link PairedNS} instances that have been created.
+   */
+  public synchronized int getNumberOfCreatedPairs() {
+    int n=0;
+    for (int i=0; i<pairs.length(); i++) {
+      if (pairs.get(i)!=null) n++;
+    }
+    return n;
+  }
+
+  /**
+   * Adds a merged signal to every pair. The signal is computed for all
+   * pairs, when it is required first.
+   * @param signal1 signal of the first part of each pair
+   * @param signal2 signal of the second part of each pair
+   * @param mergeType
+   * @param name name of the new signal
+   * @param generateUpDownColumn if true, a further column, containing
+   * fold-change information like "up_down" is generated.
+   * @see PairData#calculateMergedSignal(Iterable, de.zbit.gui.dialogs.MergedSignalDialog, boolean)
+   */
+  public synchronized void addMergedSignal(ValuePair<String, SignalType> signal1, ValuePair<String, SignalType> signal2,
+    MergeTypeForTwo mergeType, String name, boolean generateUpDownColumn) {
+    MergedSignalColumn c = new MergedSignalColumn(signal1, signal2, mergeType, name, generateUpDownColumn);
+    mergedSignals.add(c);
+    // Add signal to already created pairs
+    for (int i=0; i<pairs.length(); i++) {
+      if (pairs.get(i)!=null) {
+        c.attach(pairs.get(i), i);
+      }
+    }
+  }
+
+  /**
+   * Writes the lists and index pairs, followed by the definitions of
+   * all merged signals.
+   * @param out
+   * @throws IOException
+   */
+  private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(mergedSignals.size());
+    for (MergedSignalColumn c: mergedSignals) {
+      out.writeObject(c.signal1.getA());
+      out.writeObject(c.signal1.getB());
+      out.writeObject(c.signal2.getA());
+      out.writeObject(c.signal2.getB());
+      out.writeObject(c.mergeType);
+      out.writeObject(c.name);
+      out.writeBoolean(c.generateUpDownColumn);
+    }
+  }
+
+  /**
+   * Reads the lists and index pairs. Pairs and merged signals are
+   * created lazily again.
+   * @param in
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    pairs = new AtomicReferenceArray<PairedNS<T1, T2>>(index1.length);
+    mergedSignals = new ArrayList<MergedSignalColumn>();
+    int n = in.readInt();
+    for (int i=0; i<n; i++) {
+      ValuePair<String, SignalType> signal1 = new ValuePair<String, SignalType>((String) in.readObject(), (SignalType) in.readObject());
+      ValuePair<String, SignalType> signal2 = new ValuePair<String, SignalType>((String) in.readObject(), (SignalType) in.readObject());
+      MergeTypeForTwo mergeType = (MergeTypeForTwo) in.readObject();
+      String name = (String) in.readObject();
+      mergedSignals.add(new MergedSignalColumn(signal1, signal2, mergeType, name, in.readBoolean()));
+    }
+  }
+
+  /**
+   * @param ns
+   * @param signal
+   * @return the value of the given signal or {@link Double#NaN}.
+   */
+  private static double getSignalValue(NameAndSignals ns, ValuePair<String, SignalType> signal) {
+    Signal s = ns.getSignal(signal.getB(), signal.getA());
+    if (s==null || s.getSignal()==null) return Double.NaN;
+    return s.getSignal().doubleValue();
+  }
+
+}
@@ -0,0 +1,320 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import de.zbit.data.genes.GenericGene;
+import de.zbit.sequence.region.Chromosome;
+import de.zbit.sequence.region.Region;
+import de.zbit.util.Species;
+import de.zbit.utils.IndexSort;
+import de.zbit.utils.ParallelUtils;
+
+/**
+ * Joins two datasets by genomic position. Each element of the first
+ * dataset (the anchors, e.g. genes or probes) is extended by a window
+ * and paired with all elements of the second dataset (the features,
+ * e.g. {@link de.zbit.data.snp.SNP}s or {@link de.zbit.data.methylation.DNAmethylation}
+ * probes) that intersect this window.
+ *
+ * <p>Both datasets are sorted by chromosome and start position and each
+ * chromosome is joined with a single sweep over both sorted lists (in
+ * parallel for all chromosomes). Thus, no quadratic scan is required.
+ * The result is a {@link PairedNSList}, just like
+ * {@link PairedNS#pairByGeneID(Collection, Collection)}.
+ *
+ * <p>Elements without chromosome or start position are ignored.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class RegionJoin {
+  public static final transient Logger log = Logger.getLogger(RegionJoin.class.getName());
+
+  /**
+   * Positions of a dataset, sorted by chromosome and start.
+   */
+  private static class SortedRegions {
+    /**
+     * Rows in the original list, sorted by chromosome and start
+     * (only rows with a valid position).
+     */
+    final int[] rows;
+    final byte[] chr;
+    final int[] start;
+    final int[] end;
+
+    /**
+     * @param list
+     * @param upstream extension of each region
+     * @param downstream extension of each region
+     * @throws ExecutionException
+     */
+    SortedRegions(List<? extends NameAndSignals> list, int upstream, int downstream) throws ExecutionException {
+      final byte[] c = new byte[list.size()];
+      final int[] s = new int[list.size()];
+      final int[] e = new int[list.size()];
+      int[] valid = new int[list.size()];
+      int n=0;
+      for (int i=0; i<list.size(); i++) {
+        NameAndSignals ns = list.get(i);
+        if (!(ns instanceof Region) || !(ns instanceof Chromosome)) continue;
+        byte chromosome = ((Chromosome) ns).getChromosomeAsByteRepresentation();
+        int regionStart = ((Region) ns).getStart();
+        if (chromosome==Chromosome.default_Chromosome_byte || regionStart==Region.DEFAULT_START) continue;
+        int regionEnd = Math.max(regionStart, ((Region) ns).getEnd());
+
+        // Upstream is relative to the strand
+        int up = upstream, down = downstream;
+        if (ns instanceof GenericGene && ((GenericGene) ns).isStrandKnown() &&
+            ((GenericGene) ns).isOnReverseStrand()) {
+          up = downstream;
+          down = upstream;
+        }
+        c[i] = chromosome;
+        s[i] = (int) Math.max(Integer.MIN_VALUE, (long) regionStart - up);
+        e[i] = (int) Math.min(Integer.MAX_VALUE, (long) regionEnd + down);
+        valid[n++] = i;
+      }
+      if (n<valid.length) {
+        int[] temp = new int[n];
+        System.arraycopy(valid, 0, temp, 0, n);
+        valid = temp;
+      }
+
+      IndexSort.parallelSort(valid, new IndexSort.IndexComparator() {
+        public int compare(int a, int b) {
+          if (c[a]!=c[b]) return c[a]<c[b]?-1:1;
+          if (s[a]!=s[b]) return s[a]<s[b]?-1:1;
+          return 0;
+        }
+      });
+
+      rows = valid;
+      chr = new byte[n];
+      start = new int[n];
+      end = new int[n];
+      for (int i=0; i<n; i++) {
+        chr[i] = c[valid[i]];
+        start[i] = s[valid[i]];
+        end[i] = e[valid[i]];
+      }
+    }
+
+    /**
+     * @param from
+     * @return the first row after <code>from</code> on another chromosome.
+     */
+    int chromosomeEnd(int from) {
+      int to = from;
+      while (to<chr.length && chr[to]==chr[from]) to++;
+      return to;
+    }
+  }
+
+  /**
+   * A growing list of index pairs.
+   */
+  private static class IndexPairs {
+    int[] index1 = new int[16];
+    int[] index2 = new int[16];
+    int size = 0;
+
+    void add(int i1, int i2) {
+      if (size==index1.length) {
+        int newSize = (int) Math.min(PairedNS.getMaxPairs(), (long) size*2);
+        if (newSize<=size) {
+          PairedNS.checkNumberOfPairs(size+1L, "Please reduce the window size.");
+        }
+        int[] temp = new int[newSize];
+        System.arraycopy(index1, 0, temp, 0, size);
+        index1 = temp;
+        temp = new int[newSize];
+        System.arraycopy(index2, 0, temp, 0, size);
+        index2 = temp;
+      }
+      index1[size] = i1;
+      index2[size++] = i2;
+    }
+  }
+
+  /**
+   * Pairs each element of <code>anchors</code> with all elements of
+   * <code>features</code> that intersect the anchor region, extended by
+   * the given window.
+   * @param <T1>
+   * @param <T2>
+   * @param anchors e.g., genes or probes. Should implement {@link Region}
+   * and {@link Chromosome}.
+   * @param features e.g., SNPs or methylation probes. Should implement
+   * {@link Region} and {@link Chromosome}.
+   * @param upstream bps to extend each anchor upstream (relative to the
+   * strand, if known).
+   * @param downstream bps to extend each anchor downstream.
+   * @return a lazy list of all pairs, sorted by chromosome and anchor position.
+   * @throws ExecutionException
+   * @throws IllegalArgumentException if the number of pairs exceeds
+   * {@link PairedNS#getMaxPairs()}.
+   */
+  public static <T1 extends NameAndSignals, T2 extends NameAndSignals> PairedNSList<T1, T2> join(
+    Collection<T1> anchors, Collection<T2> features, int upstream, int downstream) throws ExecutionException {
+    long time = System.currentTimeMillis();
+    final List<T1> list1 = asRandomAccessList(anchors);
+    final List<T2> list2 = asRandomAccessList(features);
+    final SortedRegions r1 = new SortedRegions(list1, upstream, downstream);
+    final SortedRegions r2 = new SortedRegions(list2, 0, 0);
+
+    // Create one task per chromosome
+    List<Callable<IndexPairs>> tasks = new ArrayList<Callable<IndexPairs>>();
+    int from2 = 0;
+    for (int from1=0; from1<r1.rows.length;) {
+      final int to1 = r1.chromosomeEnd(from1);
+      byte chr = r1.chr[from1];
+      while (from2<r2.rows.length && r2.chr[from2]<chr) from2++;
+      if (from2>=r2.rows.length) break;
+      if (r2.chr[from2]==chr) {
+        final int f1 = from1, f2 = from2;
+        final int to2 = r2.chromosomeEnd(from2);
+        tasks.add(new Callable<IndexPairs>() {
+          public IndexPairs call() {
+            return sweep(r1, f1, to1, r2, f2, to2);
+          }
+        });
+      }
+      from1 = to1;
+    }
+
+    List<IndexPairs> results;
+    if (ParallelUtils.isWorkerThread()) {
+      // Avoid waiting for tasks in the same pool
+      results = new ArrayList<IndexPairs>(tasks.size());
+      for (Callable<IndexPairs> task: tasks) {
+        try {
+          results.add(task.call());
+        } catch (Exception e) {
+          throw new ExecutionException(e);
+        }
+      }
+    } else {
+      List<Future<IndexPairs>> futures = new ArrayList<Future<IndexPairs>>(tasks.size());
+      for (Callable<IndexPairs> task: tasks) {
+        futures.add(ParallelUtils.getComputePool().submit(task));
+      }
+      results = ParallelUtils.waitForAll(futures);
+    }
+
+    // Concatenate all chromosomes
+    long numberOfPairs = 0;
+    for (IndexPairs p: results) {
+      numberOfPairs += p.size;
+    }
+    PairedNS.checkNumberOfPairs(numberOfPairs, "Please reduce the window size.");
+    int[] index1 = new int[(int) numberOfPairs];
+    int[] index2 = new int[(int) numberOfPairs];
+    int k=0;
+    for (IndexPairs p: results) {
+      System.arraycopy(p.index1, 0, index1, k, p.size);
+      System.arraycopy(p.index2, 0, index2, k, p.size);
+      k+=p.size;
+    }
+
+    log.fine(String.format("Joined %s and %s elements by region to %s pairs in %sms.",
+      list1.size(), list2.size(), numberOfPairs, System.currentTimeMillis()-time));
+    return new PairedNSList<T1, T2>(list1, list2, index1, index2);
+  }
+
+  /**
+   * Pairs all genes of the given species with all <code>features</code>
+   * in the gene body, extended by the given window. Uses the same
+   * genome coordinates as {@link de.zbit.io.dna_methylation.DNAmethylationDataMapper}.
+   * @param <T>
+   * @param features e.g., SNPs or methylation probes.
+   * @param species
+   * @param upstream bps upstream of the gene
+   * @param downstream bps downstream of the gene
+   * @return a lazy list of all pairs.
+   * @throws Exception if genome coordinates could not be read.
+   * @see #join(Collection, Collection, int, int)
+   */
+  public static <T extends NameAndSignals> PairedNSList<GenericGene, T> joinWithGenes(
+    Collection<T> features, Species species, int upstream, int downstream) throws Exception {
+    log.fine("Reading genome coordinates...");
+    List<GenericGene> genes = GenericGene.getAllGenesForRegion(null, species);
+    return join(genes, features, upstream, downstream);
+  }
+
+  /**
+   * Joins one chromosome. Both ranges must be on the same chromosome.
+   * @param r1 anchors (windows)
+   * @param from1
+   * @param to1
+   * @param r2 features
+   * @param from2
+   * @param to2
+   * @return all pairs (as rows of the original lists).
+   */
+  private static IndexPairs sweep(SortedRegions r1, int from1, int to1,
+    SortedRegions r2, int from2, int to2) {
+    // All features that intersect a window start in [windowStart-maxLength, windowEnd]
+    int maxLength = 0;
+    for (int j=from2; j<to2; j++) {
+      maxLength = Math.max(maxLength, r2.end[j]-r2.start[j]);
+    }
+
+    IndexPairs pairs = new IndexPairs();
+    int lo = from2;
+    for (int i=from1; i<to1; i++) {
+      // Windows are sorted by start, hence lo is only moved forward
+      long minStart = (long) r1.start[i] - maxLength;
+      while (lo<to2 && r2.start[lo]<minStart) lo++;
+
+      for (int j=lo; j<to2 && r2.start[j]<=r1.end[i]; j++) {
+        if (r2.end[j]>=r1.start[i]) {
+          pairs.add(r1.rows[i], r2.rows[j]);
+        }
+      }
+    }
+    return pairs;
+  }
+
+  /**
+   * @param <T>
+   * @param c
+   * @return <code>c</code> if it is a {@link List} with fast random
+   * access, else a copy of it.
+   */
+  private static <T> List<T> asRandomAccessList(Collection<T> c) {
+    if (c instanceof List && c instanceof RandomAccess) {
+      return (List<T>) c;
+    }
+    return new ArrayList<T>(c);
+  }
+
+}
@@ -31,6 +31,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import de.zbit.data.NSwithProbes;
@@ -38,6 +42,7 @@ import de.zbit.data.NameAndSignals;
 import de.zbit.data.Signal.MergeType;
 import de.zbit.data.id.GeneID;
 import de.zbit.util.StringUtil;
+import de.zbit.utils.ParallelUtils;
 
 /**
  * A generic class to hold miRNAs with Signals and Targets.
@@ -54,6 +59,12 @@ public class miRNA extends NSwithProbes {
    */
   private List<miRNAtarget> targets=null;
   
+  /**
+   * Cached result of {@link #getUniqueTargets()}. Immutable and possibly
+   * shared with other miRNAs with the same targets.
+   */
+  private transient volatile List<miRNAtarget> uniqueTargets=null;
+  
   /**
    * @param name The SystematicName (e.g. "mmu-miR-384-3p")
    */
@@ -76,23 +87,70 @@ public class miRNA extends NSwithProbes {
 
   /**
    * Link miRNAs to their targets (annotate the {@link #targets}).
+   * <p>All miRNAs with the same (formatted) name share the same immutable,
+   * sorted target list and unique targets. Large collections are annotated
+   * in parallel.
    * @param targets
    * @param col
    * @return number of miRNAs for which targets could be found.
    */
-  public static int link_miRNA_and_targets(miRNAtargets targets, Collection<miRNA> col) {
-    int matched=0;
-    for (miRNA m: col) {
+  public static int link_miRNA_and_targets(final miRNAtargets targets, Collection<miRNA> col) {
+    final List<miRNA> list = (col instanceof List)?(List<miRNA>) col:new ArrayList<miRNA>(col);
+    final ConcurrentHashMap<String, List<miRNAtarget>[]> shared = new ConcurrentHashMap<String, List<miRNAtarget>[]>();
+    final AtomicInteger matched = new AtomicInteger();
+    
+    try {
+      ParallelUtils.parallelFor(0, list.size(), new ParallelUtils.RangeTask() {
+        public void run(int from, int to) {
+          int m=0;
+          for (int i=from; i<to; i++) {
+            if (link(targets, list.get(i), shared)) m++;
+          }
+          matched.addAndGet(m);
+        }
+      });
+    } catch (ExecutionException e) {
+      log.log(Level.FINE, "Parallel annotation failed, annotating sequentially.", e);
+      matched.set(0);
+      for (miRNA m: list) {
+        if (link(targets, m, shared)) matched.incrementAndGet();
+      }
+    }
+    return matched.get();
+  }
+  
+  /**
+   * Annotates one miRNA with its targets.
+   * @param targets
+   * @param m
+   * @param shared target lists (all and unique targets) by formatted miRNA name.
+   * @return true if targets could be found.
+   */
+  @SuppressWarnings("unchecked")
+  private static boolean link(miRNAtargets targets, miRNA m, ConcurrentHashMap<String, List<miRNAtarget>[]> shared) {
+    if (m.getName()==null) {
+      m.setTargets(null);
+      return false;
+    }
+    String key = miRNAtargets.format_miRNA(m.getName());
+    List<miRNAtarget>[] t = shared.get(key);
+    if (t==null) {
       Collection<miRNAtarget> targets2 = targets.getTargets(m.getName());
-      if (targets2!=null) {
-        m.setTargets(targets2);
-        matched++;
+      if (targets2==null) {
+        t = new List[2];
       } else {
-        // Remove all old targets
-        m.setTargets(null);
+        List<miRNAtarget> sorted = createSortedList(targets2);
+        t = new List[]{sorted, createUniqueTargets(sorted)};
       }
+      // Make sure that all miRNAs with this name share the same lists
+      List<miRNAtarget>[] other = shared.putIfAbsent(key, t);
+      if (other!=null) t = other;
     }
-    return matched;
+    
+    // Without targets, all old targets are removed
+    m.targets = t[0];
+    m.uniqueTargets = t[1];
+    return t[0]!=null;
   }
   
   /**
@@ -160,14 +218,18 @@ public class miRNA extends NSwithProbes {
    * @param targets
    */
   public void setTargets(Collection<miRNAtarget> targets) {
-    if (targets!=null) {
-      if (!(targets instanceof List)) {
-        // Ensure that we have a list.
-        targets = new ArrayList<miRNAtarget>(targets);
-      }
-      Collections.sort((List<miRNAtarget>)targets);
-    }
-    this.targets = (List<miRNAtarget>) targets;
+    this.targets = targets==null?null:createSortedList(targets);
+    uniqueTargets = null;
+  }
+  
+  /**
+   * @param targets
+   * @return an immutable, sorted copy of the given targets.
+   */
+  private static List<miRNAtarget> createSortedList(Collection<miRNAtarget> targets) {
+    List<miRNAtarget> list = new ArrayList<miRNAtarget>(targets);
+    Collections.sort(list);
+    return Collections.unmodifiableList(list);
   }
   
   /* (non-Javadoc)
@@ -190,8 +252,7 @@ public class miRNA extends NSwithProbes {
    * @return list of targets for this miRNA
    */
   public List<miRNAtarget> getTargets() {
-    if (targets==null) return null;
-    return Collections.unmodifiableList(targets);
+    return targets;
   }
 
   /**
@@ -233,16 +294,43 @@ public class miRNA extends NSwithProbes {
   }
 
   /**
-   * @return cloned and unique targets, by merging all targets with the same gene id.
+   * The result is computed once and cached until the targets change.
+   * Do not modify the returned targets.
+   * @return unique targets, by merging all targets with the same gene id
+   * (immutable and sorted by gene id).
    */
   public Collection<miRNAtarget> getUniqueTargets() {
     if (!hasTargets()) return null;
     
-    Map<Integer, miRNAtarget> id2target = new HashMap<Integer, miRNAtarget>();
-    for (miRNAtarget target: targets) {
-      miRNAtarget et = id2target.get(target.getTarget());
-      if (et==null) id2target.put(target.getTarget(), target.clone());
-      else {
+    List<miRNAtarget> unique = uniqueTargets;
+    if (unique==null) {
+      // Concurrent calls compute the same list
+      unique = createUniqueTargets(targets);
+      uniqueTargets = unique;
+    }
+    return unique;
+  }
+  
+  /**
+   * @param sorted targets, sorted by gene id.
+   * @return unique targets, by merging all targets with the same gene id.
+   * Merged targets are cloned, all others are shared.
+   */
+  private static List<miRNAtarget> createUniqueTargets(List<miRNAtarget> sorted) {
+    List<miRNAtarget> unique = new ArrayList<miRNAtarget>(sorted.size());
+    miRNAtarget et = null;
+    boolean cloned = false;
+    for (miRNAtarget target: sorted) {
+      if (et==null || et.getTarget()!=target.getTarget()) {
+        et = target;
+        cloned = false;
+        unique.add(et);
+      } else {
+        if (!cloned) {
+          et = et.clone();
+          unique.set(unique.size()-1, et);
+          cloned = true;
+        }
         // Merge sources and make experimental
         et.setExperimental(target.isExperimental() || et.isExperimental());
         // Same algorithms sometimes contain duplicate targets
@@ -252,16 +340,16 @@ public class miRNA extends NSwithProbes {
       }
     }
     
-    return id2target.values();
+    return Collections.unmodifiableList(unique);
   }
   
   /**
    * Removes all targets from this {@link miRNA}.
    */
   public void removeTargets() {
-    if (targets!=null) {
-      targets.clear();
-    }
+    // Target lists might be shared with other miRNAs
+    targets = null;
+    uniqueTargets = null;
   }
   
 
@@ -292,7 +380,9 @@ public class miRNA extends NSwithProbes {
   protected Object clone() throws CloneNotSupportedException {
     miRNA nm = new miRNA(name, getProbeName());
     super.clone(nm); // Copies also the probeName
-    nm.targets = (List<miRNAtarget>) NameAndSignals.cloneCollection(targets);
+    // Target lists are immutable and can be shared
+    nm.targets = targets;
+    nm.uniqueTargets = uniqueTargets;
     return nm;
   }
   
@@ -22,6 +22,7 @@
 package de.zbit.data.miRNA;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -123,6 +124,18 @@ public class miRNAtargets implements Serializable, CSVwriteable, Comparable<miRN
     }
   }
   
+  /**
+   * Sets all targets of the miRNA. Replaces all current targets
+   * of this miRNA.
+   * @param miRNA - official name of the miRNA.
+   * @param targets - should be sorted (e.g., a {@link SortedArrayList}).
+   * Is used directly and not copied.
+   */
+  public void setTargets(String miRNA, Collection<miRNAtarget> targets) {
+    if (this.targets==null) initializeTargets();
+    this.targets.put(format_miRNA(miRNA), targets);
+  }
+  
   /**
    * This class defines the miRNA uniform name processing
    * and should be called before EVERY call to the {@link #targets}
@@ -248,6 +261,8 @@ public class miRNAtargets implements Serializable, CSVwriteable, Comparable<miRN
       if (t==null || t.size()<1) {
         t = t2;
       } else if (t2!=null && t2.size()>0){
+        // Never modify the internal collections
+        t = new ArrayList<miRNAtarget>(t);
         t.addAll(t2);
       }
     }
@@ -262,6 +277,8 @@ public class miRNAtargets implements Serializable, CSVwriteable, Comparable<miRN
       if (t==null || t.size()<1) {
         t = t2;
       } else if (t2!=null && t2.size()>0){
+        // Never modify the internal collections
+        t = new ArrayList<miRNAtarget>(t);
         t.addAll(t2);
       }
     }
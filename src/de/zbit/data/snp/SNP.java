@@ -21,17 +21,23 @@
  */
 package de.zbit.data.snp;
 
-import de.zbit.data.NSwithProbes;
+import de.zbit.data.NSwithProbesAndRegion;
 import de.zbit.data.Signal;
 import de.zbit.data.id.GeneID;
 
 /**
  * A generic class to hold a {@link SNP} with {@link Signal}s and containing {@link GeneID}.
+ * <p>The genomic position of the SNP is optional. It is required to pair SNPs
+ * with other region-based data (see {@link de.zbit.data.RegionJoin}), which is
+ * why this class extends {@link NSwithProbesAndRegion}. Without a position, SNPs
+ * behave as before: no position columns are shown, the genome region plot is
+ * disabled, and {@link #hashCode()} and {@link #compareTo(Object)} only add
+ * constant default values to the name and gene id based results.
  * @author Finja Büchel
  * @author Clemens Wrzodek
  * @version $Rev$
  */
-public class SNP extends NSwithProbes {
+public class SNP extends NSwithProbesAndRegion {
   private static final long serialVersionUID = 7939630941567479573L;
 
   public SNP(String dbSNPid) {
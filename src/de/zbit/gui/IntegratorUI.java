@@ -64,6 +64,7 @@ import javax.swing.filechooser.FileFilter;
 
 import de.zbit.AppConf;
 import de.zbit.data.EnrichmentObject;
+import de.zbit.data.GenomicPositionIndex;
 import de.zbit.data.HeterogeneousNS;
 import de.zbit.data.NameAndSignals;
 import de.zbit.data.PairedNS;
@@ -82,10 +83,13 @@ import de.zbit.gui.actions.listeners.KEGGPathwayActionListener;
 import de.zbit.gui.customcomponents.SpeciesHolder;
 import de.zbit.gui.prefs.IntegratorIOOptions;
 import de.zbit.gui.prefs.PathwayVisualizationOptions;
+import de.zbit.gui.tabs.DatasetManager;
 import de.zbit.gui.tabs.IntegratorTab;
+import de.zbit.gui.tabs.IntegratorTabWithTable;
 import de.zbit.gui.tabs.NSTimeSeriesTab;
 import de.zbit.gui.tabs.NameAndSignalsTab;
 import de.zbit.integrator.ReaderCache;
+import de.zbit.integrator.ResourcePreloader;
 import de.zbit.integrator.TimeSeriesCache;
 import de.zbit.io.BioPAXimporterInCroMAP;
 import de.zbit.io.CompoundReader;
@@ -97,6 +101,7 @@ import de.zbit.io.GraphMLimporter;
 import de.zbit.io.NameAndSignalReader;
 import de.zbit.io.ProteinModificationReader;
 import de.zbit.io.SNPReader;
+import de.zbit.io.WorkspaceSnapshot;
 import de.zbit.io.mRNAReader;
 import de.zbit.io.miRNAReader;
 import de.zbit.io.mRNATimeSeriesReader;
@@ -453,8 +458,8 @@ public class IntegratorUI extends BaseFrame {
     // init preferences
     initPreferences();
     
-    // Load reader cache
-    ReaderCache.getCache();
+    // Load reader cache and prefetch resources in the background
+    ResourcePreloader.getInstance().start();
         
     // Depending on the current OS, we should add the following image
     // icons: 16x16, 32x32, 48x48, 128x128 (MAC), 256x256 (Vista).
@@ -549,6 +554,11 @@ public class IntegratorUI extends BaseFrame {
       // Remove tab-related action
       if (tabbedPane.getComponentAt(tabIndex) instanceof TranslatorPanel) {
         translatorActionMap.remove(tabbedPane.getComponentAt(tabIndex));
+      } else if (tabbedPane.getComponentAt(tabIndex) instanceof IntegratorTabWithTable) {
+        IntegratorTabWithTable tab = (IntegratorTabWithTable) tabbedPane.getComponentAt(tabIndex);
+        DatasetManager.getInstance().unregister(tab);
+        // Release cached indices of the data (does not read spilled data back)
+        GenomicPositionIndex.invalidate(tab.getData());
       }
       // Close tab
       tabbedPane.removeTabAt(tabIndex);
@@ -657,10 +667,10 @@ public class IntegratorUI extends BaseFrame {
 //      Action.LOAD_GENERIC_REGION_BASED, UIManager.getIcon("ICON_MRNA_16"));
     
     return new JMenuItem[] {
-        /* TOO difficult to save workspace...
-         * GUITools.createJMenuItem(EventHandler.create(ActionListener.class, this, "saveWorkspace"),
-          Action.WORKSPACE_SAVE, UIManager.getIcon("ICON_SAVE_16"), KeyStroke.getKeyStroke('W',InputEvent.CTRL_DOWN_MASK),
-          'W', false)*/
+      GUITools.createJMenuItem(EventHandler.create(ActionListener.class, this, "loadWorkspace"),
+        Action.WORKSPACE_LOAD, UIManager.getIcon("ICON_OPEN_16")),
+      GUITools.createJMenuItem(EventHandler.create(ActionListener.class, this, "saveWorkspace"),
+        Action.WORKSPACE_SAVE, UIManager.getIcon("ICON_SAVE_16")),
     
       importData //, genericGene, genericRegion
     };
@@ -882,6 +892,55 @@ public class IntegratorUI extends BaseFrame {
     addToFileHistory(l, fileHistoryDuplicate);
   }
   
+  /**
+   * Saves all opened data tabs to a workspace file.
+   * @see WorkspaceSnapshot
+   */
+  public void saveWorkspace() {
+    final WorkspaceSnapshot snapshot = new WorkspaceSnapshot(this);
+    if (snapshot.getNumberOfTabs()<1) {
+      GUITools.showMessage("There are no data tabs to save.", appName);
+      return;
+    }
+    final File f = GUITools.showSaveFileChooser(this, saveDir);
+    if (f==null) return;
+    saveDir = f.getParent();
+    
+    IntegratorUITools.runInSwingWorker(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          snapshot.write(f, getStatusBar().showProgress());
+          getStatusBar().reset();
+          GUITools.showMessage("Saved " + snapshot.getNumberOfTabs() + " tabs successfully to \"" + f.getPath() + "\".", appName);
+        } catch (Throwable e) {
+          getStatusBar().reset();
+          GUITools.showErrorMessage(IntegratorUI.this, e);
+        }
+      }
+    });
+  }
+  
+  /**
+   * Restores all tabs from a workspace file.
+   * @see WorkspaceSnapshot
+   */
+  public void loadWorkspace() {
+    File file = GUITools.openFileDialog(this, openDir, false, JFileChooser.FILES_ONLY);
+    if (file==null || !file.exists()) {
+      return;
+    } else {
+      openDir = file.getParent();
+    }
+    
+    try {
+      WorkspaceSnapshot.read(this, file);
+    } catch (Throwable e) {
+      GUITools.showErrorMessage(this, e);
+    }
+    updateButtons();
+  }
+  
   public void openEnrichment() {
     openFile(null, false, EnrichmentReader.class);
   }
@@ -1019,6 +1078,11 @@ public class IntegratorUI extends BaseFrame {
           tabbedPane.setIconAt(idx, IntegratorUITools.inferIconForTab(tabbedPane.getComponentAt(idx)));
         }
         
+        // Read data back from disk, if the tab has been spilled.
+        if (idx>=0 && tabbedPane.getComponentAt(idx) instanceof IntegratorTabWithTable) {
+          DatasetManager.getInstance().touch((IntegratorTabWithTable) tabbedPane.getComponentAt(idx));
+        }
+        
         // This is the real todo everytime the selected tab changes
         updateButtons();
       }
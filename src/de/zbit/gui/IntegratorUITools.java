@@ -109,6 +109,7 @@ import de.zbit.gui.tabs.IntegratorChartTab;
 import de.zbit.gui.tabs.IntegratorTab;
 import de.zbit.gui.tabs.NameAndSignalsTab;
 import de.zbit.integrator.NameAndSignal2PWTools;
+import de.zbit.integrator.ResourcePreloader;
 import de.zbit.io.CompoundReader;
 import de.zbit.io.DNAmethylationReader;
 import de.zbit.io.GenericGeneBasedDataReader;
@@ -121,6 +122,7 @@ import de.zbit.io.SerializableTools;
 import de.zbit.io.mRNAReader;
 import de.zbit.io.mRNATimeSeriesReader;
 import de.zbit.io.miRNAReader;
+import de.zbit.io.miRNATargetPartitions;
 import de.zbit.io.filefilter.SBFileFilter;
 import de.zbit.kegg.Translator;
 import de.zbit.kegg.gui.OrganismSelector;
@@ -138,6 +140,7 @@ import de.zbit.util.objectwrapper.LabeledObject;
 import de.zbit.util.objectwrapper.ValuePair;
 import de.zbit.util.objectwrapper.ValueTriplet;
 import de.zbit.util.prefs.SBPreferences;
+import de.zbit.utils.MapperRegistry;
 import de.zbit.visualization.VisualizeDataInPathway;
 
 /**
@@ -980,69 +983,113 @@ public class IntegratorUITools {
    * @return 
    */
   public static GeneID2GeneSymbolMapper get2GeneSymbolMapping(Species species) {
+    return get2GeneSymbolMapping(species, false);
+  }
+  
+  /**
+   * Returns a 2GeneID mapping for the given <code>species</code>.
+   * <p>Every created instance is shared via the {@link MapperRegistry}.
+   * @param species
+   * @param silent if true, errors are only logged. Else, an error
+   * message is shown to the user.
+   * @return 
+   */
+  public static GeneID2GeneSymbolMapper get2GeneSymbolMapping(final Species species, boolean silent) {
     if (species==null) return null;
-    String key = GeneID2GeneSymbolMapper.class.getSimpleName().concat(species.getCommonName());
-    Object mapper = UIManager.get(key);
-    if (mapper==null) {
-      try {
-        mapper = new GeneID2GeneSymbolMapper(species.getCommonName());
-      } catch (IOException e) {
+    try {
+      return MapperRegistry.getInstance().get(GeneID2GeneSymbolMapper.class, species, null,
+        new MapperRegistry.Loader<GeneID2GeneSymbolMapper>() {
+        public GeneID2GeneSymbolMapper load() throws IOException {
+          return new GeneID2GeneSymbolMapper(species.getCommonName());
+        }
+      });
+    } catch (IOException e) {
+      if (silent) {
+        log.log(Level.WARNING, "Could not read gene symbol mapping.", e);
+      } else {
         GUITools.showErrorMessage(IntegratorUI.getInstance(), e);
       }
-      if (mapper!=null) {
-        UIManager.put(key, mapper);
-      }
     }
-    return (GeneID2GeneSymbolMapper) mapper;
+    return null;
   }
   
   /**
    * Returns a 2CompoundName mapping.
-   * <p>Every created instance is cached for later usage.
+   * <p>Every created instance is shared via the {@link MapperRegistry}.
    * @return 
    */
   public static InChIKey2CompoundNameMapper get2CompoundNameMapping() {
-    String key = InChIKey2CompoundNameMapper.class.getSimpleName();
-    Object mapper = UIManager.get(key);
-    if (mapper==null) {
-      try {
-        mapper = new InChIKey2CompoundNameMapper();
-      } catch (IOException e) {
-        GUITools.showErrorMessage(IntegratorUI.getInstance(), e);
-      }
-      if (mapper!=null) {
-        UIManager.put(key, mapper);
-      }
+    try {
+      return MapperRegistry.getInstance().get(InChIKey2CompoundNameMapper.class, null, null,
+        new MapperRegistry.Loader<InChIKey2CompoundNameMapper>() {
+        public InChIKey2CompoundNameMapper load() throws IOException {
+          return new InChIKey2CompoundNameMapper();
+        }
+      });
+    } catch (IOException e) {
+      GUITools.showErrorMessage(IntegratorUI.getInstance(), e);
     }
-    return (InChIKey2CompoundNameMapper) mapper;
+    return null;
   }
   
   /**
    * Returns a KeggCompound2InChIKey mapping.
-   * <p>Every created instance is cached for later usage.
+   * <p>This mapping is very memory-consuming. Thus, it is only kept
+   * in memory while it is acquired by someone (see
+   * {@link MapperRegistry#acquire(Class, Species, Object, de.zbit.utils.MapperRegistry.Loader)})
+   * and can be reclaimed by the garbage collector afterwards.
    * @return 
    */
   public static KeggCompound2InChIKeyMapper getKegg2InChIKeyMapping() {
-    // ZU speicherlastig, daher kein Caching hierf�r.
-  	/*String key = KeggCompound2InChIKeyMapper.class.getSimpleName();
-    Object mapper = UIManager.get(key);
-    if (mapper==null) {
-      try {
-        mapper = new KeggCompound2InChIKeyMapper();
-      } catch (IOException e) {
-        GUITools.showErrorMessage(IntegratorUI.getInstance(), e);
+    return getKegg2InChIKeyMapping(false);
+  }
+  
+  /**
+   * Returns a KeggCompound2InChIKey mapping.
+   * @param acquire if true, the mapping is kept in memory until
+   * {@link #releaseKegg2InChIKeyMapping()} is called.
+   * @return 
+   * @see #getKegg2InChIKeyMapping()
+   */
+  public static KeggCompound2InChIKeyMapper getKegg2InChIKeyMapping(boolean acquire) {
+    MapperRegistry registry = MapperRegistry.getInstance();
+    MapperRegistry.Loader<KeggCompound2InChIKeyMapper> loader = new MapperRegistry.Loader<KeggCompound2InChIKeyMapper>() {
+      public KeggCompound2InChIKeyMapper load() throws IOException {
+        return new KeggCompound2InChIKeyMapper();
       }
-      if (mapper!=null) {
-        UIManager.put(key, mapper);
+    };
+    try {
+      // ZU speicherlastig, daher nur solange im Speicher, wie benutzt.
+      registry.setNeverRetain(KeggCompound2InChIKeyMapper.class);
+      if (acquire) {
+        return registry.acquire(KeggCompound2InChIKeyMapper.class, null, null, loader);
+      } else {
+        return registry.get(KeggCompound2InChIKeyMapper.class, null, null, loader);
       }
-    }*/
-  	KeggCompound2InChIKeyMapper mapper = null;
-  	try {
-      mapper = new KeggCompound2InChIKeyMapper();
     } catch (IOException e) {
       GUITools.showErrorMessage(IntegratorUI.getInstance(), e);
     }
-    return mapper;
+    return null;
+  }
+  
+  /**
+   * Releases a mapping acquired by {@link #getKegg2InChIKeyMapping(boolean)}.
+   */
+  public static void releaseKegg2InChIKeyMapping() {
+    MapperRegistry.getInstance().release(KeggCompound2InChIKeyMapper.class, null, null);
+  }
+  
+  /**
+   * Reads the microRNA target file for the given species.
+   * @param species
+   * @param predicted if true, predicted targets are read. Else,
+   * experimentally validated targets are read.
+   * @return all targets
+   * @throws IOException
+   */
+  public static miRNAtargets readMicroRNAtargets(Species species, boolean predicted) throws IOException {
+    String file = "miRNA_targets/" + species.getNCBITaxonID() + (predicted?"_HC":"") + ".dat";
+    return (miRNAtargets) SerializableTools.loadGZippedObject(OpenFile.searchFileAndGetInputStream(file));
   }
   
   /**
@@ -1115,18 +1162,42 @@ public class IntegratorUITools {
       boolean isExperimentalSelected = miRecords.isSelected()||miRTarBase.isSelected()||tarBase.isSelected();
       boolean isPredictedSelected = !onlyExperimental.isSelected() && (DIANA.isSelected()||ElMMo.isSelected()||TargetScan.isSelected());
       
+      // Read only the selected sources, if a partitioned file is available
+      List<String> sources = new ArrayList<String>();
+      if (miRecords.isSelected()) sources.add("miRecords");
+      if (miRTarBase.isSelected()) sources.add("miRTarBase");
+      if (tarBase.isSelected()) sources.add("TarBase");
+      if (isPredictedSelected && ElMMo.isSelected()) sources.add("ElMMo");
+      if (isPredictedSelected && DIANA.isSelected()) sources.add("DIANA");
+      if (isPredictedSelected && TargetScan.isSelected()) sources.add("TargetScan");
+      if (sources.size()>0) {
+        // Targets of unknown sources are never filtered from the serialized files
+        sources.add(miRNATargetPartitions.OTHER_SOURCES);
+        try {
+          // Predicted targets are only contained if predicted databases have been selected
+          miRNAtargets t = miRNATargetPartitions.read(species, sources, onlyExperimental.isSelected() || !isPredictedSelected);
+          if (t!=null) {
+            ResourcePreloader.getInstance().discardMicroRNAtargets(species);
+            log.info(StatusBar.defaultText);
+            return new ValuePair<miRNAtargets, Species>(t, species);
+          }
+        } catch (IOException e) {
+          log.log(Level.WARNING, "Could not read partitioned microRNA target file.", e);
+        }
+      }
+      
       // Load targets
       miRNAtargets t_all=null;
       // XXX: Show loading message here.
       try {
         if (isExperimentalSelected) {
           log.fine("Loading experimental miRNA targets");
-          t_all = (miRNAtargets) SerializableTools.loadGZippedObject(
-            OpenFile.searchFileAndGetInputStream("miRNA_targets/" + species.getNCBITaxonID() + ".dat"));
+          // Use targets from the startup preloader, if available
+          t_all = ResourcePreloader.getInstance().takeMicroRNAtargets(species);
+          if (t_all==null) t_all = readMicroRNAtargets(species, false);
         } if (isPredictedSelected) {
           log.fine("Loading predicted miRNA targets");
-          miRNAtargets t = (miRNAtargets) SerializableTools.loadGZippedObject(
-            OpenFile.searchFileAndGetInputStream("miRNA_targets/" + species.getNCBITaxonID() + "_HC.dat"));
+          miRNAtargets t = readMicroRNAtargets(species, true);
           if (t_all==null) t_all = t; else t_all.addAll(t);
         }
         if (t_all==null) throw new IOException("Could not read miRNA target file or no targets have been selected.");
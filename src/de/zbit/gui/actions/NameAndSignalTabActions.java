@@ -27,6 +27,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.logging.Logger;
@@ -76,10 +77,13 @@ import de.zbit.gui.tabs.IntegratorTab;
 import de.zbit.gui.tabs.IntegratorTabWithTable;
 import de.zbit.gui.tabs.NSTimeSeriesTab;
 import de.zbit.gui.tabs.NameAndSignalsTab;
+import de.zbit.gui.tabs.TableChange;
 import de.zbit.math.BenjaminiHochberg;
 import de.zbit.math.Bonferroni;
 import de.zbit.math.BonferroniHolm;
 import de.zbit.math.CubicSplineInterpolation;
+import de.zbit.math.FDRCorrection;
+import de.zbit.math.StoreyQvalue;
 import de.zbit.math.TimeFit;
 import de.zbit.sequence.region.Region;
 import de.zbit.util.Species;
@@ -109,6 +113,7 @@ public class NameAndSignalTabActions implements ActionListener {
   JMenuItem BH_cor;
   JMenuItem BFH_cor;
   JMenuItem BO_cor;
+  JMenuItem ST_cor;
   JMenuItem keggPathway;
   JMenuItem chart;
   // Another button to toggle
@@ -155,6 +160,7 @@ public class NameAndSignalTabActions implements ActionListener {
     FDR_CORRECTION_BH,
     FDR_CORRECTION_BFH,
     FDR_CORRECTION_BO,
+    FDR_CORRECTION_STOREY,
     /**
      * This should be used with causion as not all further processing
      * methods mind a filetered table and not all tables are capable
@@ -195,6 +201,8 @@ public class NameAndSignalTabActions implements ActionListener {
         return "Bonferroni Holm";
       case FDR_CORRECTION_BO:
         return "Bonferroni";
+      case FDR_CORRECTION_STOREY:
+        return "Storey q-value";
       
       case MODEL_TIME_SERIES_SPLINE:
       	return "Cubic-spline interpolation";
@@ -231,6 +239,8 @@ public class NameAndSignalTabActions implements ActionListener {
           return "Correct p-values with the Holm–Bonferroni method and save as q-values.";
         case FDR_CORRECTION_BO:
           return "Correct p-values with the Bonferroni method and save as q-values.";
+        case FDR_CORRECTION_STOREY:
+          return "Calculate q-values with the method of Storey and Tibshirani.";
           
         case MODEL_TIME_SERIES_SPLINE:
         	return "Generate a continuous model with cubic-spline interpolation.";
@@ -399,6 +409,9 @@ public class NameAndSignalTabActions implements ActionListener {
       BO_cor = GUITools.createJMenuItem(this,
           NSAction.FDR_CORRECTION_BO, UIManager.getIcon("ICON_MATH_16"),null,null,JCheckBoxMenuItem.class,true);
       fdr.add(BO_cor);
+      ST_cor = GUITools.createJMenuItem(this,
+          NSAction.FDR_CORRECTION_STOREY, UIManager.getIcon("ICON_MATH_16"),null,null,JCheckBoxMenuItem.class,true);
+      fdr.add(ST_cor);
       JDropDownButton fdrButton = new JDropDownButton("FDR correction", 
           UIManager.getIcon("ICON_MATH_16"), fdr);
       fdrButton.setToolTipText("Change the false-discovery-rate correction method.");
@@ -429,8 +442,10 @@ public class NameAndSignalTabActions implements ActionListener {
     String command = e.getActionCommand();
     
     if (command.equals(NSAction.SEARCH_TABLE.toString())) {
-      // Fire F3 Key for search
-      if (parent.getVisualization()!=null) {
+      // Search with the index, if available. Else, fire F3 Key for search
+      if (FilterNSTable.searchTable(parent, filter)) {
+        // Nothing else to do
+      } else if (parent.getVisualization()!=null) {
         KeyEvent F3 = new KeyEvent(parent.getVisualization(), 
             0, 0, 0, 114, (char)114);
         for (KeyListener l: parent.getVisualization().getKeyListeners()) {
@@ -460,9 +475,12 @@ public class NameAndSignalTabActions implements ActionListener {
     } else if (command.equals(NSAction.ADD_OBSERVATION.toString())) {
       MergedSignalDialog options = MergedSignalDialog.showDialog(parent, (PairedNS<?, ?>) parent.getExampleData());
       if (options==null) return;
+      int columns = getColumnCount(parent);
       PairData.calculateMergedSignal((Iterable<PairedNS<?, ?>>) parent.getData(), options);
-      parent.rebuildTable();
-      parent.repaint();
+      // Usually adds a signal column. Re-calculating an existing signal changes only values.
+      BitSet all = new BitSet();
+      all.set(0, parent.getData().size());
+      fireRowsChanged(parent, columns, all);
       
     } else if (command.equals(IntegratorUI.Action.INTEGRATED_TABLE.toString())) {
       IntegrationDialog.defaultSelection = parent;
@@ -521,19 +539,20 @@ public class NameAndSignalTabActions implements ActionListener {
       removeMiRNAtargets();
 
     } else if (command.equals(NSAction.FDR_CORRECTION_BH.toString())) {
-      BFH_cor.setSelected(false); BO_cor.setSelected(false); BH_cor.setSelected(true);
-      new BenjaminiHochberg().setQvalue((List<EnrichmentObject<Object>>) parent.getData());
-      parent.getVisualization().repaint();
+      BFH_cor.setSelected(false); BO_cor.setSelected(false); BH_cor.setSelected(true); ST_cor.setSelected(false);
+      correctQValues(new BenjaminiHochberg());
       
     } else if (command.equals(NSAction.FDR_CORRECTION_BFH.toString())) {
-      BFH_cor.setSelected(true); BO_cor.setSelected(false); BH_cor.setSelected(false);
-      new BonferroniHolm().setQvalue((List<EnrichmentObject<Object>>) parent.getData());
-      parent.getVisualization().repaint();
+      BFH_cor.setSelected(true); BO_cor.setSelected(false); BH_cor.setSelected(false); ST_cor.setSelected(false);
+      correctQValues(new BonferroniHolm());
       
     } else if (command.equals(NSAction.FDR_CORRECTION_BO.toString())) {
-      BFH_cor.setSelected(false); BO_cor.setSelected(true); BH_cor.setSelected(false);
-      new Bonferroni().setQvalue((List<EnrichmentObject<Object>>) parent.getData());
-      parent.getVisualization().repaint();
+      BFH_cor.setSelected(false); BO_cor.setSelected(true); BH_cor.setSelected(false); ST_cor.setSelected(false);
+      correctQValues(new Bonferroni());
+      
+    } else if (command.equals(NSAction.FDR_CORRECTION_STOREY.toString())) {
+      BFH_cor.setSelected(false); BO_cor.setSelected(false); BH_cor.setSelected(false); ST_cor.setSelected(true);
+      correctQValues(new StoreyQvalue());
       
     } else if(command.equals(NSAction.MODEL_TIME_SERIES_SPLINE.toString())) {
     	if(parent instanceof NSTimeSeriesTab) {
@@ -577,15 +596,19 @@ public class NameAndSignalTabActions implements ActionListener {
       list = (List<? extends mRNA>) parent.getData();
     } else if (pa)
     }*/
+    int columns = getColumnCount(parent);
+    BitSet changed = new BitSet();
     try {
-      NSwithProbes.convertNamesToGeneSymbols((Iterable<? extends NameAndSignals>) parent.getData(), parent.getSpecies());
+      changed = NSwithProbes.convertNamesToGeneSymbols((Iterable<? extends NameAndSignals>) parent.getData(), parent.getSpecies());
     } catch (Exception e1) {
     	
       GUITools.showErrorMessage(parent, e1);
     }
     
     if (parent instanceof IntegratorTabWithTable) {
-      ((IntegratorTabWithTable)parent).rebuildTable();
+      // Names changed and the "Original name" column might have been added.
+      // Derived tabs are updated, too.
+      fireRowsChanged((IntegratorTabWithTable)parent, columns, changed);
     } else {
       parent.getVisualization().repaint();
     }
@@ -600,14 +623,87 @@ public class NameAndSignalTabActions implements ActionListener {
   public void annotateMiRNAtargets() {
     ValuePair<miRNAtargets, Species> t_all = IntegratorUITools.loadMicroRNAtargets(parent.getSpecies(false));
     if (t_all==null || t_all.getA()==null) return;
-    int annot = miRNA.link_miRNA_and_targets(t_all.getA(), (Collection<miRNA>) parent.getData());
-    log.info(String.format("Annotated %s/%s microRNAs with targets.", annot, ((Collection<miRNA>)parent.getData()).size()));
+    Collection<miRNA> data = (Collection<miRNA>) parent.getData();
+    int columns = getColumnCount(parent);
+    BitSet hadTargets = getRowsWithTargets(data);
+    int annot = miRNA.link_miRNA_and_targets(t_all.getA(), data);
+    log.info(String.format("Annotated %s/%s microRNAs with targets.", annot, data.size()));
     
     // Convert IN BACKGROUND (new thread) ids to symbols
     showGeneSymbols_InNewThread();
     
-    parent.rebuildTable();
-    parent.repaint();
+    // The targets column always exists, only rows with (previous) targets changed
+    BitSet changed = getRowsWithTargets(data);
+    changed.or(hadTargets);
+    fireRowsChanged(parent, columns, changed);
+  }
+  
+  /**
+   * @param data
+   * @return positions of all {@link miRNA}s in <code>data</code> that have
+   * targets.
+   */
+  private static BitSet getRowsWithTargets(Iterable<? extends TableResult> data) {
+    BitSet rows = new BitSet();
+    int i=0;
+    for (TableResult tr: data) {
+      if (tr instanceof miRNA && ((miRNA)tr).hasTargets()) {
+        rows.set(i);
+      }
+      i++;
+    }
+    return rows;
+  }
+  
+  /**
+   * @param tab
+   * @return the number of columns of the example data in the
+   * given tab or -1 if it has no data.
+   */
+  private static int getColumnCount(IntegratorTab<?> tab) {
+    Object example = tab.getExampleData();
+    return (example instanceof TableResult)?((TableResult)example).getColumnCount():-1;
+  }
+  
+  /**
+   * Informs the <code>tab</code> and all derived tabs about changed
+   * values. A structure change, which also resets the sort order, is
+   * only fired if the number of columns changed.
+   * @param tab
+   * @param columnsBefore result of {@link #getColumnCount(IntegratorTab)}
+   * before the change.
+   * @param rows changed model rows.
+   */
+  private static void fireRowsChanged(IntegratorTabWithTable tab, int columnsBefore, BitSet rows) {
+    if (getColumnCount(tab)!=columnsBefore) {
+      tab.fireTableChanged(TableChange.columnsChanged());
+    } else {
+      tab.fireTableChanged(TableChange.rowsUpdated(rows));
+    }
+  }
+  
+  /**
+   * Applies the given correction to the {@link EnrichmentObject}s in
+   * {@link #parent} and updates all rows with a changed q-value.
+   * @param correction
+   */
+  @SuppressWarnings("unchecked")
+  private void correctQValues(FDRCorrection correction) {
+    List<EnrichmentObject<Object>> data = (List<EnrichmentObject<Object>>) parent.getData();
+    Number[] before = new Number[data.size()];
+    for (int i=0; i<before.length; i++) {
+      before[i] = data.get(i).getQValue();
+    }
+    correction.setQvalue(data);
+    
+    BitSet changed = new BitSet();
+    for (int i=0; i<before.length; i++) {
+      Number q = data.get(i).getQValue();
+      if (before[i]==null ? q!=null : !before[i].equals(q)) {
+        changed.set(i);
+      }
+    }
+    parent.fireTableChanged(TableChange.rowsUpdated(changed));
   }
 
 
@@ -638,26 +734,30 @@ public class NameAndSignalTabActions implements ActionListener {
    */
   public void removeMiRNAtargets() {
     Iterable<? extends TableResult> data = parent.getData();
+    int columns = getColumnCount(parent);
+    BitSet changed = getRowsWithTargets(data);
     for (TableResult tr: data) {
       if (tr instanceof miRNA) {
         ((miRNA)tr).removeTargets();
       }
     }
     
-    parent.rebuildTable();
-    parent.repaint();
+    fireRowsChanged(parent, columns, changed);
   }
   
   
   public synchronized void updateToolbarButtons(JToolBar toolBar) {
-    boolean state = parent.getData()!=null;
+    // Do not use getData(), it would read spilled data back from disk
+    boolean state = parent.isReady();
     for (Component c: toolBar.getComponents()) {
       c.setEnabled(state);
     }
     // Example usage for single state change:
     //GUITools.setEnabled(state, toolBar, TPAction.HIGHLIGHT_ENRICHED_GENES);
     boolean enableRegionPlot = false;
+    // Positions are optional for some types (e.g., SNPs)
     if (parent.getExampleData()!=null && parent.getExampleData() instanceof Region
+        && ((Region)parent.getExampleData()).getStart()!=Region.DEFAULT_START
         && parent.getExampleData() instanceof NameAndSignals && 
         ((NameAndSignals)parent.getExampleData()).hasSignals()) {
       enableRegionPlot = true;
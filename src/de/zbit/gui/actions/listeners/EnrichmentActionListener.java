@@ -57,6 +57,11 @@ import de.zbit.gui.table.JTableFilter;
 import de.zbit.gui.tabs.IntegratorTab;
 import de.zbit.gui.tabs.IntegratorTabWithTable;
 import de.zbit.gui.tabs.NameAndSignalsTab;
+import de.zbit.integrator.ResourcePreloader;
+import de.zbit.mapper.GO_ID2GO_NameMapper;
+import de.zbit.mapper.KeggPathwayID2PathwayName;
+import de.zbit.mapper.enrichment.GeneID2GO_ID_Mapper;
+import de.zbit.mapper.enrichment.GeneID2ListOfKEGGpathways;
 import de.zbit.util.Species;
 import de.zbit.util.StringUtil;
 
@@ -204,55 +209,84 @@ public class EnrichmentActionListener implements ActionListener {
     SwingWorker<Collection<? extends NameAndSignals>, Void> worker = new ProgressWorker<Collection<? extends NameAndSignals>, Void>() {
       @Override
       protected Collection<? extends NameAndSignals> doInBackground() throws Exception {
-        // Get Enrichment class
-        final AbstractEnrichment<String> enrich;
+        // Mappings acquired from the preloader must be released when done
+        final ResourcePreloader preloader = ResourcePreloader.getInstance();
+        boolean acquiredGOMapping = false, acquiredGONames = false;
+        boolean acquiredKeggMapping = false, acquiredKeggNames = false;
         try {
-          log.info("Downloading and reading enrichment file.");
-          if (e.getActionCommand().equals(Enrichments.GO_ENRICHMENT.toString())) {
-            enrich = new GOEnrichment(species, getProgressBar());
-          } else if (e.getActionCommand().equals(Enrichments.KEGG_ENRICHMENT.toString())) {
-              enrich = new KEGGPathwayEnrichment(species,listContainsGeneIDs,listContainsCompoundIDs,getProgressBar());
-          } else if (e.getActionCommand().equals(Enrichments.MSIGDB_ENRICHMENT.toString())) {
-            enrich = new MSigDB_GSEA_Enrichment(species, getProgressBar());
-          } else {
-            GUITools.showErrorMessage(source, String.format("Unknown enrichment command: %s", e.getActionCommand()));
+          // Get Enrichment class
+          final AbstractEnrichment<String> enrich;
+          try {
+            log.info("Downloading and reading enrichment file.");
+            if (e.getActionCommand().equals(Enrichments.GO_ENRICHMENT.toString())) {
+              if (species!=null) {
+                // Share (and maybe reuse prefetched) mappings
+                GeneID2GO_ID_Mapper geneMapper = preloader.acquireGOMapping(species, getProgressBar());
+                acquiredGOMapping = true;
+                GO_ID2GO_NameMapper goNames = preloader.acquireGONames(species, getProgressBar());
+                acquiredGONames = true;
+                enrich = new GOEnrichment(species, geneMapper, goNames, getProgressBar());
+              } else {
+                enrich = new GOEnrichment(species, getProgressBar());
+              }
+            } else if (e.getActionCommand().equals(Enrichments.KEGG_ENRICHMENT.toString())) {
+              if (species!=null && listContainsGeneIDs && !listContainsCompoundIDs) {
+                // Share (and maybe reuse prefetched) mappings
+                GeneID2ListOfKEGGpathways geneMapper = preloader.acquireKeggPathwayMapping(species, getProgressBar());
+                acquiredKeggMapping = true;
+                KeggPathwayID2PathwayName pwNames = preloader.acquireKeggPathwayNames(getProgressBar());
+                acquiredKeggNames = true;
+                enrich = new KEGGPathwayEnrichment(species, geneMapper, pwNames, getProgressBar());
+              } else {
+                enrich = new KEGGPathwayEnrichment(species,listContainsGeneIDs,listContainsCompoundIDs,getProgressBar());
+              }
+            } else if (e.getActionCommand().equals(Enrichments.MSIGDB_ENRICHMENT.toString())) {
+              enrich = new MSigDB_GSEA_Enrichment(species, getProgressBar());
+            } else {
+              GUITools.showErrorMessage(source, String.format("Unknown enrichment command: %s", e.getActionCommand()));
+              return null;
+            }
+          } catch (IOException e1) {
+            GUITools.showErrorMessage(source, e1, "Could not read enrichment mapping.");
             return null;
           }
-        } catch (IOException e1) {
-          GUITools.showErrorMessage(source, e1, "Could not read enrichment mapping.");
-          return null;
-        }
-        
-        // Perform analysis
-        log.info(loadingString);
-        List<EnrichmentObject<String>> l=null;
-        /*if (geneList.get(0) instanceof mRNA) {
-          l = enrich.getEnrichments((List<mRNA>)geneList);
-        } else if (geneList.get(0) instanceof Integer) {
-          // Assume geneIDs
-          log.log(Level.INFO, "Received an Integer List for enrichment analysis. Assuming they are GeneIDs!");
-          l = enrich.getEnrichments((List<Integer>)geneList, IdentifierType.NCBI_GeneID);
-        } else if (geneList.get(0) instanceof EnrichmentObject) {
-          l = enrich.getEnrichments(EnrichmentObject.mergeGeneLists((Iterable<EnrichmentObject>) geneList));
-        } else {*/
-          //GUITools.showErrorMessage(source, String.format("Enrichment for %s is not yet implemented.", geneList.get(0).getClass()));
-        try {
-          l = enrich.getEnrichments(geneList,null,null);
-        } catch (Throwable e) {
-          e.printStackTrace();
-          GUITools.showErrorMessage(null, e);
+          
+          // Perform analysis
+          log.info(loadingString);
+          List<EnrichmentObject<String>> l=null;
+          /*if (geneList.get(0) instanceof mRNA) {
+            l = enrich.getEnrichments((List<mRNA>)geneList);
+          } else if (geneList.get(0) instanceof Integer) {
+            // Assume geneIDs
+            log.log(Level.INFO, "Received an Integer List for enrichment analysis. Assuming they are GeneIDs!");
+            l = enrich.getEnrichments((List<Integer>)geneList, IdentifierType.NCBI_GeneID);
+          } else if (geneList.get(0) instanceof EnrichmentObject) {
+            l = enrich.getEnrichments(EnrichmentObject.mergeGeneLists((Iterable<EnrichmentObject>) geneList));
+          } else {*/
+            //GUITools.showErrorMessage(source, String.format("Enrichment for %s is not yet implemented.", geneList.get(0).getClass()));
+          try {
+            l = enrich.getEnrichments(geneList,null,null);
+          } catch (Throwable e) {
+            e.printStackTrace();
+            GUITools.showErrorMessage(null, e);
+          }
+          //}
+          
+          // Inform user about results
+          if (l!=null && l.size()<1) {
+            GUITools.showMessage("Could not find any enriched objects.", enrich.getName());
+            return null; // Will close the tab on null-result.
+          } /*else {
+            System.out.println(l.toString().replace("]], [", "]]\n["));
+          }*/
+          
+          return l;
+        } finally {
+          if (acquiredGOMapping) preloader.releaseGOMapping(species);
+          if (acquiredGONames) preloader.releaseGONames(species);
+          if (acquiredKeggMapping) preloader.releaseKeggPathwayMapping(species);
+          if (acquiredKeggNames) preloader.releaseKeggPathwayNames();
         }
-        //}
-        
-        // Inform user about results
-        if (l!=null && l.size()<1) {
-          GUITools.showMessage("Could not find any enriched objects.", enrich.getName());
-          return null; // Will close the tab on null-result.
-        } /*else {
-          System.out.println(l.toString().replace("]], [", "]]\n["));
-        }*/
-        
-        return l;
       }
     };
     
@@ -445,6 +479,18 @@ public class EnrichmentActionListener implements ActionListener {
    * @return {@link JTableFilter} dialog.
    */
   public static JTableFilter showJTableFilter(IntegratorTabWithTable tab) {
+    return showJTableFilter(tab, (JTable) tab.getVisualization());
+  }
+  
+  /**
+   * Show and return a {@link JTableFilter} dialog for the given tab
+   * that filters the given <code>table</code> (e.g., a snapshot of the
+   * tab's table that can be filtered off the event dispatch thread).
+   * @param tab
+   * @param table
+   * @return {@link JTableFilter} dialog.
+   */
+  public static JTableFilter showJTableFilter(IntegratorTabWithTable tab, JTable table) {
     String typeName = IntegratorUI.getShortTypeNameForNS(tab.getDataContentType());
     if (typeName==null) typeName = ""; else typeName += "-";
     String fileName = tab.getName();
@@ -452,7 +498,7 @@ public class EnrichmentActionListener implements ActionListener {
     String moreTableInfoString = String.format("%stable%s", typeName, fileName);
     String title = String.format("Apply filter to %s to select genes for enrichment", moreTableInfoString);
     
-    JTableFilter filt = new JTableFilter((JTable) tab.getVisualization());
+    JTableFilter filt = new JTableFilter(table);
     tab.setDefaultInitialSelectionOfJTableFilter(filt);
     filt.setDescribingLabel(title);
     filt = JTableFilter.showDialog(tab, filt,title);
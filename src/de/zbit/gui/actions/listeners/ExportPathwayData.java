@@ -23,16 +23,26 @@ package de.zbit.gui.actions.listeners;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+import javax.swing.JFileChooser;
+import javax.swing.filechooser.FileFilter;
+
 import de.zbit.data.EnrichmentObject;
 import de.zbit.data.NameAndSignals;
 import de.zbit.data.Signal.SignalType;
@@ -45,20 +55,22 @@ import de.zbit.gui.actioncommand.ActionCommand;
 import de.zbit.gui.tabs.IntegratorTab;
 import de.zbit.gui.tabs.IntegratorTabWithTable;
 import de.zbit.gui.tabs.NameAndSignalsTab;
-import de.zbit.io.csv.CSVWriter;
 import de.zbit.io.filefilter.SBFileFilter;
 import de.zbit.mapper.GeneID2GeneSymbolMapper;
 import de.zbit.mapper.KeggGenesID2GeneID;
 import de.zbit.mapper.MappingUtils.IdentifierType;
 import de.zbit.mapper.enrichment.KeggPathway2KEGGGeneIDs;
-import de.zbit.util.ArrayUtils;
 import de.zbit.util.Species;
 import de.zbit.util.Utils;
 import de.zbit.util.objectwrapper.ValuePair;
+import de.zbit.utils.ParallelUtils;
 
 /**
  * For a given KEGG Pathway, this class exports all genes in this pathway
  * and associated experimental data from a given set of {@link NameAndSignals}.
+ * <p>If multiple pathways are selected, all pathways are exported at
+ * once to a user-selected directory (one file per pathway and,
+ * optionally, one combined file in long format).
  * 
  * @author Clemens Wrzodek
  * @version $Rev$
@@ -71,6 +83,16 @@ public class ExportPathwayData implements ActionListener {
    */
   BaseFrameTab source;
   
+  /**
+   * Name of the combined output file in long format.
+   */
+  public final static String combinedFileName = "All_pathways_long.txt";
+  
+  /**
+   * Written for missing values.
+   */
+  private final static String NA = "n/a";
+  
   /**
    * Action command for PATHWAY_EXPORT actions.
    */
@@ -85,6 +107,138 @@ public class ExportPathwayData implements ActionListener {
     }
   };
   
+  /**
+   * Everything that is required to export any pathway. Mappers and the
+   * gene id to data index are created only once and shared by all
+   * (concurrent) exports.
+   */
+  private static class ExportContext {
+    final KeggPathway2KEGGGeneIDs pw2g;
+    final KeggGenesID2GeneID kgGenes2entrez;
+    final GeneID2GeneSymbolMapper entrez2symbol;
+    
+    /**
+     * Gene id to all rows of the source data (or <code>null</code>).
+     */
+    final Map<Integer, Collection<NameAndSignals>> dataMap;
+    
+    /**
+     * All exported signals.
+     */
+    final List<ValuePair<String, SignalType>> signalDescriptors;
+    
+    /**
+     * @param spec
+     * @param signals source data (or <code>null</code>).
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    ExportContext(Species spec, Collection<? extends NameAndSignals> signals) throws Exception {
+      pw2g = new KeggPathway2KEGGGeneIDs(spec);
+      kgGenes2entrez = new KeggGenesID2GeneID(spec);
+      entrez2symbol = IntegratorUITools.get2GeneSymbolMapping(spec);
+      
+      // Index the data once by gene id
+      if (signals!=null && signals.size()>0) {
+        dataMap = new HashMap<Integer, Collection<NameAndSignals>>(signals.size());
+        for (NameAndSignals ns : signals) {
+          if (ns instanceof GeneID) {
+            Utils.addToMapOfSets(dataMap, new Integer(((GeneID) ns).getID()), ns);
+          }
+        }
+        
+        NameAndSignals item = signals.iterator().next();
+        Collection<ValuePair<String, SignalType>> desc = item.getSignalNames();
+        if (desc==null) {
+          signalDescriptors = Collections.emptyList();
+        } else {
+          // Sort
+          signalDescriptors = Utils.collectionToList(desc);
+          Collections.sort(signalDescriptors);
+        }
+      } else {
+        dataMap = null;
+        signalDescriptors = Collections.emptyList();
+      }
+    }
+    
+    /**
+     * @return the header of the exported tables.
+     */
+    List<String> getHeader() {
+      List<String> header = new ArrayList<String>();
+      header.add("KEGG_id");
+      header.add("Entrez");
+      header.add("Symbol");
+      if (dataMap!=null) {
+        header.add("Probe_id");
+        for (ValuePair<String, SignalType> vp : signalDescriptors) {
+          header.add(vp.getA()+"_"+vp.getB().toString());
+        }
+      }
+      return header;
+    }
+    
+    /**
+     * @param geneInPW all genes in the pathway (as KEGG Genes ID)
+     * @return one row per gene and probe.
+     * @throws Exception
+     */
+    List<String[]> getRows(Collection<String> geneInPW) throws Exception {
+      int columns = getHeader().size();
+      List<String[]> table = new ArrayList<String[]>(geneInPW.size());
+      for (String kgID : geneInPW) {
+        String[] row = new String[columns];
+        row[0] = kgID;
+        
+        // Add enrez ID and gene symbol
+        Integer entrez = kgGenes2entrez.map(kgID);
+        if (entrez==null || entrez<=0) {
+          for (int i=1; i<columns; i++) {
+            row[i] = NA;
+          }
+          table.add(row);
+          continue;
+        }
+        
+        // we HAVE an entrez id and can write additional information
+        row[1] = entrez.toString();
+        String symbol = entrez2symbol!=null?entrez2symbol.map(entrez):null;
+        row[2] = symbol!=null?symbol:NA;
+        
+        // Maybe export data
+        Collection<NameAndSignals> nses = dataMap!=null?dataMap.get(entrez):null;
+        if (nses==null || nses.size()<1) {
+          for (int i=3; i<columns; i++) {
+            row[i] = NA;
+          }
+          table.add(row);
+          continue;
+        }
+        
+        // Add a separate row for each probe (NameAndSignals)
+        for (NameAndSignals ns : nses) {
+          String[] newRow = row.clone();
+          Object probe = ns.getData(IdentifierType.Affymetrix.toString());
+          newRow[3] = probe!=null?probe.toString():NA;
+          
+          // Add all signal values
+          int i=4;
+          for (ValuePair<String, SignalType> desc : signalDescriptors) {
+            Number val = ns.getSignalValue(desc.getB(), desc.getA());
+            if (val == null || Double.isNaN(val.doubleValue())) {
+              newRow[i++] = NA;
+            } else {
+              newRow[i++] = Double.toString(val.doubleValue());
+            }
+          }
+          table.add(newRow);
+        }
+      }
+      return table;
+    }
+  }
+  
   
   /**
    * @param source The source tab from which this one originates. This
@@ -132,53 +286,169 @@ public class ExportPathwayData implements ActionListener {
         return;
       }
       
-      // For all KEGG Pathway ids export a file
-      for (final Object pw : geneList) {
+      // Export multiple pathways at once to a directory
+      if (geneList.size()>1) {
+        final File dir = GUITools.saveFileDialog(IntegratorUI.getInstance(), IntegratorUI.saveDir, false, false, true, 
+          JFileChooser.DIRECTORIES_ONLY, (FileFilter[])null);
+        if (dir==null) return;
+        IntegratorUI.saveDir = dir.getPath();
+        final boolean combined = GUITools.showQuestionMessage(IntegratorUI.getInstance(),
+          "Do you also want to write all pathways to one combined file in long format?", IntegratorUI.appName, "Yes", "No")==0;
         
-        // Get output file
-        String fileNameProposal = ((pw instanceof NameAndSignals)? (((NameAndSignals)pw).getName() + ".txt") : null);
-        final File f = GUITools.showSaveFileChooser(IntegratorUI.instance, IntegratorUI.saveDir, fileNameProposal, SBFileFilter.createTSVFileFilter());
-        if (f!=null) {
-          IntegratorUI.saveDir = f.getParent();
-          
-          // Export all pathway details in a separate thread.
-          Runnable r = new Runnable() {
-            @Override
-            public void run() {
-              try {
-                synchronized (geneList) {
-                  String pwId; EnrichmentObject<?> pwo=null;
-                  if (pw instanceof EnrichmentObject<?>) {
-                    pwo = (EnrichmentObject<?>) pw;
-                    pwId = pwo.getIdentifier().toString();
-                  } else {
-                    pwId = pw.toString();
-                  }
-                  if (pwId.startsWith("path:")) pwId = pwId.substring(5);
-                  
-                  // Export all data
-                  boolean ret = exportPathway(f, pwId, pwo, data);
-                  if (ret) {
-                    GUITools.showMessage("Saved table successfully to \"" + f.getPath() + "\".", IntegratorUI.appName);
-                  }
-                }
-              } catch (Throwable e) {
-                GUITools.showErrorMessage(IntegratorUI.getInstance(), e);
-              }
+        Runnable r = new Runnable() {
+          @Override
+          public void run() {
+            try {
+              int n = exportPathways(dir, geneList, data, combined);
+              GUITools.showMessage("Saved " + n + " pathway tables successfully to \"" + dir.getPath() + "\".", IntegratorUI.appName);
+            } catch (Throwable e) {
+              GUITools.showErrorMessage(IntegratorUI.getInstance(), e);
             }
-          };
-          IntegratorUITools.runInSwingWorker(r);
-          // -----
-          
-        }
+          }
+        };
+        IntegratorUITools.runInSwingWorker(r);
+        return;
+      }
+      
+      // Export a single pathway
+      final Object pw = geneList.get(0);
+      String fileNameProposal = ((pw instanceof NameAndSignals)? (((NameAndSignals)pw).getName() + ".txt") : null);
+      final File f = GUITools.showSaveFileChooser(IntegratorUI.instance, IntegratorUI.saveDir, fileNameProposal, SBFileFilter.createTSVFileFilter());
+      if (f!=null) {
+        IntegratorUI.saveDir = f.getParent();
         
+        // Export all pathway details in a separate thread.
+        Runnable r = new Runnable() {
+          @Override
+          public void run() {
+            try {
+              EnrichmentObject<?> pwo = (pw instanceof EnrichmentObject<?>)?(EnrichmentObject<?>) pw:null;
+              
+              // Export all data
+              boolean ret = exportPathway(f, getPathwayID(pw), pwo, data);
+              if (ret) {
+                GUITools.showMessage("Saved table successfully to \"" + f.getPath() + "\".", IntegratorUI.appName);
+              }
+            } catch (Throwable e) {
+              GUITools.showErrorMessage(IntegratorUI.getInstance(), e);
+            }
+          }
+        };
+        IntegratorUITools.runInSwingWorker(r);
+        // -----
       }
       
     }
   }
   
+  /**
+   * @param pw an {@link EnrichmentObject} or pathway id.
+   * @return the pathway id without "path:" prefix (e.g., "hsa00130").
+   */
+  private static String getPathwayID(Object pw) {
+    String pwId;
+    if (pw instanceof EnrichmentObject<?>) {
+      pwId = ((EnrichmentObject<?>) pw).getIdentifier().toString();
+    } else {
+      pwId = pw.toString();
+    }
+    if (pwId.startsWith("path:")) pwId = pwId.substring(5);
+    return pwId;
+  }
   
+  /**
+   * Exports all given pathways concurrently to the given directory. The
+   * mappers and the gene id to data index are only created once.
+   * 
+   * @param dir output directory
+   * @param pathways {@link EnrichmentObject}s or pathway ids.
+   * @param signals also write all signals from these {@link NameAndSignals}.
+   * @param combined if true, also writes all pathways to one file in long
+   * format (see {@link #combinedFileName}).
+   * @return number of written pathway tables.
+   * @throws Exception
+   */
+  public int exportPathways(File dir, List<?> pathways, Collection<? extends NameAndSignals> signals,
+    final boolean combined) throws Exception {
+    final ExportContext ctx = new ExportContext(getSpecies(), signals);
+    final File outDir = dir;
+    final AtomicInteger written = new AtomicInteger();
+    
+    // Write one file per pathway in parallel
+    List<Future<List<String[]>>> futures = new ArrayList<Future<List<String[]>>>(pathways.size());
+    final String[] pwIds = new String[pathways.size()];
+    final String[] pwNames = new String[pathways.size()];
+    for (int i=0; i<pathways.size(); i++) {
+      Object pw = pathways.get(i);
+      final EnrichmentObject<?> pwo = (pw instanceof EnrichmentObject<?>)?(EnrichmentObject<?>) pw:null;
+      pwIds[i] = getPathwayID(pw);
+      pwNames[i] = pwo!=null?pwo.getName():pwIds[i];
+      final File f = new File(outDir, getFileName(pwIds[i], pwo));
+      final String pwId = pwIds[i];
+      futures.add(ParallelUtils.getComputePool().submit(new Callable<List<String[]>>() {
+        public List<String[]> call() throws Exception {
+          List<String[]> rows = exportPathway(f, pwId, pwo, ctx);
+          if (rows!=null) written.incrementAndGet();
+          return combined?rows:null;
+        }
+      }));
+    }
+    List<List<String[]>> results = ParallelUtils.waitForAll(futures);
+    
+    if (!combined) return written.get();
+    
+    // Write all rows in long format (one row per pathway, gene, probe and signal)
+    Writer w = createWriter(new File(outDir, combinedFileName));
+    try {
+      List<String> header = new ArrayList<String>();
+      header.add("Pathway_id");
+      header.add("Pathway_name");
+      header.addAll(ctx.getHeader().subList(0, ctx.dataMap!=null?4:3));
+      if (ctx.signalDescriptors.size()>0) {
+        header.add("Signal");
+        header.add("Value");
+      }
+      writeRow(w, header.toArray(new String[header.size()]));
+      
+      int baseColumns = ctx.dataMap!=null?4:3;
+      String[] line = new String[header.size()];
+      for (int i=0; i<results.size(); i++) {
+        if (results.get(i)==null) continue;
+        line[0] = pwIds[i];
+        line[1] = pwNames[i];
+        for (String[] row: results.get(i)) {
+          System.arraycopy(row, 0, line, 2, baseColumns);
+          if (ctx.signalDescriptors.size()<1) {
+            writeRow(w, line);
+            continue;
+          }
+          for (int j=0; j<ctx.signalDescriptors.size(); j++) {
+            ValuePair<String, SignalType> desc = ctx.signalDescriptors.get(j);
+            line[line.length-2] = desc.getA()+"_"+desc.getB().toString();
+            line[line.length-1] = row[baseColumns+j];
+            writeRow(w, line);
+          }
+        }
+      }
+    } finally {
+      w.close();
+    }
+    
+    return written.get();
+  }
   
+  /**
+   * @param pwId
+   * @param pwo
+   * @return a valid file name for the given pathway.
+   */
+  private static String getFileName(String pwId, EnrichmentObject<?> pwo) {
+    String name = pwId;
+    if (pwo!=null && pwo.getName()!=null) {
+      name += "_" + pwo.getName();
+    }
+    return name.replaceAll("[\\\\/:*?\"<>|\\s]+", "_") + ".txt";
+  }
 
   /**
    * Export the given pathway as tabular file containing a list with all genes.
@@ -202,47 +472,45 @@ public class ExportPathwayData implements ActionListener {
    * @return {@code TRUE} if all went fine.
    */
   public boolean exportPathway(File outFile, String pwId, EnrichmentObject<?> pwo, Collection<? extends NameAndSignals> signals) {
-    
-    // XXX: This code is quite ineffective. It was enough for my purposes though...
     try {
-      Species spec = getSpecies();
-      KeggPathway2KEGGGeneIDs pw2g = new KeggPathway2KEGGGeneIDs(spec);
-      
-      // Required are IDs like "path:hsa00010". Ensure the prefix (which is usually omitted)
-      if (!pwId.contains(":")) pwId = "path:" + pwId.trim();
-      
-      // Get all genes in the pathway (as KEGG Genes ID)
-      Collection<String> geneInPW = pw2g.map(pwId);
-      if (geneInPW==null) {
+      ExportContext ctx = new ExportContext(getSpecies(), signals);
+      if (exportPathway(outFile, pwId, pwo, ctx)==null) {
         GUITools.showErrorMessage(null, "Could not detect data source for pathway export.");
         return false;
       }
-      pw2g = null; // Free resources
-      
-      // Prepare data
-      Map<Integer, Collection<NameAndSignals>> dataMap = null;
-      Collection<ValuePair<String, SignalType>> signalDescriptors = null;
-      if (signals!=null && signals.size()>0) {
-        dataMap = new HashMap<Integer, Collection<NameAndSignals>>(signals.size());
-        for (NameAndSignals ns : signals) {
-          if (ns instanceof GeneID) {
-            Utils.addToMapOfSets(dataMap, new Integer(((GeneID) ns).getID()), ns);
-          }
-        }
-        
-        NameAndSignals item = signals.iterator().next();
-        signalDescriptors = item.getSignalNames();
-        if (signalDescriptors==null) {
-          signalDescriptors = Collections.emptyList();
-        } else {
-          // Sort
-          signalDescriptors = Utils.collectionToList(signalDescriptors);
-          Collections.sort((List<ValuePair<String, SignalType>>)signalDescriptors);
-        }
-      }
+      return true;
       
-      // Create Comment
-      StringBuffer buf = new StringBuffer();
+    } catch (Exception e) {
+      e.printStackTrace();
+      GUITools.showErrorMessage(null, e, "Could not export pathway details.");
+    }
+    return false;
+  }
+  
+  /**
+   * Export the given pathway as tabular file containing a list with all genes.
+   * 
+   * @param outFile output file to be written
+   * @param pwId pathway id to export (e.g., "hsa00130").
+   * @param pwo optional parent {@link EnrichmentObject} (if applicable, may be null).
+   * @param ctx
+   * @return all written rows or <code>null</code> if the pathway is unknown.
+   * @throws Exception
+   */
+  private List<String[]> exportPathway(File outFile, String pwId, EnrichmentObject<?> pwo, ExportContext ctx) throws Exception {
+    // Required are IDs like "path:hsa00010". Ensure the prefix (which is usually omitted)
+    if (!pwId.contains(":")) pwId = "path:" + pwId.trim();
+    
+    // Get all genes in the pathway (as KEGG Genes ID)
+    Collection<String> geneInPW = ctx.pw2g.map(pwId);
+    if (geneInPW==null) {
+      log.warning("Unknown pathway " + pwId);
+      return null;
+    }
+    
+    // Create Comment
+    StringBuffer buf = new StringBuffer();
+    if (pwo!=null) {
       buf.append("Pathway '");
       buf.append(pwo.getName());
       buf.append("', " + pwId);
@@ -251,105 +519,53 @@ public class ExportPathwayData implements ActionListener {
       buf.append('\n');
       buf.append("Pathway size: " + pwo.getTotalGenesInClass() + "; ");
       buf.append("Enriched genes: " + pwo.getNumberOfEnrichedGenesInClass());
-      
-      // Load additional mappers
-      KeggGenesID2GeneID kgGenes2entrez = new KeggGenesID2GeneID(spec);
-      GeneID2GeneSymbolMapper entrez2symbol = new GeneID2GeneSymbolMapper(spec.getCommonName());
-      
-      // Create Header
-      List<String> header = new ArrayList<String>();
-      header.add("KEGG_id");
-      header.add("Entrez");
-      header.add("Symbol");
-      if (dataMap!=null) {
-        header.add("Probe_id");
-        for (ValuePair<String, SignalType> vp : signalDescriptors) {
-          header.add(vp.getA()+"_"+vp.getB().toString());
-        }
+    } else {
+      buf.append("Pathway " + pwId + ".");
+    }
+    
+    // Export each gene in pw with additional infos
+    List<String[]> table = ctx.getRows(geneInPW);
+    
+    // Write the table
+    Writer w = createWriter(outFile);
+    try {
+      for (String comment: buf.toString().split("\n")) {
+        w.write("# ");
+        w.write(comment);
+        w.write('\n');
       }
-      
-      // Export each gene in pw with additional infos
-      Collection<List<String>> table = new LinkedList<List<String>>();
-      for (String kgID : geneInPW) {
-        boolean rowAdded = false;
-        List<String> row = new ArrayList<String>();
-        row.add(kgID);
-        
-        // Add enrez ID and gene symbol
-        Integer entrez = kgGenes2entrez.map(kgID);
-        if (entrez==null || entrez<=0) {
-          row.add("n/a"); //Entrez
-          row.add("n/a"); //Symbol
-          
-          if (dataMap!=null) {
-            row.add("n/a"); // Affy
-            for (int i=0; i<signalDescriptors.size(); i++) {
-              row.add("n/a"); // Signals
-            }
-          }
-          
-        } else {
-          // we HAVE an entrez id and can write additional information
-          row.add(entrez.toString());
-          String symbol = entrez2symbol.map(entrez);
-          if (symbol==null) {
-            row.add("n/a");
-          } else {
-            row.add(symbol);
-          }
-          
-          
-          // Maybe export data
-          if (dataMap!=null) {
-            Collection<NameAndSignals> nses = dataMap.get(entrez);
-            if (nses != null && nses.size()>0) {
-              for(NameAndSignals ns : nses) {
-                ArrayList<String> newRow = new ArrayList<String>(row);
-                if (ns.getData(IdentifierType.Affymetrix.toString())!=null) {
-                  newRow.add(ns.getData(IdentifierType.Affymetrix.toString()).toString());
-                } else {
-                  newRow.add("n/a");
-                }
-                
-                // Add all signal values
-                for (ValuePair<String, SignalType> desc : signalDescriptors) {
-                  Number val = ns.getSignalValue(desc.getB(), desc.getA());
-                  if (val == null || Double.isNaN(val.doubleValue())) {
-                    newRow.add("n/a");
-                  } else {
-                    newRow.add(Double.toString(val.doubleValue()));
-                  }
-                }
-                
-                // Add a separate row for each probe (NameAndSignals)
-                table.add(newRow);
-                rowAdded = true;
-              }
-            } else {
-              row.add("n/a"); // Affy
-              for (int i=0; i<signalDescriptors.size(); i++) {
-                row.add("n/a"); // Signals
-              }
-            }
-          }
-        }
-        
-        // If we DONT have signals, we still need to add the current row to our table
-        if (!rowAdded) {
-          table.add(row);
-        }
+      List<String> header = ctx.getHeader();
+      writeRow(w, header.toArray(new String[header.size()]));
+      for (String[] row: table) {
+        writeRow(w, row);
       }
-      
-      // Write the table
-      CSVWriter w = new CSVWriter();
-      w.write(ArrayUtils.toArray(table), header.toArray(), buf.toString(), outFile);
-      return true;
-      
-    } catch (Exception e) {
-      e.printStackTrace();
-      GUITools.showErrorMessage(null, e, "Could not export pathway details.");
+    } finally {
+      w.close();
     }
-    return false;
+    return table;
+  }
+  
+  /**
+   * @param f
+   * @return a buffered writer on a {@link java.nio.channels.FileChannel}.
+   * @throws IOException
+   */
+  private static Writer createWriter(File f) throws IOException {
+    return new BufferedWriter(Channels.newWriter(new FileOutputStream(f).getChannel(), "UTF-8"), 1<<16);
+  }
+  
+  /**
+   * Writes one tab-separated line.
+   * @param w
+   * @param row
+   * @throws IOException
+   */
+  private static void writeRow(Writer w, String[] row) throws IOException {
+    for (int i=0; i<row.length; i++) {
+      if (i>0) w.write('\t');
+      if (row[i]!=null) w.write(row[i]);
+    }
+    w.write('\n');
   }
 
   /**
@@ -561,7 +561,7 @@ public class KEGGPathwayActionListener implements ActionListener, PropertyChange
    */
   TranslatorPanel<Graph2D> visualizePathway(String pwId, EnrichmentObject<?> pwo) {
     //Create the translator panel
-    IntegratorPathwayPanel pwTab = new IntegratorPathwayPanel(pwId, this);
+    IntegratorPathwayPanel pwTab = IntegratorPathwayPanel.createFromCache(pwId, this);
     String name = pwId;
     if (pwo!=null) {
       pwTab.setData(TPAction.HIGHLIGHT_ENRICHED_GENES_AND_COMPOUNDS.toString(), pwo);
@@ -592,7 +592,7 @@ public class KEGGPathwayActionListener implements ActionListener, PropertyChange
     //Create the translator panel
     String pwId = pwSel.getSelectedPathwayID();
     if (pwId==null) return null;
-    IntegratorPathwayPanel pwTab = new IntegratorPathwayPanel(pwId, this);
+    IntegratorPathwayPanel pwTab = IntegratorPathwayPanel.createFromCache(pwId, this);
     
     // Try to get species
     Species spec = IntegratorUITools.getSpeciesFromSelector(pwSel.getOrganismSelector());
@@ -621,7 +621,7 @@ public class KEGGPathwayActionListener implements ActionListener, PropertyChange
     String organism = null;
     if (source instanceof IntegratorTab) {
       IntegratorTab<?> source = (IntegratorTab<?>) this.source;
-      if (source.getData()==null) return; // Is Ready check
+      if (!source.isReady()) return;
       if (source.getSpecies(false)!=null) 
         organism = source.getSpecies().getKeggAbbr();
     } else if (source instanceof TranslatorPanel) {
@@ -0,0 +1,152 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.gui.customcomponents;
+
+import java.lang.reflect.InvocationTargetException;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+
+/**
+ * An immutable copy of a {@link TableModel} that may be read from
+ * any thread. Column names and classes are taken from the source
+ * model on creation. The values of a column are copied on the event
+ * dispatch thread, when the column is accessed for the first time.
+ * Hence, predicates can be evaluated in the background without
+ * touching the (not thread-safe) source model.
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class TableModelSnapshot extends AbstractTableModel {
+  private static final long serialVersionUID = -1529432931870470212L;
+
+  private final TableModel source;
+  
+  private final int rowCount;
+  
+  private final String[] columnNames;
+  
+  private final Class<?>[] columnClasses;
+  
+  /**
+   * Copied columns (<code>null</code> for columns that have not
+   * yet been accessed).
+   */
+  private final Object[][] columns;
+  
+  /**
+   * Must be called from the event dispatch thread.
+   * @param source
+   */
+  public TableModelSnapshot(TableModel source) {
+    super();
+    this.source = source;
+    rowCount = source.getRowCount();
+    columnNames = new String[source.getColumnCount()];
+    columnClasses = new Class<?>[columnNames.length];
+    for (int i=0; i<columnNames.length; i++) {
+      columnNames[i] = source.getColumnName(i);
+      columnClasses[i] = source.getColumnClass(i);
+    }
+    columns = new Object[columnNames.length][];
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.table.TableModel#getRowCount()
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.table.TableModel#getColumnCount()
+   */
+  public int getColumnCount() {
+    return columnNames.length;
+  }
+  
+  /* (non-Javadoc)
+   * @see javax.swing.table.AbstractTableModel#getColumnName(int)
+   */
+  @Override
+  public String getColumnName(int column) {
+    return columnNames[column];
+  }
+  
+  /* (non-Javadoc)
+   * @see javax.swing.table.AbstractTableModel#getColumnClass(int)
+   */
+  @Override
+  public Class<?> getColumnClass(int columnIndex) {
+    return columnClasses[columnIndex];
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.table.TableModel#getValueAt(int, int)
+   */
+  public Object getValueAt(int rowIndex, int columnIndex) {
+    return getColumn(columnIndex)[rowIndex];
+  }
+  
+  /**
+   * @param columnIndex
+   * @return all values of the given column. Copies the column on
+   * the event dispatch thread, if required.
+   */
+  public Object[] getColumn(final int columnIndex) {
+    synchronized (columns) {
+      if (columns[columnIndex]!=null) return columns[columnIndex];
+    }
+    
+    final Object[] values = new Object[rowCount];
+    Runnable copy = new Runnable() {
+      public void run() {
+        // The source might have changed in the meantime
+        int n = Math.min(rowCount, source.getRowCount());
+        boolean valid = columnIndex<source.getColumnCount();
+        for (int i=0; valid && i<n; i++) {
+          values[i] = source.getValueAt(i, columnIndex);
+        }
+      }
+    };
+    if (SwingUtilities.isEventDispatchThread()) {
+      copy.run();
+    } else {
+      try {
+        SwingUtilities.invokeAndWait(copy);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while copying a table column.", e);
+      } catch (InvocationTargetException e) {
+        throw new IllegalStateException("Could not copy a table column.", e.getCause());
+      }
+    }
+    
+    synchronized (columns) {
+      columns[columnIndex] = values;
+    }
+    return values;
+  }
+  
+}
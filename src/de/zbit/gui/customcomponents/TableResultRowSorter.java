@@ -0,0 +1,671 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.gui.customcomponents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.RowFilter;
+import javax.swing.SortOrder;
+import javax.swing.SwingWorker;
+import javax.swing.table.TableModel;
+import javax.swing.table.TableRowSorter;
+
+import de.zbit.utils.IndexSort;
+
+/**
+ * A {@link TableRowSorter} for {@link TableResultTableModel}s that
+ * sorts and filters on primitive column arrays (see
+ * {@link TableResultTableModel#getNumericColumn(int)}). Sorting and
+ * filtering is performed off the event dispatch thread and sorting is
+ * additionally parallelized. {@link RowFilter}s are not required to be
+ * thread-safe and are thus evaluated on a single thread. They only see
+ * a {@link TableModelSnapshot} and never touch the model off the event
+ * dispatch thread.
+ * The table keeps showing the previous order, until the new one is
+ * available.
+ * <p>Sort permutations are cached per column and the result of the
+ * last {@link RowFilter} is cached, until the model changes.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class TableResultRowSorter extends TableRowSorter<TableModel> {
+  public static final transient Logger log = Logger.getLogger(TableResultRowSorter.class.getName());
+
+  /**
+   * Maximum number of cached sort permutations.
+   */
+  private final static int MAX_CACHED_PERMUTATIONS = 8;
+
+  private final TableResultTableModel<?> model;
+
+  private List<SortKey> sortKeys = Collections.emptyList();
+
+  private RowFilter<? super TableModel, ? super Integer> filter = null;
+
+  /**
+   * Rows of the model that should be visible (<code>null</code>
+   * to show all rows). Applied in addition to {@link #filter}.
+   */
+  private boolean[] visibleModelRows = null;
+
+  /**
+   * Current mapping from view to model indices (<code>null</code>
+   * for the identity).
+   */
+  private int[] viewToModel = null;
+
+  /**
+   * Current mapping from model to view indices (<code>null</code>
+   * for the identity).
+   */
+  private int[] modelToView = null;
+
+  /**
+   * Cached sort permutations (key is created by {@link #getCacheKey(List)}).
+   */
+  private final Map<String, int[]> sortCache;
+
+  /**
+   * Filter and result of the last filter evaluation.
+   */
+  private RowFilter<? super TableModel, ? super Integer> cachedFilter = null;
+  private boolean[] cachedFilterResult = null;
+
+  /**
+   * Incremented on every requested update. Results of outdated
+   * workers are discarded.
+   */
+  private int generation = 0;
+
+  /**
+   * True while a new mapping is computed in the background.
+   */
+  private boolean updatePending = false;
+
+  /**
+   * Tasks to run once the pending mapping has been applied
+   * (see {@link #invokeWhenApplied(Runnable)}).
+   */
+  private final List<Runnable> whenApplied = new ArrayList<Runnable>();
+
+  /**
+   * @param model
+   */
+  public TableResultRowSorter(TableResultTableModel<?> model) {
+    super(model);
+    this.model = model;
+    sortCache = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+      private static final long serialVersionUID = 2519036870591452707L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+        return size()>MAX_CACHED_PERMUTATIONS;
+      }
+    };
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#toggleSortOrder(int)
+   */
+  @Override
+  public void toggleSortOrder(int column) {
+    if (!isSortable(column)) return;
+    List<SortKey> keys = new ArrayList<SortKey>(sortKeys);
+    SortKey sortKey;
+    int index;
+    for (index=keys.size()-1; index>=0; index--) {
+      if (keys.get(index).getColumn()==column) break;
+    }
+    if (index==-1) {
+      // Key doesn't exist
+      sortKey = new SortKey(column, SortOrder.ASCENDING);
+      keys.add(0, sortKey);
+    } else if (index==0) {
+      // It's the primary sorting key, toggle it
+      SortOrder order = keys.get(0).getSortOrder()==SortOrder.ASCENDING ?
+          SortOrder.DESCENDING : SortOrder.ASCENDING;
+      keys.set(0, new SortKey(column, order));
+    } else {
+      // It's not the first, but was sorted on, remove old entry
+      keys.remove(index);
+      keys.add(0, new SortKey(column, SortOrder.ASCENDING));
+    }
+    if (keys.size()>getMaxSortKeys()) {
+      keys = keys.subList(0, getMaxSortKeys());
+    }
+    setSortKeys(keys);
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#setSortKeys(java.util.List)
+   */
+  @Override
+  public void setSortKeys(List<? extends SortKey> keys) {
+    List<SortKey> newKeys = new ArrayList<SortKey>();
+    if (keys!=null) {
+      for (SortKey key: keys) {
+        if (key!=null && key.getSortOrder()!=SortOrder.UNSORTED) {
+          newKeys.add(key);
+        }
+      }
+    }
+    if (!newKeys.equals(sortKeys)) {
+      sortKeys = Collections.unmodifiableList(newKeys);
+      fireSortOrderChanged();
+      update();
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#getSortKeys()
+   */
+  @Override
+  public List<? extends SortKey> getSortKeys() {
+    if (sortKeys==null) {
+      // Called during construction
+      return Collections.emptyList();
+    }
+    return sortKeys;
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#setRowFilter(javax.swing.RowFilter)
+   */
+  @Override
+  public void setRowFilter(RowFilter<? super TableModel, ? super Integer> filter) {
+    this.filter = filter;
+    if (sortCache!=null) update(); // Null during construction
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#getRowFilter()
+   */
+  @Override
+  public RowFilter<? super TableModel, ? super Integer> getRowFilter() {
+    return filter;
+  }
+
+  /**
+   * Restricts the table to the given rows. This is much faster than
+   * an equivalent {@link RowFilter}.
+   * @param modelRows indices of all visible rows in the model or
+   * <code>null</code> to show all rows.
+   */
+  public void setVisibleModelRows(Collection<Integer> modelRows) {
+    if (modelRows==null) {
+      visibleModelRows = null;
+    } else {
+      visibleModelRows = new boolean[getModelRowCount()];
+      for (Integer row: modelRows) {
+        if (row!=null && row>=0 && row<visibleModelRows.length) {
+          visibleModelRows[row] = true;
+        }
+      }
+    }
+    update();
+  }
+
+  /**
+   * @param modelRows all visible rows in the model or
+   * <code>null</code> to show all rows.
+   * @see #setVisibleModelRows(Collection)
+   */
+  public void setVisibleModelRows(BitSet modelRows) {
+    if (modelRows==null) {
+      visibleModelRows = null;
+    } else {
+      visibleModelRows = new boolean[getModelRowCount()];
+      for (int row=modelRows.nextSetBit(0); row>=0 && row<visibleModelRows.length; row=modelRows.nextSetBit(row+1)) {
+        visibleModelRows[row] = true;
+      }
+    }
+    update();
+  }
+
+  /**
+   * Runs the given task on the event dispatch thread, as soon as
+   * the view reflects all previous changes to the sort keys and
+   * filters (e.g., to select rows by their view index). If no new
+   * view is computed, the task is run immediately. Must be called
+   * from the event dispatch thread.
+   * @param task
+   */
+  public void invokeWhenApplied(Runnable task) {
+    if (updatePending) {
+      whenApplied.add(task);
+    } else {
+      task.run();
+    }
+  }
+
+  /**
+   * Runs all tasks that wait for the current view.
+   */
+  private void runWhenApplied() {
+    updatePending = false;
+    if (whenApplied.isEmpty()) return;
+    List<Runnable> tasks = new ArrayList<Runnable>(whenApplied);
+    whenApplied.clear();
+    for (Runnable task: tasks) {
+      try {
+        task.run();
+      } catch (Exception e) {
+        log.log(Level.WARNING, "Could not run task after sorting.", e);
+      }
+    }
+  }
+
+  /**
+   * @return true if any rows are currently hidden by a
+   * {@link RowFilter} or {@link #setVisibleModelRows(Collection)}.
+   */
+  public boolean isFiltered() {
+    return filter!=null || visibleModelRows!=null;
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#convertRowIndexToModel(int)
+   */
+  @Override
+  public int convertRowIndexToModel(int index) {
+    int[] v2m = viewToModel;
+    if (v2m==null) {
+      if (index<0 || index>=getModelRowCount()) {
+        throw new IndexOutOfBoundsException("Invalid index");
+      }
+      return index;
+    }
+    return v2m[index];
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#convertRowIndexToView(int)
+   */
+  @Override
+  public int convertRowIndexToView(int index) {
+    int[] m2v = modelToView;
+    if (m2v==null) {
+      if (index<0 || index>=getModelRowCount()) {
+        throw new IndexOutOfBoundsException("Invalid index");
+      }
+      return index;
+    }
+    return m2v[index];
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#getViewRowCount()
+   */
+  @Override
+  public int getViewRowCount() {
+    int[] v2m = viewToModel;
+    return v2m==null?getModelRowCount():v2m.length;
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#getModelRowCount()
+   */
+  @Override
+  public int getModelRowCount() {
+    return getModel().getRowCount();
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#sort()
+   */
+  @Override
+  public void sort() {
+    if (sortCache!=null) update(); // Null during construction
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#modelStructureChanged()
+   */
+  @Override
+  public void modelStructureChanged() {
+    if (sortCache==null) {
+      // Called during construction
+      super.modelStructureChanged();
+      return;
+    }
+    invalidate();
+    sortKeys = Collections.emptyList();
+    visibleModelRows = null;
+    if (!isMappingValid()) apply(null);
+    update();
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#allRowsChanged()
+   */
+  @Override
+  public void allRowsChanged() {
+    invalidate();
+    if (visibleModelRows!=null && visibleModelRows.length!=getModelRowCount()) {
+      // Visible rows refer to an old version of the model
+      visibleModelRows = null;
+    }
+    // Keep the current mapping until the new one is ready, if possible
+    if (!isMappingValid()) apply(null);
+    update();
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#rowsInserted(int, int)
+   */
+  @Override
+  public void rowsInserted(int firstRow, int endRow) {
+    allRowsChanged();
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#rowsDeleted(int, int)
+   */
+  @Override
+  public void rowsDeleted(int firstRow, int endRow) {
+    allRowsChanged();
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#rowsUpdated(int, int)
+   */
+  @Override
+  public void rowsUpdated(int firstRow, int endRow) {
+    // Keep the current mapping until the new one is ready
+    invalidate();
+    update();
+  }
+
+  /* (non-Javadoc)
+   * @see javax.swing.DefaultRowSorter#rowsUpdated(int, int, int)
+   */
+  @Override
+  public void rowsUpdated(int firstRow, int endRow, int column) {
+    rowsUpdated(firstRow, endRow);
+  }
+
+  /**
+   * @return false if the current mapping refers to a model with
+   * a different number of rows and can thus not be shown any longer.
+   */
+  private boolean isMappingValid() {
+    int[] m2v = modelToView;
+    return m2v==null || m2v.length==getModelRowCount();
+  }
+
+  /**
+   * Removes all cached permutations and filter results.
+   */
+  private void invalidate() {
+    synchronized (sortCache) {
+      sortCache.clear();
+    }
+    synchronized (this) {
+      cachedFilter = null;
+      cachedFilterResult = null;
+    }
+  }
+
+  /**
+   * Computes the new view in the background and applies it on the
+   * event dispatch thread, when it is ready. Must be called from the
+   * event dispatch thread.
+   */
+  private void update() {
+    final int currentGeneration = ++generation;
+    final List<SortKey> keys = sortKeys;
+    final RowFilter<? super TableModel, ? super Integer> rowFilter = filter;
+    final boolean[] visible = visibleModelRows;
+    final TableModel snapshot = rowFilter==null ? null : new TableModelSnapshot(model);
+
+    if (keys.isEmpty() && rowFilter==null && visible==null) {
+      // Nothing to compute
+      if (viewToModel!=null) apply(null);
+      runWhenApplied();
+      return;
+    }
+
+    SwingWorker<int[], Void> worker = new SwingWorker<int[], Void>() {
+      @Override
+      protected int[] doInBackground() throws Exception {
+        return computeViewToModel(keys, rowFilter, snapshot, visible);
+      }
+      @Override
+      protected void done() {
+        if (currentGeneration!=generation || isCancelled()) return;
+        try {
+          apply(get());
+        } catch (Exception e) {
+          log.log(Level.WARNING, "Could not sort or filter the table.", e);
+        }
+        runWhenApplied();
+      }
+    };
+    updatePending = true;
+    worker.execute();
+  }
+
+  /**
+   * Sets a new view and notifies all listeners.
+   * @param newViewToModel the new view or <code>null</code> for the identity.
+   */
+  private void apply(int[] newViewToModel) {
+    int[] lastViewToModel = viewToModel;
+    if (lastViewToModel==null) {
+      lastViewToModel = IndexSort.identity(Math.min(getModelRowCount(), getViewRowCount()));
+    }
+
+    int[] newModelToView = null;
+    if (newViewToModel!=null) {
+      newModelToView = new int[getModelRowCount()];
+      Arrays.fill(newModelToView, -1);
+      for (int i=0; i<newViewToModel.length; i++) {
+        newModelToView[newViewToModel[i]] = i;
+      }
+    }
+    viewToModel = newViewToModel;
+    modelToView = newModelToView;
+
+    fireRowSorterChanged(lastViewToModel);
+  }
+
+  /**
+   * @param keys
+   * @param rowFilter
+   * @param snapshot copy of the model to evaluate the <code>rowFilter</code> on.
+   * @param visible
+   * @return the view to model mapping for the given sort keys and filters.
+   * @throws ExecutionException
+   */
+  private int[] computeViewToModel(List<SortKey> keys, RowFilter<? super TableModel, ? super Integer> rowFilter,
+    TableModel snapshot, boolean[] visible) throws ExecutionException {
+    int[] order = keys.isEmpty()?null:getSortPermutation(keys);
+    boolean[] include = rowFilter==null?null:getFilterResult(rowFilter, snapshot);
+
+    int n = getModelRowCount();
+    if (include==null && visible==null) {
+      return order!=null?order:IndexSort.identity(n);
+    }
+
+    int[] ret = new int[n];
+    int count = 0;
+    for (int i=0; i<n; i++) {
+      int row = order!=null?order[i]:i;
+      if ((include==null || (row<include.length && include[row])) && (visible==null || (row<visible.length && visible[row]))) {
+        ret[count++] = row;
+      }
+    }
+    return Arrays.copyOf(ret, count);
+  }
+
+  /**
+   * @param keys
+   * @return the (possibly cached) permutation that sorts all
+   * model rows according to the given keys.
+   * @throws ExecutionException
+   */
+  private int[] getSortPermutation(List<SortKey> keys) throws ExecutionException {
+    String cacheKey = getCacheKey(keys);
+    synchronized (sortCache) {
+      int[] cached = sortCache.get(cacheKey);
+      if (cached!=null) return cached;
+    }
+
+    final IndexSort.IndexComparator[] comparators = new IndexSort.IndexComparator[keys.size()];
+    for (int i=0; i<keys.size(); i++) {
+      SortKey key = keys.get(i);
+      comparators[i] = createComparator(key.getColumn(), key.getSortOrder()==SortOrder.ASCENDING);
+    }
+    int[] order = IndexSort.identity(getModelRowCount());
+    IndexSort.parallelSort(order, new IndexSort.IndexComparator() {
+      public int compare(int a, int b) {
+        for (IndexSort.IndexComparator c: comparators) {
+          int r = c.compare(a, b);
+          if (r!=0) return r;
+        }
+        return 0;
+      }
+    });
+
+    synchronized (sortCache) {
+      sortCache.put(cacheKey, order);
+    }
+    return order;
+  }
+
+  /**
+   * @param keys
+   * @return a unique key for the given sort keys.
+   */
+  private static String getCacheKey(List<SortKey> keys) {
+    StringBuilder b = new StringBuilder();
+    for (SortKey key: keys) {
+      b.append(key.getColumn());
+      b.append(key.getSortOrder()==SortOrder.ASCENDING?'A':'D');
+    }
+    return b.toString();
+  }
+
+  /**
+   * @param column
+   * @param ascending
+   * @return a thread-safe comparator for model rows. Missing values
+   * are always sorted to the end.
+   * @throws ExecutionException
+   */
+  private IndexSort.IndexComparator createComparator(int column, final boolean ascending) throws ExecutionException {
+    double[] numeric = model.getNumericColumn(column);
+    if (numeric!=null) {
+      return IndexSort.createComparator(numeric, ascending);
+    }
+
+    final Object[] values = model.getObjectColumn(column);
+    return new IndexSort.IndexComparator() {
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      public int compare(int a, int b) {
+        Object va = values[a], vb = values[b];
+        if (va==null || vb==null) {
+          return va==vb ? 0 : (va==null ? 1 : -1);
+        }
+        int r;
+        if (va.getClass().equals(vb.getClass())) {
+          r = ((Comparable)va).compareTo(vb);
+        } else {
+          r = va.toString().compareToIgnoreCase(vb.toString());
+        }
+        return ascending ? r : -r;
+      }
+    };
+  }
+
+  /**
+   * Evaluates the given filter on all model rows. This is done
+   * sequentially, because {@link RowFilter}s may keep state (e.g.,
+   * {@link RowFilter#regexFilter(String, int...)} shares one matcher).
+   * @param rowFilter
+   * @param snapshot copy of the model that is safe to read from this thread.
+   * @return the (possibly cached) filter result for all model rows.
+   */
+  private boolean[] getFilterResult(RowFilter<? super TableModel, ? super Integer> rowFilter, TableModel snapshot) {
+    synchronized (this) {
+      if (rowFilter==cachedFilter && cachedFilterResult!=null) {
+        return cachedFilterResult;
+      }
+    }
+
+    boolean[] include = new boolean[snapshot.getRowCount()];
+    ModelEntry entry = new ModelEntry(snapshot);
+    for (int i=0; i<include.length; i++) {
+      entry.row = i;
+      include[i] = rowFilter.include(entry);
+    }
+
+    synchronized (this) {
+      cachedFilter = rowFilter;
+      cachedFilterResult = include;
+    }
+    return include;
+  }
+
+  /**
+   * A reusable {@link RowFilter.Entry} for one row of the model.
+   */
+  private static class ModelEntry extends RowFilter.Entry<TableModel, Integer> {
+    private final TableModel model;
+    int row;
+
+    ModelEntry(TableModel model) {
+      this.model = model;
+    }
+
+    @Override
+    public TableModel getModel() {
+      return model;
+    }
+
+    @Override
+    public int getValueCount() {
+      return model.getColumnCount();
+    }
+
+    @Override
+    public Object getValue(int index) {
+      return model.getValueAt(row, index);
+    }
+
+    @Override
+    public Integer getIdentifier() {
+      return row;
+    }
+  }
+
+}
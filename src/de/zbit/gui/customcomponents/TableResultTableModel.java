@@ -30,7 +30,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 import javax.swing.JComponent;
@@ -38,6 +42,7 @@ import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
 import javax.swing.JTable;
 import javax.swing.border.MatteBorder;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableModel;
@@ -46,6 +51,7 @@ import javax.swing.table.TableRowSorter;
 import de.zbit.data.EnrichmentObject;
 import de.zbit.data.NameAndSignals;
 import de.zbit.data.PairedNS;
+import de.zbit.data.PairedNSList;
 import de.zbit.data.Signal;
 import de.zbit.data.TableResult;
 import de.zbit.data.id.CompoundID;
@@ -69,6 +75,7 @@ import de.zbit.sequence.region.Region;
 import de.zbit.util.SortedArrayList;
 import de.zbit.util.Species;
 import de.zbit.util.StringUtil;
+import de.zbit.utils.ParallelUtils;
 
 /**
  * A {@link TableModel} that can be used to visualize a {@link TableResult} class as {@link JTable}.
@@ -96,6 +103,19 @@ public class TableResultTableModel<T extends TableResult> extends AbstractTableM
    */
   private boolean includeRowIndex;
   
+  /**
+   * Cached primitive values of numeric columns (key is the table column
+   * index). <code>null</code> values mark non-numeric columns.
+   * Cleared on every {@link #fireTableChanged(TableModelEvent)}.
+   */
+  private final Map<Integer, double[]> numericColumns = new HashMap<Integer, double[]>();
+  
+  /**
+   * Cached (comparable) values of non-numeric columns (key is the table
+   * column index). Cleared on every {@link #fireTableChanged(TableModelEvent)}.
+   */
+  private final Map<Integer, Object[]> objectColumns = new HashMap<Integer, Object[]>();
+  
   public TableResultTableModel(List<T> ns) {
     this(ns, true);
   }
@@ -111,6 +131,24 @@ public class TableResultTableModel<T extends TableResult> extends AbstractTableM
   public List<T> getNameAndSignalsList() {
     return ns;
   }
+  
+  /**
+   * Replaces the underlying list with an equal one (i.e., the same
+   * rows in the same order). No event is fired, such that the current
+   * sorting and filtering of all tables that use this model is kept
+   * and no values must be read from the new list. Only cached columns
+   * are invalidated.
+   * @param ns
+   */
+  public void setNameAndSignalsList(List<T> ns) {
+    this.ns = ns;
+    synchronized (numericColumns) {
+      numericColumns.clear();
+    }
+    synchronized (objectColumns) {
+      objectColumns.clear();
+    }
+  }
 
   /* (non-Javadoc)
    * @see javax.swing.table.TableModel#getColumnCount()
@@ -146,16 +184,29 @@ public class TableResultTableModel<T extends TableResult> extends AbstractTableM
       columnIndex = columnIndex-1;
     }
     
-    Object o = getValueAt(ns.get(rowIndex), columnIndex);
+    Object o = getValueAt(ns, rowIndex, columnIndex);
     
     // Change geneID "-1" to "not found"
     if (o instanceof Number && o.equals(minusOne)) {
-      if (getColumnName(rawColumnIndex).endsWith(GeneIDHeader)) {
-        // endsWith, because of paired tables and such.
+      return replaceNotFoundGeneID(o, getColumnName(rawColumnIndex));
+    }
+    
+    return o;
+  }
+  
+  /**
+   * Changes geneID "-1" to "Not found", like {@link #getValueAt(int, int)}.
+   * @param o a value, as returned by {@link #getValueAt(List, int, int)}.
+   * @param columnName name of the column of <code>o</code>.
+   * @return <code>o</code> or "Not found".
+   */
+  public static Object replaceNotFoundGeneID(Object o, String columnName) {
+    if (o instanceof Number && o.equals(minusOne) && columnName!=null) {
+      // endsWith, because of paired tables and such.
+      if (columnName.endsWith(GeneIDHeader)) {
         return "Not found";
       }
     }
-    
     return o;
   }
 
@@ -167,7 +218,55 @@ public class TableResultTableModel<T extends TableResult> extends AbstractTableM
    * @return
    */
   public static<A extends TableResult> Object getValueAt(A ns, int columnIndex) {
-    Object o = ns.getObjectAtColumn(columnIndex);
+    return toDisplayValue(ns.getObjectAtColumn(columnIndex));
+  }
+  
+  /**
+   * Like {@link #getValueAt(TableResult, int)}, but does not create
+   * (and keep) {@link PairedNS} instances of {@link PairedNSList}s.
+   * @param list
+   * @param row
+   * @param columnIndex
+   * @return
+   */
+  public static Object getValueAt(List<? extends TableResult> list, int row, int columnIndex) {
+    return toDisplayValue(getObjectAt(list, row, columnIndex));
+  }
+  
+  /**
+   * @param list
+   * @param row
+   * @return the given row. Rows of {@link PairedNSList}s are not kept,
+   * if they have not been created before (see {@link PairedNSList#peek(int)}).
+   * Use this method to scan many rows.
+   */
+  public static TableResult peek(List<? extends TableResult> list, int row) {
+    if (list instanceof PairedNSList) {
+      return ((PairedNSList<?, ?>) list).peek(row);
+    }
+    return list.get(row);
+  }
+  
+  /**
+   * @param list
+   * @param row
+   * @param columnIndex
+   * @return the object at the given column of the given row. Does not
+   * create (and keep) {@link PairedNS} instances of {@link PairedNSList}s.
+   * Use this method to scan many rows.
+   */
+  public static Object getObjectAt(List<? extends TableResult> list, int row, int columnIndex) {
+    if (list instanceof PairedNSList) {
+      return ((PairedNSList<?, ?>) list).getObjectAtColumn(row, columnIndex);
+    }
+    return list.get(row).getObjectAtColumn(columnIndex);
+  }
+  
+  /**
+   * @param o
+   * @return the value to display for the given column object.
+   */
+  private static Object toDisplayValue(Object o) {
     if (o instanceof Signal) {
       // Experiment name and signal type is already in header!
       Number n = ((Signal)o).getSignal();
@@ -177,6 +276,118 @@ public class TableResultTableModel<T extends TableResult> extends AbstractTableM
     }
   }
   
+  /**
+   * Returns all values of a column as primitive array. The values are
+   * extracted in parallel and cached until the model changes.
+   * @param columnIndex as in {@link #getValueAt(int, int)}
+   * @return the values of the column ({@link Double#NaN} for missing
+   * values) or <code>null</code> if the column is not numeric.
+   * @throws ExecutionException
+   */
+  public double[] getNumericColumn(int columnIndex) throws ExecutionException {
+    synchronized (numericColumns) {
+      if (numericColumns.containsKey(columnIndex)) {
+        return numericColumns.get(columnIndex);
+      }
+    }
+    
+    final List<T> list = getRandomAccessList();
+    final double[] values = new double[list.size()];
+    boolean isNumeric = true;
+    if (includeRowIndex && columnIndex==0) {
+      for (int i=0; i<values.length; i++) {
+        values[i] = i+1;
+      }
+    } else {
+      final int column = includeRowIndex?columnIndex-1:columnIndex;
+      final AtomicBoolean numeric = new AtomicBoolean(true);
+      ParallelUtils.parallelFor(0, values.length, new ParallelUtils.RangeTask() {
+        public void run(int from, int to) {
+          for (int i=from; i<to && numeric.get(); i++) {
+            Object o = getObjectAt(list, i, column);
+            if (o instanceof Signal) {
+              o = ((Signal)o).getSignal();
+            }
+            if (o==null) {
+              values[i] = Double.NaN;
+            } else if (o instanceof Number) {
+              values[i] = ((Number)o).doubleValue();
+            } else {
+              numeric.set(false);
+            }
+          }
+        }
+      });
+      isNumeric = numeric.get();
+    }
+    
+    synchronized (numericColumns) {
+      numericColumns.put(columnIndex, isNumeric?values:null);
+    }
+    return isNumeric?values:null;
+  }
+  
+  /**
+   * Returns all values of a column, as they are displayed, but converted
+   * to {@link Comparable}s (Strings, if the value itself is not comparable).
+   * The values are extracted in parallel and cached until the model changes.
+   * @param columnIndex as in {@link #getValueAt(int, int)}
+   * @return the values of the column.
+   * @throws ExecutionException
+   */
+  public Object[] getObjectColumn(final int columnIndex) throws ExecutionException {
+    synchronized (objectColumns) {
+      Object[] values = objectColumns.get(columnIndex);
+      if (values!=null) return values;
+    }
+    
+    final List<T> list = getRandomAccessList();
+    final Object[] values = new Object[list.size()];
+    final int column = includeRowIndex?columnIndex-1:columnIndex;
+    ParallelUtils.parallelFor(0, values.length, new ParallelUtils.RangeTask() {
+      public void run(int from, int to) {
+        for (int i=from; i<to; i++) {
+          Object o = column<0 ? (Integer)(i+1) : getValueAt(list, i, column);
+          if (o!=null && !(o instanceof Comparable)) {
+            o = o.toString();
+          }
+          values[i] = o;
+        }
+      }
+    });
+    
+    synchronized (objectColumns) {
+      objectColumns.put(columnIndex, values);
+    }
+    return values;
+  }
+  
+  /**
+   * @return {@link #ns} or a copy of it that allows fast
+   * random access.
+   */
+  private List<T> getRandomAccessList() {
+    if (ns instanceof RandomAccess) {
+      return ns;
+    }
+    return new ArrayList<T>(ns);
+  }
+  
+  /* (non-Javadoc)
+   * @see javax.swing.table.AbstractTableModel#fireTableChanged(javax.swing.event.TableModelEvent)
+   */
+  @Override
+  public void fireTableChanged(TableModelEvent e) {
+    // Invalidate cached columns
+    synchronized (numericColumns) {
+      numericColumns.clear();
+    }
+    synchronized (objectColumns) {
+      objectColumns.clear();
+    }
+    super.fireTableChanged(e);
+  }
+  
   /**
    * Returns "N/A" for {@link Double#NaN} numbers.
    * @param n
@@ -205,7 +416,7 @@ public class TableResultTableModel<T extends TableResult> extends AbstractTableM
     // Get first non-null object in column
     Object o = null; int i=0;
     while (o==null && i<ns.size()) {
-      o = ns.get(i++).getObjectAtColumn(columnIndex);
+      o = getObjectAt(ns, i++, columnIndex);
     }
     
     Class<?> c = getColumnClass(o);
@@ -305,7 +516,9 @@ public class TableResultTableModel<T extends TableResult> extends AbstractTableM
         if (Region.class.isAssignableFrom(tab.getDataContentType())) {
           NameAndSignalTabActions alNS;
           if (tab instanceof NameAndSignalsTab) {
-            if (tab.getExampleData()!=null && ((NameAndSignals)tab.getExampleData()).hasSignals()) {
+            // Positions are optional for some types (e.g., SNPs)
+            if (tab.getExampleData()!=null && ((NameAndSignals)tab.getExampleData()).hasSignals() &&
+                ((Region)tab.getExampleData()).getStart()!=Region.DEFAULT_START) {
               alNS = ((NameAndSignalsTab) tab).getActions();
               IntegratorUITools.addRightMousePopup(jc, IntegratorUITools.createVisualizeGenomicRegionPopup(alNS, popUp));
             }
@@ -423,7 +636,13 @@ public class TableResultTableModel<T extends TableResult> extends AbstractTableM
     }
     
     // Add sorting capabilities
-    TableRowSorter<TableModel> sorter = new TableRowSorterMixed<TableModel>(model);
+    TableRowSorter<TableModel> sorter;
+    if (model instanceof TableResultTableModel<?>) {
+      // Sort and filter in parallel and off the EDT
+      sorter = new TableResultRowSorter((TableResultTableModel<?>) model);
+    } else {
+      sorter = new TableRowSorterMixed<TableModel>(model);
+    }
     table.setRowSorter(sorter);
     
     // Make doubles scientific
@@ -0,0 +1,65 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.gui.prefs;
+
+import de.zbit.data.PairedNS;
+import de.zbit.gui.tabs.DatasetManager;
+import de.zbit.util.prefs.KeyProvider;
+import de.zbit.util.prefs.Option;
+
+/**
+ * Command-line options for the {@link DatasetManager}, that tries to
+ * keep the data of all opened tabs within a memory budget, and for the
+ * size of paired datasets (see {@link PairedNS}).
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public interface DatasetOptions extends KeyProvider {
+  
+  /**
+   * Enables writing data of unused tabs to disk.
+   */
+  public static final Option<Boolean> SPILL_TO_DISK = new Option<Boolean>("SPILL_TO_DISK", Boolean.class,
+      "If true, the data of the least recently used tabs is temporarily written to disk, if the " +
+      "data of all tabs exceeds the memory budget. The data is read back as soon as a tab is used. " +
+      "Only large, unpaired datasets that are not linked to other tabs are written to disk.",
+      Boolean.TRUE);
+  
+  /**
+   * The memory budget in megabytes.
+   */
+  public static final Option<Integer> DATASET_MEMORY_BUDGET = new Option<Integer>("DATASET_MEMORY_BUDGET", Integer.class,
+      "Maximum memory (in megabytes) that should be used by the data of all opened tabs. " +
+      "This is a soft limit, it may be exceeded by data that can not be written to disk. " +
+      "Set to 0 to use half of the maximum available memory.",
+      Integer.valueOf(0));
+  
+  /**
+   * Maximum number of pairs that may be created when pairing datasets.
+   */
+  public static final Option<Integer> MAX_PAIRS = new Option<Integer>("MAX_PAIRS", Integer.class,
+      "Maximum number of pairs that may be created when pairing two datasets. Pairing " +
+      "probe-centered data may create many more pairs than there are genes.",
+      Integer.valueOf(PairedNS.DEFAULT_MAX_PAIRS));
+  
+}
@@ -0,0 +1,51 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.gui.prefs;
+
+import de.zbit.util.prefs.KeyProvider;
+import de.zbit.util.prefs.Option;
+import de.zbit.utils.Metrics;
+
+/**
+ * Command-line options to record runtime {@link Metrics}.
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public interface MetricsOptions extends KeyProvider {
+  
+  /**
+   * Enables the recording of metrics.
+   */
+  public static final Option<Boolean> METRICS = new Option<Boolean>("METRICS", Boolean.class,
+      "If true, records runtime metrics (e.g., rows read per second or time spent on enrichments). " +
+      "Metrics are always available via JMX as '" + Metrics.OBJECT_NAME + "', where they can also be enabled at runtime.",
+      Boolean.FALSE);
+  
+  /**
+   * Period of the log reporter.
+   */
+  public static final Option<Integer> METRICS_REPORT_INTERVAL = new Option<Integer>("METRICS_REPORT_INTERVAL", Integer.class,
+      "Interval in seconds in which recorded metrics are written to the log. Set to 0 to disable the log output.",
+      Integer.valueOf(300));
+  
+}
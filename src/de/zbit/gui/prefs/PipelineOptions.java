@@ -0,0 +1,45 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.gui.prefs;
+
+import java.io.File;
+
+import de.zbit.integrator.HeadlessPipeline;
+import de.zbit.util.prefs.KeyProvider;
+import de.zbit.util.prefs.Option;
+
+/**
+ * Command-line options to run a {@link HeadlessPipeline}.
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public interface PipelineOptions extends KeyProvider {
+  
+  /**
+   * Configuration file of the pipeline.
+   */
+  public static final Option<File> PIPELINE = new Option<File>("PIPELINE", File.class,
+      "A pipeline configuration file. The pipeline is executed without graphical user interface, " +
+      "if this option is given together with --gui=false.", (File) null);
+  
+}
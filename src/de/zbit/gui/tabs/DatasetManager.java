@@ -0,0 +1,669 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.gui.tabs;
+
+import java.awt.Component;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
+
+import de.zbit.data.NameAndSignals;
+import de.zbit.data.TableResult;
+import de.zbit.gui.IntegratorUI;
+import de.zbit.io.SpilledList;
+import de.zbit.utils.Metrics;
+import de.zbit.utils.ParallelUtils;
+
+/**
+ * Tries to keep the data of all {@link IntegratorTabWithTable}s within a
+ * memory budget. The heap size of the data of every registered tab is
+ * estimated. If the sum exceeds the budget, the data of the least
+ * recently used tabs is written to disk (see {@link SpilledList}) and
+ * the tabs only keep a read-only list that reads visible rows from
+ * disk. The data is read back completely in the background as soon as
+ * a tab is selected. If the data (or a row) is requested with
+ * {@link IntegratorTabWithTable#getData()} before, it is read back
+ * synchronously. This is recorded as "datasets.pageInTimeEDT", if it
+ * happens in the event dispatch thread.
+ *
+ * <p>Only tabs that are currently not shown, that contain a plain
+ * {@link ArrayList} of at least {@link #MINIMUM_ROWS} rows and that are
+ * not linked to other tabs (e.g., as source tab or via table change
+ * listeners) are spilled to disk. Rows of linked tabs are shared with
+ * other tabs, thus, no memory would be released and rows that have been
+ * read back are copies.
+ *
+ * <p>Hence, the budget is a soft limit. The data of paired and
+ * gene-centered datasets (which are linked to their source tabs), of
+ * integrated heterogeneous data (see {@link de.zbit.data.HeterogeneousData})
+ * and of all other tabs that do not meet the conditions above is
+ * included in the estimate, but never written to disk. If this data
+ * alone exceeds the budget, it is exceeded.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class DatasetManager {
+  public static final transient Logger log = Logger.getLogger(DatasetManager.class.getName());
+
+  /**
+   * Tabs with less rows are never spilled to disk.
+   */
+  public final static int MINIMUM_ROWS = 5000;
+
+  /**
+   * Number of rows that are inspected to estimate the size of a dataset.
+   */
+  private final static int SAMPLE_SIZE = 64;
+
+  /**
+   * Approximated sizes (in bytes) of references and objects on the heap.
+   */
+  private final static int REFERENCE_SIZE = 8;
+  private final static int OBJECT_SIZE = 32;
+  private final static int SIGNAL_SIZE = 32;
+
+  /**
+   * The only instance of this class.
+   */
+  private static DatasetManager instance = null;
+
+  /**
+   * A registered tab.
+   */
+  private static class Entry {
+    final IntegratorTabWithTable tab;
+    /**
+     * Estimated heap size of the data in bytes.
+     */
+    long estimatedSize=0;
+    /**
+     * The data on disk, while the tab is spilled.
+     */
+    SpilledList<? extends TableResult> spilled=null;
+    /**
+     * True while the data is written to disk.
+     */
+    boolean spilling=false;
+
+    Entry(IntegratorTabWithTable tab) {
+      this.tab = tab;
+    }
+  }
+
+  /**
+   * All registered tabs (in access order).
+   */
+  private final LinkedHashMap<IntegratorTabWithTable, Entry> entries = new LinkedHashMap<IntegratorTabWithTable, Entry>(16, 0.75f, true);
+
+  /**
+   * Maximum estimated heap size of all datasets in bytes. 0 for
+   * the half of the maximum memory.
+   */
+  private long budget = 0;
+
+  /**
+   * If false, data is never spilled to disk.
+   */
+  private boolean spillToDisk = true;
+
+  /**
+   * True while {@link #enforceBudget()} is scheduled or running.
+   */
+  private final AtomicBoolean enforcing = new AtomicBoolean(false);
+
+  /*
+   * Statistics
+   */
+  private final AtomicLong spills = new AtomicLong();
+  private final AtomicLong pageIns = new AtomicLong();
+  private final static Metrics.Timer SPILL_TIME = Metrics.timer("datasets.spillTime");
+  private final static Metrics.Timer PAGE_IN_TIME = Metrics.timer("datasets.pageInTime");
+  private final static Metrics.Timer PAGE_IN_TIME_EDT = Metrics.timer("datasets.pageInTimeEDT");
+
+  private DatasetManager() {
+    super();
+    Metrics.register("datasets.heapEstimate", new Metrics.Gauge() {
+      public Number getValue() {
+        return getHeapEstimate();
+      }
+    });
+    Metrics.register("datasets.spilledTabs", new Metrics.Gauge() {
+      public Number getValue() {
+        return getNumberOfSpilledTabs();
+      }
+    });
+    Metrics.register("datasets.spills", new Metrics.Gauge() {
+      public Number getValue() {
+        return getSpills();
+      }
+    });
+    Metrics.register("datasets.pageIns", new Metrics.Gauge() {
+      public Number getValue() {
+        return getPageIns();
+      }
+    });
+  }
+
+  /**
+   * @return the only instance of this class.
+   */
+  public synchronized static DatasetManager getInstance() {
+    if (instance==null) {
+      instance = new DatasetManager();
+    }
+    return instance;
+  }
+
+  /**
+   * @param budget maximum estimated heap size of all datasets in
+   * bytes. 0 for the half of the maximum memory.
+   */
+  public void setBudget(long budget) {
+    synchronized (this) {
+      this.budget = Math.max(0, budget);
+    }
+    enforceBudgetLater();
+  }
+
+  /**
+   * @return the maximum estimated heap size of all datasets in bytes.
+   */
+  public synchronized long getBudget() {
+    return budget>0?budget:Runtime.getRuntime().maxMemory()/2;
+  }
+
+  /**
+   * @param spillToDisk if false, data is never spilled to disk (but
+   * still read back on access).
+   */
+  public void setSpillToDisk(boolean spillToDisk) {
+    synchronized (this) {
+      this.spillToDisk = spillToDisk;
+    }
+    enforceBudgetLater();
+  }
+
+  /**
+   * @return true if data is spilled to disk, if the budget is exceeded.
+   */
+  public synchronized boolean isSpillToDisk() {
+    return spillToDisk;
+  }
+
+  /**
+   * Registers the tab or updates the estimated size after the
+   * data of the tab has been replaced.
+   * @param tab
+   */
+  public void register(IntegratorTabWithTable tab) {
+    Collection<? extends TableResult> data = tab.data;
+    if (data==null || data instanceof SpilledList) return;
+    long size = estimateSize(data);
+    
+    SpilledList<?> outdated = null;
+    synchronized (this) {
+      Entry e = entries.get(tab);
+      if (e==null) {
+        e = new Entry(tab);
+        entries.put(tab, e);
+      }
+      e.estimatedSize = size;
+      outdated = e.spilled;
+      e.spilled = null;
+    }
+    if (outdated!=null) deleteLater(outdated);
+    enforceBudgetLater();
+  }
+
+  /**
+   * Removes the tab (e.g., because it has been closed) and deletes
+   * its data on disk.
+   * @param tab
+   */
+  public void unregister(IntegratorTabWithTable tab) {
+    Entry e;
+    synchronized (this) {
+      e = entries.remove(tab);
+    }
+    if (e!=null && e.spilled!=null) {
+      deleteLater(e.spilled);
+    }
+  }
+
+  /**
+   * Marks the tab as recently used (e.g., because it has been selected)
+   * and reads its data back in the background, if it has been spilled.
+   * Meanwhile, the table reads the visible rows from disk.
+   * @param tab
+   */
+  public void touch(final IntegratorTabWithTable tab) {
+    boolean spilled;
+    synchronized (this) {
+      Entry e = entries.get(tab);
+      spilled = e!=null && e.spilled!=null;
+    }
+    if (spilled) {
+      ParallelUtils.getBackgroundPool().submit(new Runnable() {
+        public void run() {
+          pageIn(tab);
+        }
+      });
+    }
+  }
+
+  /**
+   * Reads the data of the tab back from disk, if it has been spilled.
+   * Returns immediately, if it has not been spilled. Else, blocks until
+   * all rows have been read.
+   * @param tab
+   */
+  public void pageIn(IntegratorTabWithTable tab) {
+    Entry e;
+    synchronized (this) {
+      e = entries.get(tab);
+      if (e==null || e.spilled==null) return;
+    }
+    
+    synchronized (e) {
+      SpilledList<? extends TableResult> spilled;
+      synchronized (this) {
+        spilled = e.spilled;
+      }
+      if (spilled==null) return; // Read by another thread
+      
+      // Should be rare, the data is read in background when the tab is selected
+      boolean edt = SwingUtilities.isEventDispatchThread();
+      long startEDT = edt?PAGE_IN_TIME_EDT.start():0;
+      long start = PAGE_IN_TIME.start();
+      List<? extends TableResult> rows;
+      try {
+        rows = spilled.readAll();
+      } catch (IOException ex) {
+        // The tab keeps the read-only rows from disk
+        log.log(Level.SEVERE, "Could not read data of '" + tab.getTabName() + "' from disk.", ex);
+        return;
+      }
+      tab.replaceData(rows);
+      synchronized (this) {
+        e.spilled = null;
+      }
+      // The table model is replaced later in the event dispatch thread
+      deleteLater(spilled);
+      
+      pageIns.incrementAndGet();
+      long nanos = PAGE_IN_TIME.stop(start);
+      if (edt) {
+        PAGE_IN_TIME_EDT.stop(startEDT);
+        log.info(String.format("Read %s rows of '%s' from disk in the event dispatch thread in %sms.", rows.size(), tab.getTabName(), nanos/1000000));
+      } else {
+        log.fine(String.format("Read %s rows of '%s' from disk in %sms.", rows.size(), tab.getTabName(), nanos/1000000));
+      }
+    }
+    
+    // Other tabs might have to be spilled now.
+    enforceBudgetLater();
+  }
+
+  /**
+   * Deletes the file in the event dispatch thread, i.e., after all
+   * table models have been replaced (see
+   * {@link IntegratorTabWithTable#replaceData(List)}).
+   * @param spilled
+   */
+  private void deleteLater(final SpilledList<?> spilled) {
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        spilled.delete();
+      }
+    });
+  }
+
+  /**
+   * Schedules {@link #enforceBudget()} in the background, if it is not
+   * already scheduled.
+   */
+  private void enforceBudgetLater() {
+    if (!isSpillToDisk() || !enforcing.compareAndSet(false, true)) return;
+    ParallelUtils.getBackgroundPool().submit(new Runnable() {
+      public void run() {
+        try {
+          enforceBudget();
+        } catch (Throwable t) {
+          log.log(Level.WARNING, "Could not spill data to disk.", t);
+        } finally {
+          enforcing.set(false);
+        }
+      }
+    });
+  }
+
+  /**
+   * Spills the least recently used tabs to disk, until the
+   * estimated heap size is within the budget.
+   */
+  private void enforceBudget() {
+    synchronized (this) {
+      if (!spillToDisk || getHeapEstimate()<=getBudget()) return;
+    }
+    // Must not hold the lock while waiting for the event dispatch thread
+    Set<IntegratorTabWithTable> hidden = getHiddenAndUnlinkedTabs();
+    
+    while (true) {
+      Entry victim = null;
+      synchronized (this) {
+        if (!spillToDisk || getHeapEstimate()<=getBudget()) return;
+        // Least recently used first
+        for (Entry e: entries.values()) {
+          if (hidden.contains(e.tab) && isSpillable(e)) {
+            victim = e;
+            break;
+          }
+        }
+        if (victim==null) return;
+        victim.spilling = true;
+      }
+      
+      boolean spilled;
+      try {
+        spilled = spill(victim);
+      } finally {
+        synchronized (this) {
+          victim.spilling = false;
+        }
+      }
+      if (!spilled) return;
+    }
+  }
+
+  /**
+   * Must be invoked while holding the lock on this instance. Whether
+   * the tab is shown or linked must be checked in the event dispatch
+   * thread with {@link #isHiddenAndUnlinked(IntegratorTabWithTable)}.
+   * @param e
+   * @return true if the data of the tab may be spilled to disk.
+   */
+  private boolean isSpillable(Entry e) {
+    Collection<? extends TableResult> data = e.tab.data;
+    return e.spilled==null && !e.spilling && data!=null && data.getClass().equals(ArrayList.class) &&
+        data.size()>=MINIMUM_ROWS && (((List<?>) data).get(0) instanceof Serializable);
+  }
+  
+  /**
+   * Collects all tabs in the event dispatch thread, for which
+   * {@link #isHiddenAndUnlinked(IntegratorTabWithTable)} is true.
+   * Must not be invoked while holding the lock on this instance.
+   * @return the tabs (a snapshot, may be outdated when spilling).
+   */
+  private Set<IntegratorTabWithTable> getHiddenAndUnlinkedTabs() {
+    final List<IntegratorTabWithTable> tabs;
+    synchronized (this) {
+      tabs = new ArrayList<IntegratorTabWithTable>(entries.keySet());
+    }
+    final Set<IntegratorTabWithTable> ret = new HashSet<IntegratorTabWithTable>();
+    Runnable r = new Runnable() {
+      public void run() {
+        for (IntegratorTabWithTable tab: tabs) {
+          if (isHiddenAndUnlinked(tab)) ret.add(tab);
+        }
+      }
+    };
+    if (SwingUtilities.isEventDispatchThread()) {
+      r.run();
+    } else {
+      try {
+        SwingUtilities.invokeAndWait(r);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        ret.clear();
+      } catch (InvocationTargetException ex) {
+        log.log(Level.WARNING, "Could not inspect tabs.", ex.getCause());
+        ret.clear();
+      }
+    }
+    return ret;
+  }
+  
+  /**
+   * Must be invoked in the event dispatch thread.
+   * @param tab
+   * @return true if the tab is currently not shown and not linked
+   * to other tabs.
+   */
+  private static boolean isHiddenAndUnlinked(IntegratorTabWithTable tab) {
+    // Only tabs that are currently not shown
+    IntegratorUI ui = tab.getIntegratorUI();
+    if (ui==null || ui.getTabbedPane()==null) return false;
+    JTabbedPane pane = ui.getTabbedPane();
+    if (ui.getTabIndex(tab)<0 || pane.getSelectedComponent()==tab) return false;
+    
+    // Rows of linked tabs are shared with other tabs
+    if (tab.getSourceTab()!=null || tab.getTableChangeListeners()!=null) return false;
+    for (int i=0; i<pane.getTabCount(); i++) {
+      Component c = pane.getComponentAt(i);
+      if (c instanceof IntegratorTab && ((IntegratorTab<?>) c).getSourceTab()==tab) return false;
+      if (c instanceof IntegratorTabWithTable) {
+        Set<IntegratorTabWithTable> listeners = ((IntegratorTabWithTable) c).getTableChangeListeners();
+        if (listeners!=null && listeners.contains(tab)) return false;
+      }
+    }
+    
+    return true;
+  }
+
+  /**
+   * Writes the data of the tab to disk and replaces it with a
+   * {@link SpilledList}.
+   * @param e
+   * @return true if the tab has been spilled.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean spill(final Entry e) {
+    final IntegratorTabWithTable tab = e.tab;
+    final Collection<? extends TableResult> data = tab.data;
+    
+    long start = SPILL_TIME.start();
+    final SpilledList<TableResult> spilled;
+    File f = null;
+    try {
+      f = File.createTempFile("InCroMAP-", ".spill");
+      f.deleteOnExit();
+      spilled = SpilledList.write((List<? extends TableResult>) data, f);
+    } catch (IOException ex) {
+      log.log(Level.WARNING, "Could not write data of '" + tab.getTabName() + "' to disk.", ex);
+      if (f!=null) f.delete();
+      return false;
+    }
+    
+    // Only replace the data, if the tab has not been used, changed or linked meanwhile
+    final boolean[] replaced = new boolean[]{false};
+    try {
+      SwingUtilities.invokeAndWait(new Runnable() {
+        public void run() {
+          // The snapshot of the tabs might be outdated
+          boolean hidden = isHiddenAndUnlinked(tab);
+          synchronized (DatasetManager.this) {
+            if (hidden && entries.containsKey(tab) && tab.data==data) {
+              tab.replaceData(spilled);
+              e.spilled = spilled;
+              replaced[0] = true;
+            }
+          }
+        }
+      });
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (InvocationTargetException ex) {
+      log.log(Level.WARNING, "Could not replace data of '" + tab.getTabName() + "'.", ex.getCause());
+    }
+    if (!replaced[0]) {
+      spilled.delete();
+      return false;
+    }
+    
+    spills.incrementAndGet();
+    long nanos = SPILL_TIME.stop(start);
+    log.fine(String.format("Wrote %s rows of '%s' (~%s MB) to disk (%s MB) in %sms.", spilled.size(), tab.getTabName(),
+      e.estimatedSize/(1024*1024), spilled.getFileSize()/(1024*1024), nanos/1000000));
+    return true;
+  }
+
+  /**
+   * @return the estimated heap size of all datasets, that are not
+   * spilled to disk, in bytes.
+   */
+  public synchronized long getHeapEstimate() {
+    long sum = 0;
+    for (Entry e: entries.values()) {
+      if (e.spilled==null) sum += e.estimatedSize;
+    }
+    return sum;
+  }
+
+  /**
+   * @return number of tabs whose data is currently on disk.
+   */
+  public synchronized int getNumberOfSpilledTabs() {
+    int spilled = 0;
+    for (Entry e: entries.values()) {
+      if (e.spilled!=null) spilled++;
+    }
+    return spilled;
+  }
+
+  /**
+   * @return number of times data has been written to disk.
+   */
+  public long getSpills() {
+    return spills.get();
+  }
+
+  /**
+   * @return number of times data has been read back from disk.
+   */
+  public long getPageIns() {
+    return pageIns.get();
+  }
+
+  /**
+   * Estimates the heap size of the given rows by inspecting the
+   * values of up to {@link #SAMPLE_SIZE} rows.
+   * @param data
+   * @return estimated size in bytes.
+   */
+  @SuppressWarnings("unchecked")
+  public static long estimateSize(Collection<? extends TableResult> data) {
+    if (data==null || data.size()<1) return 0;
+    int n = data.size();
+    int step = Math.max(1, n/SAMPLE_SIZE);
+    long sampled = 0;
+    int samples = 0;
+    if (data instanceof List && data instanceof RandomAccess) {
+      List<? extends TableResult> list = (List<? extends TableResult>) data;
+      for (int i=0; i<n; i+=step) {
+        sampled += estimateSize(list.get(i));
+        samples++;
+      }
+    } else {
+      Iterator<? extends TableResult> it = data.iterator();
+      for (int i=0; it.hasNext(); i++) {
+        TableResult row = it.next();
+        if (i%step!=0) continue;
+        sampled += estimateSize(row);
+        samples++;
+      }
+    }
+    return (long) n*REFERENCE_SIZE + sampled*n/samples;
+  }
+
+  /**
+   * @param row
+   * @return estimated size of the row in bytes.
+   */
+  private static long estimateSize(TableResult row) {
+    if (row==null) return 0;
+    long size = OBJECT_SIZE;
+    if (row instanceof NameAndSignals) {
+      size += ((NameAndSignals) row).getNumberOfSignals()*SIGNAL_SIZE;
+    }
+    for (int col=0; col<row.getColumnCount(); col++) {
+      size += REFERENCE_SIZE + estimateSizeOfValue(row.getObjectAtColumn(col));
+    }
+    return size;
+  }
+
+  /**
+   * @param o
+   * @return estimated size of a column value in bytes.
+   */
+  private static long estimateSizeOfValue(Object o) {
+    if (o==null) {
+      return 0;
+    } else if (o instanceof CharSequence) {
+      return 40 + 2L*((CharSequence) o).length();
+    } else if (o instanceof Number || o instanceof Boolean || o instanceof Character) {
+      return 16;
+    } else if (o instanceof Collection) {
+      // Extrapolate from the first elements
+      Collection<?> c = (Collection<?>) o;
+      long size = 0;
+      int inspected = 0;
+      Iterator<?> it = c.iterator();
+      while (it.hasNext() && inspected<16) {
+        size += REFERENCE_SIZE + estimateSizeOfValue(it.next());
+        inspected++;
+      }
+      return OBJECT_SIZE + (inspected>0?size*c.size()/inspected:0);
+    } else if (o.getClass().isArray()) {
+      return 16 + (long) Array.getLength(o)*REFERENCE_SIZE;
+    }
+    return OBJECT_SIZE;
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format("%s [tabs=%s, spilled=%s, heap estimate=%s MB, budget=%s MB, spills=%s, page-ins=%s]",
+      getClass().getSimpleName(), entries.size(), getNumberOfSpilledTabs(), getHeapEstimate()/(1024*1024),
+      getBudget()/(1024*1024), getSpills(), getPageIns());
+  }
+
+}
@@ -28,7 +28,6 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -56,6 +55,7 @@ import org.jfree.chart.renderer.xy.XYSplineRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 import org.jfree.ui.Layer;
 
+import de.zbit.data.GenomicPositionIndex;
 import de.zbit.data.NameAndSignals;
 import de.zbit.data.Signal.MergeType;
 import de.zbit.data.Signal.SignalType;
@@ -73,8 +73,8 @@ import de.zbit.gui.layout.LayoutHelper;
 import de.zbit.io.filefilter.SBFileFilter;
 import de.zbit.sequence.region.AbstractRegion;
 import de.zbit.sequence.region.Chromosome;
+import de.zbit.sequence.region.ChromosomeTools;
 import de.zbit.sequence.region.Region;
-import de.zbit.sequence.region.SimpleRegion;
 import de.zbit.util.Species;
 import de.zbit.util.objectwrapper.ValuePair;
 import de.zbit.visualization.VisualizeGenesInChartTab;
@@ -307,7 +307,26 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
    */
   public static JFreeChart createChart(String name, Collection<? extends NameAndSignals> nsList,
     ValuePair<String, SignalType> signalAndName, byte includeOthers, Species species) {
+    GenomicPositionIndex<? extends NameAndSignals> index = GenomicPositionIndex.getIndex(nsList);
+    return createChart(name, index, index.getAllRows(), signalAndName, includeOthers, species);
+  }
+  
+  /**
+   * Create a XY chart for a subset of an indexed dataset. All series are
+   * sliced from the columnar storage of the given <code>index</code>.
+   * @param name any name that identifies the SERIES
+   * @param index index of the whole dataset
+   * @param rows rows of the <code>index</code> to visualize
+   * @param signalAndName signal to visualize
+   * @param includeOthers one of the declared flags, e.g. {@link #INCLUDE_OTHER_SERIES_WITH_LIGHT_COLORS}.
+   * @param species
+   * @return
+   * @see #createChart(String, Collection, ValuePair, byte, Species)
+   */
+  public static JFreeChart createChart(String name, GenomicPositionIndex<? extends NameAndSignals> index,
+    int[] rows, ValuePair<String, SignalType> signalAndName, byte includeOthers, Species species) {
     final SignalType sigType = signalAndName.getB();
+    NameAndSignals example = rows.length>0?index.get(rows[0]):null;
     
     // Create marker at 0 or 0.05
     double makerPosition = 0;
@@ -322,7 +341,7 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
     // Create data series
     final XYSplineRenderer renderer = new XYSplineRenderer();
     DefaultXYDataset dataset = new DefaultXYDataset();
-    double[][] XYdata = getXYdata(nsList, signalAndName);
+    double[][] XYdata = index.getXYdata(rows, signalAndName);
     dataset.addSeries(seriesName, XYdata);
     int seriesNumber=1;
     
@@ -332,13 +351,13 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
     renderer.setBaseStroke(stroke);
     renderer.setSeriesStroke(0, stroke );
     
-    if (includeOthers!=DO_NOT_INCLUDE_OTHER_SERIES && nsList.size()>0) {
-      Collection<ValuePair<String, SignalType>> availableSignals = nsList.iterator().next().getSignalNames();
+    if (includeOthers!=DO_NOT_INCLUDE_OTHER_SERIES && example!=null) {
+      Collection<ValuePair<String, SignalType>> availableSignals = example.getSignalNames();
       for (ValuePair<String, SignalType> sVd:availableSignals) {
         // Not twice and only same type.
         if (sVd.equals(signalAndName) || !sVd.getB().equals(sigType)) continue;
         
-        dataset.addSeries(sVd.getA(), getXYdata(nsList, sVd)); // getSeriesName(null, sVd)
+        dataset.addSeries(sVd.getA(), index.getXYdata(rows, sVd)); // getSeriesName(null, sVd)
         renderer.setSeriesStroke(seriesNumber, stroke );
         if (includeOthers==INCLUDE_OTHER_SERIES_WITH_LIGHT_COLORS) {
           renderer.setSeriesPaint(seriesNumber, veryLightColors[(seriesNumber-1)%veryLightColors.length] );
@@ -355,7 +374,7 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
     yAxis.setAutoRangeIncludesZero(true);
     //domainAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
     String xAxisLabel = "Location";
-    String chromsome = getChromosome(nsList);
+    String chromsome = getChromosome(example);
     if (chromsome!=null && !chromsome.equals(Chromosome.default_Chromosome_string)) {
       xAxisLabel+=" ("+ chromsome + ")";
     }
@@ -373,12 +392,12 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
     localCombinedDomainXYPlot.add(plot,85);
 
     JFreeChart jfc = new JFreeChart(localCombinedDomainXYPlot);
-    jfc.setTitle(getChartName(name, nsList.iterator().hasNext()?nsList.iterator().next():null));
+    jfc.setTitle(getChartName(name, example));
     
     // TODO: This leads to an extensive resource usage, since genes
     // are not cached!
     if (XYdata[0].length>0) {
-      Region target = AbstractRegion.createRegion(getChromosomeAsByte(nsList), (int)XYdata[0][0], (int)XYdata[0][XYdata[0].length-1]);
+      Region target = AbstractRegion.createRegion(getChromosomeAsByte(example), (int)XYdata[0][0], (int)XYdata[0][XYdata[0].length-1]);
       addGenes(localCombinedDomainXYPlot, target, species);
     }
     
@@ -418,32 +437,24 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
 
   
   /**
-   * @param nsList
+   * @param o
    * @return
    */
-  private static String getChromosome(
-    Collection<? extends NameAndSignals> nsList) {
-    if (nsList!=null && nsList.size()>0) {
-      NameAndSignals o = nsList.iterator().next();
-      if (o instanceof Chromosome) {
-        return ((Chromosome) o).getChromosome();
-      }
+  private static String getChromosome(NameAndSignals o) {
+    if (o instanceof Chromosome) {
+      return ((Chromosome) o).getChromosome();
     }
     return null;
   }
   
   /**
    * 
-   * @param nsList
+   * @param o
    * @return
    */
-  private static Byte getChromosomeAsByte(
-    Collection<? extends NameAndSignals> nsList) {
-    if (nsList!=null && nsList.size()>0) {
-      NameAndSignals o = nsList.iterator().next();
-      if (o instanceof Chromosome) {
-        return ((Chromosome) o).getChromosomeAsByteRepresentation();
-      }
+  private static Byte getChromosomeAsByte(NameAndSignals o) {
+    if (o instanceof Chromosome) {
+      return ((Chromosome) o).getChromosomeAsByteRepresentation();
     }
     return null;
   }
@@ -485,49 +496,6 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
   }
   
   
-  /**
-   * @param ns
-   * @param vd
-   * @return
-   */
-  private static double[][] getXYdata(Collection<? extends NameAndSignals> ns, ValuePair<String, SignalType> vd) {
-    double[][] XYdata = new double[2][];
-    XYdata[0] = new double[ns.size()];
-    XYdata[1] = new double[ns.size()];
-    
-    // Get Location and signal
-    Iterator<? extends NameAndSignals> it = ns.iterator();
-    int i=-1;
-    List<ValuePair<Double, Double>> xy = new ArrayList<ValuePair<Double,Double>>(ns.size());
-    while (it.hasNext()) {
-      i++;
-      double x = i;
-      NameAndSignals n = (NameAndSignals) it.next();
-      if (n instanceof Region) {
-        x = ((Region) n).getMiddle();
-        // If no position is set, simply increment position
-        if (x == Region.DEFAULT_START) x=i;
-      }
-      double y = n.getSignalMergedValue(vd.getB(), vd.getA(), MergeType.Mean);
-      
-      xy.add(new ValuePair<Double, Double>(x, y));
-    }
-    
-    // Sort by location
-    if (i>0) {
-      Collections.sort(xy, xy.iterator().next().getComparator_OnlyCompareA());
-    }
-    
-    // Write to array
-    i=-1;
-    for (ValuePair<Double, Double> vp : xy) {
-      i++;
-      XYdata[0][i] = vp.getA();
-      XYdata[1][i] = vp.getB();
-    }
-    return XYdata;
-  }
-
   /**
    * Create a region-based XY plot for the given {@link IntegratorTab}.
    * Currently, only {@link DNAmethylation} data is supported, but actually, all
@@ -630,7 +598,8 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
     if (ret==JOptionPane.OK_OPTION) {
       
       String name;
-      List nsList = new ArrayList();
+      GenomicPositionIndex<NameAndSignals> index = GenomicPositionIndex.getIndex((Iterable<NameAndSignals>)parent.getData());
+      int[] rows;
       if (region.isSelected()) {
         // REGION-BASED
         String chro; int starto=0; int endo=0;
@@ -645,19 +614,18 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
           return null;
         }
         
-        nsList = (List<? extends NameAndSignals>) SimpleRegion.getAllIntersections((Iterable<Region>)parent.getData(),
-          AbstractRegion.createRegion(chro, starto, endo));
+        rows = index.getRowsInRegion(ChromosomeTools.getChromosomeByteRepresentation(chro), starto, endo);
         
       } else {
         // GENE-BASED
         String geneName = gene.getSelectedItem().toString();
         name = String.format("Gene \"%s\".", geneName);
         
-        nsList = getAllNSbelongingToSameGene((Iterable<NameAndSignals>)parent.getData(), geneName);
+        rows = index.getRowsForName(geneName);
       }
       
       // Warn when nslist is 0
-      if (nsList.size()<1) {
+      if (rows.length<1) {
         GUITools.showErrorMessage(null, "No probes for the selected region!");
         return null;
       }
@@ -666,7 +634,7 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
       byte includeOthers=0;
       if (onOthers.isSelected()) includeOthers = INCLUDE_OTHER_SERIES_WITH_LIGHT_COLORS;
       if (alOthers.isSelected()) includeOthers = INCLUDE_OTHER_SERIES;
-      return createChart(name, nsList, (ValuePair<String, SignalType>) selExp.getSelectedItem(), includeOthers, species);
+      return createChart(name, index, rows, (ValuePair<String, SignalType>) selExp.getSelectedItem(), includeOthers, species);
     }
     
     return null;
@@ -683,12 +651,13 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
    */
   public static <T extends NameAndSignals> JFreeChart createChart(final Iterable<T> allNS,
     NameAndSignals template, Species species) {
-    List<T> nsList = getAllNSbelongingToSameGene(allNS, template);
-    if (nsList.size()<1) {
+    GenomicPositionIndex<T> index = GenomicPositionIndex.getIndex(allNS);
+    int[] rows = index.getRowsForGene(template);
+    if (rows.length<1) {
       return null;
     }
     String name = String.format("Gene \"%s\".", template.getName());
-    return createChart(name, nsList, template.getSignals().get(0).getSignalAndName(), INCLUDE_OTHER_SERIES, species);
+    return createChart(name, index, rows, template.getSignals().get(0).getSignalAndName(), INCLUDE_OTHER_SERIES, species);
   }
   
   /**
@@ -701,31 +670,9 @@ public class  IntegratorChartTab extends IntegratorTab<JFreeChart> {
    * @return
    */
   public static <T extends NameAndSignals> List<T> getAllNSbelongingToSameGene(final Iterable<T> allNS, NameAndSignals template) {
-    List<T> nsList = new ArrayList<T>();
-    if (template==null || allNS==null) return nsList;
-    String templateName = template.getName();
-    
-    int geneID=-1;
-    if (template instanceof GeneID) {
-      geneID = ((GeneID) template).getID();
-    }
-    boolean hasGeneID = geneID>0;
-    
-    Iterator<T> l = allNS.iterator();
-    while (l.hasNext()) {
-      T ns = l.next();
-      if (hasGeneID) {
-        if (geneID==((GeneID)ns).getID()) {
-          nsList.add(ns);
-        }
-      } else {
-        if (ns.getName().equals(templateName)) {
-          nsList.add(ns);
-        }
-      }
-    }
-    
-    return nsList;
+    if (template==null || allNS==null) return new ArrayList<T>();
+    GenomicPositionIndex<T> index = GenomicPositionIndex.getIndex(allNS);
+    return index.get(index.getRowsForGene(template));
   }
   
   /**
@@ -21,23 +21,41 @@
  */
 package de.zbit.gui.tabs;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.RandomAccess;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import javax.swing.JComponent;
 import javax.swing.JMenuBar;
 import javax.swing.JTable;
 import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.table.TableColumn;
 
 import de.zbit.data.EnrichmentObject;
+import de.zbit.data.GenomicPositionIndex;
 import de.zbit.data.NameAndSignals;
+import de.zbit.data.PairedNS;
+import de.zbit.data.PairedNSList;
 import de.zbit.data.Signal;
 import de.zbit.data.Signal.SignalType;
 import de.zbit.data.TableResult;
@@ -47,10 +65,14 @@ import de.zbit.gui.IntegratorUI;
 import de.zbit.gui.IntegratorUITools;
 import de.zbit.gui.customcomponents.TableResultTableModel;
 import de.zbit.gui.table.JTableFilter;
+import de.zbit.io.SpilledList;
+import de.zbit.io.TableResultWriter;
 import de.zbit.io.csv.CSVWriter;
 import de.zbit.io.filefilter.SBFileFilter;
 import de.zbit.util.Species;
 import de.zbit.util.objectwrapper.ValuePairUncomparable;
+import de.zbit.utils.ParallelUtils;
+import de.zbit.utils.TableSearchIndex;
 
 /**
  * A generic Integrator tab with a table on top.
@@ -72,12 +94,72 @@ public class IntegratorTabWithTable extends IntegratorTab<Collection<? extends T
    */
   private Set<IntegratorTabWithTable> tableChangeListeners=null;
   
+  /**
+   * Changes of source tabs (see {@link #addTableChangeListener(IntegratorTabWithTable)})
+   * are collected for this time (in ms) and then applied at once.
+   */
+  private final static int COALESCE_DELAY = 250;
+  
+  /**
+   * All changes of source tabs that have not yet been applied.
+   */
+  private TableChange pendingChange=null;
+  
+  /**
+   * Applies the {@link #pendingChange}.
+   */
+  private Timer pendingChangeTimer=null;
+  
   /**
    * Having an iterator, pointing at an indice of #data is
    * much faster, if data is no List (overwriting methods sometimes
    * also use a non-list here).
    */
   private ValuePairUncomparable<Iterator<? extends TableResult>, Integer> currentDataIterator=null;
+  
+  /**
+   * A {@link TableSearchIndex} for the current {@link #data}. Is built
+   * in the background with the table and rebuilt in {@link #rebuildTable()}.
+   */
+  private Future<TableSearchIndex> searchIndex=null;
+  
+  /**
+   * Rows of all objects in {@link #rowIndexData} (also of both parts
+   * of {@link PairedNS}s), by identity. Maps changes of source tabs to
+   * rows of this tab without scanning all rows (see
+   * {@link #getRowsContaining(Set)}). Built on the first change of a
+   * source tab.
+   */
+  private Map<Object, RowList> rowIndex=null;
+  
+  /**
+   * The data, {@link #rowIndex} refers to.
+   */
+  private Collection<? extends TableResult> rowIndexData=null;
+  
+  /**
+   * Guards {@link #rowIndex}. The index is built while holding this lock,
+   * thus, the tab itself must not be used.
+   */
+  private final Object rowIndexLock = new Object();
+  
+  /**
+   * A growing list of rows.
+   */
+  private static class RowList {
+    int[] rows = new int[1];
+    int size = 0;
+    
+    void add(int row) {
+      if (size>0 && rows[size-1]==row) return;
+      if (size==rows.length) {
+        int[] temp = new int[size*2];
+        System.arraycopy(rows, 0, temp, 0, size);
+        rows = temp;
+      }
+      rows[size++] = row;
+    }
+  }
 
   /**
    * @param parent
@@ -100,14 +182,40 @@ public class IntegratorTabWithTable extends IntegratorTab<Collection<? extends T
     final File f = GUITools.showSaveFileChooser(this, IntegratorUI.saveDir, SBFileFilter.createTSVFileFilter());
     if (f==null) return null;
     
+    // Write directly from the data, in the current order of the table
+    final List<? extends TableResult> list;
+    final int[] rows;
+    final boolean includeRowIndex;
+    if (data!=null && table!=null && table.getModel() instanceof TableResultTableModel) {
+      list = ((TableResultTableModel<?>) table.getModel()).getNameAndSignalsList();
+      includeRowIndex = ((TableResultTableModel<?>) table.getModel()).isRowIndexIncluded();
+      synchronized (table) {
+        rows = new int[table.getRowCount()];
+        for (int i=0; i<rows.length; i++) {
+          rows[i] = table.convertRowIndexToModel(i);
+        }
+      }
+    } else {
+      list = null;
+      rows = null;
+      includeRowIndex = false;
+    }
+    
     Runnable r = new Runnable() {
       @Override
       public void run() {
         try {
           //CSVwriteableIO.write(getData(), f.getAbsolutePath());
-          synchronized (table) {
-            final CSVWriter w = new CSVWriter(IntegratorUI.getInstance().getStatusBar().showProgress());
-            w.write(table, f);
+          if (list!=null) {
+            // Does not lock the table
+            TableResultWriter w = TableResultWriter.forFile(f, IntegratorUI.getInstance().getStatusBar().showProgress());
+            w.setIncludeRowIndex(includeRowIndex);
+            w.write(list, rows, f);
+          } else {
+            synchronized (table) {
+              final CSVWriter w = new CSVWriter(IntegratorUI.getInstance().getStatusBar().showProgress());
+              w.write(table, f);
+            }
           }
           GUITools.showMessage("Saved table successfully to \"" + f.getPath() + "\".", IntegratorUI.appName);
         } catch (Throwable e) {
@@ -169,16 +277,32 @@ public class IntegratorTabWithTable extends IntegratorTab<Collection<? extends T
     
     if (table==null) {
       createTable();
+      // Prepare searching the table in the background
+      getSearchIndex();
     }
     
     return table;
   }
 
+  /* (non-Javadoc)
+   * @see de.zbit.gui.tabs.IntegratorTab#getData()
+   */
+  @Override
+  public Collection<? extends TableResult> getData() {
+    // Read data back from disk, if it has been spilled.
+    DatasetManager.getInstance().pageIn(this);
+    return super.getData();
+  }
+
   /* (non-Javadoc)
    * @see de.zbit.gui.IntegratorTab#getObjectAt(int)
    */
   @Override
   public Object getObjectAt(int i) {
+    // Rows of spilled data are copies, actions must work on the rows that are read back
+    if (data instanceof SpilledList) {
+      DatasetManager.getInstance().pageIn(this);
+    }
     if (data instanceof RandomAccess && data instanceof List) {
       return ((List<? extends TableResult>)data).get(i);
     } else {
@@ -252,40 +376,390 @@ public class IntegratorTabWithTable extends IntegratorTab<Collection<? extends T
    * Creates a new table for the given data.
    */
   public void rebuildTable() {
+    GenomicPositionIndex.invalidate(data);
+    invalidateRowIndex();
     createTable();
     super.init();
-    fireTableChangeListeners();
+    invalidateSearchIndex();
+    fireTableChangeListeners(TableChange.columnsChanged());
+  }
+  
+  /**
+   * Replaces the {@link #data} with an equal list (i.e., the same rows
+   * in the same order, e.g., rows that have been read from disk). In
+   * contrast to {@link #rebuildTable()}, the current table, including
+   * sorting, filtering and selection, is kept and listeners are not
+   * informed.
+   * <p>May be called from any thread. The {@link #data} is replaced
+   * immediately, the table model in the event dispatch thread.
+   * @param newData
+   * @see DatasetManager
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public void replaceData(final List<? extends TableResult> newData) {
+    synchronized (this) {
+      // Indices refer to the old rows
+      GenomicPositionIndex.invalidate(data);
+      data = newData;
+      currentDataIterator = null;
+      // The index is rebuilt on the next request
+      if (searchIndex!=null) {
+        searchIndex.cancel(true);
+        searchIndex=null;
+      }
+    }
+    invalidateRowIndex();
+    
+    Runnable updateModel = new Runnable() {
+      public void run() {
+        if (table!=null && table.getModel() instanceof TableResultTableModel) {
+          synchronized (table) {
+            ((TableResultTableModel) table.getModel()).setNameAndSignalsList(newData);
+          }
+          table.repaint();
+        }
+      }
+    };
+    if (SwingUtilities.isEventDispatchThread()) {
+      updateModel.run();
+    } else {
+      SwingUtilities.invokeLater(updateModel);
+    }
+  }
+  
+  /**
+   * Updates the table after the {@link #data} have been changed in-place.
+   * In contrast to {@link #rebuildTable()}, only the given rows (or
+   * columns) are updated and the current table, including sorting,
+   * filtering and column widths, is kept. All tabs that listen to
+   * changes on this table are informed, too.
+   * <p>May be called from any thread.
+   * @param change
+   */
+  public void fireTableChanged(final TableChange change) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          fireTableChanged(change);
+        }
+      });
+      return;
+    }
+    
+    // Cached positions and signal columns might be outdated
+    GenomicPositionIndex.invalidate(data);
+    
+    if (change.isRebuild() || !applyTableChange(change)) {
+      // Informs all listeners
+      rebuildTable();
+      return;
+    }
+    updateSearchIndex(change);
+    fireTableChangeListeners(change);
+  }
+  
+  /**
+   * Applies the change to the current table.
+   * @param change
+   * @return false if the table must be rebuilt instead.
+   */
+  private boolean applyTableChange(TableChange change) {
+    if (table==null || data==null) return true; // Table is created with the current data
+    if (!(table.getModel() instanceof TableResultTableModel)) return false;
+    TableResultTableModel<?> model = (TableResultTableModel<?>) table.getModel();
+    int rowCount = model.getRowCount();
+    if (rowCount!=data.size()) return false; // Data has been replaced
+    
+    synchronized (table) {
+      if (change.isColumnsChanged()) {
+        // Keep the width of all existing columns
+        Map<Object, Integer> widths = new HashMap<Object, Integer>();
+        Enumeration<TableColumn> columns = table.getColumnModel().getColumns();
+        while (columns.hasMoreElements()) {
+          TableColumn c = columns.nextElement();
+          widths.put(c.getHeaderValue(), c.getWidth());
+        }
+        model.fireTableStructureChanged();
+        columns = table.getColumnModel().getColumns();
+        while (columns.hasMoreElements()) {
+          TableColumn c = columns.nextElement();
+          Integer width = widths.get(c.getHeaderValue());
+          c.setPreferredWidth(width!=null?width:125);
+        }
+        
+      } else if (change.isAllRows()) {
+        model.fireTableDataChanged();
+        
+      } else {
+        BitSet rows = change.getRows();
+        int first = rows.nextSetBit(0);
+        int last = Math.min(rows.length(), rowCount)-1;
+        if (first>=0 && first<=last) {
+          model.fireTableRowsUpdated(first, last);
+        }
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Returns the {@link TableSearchIndex} for the current data. The index
+   * is built in the background, i.e., {@link Future#isDone()} is false
+   * until it is available.
+   * @return the index or null if this tab has no data.
+   */
+  public synchronized Future<TableSearchIndex> getSearchIndex() {
+    if (searchIndex==null && data!=null) {
+      final Collection<? extends TableResult> toIndex = data;
+      searchIndex = ParallelUtils.getBackgroundPool().submit(new Callable<TableSearchIndex>() {
+        public TableSearchIndex call() throws Exception {
+          return new TableSearchIndex(toIndex);
+        }
+      });
+    }
+    return searchIndex;
   }
   
   /**
-   * Invokes the {@link #rebuildTable()} method on all 
-   * tabs in {@link #tableChangeListeners}.
+   * Cancels the current {@link #searchIndex} and starts a new
+   * one, if an index has been requested before.
    */
-  private void fireTableChangeListeners() {
+  private synchronized void invalidateSearchIndex() {
+    if (searchIndex==null) return;
+    searchIndex.cancel(true);
+    searchIndex=null;
+    getSearchIndex();
+  }
+  
+  /**
+   * Updates the {@link #searchIndex} (if an index has been requested
+   * before) after the given rows have been changed in-place. Only the
+   * changed rows are read (in the event dispatch thread, i.e., now) and
+   * the new index is created from the previous one in the background.
+   * If the change affects all rows, the index is rebuilt completely.
+   * @param change
+   */
+  @SuppressWarnings("unchecked")
+  private synchronized void updateSearchIndex(TableChange change) {
+    if (searchIndex==null) return;
+    if (change.isAllRows() || change.isColumnsChanged() || 
+        !(data instanceof List) || !(data instanceof RandomAccess)) {
+      invalidateSearchIndex();
+      return;
+    }
+    final BitSet rows = (BitSet) change.getRows().clone();
+    if (rows.isEmpty()) return;
+    
+    final String[][] rowKeys;
+    try {
+      rowKeys = TableSearchIndex.getKeys((List<? extends TableResult>) data, rows);
+    } catch (ExecutionException e) {
+      invalidateSearchIndex();
+      return;
+    }
+    final Future<TableSearchIndex> previous = searchIndex;
+    final Collection<? extends TableResult> toIndex = data;
+    searchIndex = ParallelUtils.getBackgroundPool().submit(new Callable<TableSearchIndex>() {
+      public TableSearchIndex call() throws Exception {
+        // The previous index has been submitted before, i.e., is already running or done
+        TableSearchIndex index = null;
+        try {
+          index = previous.get();
+        } catch (CancellationException e) {
+          // Rebuild below
+        } catch (ExecutionException e) {
+          // Rebuild below
+        }
+        if (index==null || index.getNumberOfRows()!=rowKeys.length) {
+          return new TableSearchIndex(toIndex);
+        }
+        return index.update(rowKeys, rows);
+      }
+    });
+  }
+  
+  /**
+   * Informs all tabs in {@link #tableChangeListeners} about the
+   * given change. Changed rows are mapped to the rows of each
+   * listener that contain the same objects.
+   * @param change
+   */
+  private void fireTableChangeListeners(TableChange change) {
     /* If you wonder why this "might not work":
      * If data get's gene-centered, objects are COPIES! */
     if (tableChangeListeners == null) return;
-    for (IntegratorTabWithTable tab : tableChangeListeners) {
-      // Call rebuildTable() on listeners, avoid endless-loops.
+    
+    // Identify changed rows by their objects
+    Set<Object> changedObjects = null;
+    if (!change.isAllRows()) {
+      changedObjects = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+      BitSet rows = change.getRows();
+      for (int i=rows.nextSetBit(0); i>=0; i=rows.nextSetBit(i+1)) {
+        Object o = getObjectAt(i);
+        if (o!=null) changedObjects.add(o);
+      }
+    }
+    
+    for (final IntegratorTabWithTable tab : tableChangeListeners) {
+      // Inform listeners, avoid endless-loops.
       Set<IntegratorTabWithTable> otherListeners = tab.getTableChangeListeners();
       if (otherListeners==null || !(otherListeners.contains(this))) {
-        tab.rebuildTable();
-        tab.repaint();
+        if (changedObjects==null) {
+          tab.postTableChange(change);
+        } else {
+          // Rows of the listener are looked up in the background
+          final Set<Object> objects = changedObjects;
+          ParallelUtils.getBackgroundPool().submit(new Runnable() {
+            public void run() {
+              tab.postTableChange(tab.getRowsContaining(objects));
+            }
+          });
+        }
+      }
+    }
+  }
+  
+  /**
+   * Invalidates the {@link #rowIndex}, e.g., because rows have
+   * been added or removed.
+   */
+  private void invalidateRowIndex() {
+    synchronized (rowIndexLock) {
+      rowIndex = null;
+      rowIndexData = null;
+    }
+  }
+  
+  /**
+   * Looks the given objects up in the {@link #rowIndex}. Builds the index,
+   * if required, thus, should not be invoked in the event dispatch thread.
+   * @param objects
+   * @return a change of all rows in this table, that contain any of the
+   * given objects (itself or as part of a {@link PairedNS}).
+   */
+  private TableChange getRowsContaining(Set<Object> objects) {
+    BitSet rows = new BitSet();
+    if (objects.isEmpty()) return TableChange.rowsUpdated(rows);
+    synchronized (rowIndexLock) {
+      Collection<? extends TableResult> data = this.data;
+      if (rowIndex==null || rowIndexData!=data) {
+        rowIndex = createRowIndex(data);
+        rowIndexData = data;
+      }
+      for (Object o: objects) {
+        addRows(rows, rowIndex.get(o));
+        if (o instanceof PairedNS && data instanceof PairedNSList) {
+          // Pairs are created on demand, i.e., only their parts are indexed
+          addRows(rows, rowIndex.get(((PairedNS<?, ?>) o).getNS1()));
+          addRows(rows, rowIndex.get(((PairedNS<?, ?>) o).getNS2()));
+        }
+      }
+    }
+    return TableChange.rowsUpdated(rows);
+  }
+  
+  /**
+   * @param rows
+   * @param toAdd might be null.
+   */
+  private static void addRows(BitSet rows, RowList toAdd) {
+    if (toAdd==null) return;
+    for (int i=0; i<toAdd.size; i++) {
+      rows.set(toAdd.rows[i]);
+    }
+  }
+  
+  /**
+   * @param data
+   * @return the rows of all objects in <code>data</code> and of both
+   * parts of all {@link PairedNS}s, by identity.
+   */
+  private static Map<Object, RowList> createRowIndex(Collection<? extends TableResult> data) {
+    Map<Object, RowList> index = new IdentityHashMap<Object, RowList>();
+    if (data instanceof PairedNSList) {
+      // Do not create all pairs
+      PairedNSList<?, ?> list = (PairedNSList<?, ?>) data;
+      for (int i=0; i<list.size(); i++) {
+        addToRowIndex(index, list.getNS1(i), i);
+        addToRowIndex(index, list.getNS2(i), i);
       }
+    } else if (data!=null) {
+      int i=0;
+      for (TableResult tr: data) {
+        addToRowIndex(index, tr, i);
+        if (tr instanceof PairedNS) {
+          addToRowIndex(index, ((PairedNS<?, ?>) tr).getNS1(), i);
+          addToRowIndex(index, ((PairedNS<?, ?>) tr).getNS2(), i);
+        }
+        i++;
+      }
+    }
+    return index;
+  }
+  
+  /**
+   * @param index
+   * @param o
+   * @param row
+   */
+  private static void addToRowIndex(Map<Object, RowList> index, Object o, int row) {
+    if (o==null) return;
+    RowList rows = index.get(o);
+    if (rows==null) {
+      rows = new RowList();
+      index.put(o, rows);
+    }
+    rows.add(row);
+  }
+  
+  /**
+   * Queues a change of a source table. All changes that arrive within
+   * {@link #COALESCE_DELAY} ms are applied at once with
+   * {@link #fireTableChanged(TableChange)}.
+   * @param change
+   */
+  private void postTableChange(final TableChange change) {
+    if (!change.isAllRows() && change.getRows().isEmpty()) return;
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          postTableChange(change);
+        }
+      });
+      return;
+    }
+    pendingChange = change.merge(pendingChange);
+    
+    if (pendingChangeTimer==null) {
+      pendingChangeTimer = new Timer(COALESCE_DELAY, new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+          TableChange change = pendingChange;
+          pendingChange = null;
+          if (change!=null) {
+            fireTableChanged(change);
+            repaint();
+          }
+        }
+      });
+      pendingChangeTimer.setRepeats(false);
+    }
+    if (!pendingChangeTimer.isRunning()) {
+      pendingChangeTimer.start();
     }
   }
 
   /**
    * @return all tabs that listen to changes on this table.
-   * May return null!
+   * May return null! Do not modify.
    */
-  private Set<IntegratorTabWithTable> getTableChangeListeners() {
+  public Set<IntegratorTabWithTable> getTableChangeListeners() {
     return tableChangeListeners;
   }
 
   /**
-   * If {@link #rebuildTable()} is invoked, on all <code>nsTab</code>s added
-   * with this method, their {@link #rebuildTable()} is invoked, too.
+   * If {@link #rebuildTable()} or {@link #fireTableChanged(TableChange)} is
+   * invoked, all <code>nsTab</code>s added with this method are updated, too.
+   * Changes are coalesced and only the affected rows are updated.
    * <p>You must be careful not to create endless loops with this method!
    * @param nsTab
    */
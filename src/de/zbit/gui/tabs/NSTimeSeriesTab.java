@@ -121,6 +121,15 @@ public class NSTimeSeriesTab extends NameAndSignalsTab implements PropertyChange
 	    worker.execute();
 	}
 	
+	/**
+	 * Shows a loading panel until the given <code>nsworker</code> is done.
+	 * Time unit, time points and models must be set by the caller.
+	 * @see NameAndSignalsTab#NameAndSignalsTab(IntegratorUI, SwingWorker, String, Species)
+	 */
+	public NSTimeSeriesTab(IntegratorUI parent, SwingWorker<Collection<? extends NameAndSignals>, Void> nsworker, String loadingMessage, Species species) {
+		super(parent, nsworker, loadingMessage, species);
+	}
+	
   /**
    * Change this (intermediate) panel to a real {@link NSTimeSeriesTab} or
    * close it if the worker did fail.
@@ -190,6 +199,13 @@ public class NSTimeSeriesTab extends NameAndSignalsTab implements PropertyChange
 		return geneModels;
 	}
 	
+	/**
+	 * @param geneModels the (already generated) gene models to set
+	 */
+	public void setGeneModels(List<TimeSeriesModel> geneModels) {
+		this.geneModels = geneModels;
+	}
+	
 	/**
 	 * @return the timePoints
 	 */
@@ -233,6 +233,7 @@ public class NameAndSignalsTab extends IntegratorTabWithTable implements Propert
     }
     
     init();
+    DatasetManager.getInstance().register(this);
   }
   
   public void createJToolBarItems(JToolBar bar) {
@@ -0,0 +1,163 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.gui.tabs;
+
+import java.util.BitSet;
+
+/**
+ * Describes a change of the data in an {@link IntegratorTabWithTable}.
+ * A change consists of the changed rows (model indices, or all rows)
+ * and whether the columns changed (e.g., a new signal or annotation
+ * column has been added). Changes can be merged, which is used to
+ * coalesce many changes into one table update.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ * @see IntegratorTabWithTable#fireTableChanged(TableChange)
+ */
+public class TableChange {
+
+  /**
+   * Changed model rows or null, if all rows changed.
+   */
+  private final BitSet rows;
+
+  /**
+   * True if columns have been added, removed or renamed.
+   */
+  private final boolean columnsChanged;
+
+  /**
+   * True if the table must be completely rebuilt (e.g., the data
+   * collection has been replaced).
+   */
+  private final boolean rebuild;
+
+  /**
+   * @param rows changed model rows or null for all rows.
+   * @param columnsChanged
+   * @param rebuild
+   */
+  private TableChange(BitSet rows, boolean columnsChanged, boolean rebuild) {
+    super();
+    this.rows = rows;
+    this.columnsChanged = columnsChanged;
+    this.rebuild = rebuild;
+  }
+
+  /**
+   * @param rows model indices
+   * @return a change of the given rows.
+   */
+  public static TableChange rowsUpdated(int... rows) {
+    BitSet set = new BitSet();
+    for (int row: rows) {
+      set.set(row);
+    }
+    return new TableChange(set, false, false);
+  }
+
+  /**
+   * @param rows model indices
+   * @return a change of the given rows.
+   */
+  public static TableChange rowsUpdated(BitSet rows) {
+    return new TableChange((BitSet) rows.clone(), false, false);
+  }
+
+  /**
+   * @return a change of all values, but not of the columns (e.g.,
+   * names have been converted to gene symbols).
+   */
+  public static TableChange allRowsUpdated() {
+    return new TableChange(null, false, false);
+  }
+
+  /**
+   * @return a change of all values and columns (e.g., a new signal
+   * has been added to all rows).
+   */
+  public static TableChange columnsChanged() {
+    return new TableChange(null, true, false);
+  }
+
+  /**
+   * @return a change that requires to rebuild the whole table.
+   */
+  public static TableChange rebuild() {
+    return new TableChange(null, true, true);
+  }
+
+  /**
+   * @return changed model rows or null if all rows changed. Do not modify.
+   */
+  public BitSet getRows() {
+    return rows;
+  }
+
+  /**
+   * @return true if all rows changed.
+   */
+  public boolean isAllRows() {
+    return rows==null;
+  }
+
+  /**
+   * @return true if columns have been added, removed or renamed.
+   */
+  public boolean isColumnsChanged() {
+    return columnsChanged;
+  }
+
+  /**
+   * @return true if the whole table must be rebuilt.
+   */
+  public boolean isRebuild() {
+    return rebuild;
+  }
+
+  /**
+   * @param other may be null.
+   * @return a change that contains this and the <code>other</code>
+   * change.
+   */
+  public TableChange merge(TableChange other) {
+    if (other==null) return this;
+    BitSet mergedRows = null;
+    if (rows!=null && other.rows!=null) {
+      mergedRows = (BitSet) rows.clone();
+      mergedRows.or(other.rows);
+    }
+    return new TableChange(mergedRows, columnsChanged || other.columnsChanged,
+      rebuild || other.rebuild);
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return String.format("%s[rows=%s, columnsChanged=%s, rebuild=%s]", getClass().getSimpleName(),
+      rows==null?"all":Integer.toString(rows.cardinality()), columnsChanged, rebuild);
+  }
+
+}
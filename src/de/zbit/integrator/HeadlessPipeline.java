@@ -0,0 +1,493 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.integrator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.zbit.analysis.enrichment.AbstractEnrichment;
+import de.zbit.analysis.enrichment.GOEnrichment;
+import de.zbit.analysis.enrichment.KEGGPathwayEnrichment;
+import de.zbit.data.EnrichmentObject;
+import de.zbit.data.NameAndSignals;
+import de.zbit.data.PairedNS;
+import de.zbit.data.Signal;
+import de.zbit.data.Signal.MergeType;
+import de.zbit.data.Signal.SignalType;
+import de.zbit.data.TableResult;
+import de.zbit.gui.IntegratorUITools;
+import de.zbit.gui.prefs.MetricsOptions;
+import de.zbit.io.NameAndSignalReader;
+import de.zbit.io.TableResultWriter;
+import de.zbit.util.Species;
+import de.zbit.utils.Metrics;
+
+/**
+ * Runs an analysis pipeline without any graphical user interface.
+ * Each dataset is imported, optionally gene-centered, written as table
+ * and used for enrichments. Further, datasets can be paired. The pipeline
+ * is described by a properties file:
+ * <pre>
+ * # Required: directory for all output files
+ * output = results
+ * # Number of concurrently processed stages (default: number of processors)
+ * threads = 4
+ * # MergeType for gene-centering (default: as in the preferences)
+ * merge_type = Mean
+ * # Enrichments for each dataset (KEGG and/or GO, default: none)
+ * enrichments = KEGG,GO
+ * # Default species as KEGG abbreviation (default: as in the reader cache)
+ * species = mmu
+ *
+ * # One block per dataset
+ * dataset.liver.file = mRNA_data.txt
+ * dataset.liver.reader = mRNAReader
+ * dataset.liver.species = mmu
+ * dataset.liver.gene_centered = true
+ * # Only genes with a signal below (p-values) or whose absolute value
+ * # is above (any other signal) the threshold are used for enrichments
+ * dataset.liver.signal = Ctnnb1
+ * dataset.liver.signal_type = pValue
+ * dataset.liver.threshold = 0.05
+ *
+ * # Pairs of two datasets
+ * pair.liver_vs_mirna = liver,mirna
+ * </pre>
+ *
+ * <p>Files are imported with {@link NameAndSignalReader#importWithCache(String, ReaderCache, Species)}.
+ * Thus, each file must have been imported once with the same reader in the
+ * graphical user interface, which stores the column assignments in the
+ * {@link ReaderCache}. Readers that do not support this (see
+ * {@link NameAndSignalReader#isImportWithCacheSupported()}) are rejected
+ * when the configuration is parsed.
+ *
+ * <p>Stages of different datasets run concurrently on a bounded pool.
+ * Each pair starts as soon as both of its datasets are available.
+ * Neither AWT nor Swing is initialized.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class HeadlessPipeline {
+  public static final transient Logger log = Logger.getLogger(HeadlessPipeline.class.getName());
+
+  /**
+   * Prefix of all dataset keys in the configuration.
+   */
+  private final static String DATASET_PREFIX = "dataset.";
+
+  /**
+   * Prefix of all pair keys in the configuration.
+   */
+  private final static String PAIR_PREFIX = "pair.";
+
+  /**
+   * Configuration of one dataset.
+   */
+  private static class Dataset {
+    String id;
+    String file;
+    Class<? extends NameAndSignalReader<?>> reader;
+    Species species;
+    boolean geneCentered;
+    String signal;
+    SignalType signalType;
+    double threshold;
+  }
+
+  /**
+   * Output directory.
+   */
+  private final File output;
+
+  /**
+   * Number of concurrent stages.
+   */
+  private final int threads;
+
+  private final MergeType mergeType;
+
+  /**
+   * Names of enrichments to perform on each dataset.
+   */
+  private final List<String> enrichments = new ArrayList<String>();
+
+  /**
+   * All datasets by id.
+   */
+  private final Map<String, Dataset> datasets = new LinkedHashMap<String, Dataset>();
+
+  /**
+   * All pairs by id. Values are ids of both datasets.
+   */
+  private final Map<String, String[]> pairs = new LinkedHashMap<String, String[]>();
+
+  /**
+   * Number of failed stages.
+   */
+  private final AtomicInteger errors = new AtomicInteger(0);
+
+  /**
+   * Reads the configuration.
+   * @param config
+   * @throws IOException if the file can not be read.
+   * @throws IllegalArgumentException if the configuration is invalid.
+   */
+  public HeadlessPipeline(File config) throws IOException {
+    super();
+    Properties p = new Properties();
+    InputStream in = new FileInputStream(config);
+    try {
+      p.load(in);
+    } finally {
+      in.close();
+    }
+
+    String out = p.getProperty("output");
+    if (out==null) throw new IllegalArgumentException("Please specify an output directory.");
+    output = new File(out);
+    threads = Integer.parseInt(p.getProperty("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+    if (p.getProperty("merge_type")!=null) {
+      mergeType = MergeType.valueOf(p.getProperty("merge_type").trim());
+    } else {
+      mergeType = IntegratorUITools.getMergeTypeSilent();
+    }
+    if (mergeType.equals(MergeType.AskUser)) {
+      throw new IllegalArgumentException("Please specify a merge type other than " + MergeType.AskUser + ".");
+    }
+    for (String e: p.getProperty("enrichments", "").split(",")) {
+      if (e.trim().length()>0) enrichments.add(e.trim().toUpperCase());
+    }
+    Species defaultSpecies = getSpecies(p.getProperty("species"));
+
+    // Datasets and pairs
+    for (String key: new TreeSet<String>(p.stringPropertyNames())) {
+      if (key.startsWith(DATASET_PREFIX) && key.endsWith(".file")) {
+        String id = key.substring(DATASET_PREFIX.length(), key.length()-".file".length());
+        datasets.put(id, parseDataset(p, id, defaultSpecies));
+      } else if (key.startsWith(PAIR_PREFIX)) {
+        String[] ids = p.getProperty(key).split(",");
+        if (ids.length!=2) throw new IllegalArgumentException("Please specify exactly two datasets for " + key + ".");
+        pairs.put(key.substring(PAIR_PREFIX.length()), new String[]{ids[0].trim(), ids[1].trim()});
+      }
+    }
+    for (Map.Entry<String, String[]> pair: pairs.entrySet()) {
+      for (String id: pair.getValue()) {
+        if (!datasets.containsKey(id)) {
+          throw new IllegalArgumentException("Unknown dataset '" + id + "' in pair '" + pair.getKey() + "'.");
+        }
+      }
+    }
+  }
+
+  /**
+   * @param p
+   * @param id
+   * @param defaultSpecies
+   * @return the configuration of dataset <code>id</code>.
+   */
+  @SuppressWarnings("unchecked")
+  private static Dataset parseDataset(Properties p, String id, Species defaultSpecies) {
+    String prefix = DATASET_PREFIX + id + ".";
+    Dataset d = new Dataset();
+    d.id = id;
+    d.file = p.getProperty(prefix + "file");
+
+    String reader = p.getProperty(prefix + "reader", "mRNAReader").trim();
+    if (reader.indexOf('.')<0) reader = NameAndSignalReader.class.getPackage().getName() + "." + reader;
+    try {
+      Class<?> c = Class.forName(reader);
+      if (!NameAndSignalReader.class.isAssignableFrom(c)) {
+        throw new IllegalArgumentException(reader + " is not a " + NameAndSignalReader.class.getSimpleName() + " (dataset '" + id + "').");
+      }
+      d.reader = (Class<? extends NameAndSignalReader<?>>) c;
+      // Fail early, instead of after processing all other datasets
+      if (!d.reader.newInstance().isImportWithCacheSupported()) {
+        throw new IllegalArgumentException("Reader " + c.getSimpleName() + " of dataset '" + id + "' can only import files with a GUI.");
+      }
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("Unknown reader " + reader + " for dataset '" + id + "'.");
+    } catch (InstantiationException e) {
+      throw new IllegalArgumentException("Can not create reader " + reader + " for dataset '" + id + "'.", e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Can not create reader " + reader + " for dataset '" + id + "'.", e);
+    }
+
+    d.species = p.getProperty(prefix + "species")!=null?getSpecies(p.getProperty(prefix + "species")):defaultSpecies;
+    d.geneCentered = Boolean.parseBoolean(p.getProperty(prefix + "gene_centered", "true"));
+    d.signal = p.getProperty(prefix + "signal");
+    d.signalType = SignalType.valueOf(p.getProperty(prefix + "signal_type", SignalType.pValue.toString()).trim());
+    d.threshold = Double.parseDouble(p.getProperty(prefix + "threshold", d.signalType.equals(SignalType.pValue)?"0.05":"1.5"));
+    return d;
+  }
+
+  /**
+   * @param keggAbbreviation
+   * @return the {@link Species} or null if <code>keggAbbreviation</code> is null.
+   */
+  private static Species getSpecies(String keggAbbreviation) {
+    if (keggAbbreviation==null) return null;
+    Species s = Species.search(IntegratorUITools.organisms, keggAbbreviation.trim(), Species.KEGG_ABBR);
+    if (s==null) throw new IllegalArgumentException("Unknown species " + keggAbbreviation + ".");
+    return s;
+  }
+
+  /**
+   * Runs all stages and waits until they are done.
+   * @return number of failed stages.
+   * @throws InterruptedException
+   */
+  public int run() throws InterruptedException {
+    long time = System.currentTimeMillis();
+    if (!output.exists() && !output.mkdirs()) {
+      throw new IllegalArgumentException("Can not create output directory " + output.getPath() + ".");
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+      private final AtomicInteger n = new AtomicInteger(0);
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Pipeline-" + n.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    try {
+      // Import, gene-center, write and enrich every dataset
+      Map<String, Future<Collection<? extends NameAndSignals>>> data = new LinkedHashMap<String, Future<Collection<? extends NameAndSignals>>>();
+      for (final Dataset d: datasets.values()) {
+        data.put(d.id, pool.submit(new Callable<Collection<? extends NameAndSignals>>() {
+          public Collection<? extends NameAndSignals> call() throws Exception {
+            return processDataset(d);
+          }
+        }));
+      }
+
+      /* Each pair waits for its own datasets. The pool is FIFO and all datasets
+       * are submitted before, hence waiting pairs never block a dataset. */
+      List<Future<?>> pending = new ArrayList<Future<?>>();
+      for (final Map.Entry<String, String[]> pair: pairs.entrySet()) {
+        final Future<Collection<? extends NameAndSignals>> one = data.get(pair.getValue()[0]);
+        final Future<Collection<? extends NameAndSignals>> two = data.get(pair.getValue()[1]);
+        pending.add(pool.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            Collection<? extends NameAndSignals> col1 = getResult(one);
+            Collection<? extends NameAndSignals> col2 = getResult(two);
+            if (col1==null || col2==null) {
+              log.warning("Skipping pair '" + pair.getKey() + "', because a dataset is missing.");
+              errors.incrementAndGet();
+              return null;
+            }
+            processPair(pair.getKey(), col1, col2);
+            return null;
+          }
+        }));
+      }
+
+      // Wait for everything else
+      for (Future<Collection<? extends NameAndSignals>> f: data.values()) {
+        getResult(f);
+      }
+      for (Future<?> f: pending) {
+        getResult(f);
+      }
+    } finally {
+      pool.shutdownNow();
+      pool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    log.info(String.format("Pipeline finished in %ss with %s errors.", (System.currentTimeMillis()-time)/1000, errors.get()));
+    if (Metrics.isEnabled()) Metrics.report();
+    return errors.get();
+  }
+
+  /**
+   * @param f
+   * @return the result of <code>f</code> or null if it failed.
+   * @throws InterruptedException
+   */
+  private <T> T getResult(Future<T> f) throws InterruptedException {
+    try {
+      return f.get();
+    } catch (ExecutionException e) {
+      // Already counted and logged
+      return null;
+    }
+  }
+
+  /**
+   * Imports, gene-centers, writes and enriches the given dataset.
+   * @param d
+   * @return the (gene-centered) data.
+   * @throws Exception
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private Collection<? extends NameAndSignals> processDataset(Dataset d) throws Exception {
+    try {
+      long time = System.currentTimeMillis();
+      NameAndSignalReader<? extends NameAndSignals> reader = d.reader.newInstance();
+      Collection<? extends NameAndSignals> col = reader.importWithCache(d.file, ReaderCache.getCache(), d.species);
+      if (col==null) throw new IOException("Could not read " + d.file + ".");
+      if (d.species==null) d.species = reader.getSpecies();
+      log.info(String.format("Read %s items of dataset '%s' in %sms.", col.size(), d.id, System.currentTimeMillis()-time));
+
+      if (d.geneCentered) {
+        col = NameAndSignals.geneCentered((Collection) col, mergeType);
+      }
+      write(col, d.id);
+
+      // Enrichments
+      if (enrichments.size()>0) {
+        if (d.species==null) throw new IllegalArgumentException("Please specify a species for dataset '" + d.id + "'.");
+        Collection<? extends NameAndSignals> geneList = filter(col, d);
+        for (String e: enrichments) {
+          AbstractEnrichment<String> enrichment;
+          if (e.equals("KEGG")) {
+            enrichment = new KEGGPathwayEnrichment(d.species, true, false);
+          } else if (e.equals("GO")) {
+            enrichment = new GOEnrichment(d.species);
+          } else {
+            throw new IllegalArgumentException("Unsupported enrichment " + e + ".");
+          }
+          List<EnrichmentObject<String>> result = enrichment.getEnrichments(geneList, null, null);
+          write(result, d.id + "_" + e.toLowerCase());
+        }
+      }
+      return col;
+    } catch (Exception e) {
+      log.log(Level.SEVERE, "Could not process dataset '" + d.id + "'.", e);
+      errors.incrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * @param col
+   * @param d
+   * @return all elements of <code>col</code> that pass the signal
+   * filter of <code>d</code>, or <code>col</code> if no signal is
+   * configured.
+   */
+  private static Collection<? extends NameAndSignals> filter(Collection<? extends NameAndSignals> col, Dataset d) {
+    if (d.signal==null) return col;
+    List<NameAndSignals> ret = new ArrayList<NameAndSignals>();
+    for (NameAndSignals ns: col) {
+      Signal s = ns.getSignal(d.signalType, d.signal);
+      if (s==null || s.getSignal()==null) continue;
+      double v = s.getSignal().doubleValue();
+      if (Double.isNaN(v)) continue;
+      if (d.signalType.equals(SignalType.pValue) ? v<=d.threshold : Math.abs(v)>=d.threshold) {
+        ret.add(ns);
+      }
+    }
+    log.info(String.format("%s of %s items of dataset '%s' are used for enrichments.", ret.size(), col.size(), d.id));
+    return ret;
+  }
+
+  /**
+   * Pairs and writes both datasets.
+   * @param id
+   * @param one
+   * @param two
+   * @throws Exception
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private void processPair(String id, Collection<? extends NameAndSignals> one, Collection<? extends NameAndSignals> two) throws Exception {
+    try {
+      // Datasets are already gene-centered, if configured
+      List<? extends TableResult> paired = PairedNS.pair((Collection) one, (Collection) two, false);
+      write(paired, id);
+    } catch (Exception e) {
+      log.log(Level.SEVERE, "Could not process pair '" + id + "'.", e);
+      errors.incrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the given data as tab-separated file to the {@link #output}
+   * directory.
+   * @param data
+   * @param name file name without extension.
+   * @throws IOException
+   */
+  private void write(Collection<? extends TableResult> data, String name) throws IOException {
+    List<? extends TableResult> list = data instanceof List?(List<? extends TableResult>) data:new ArrayList<TableResult>(data);
+    File f = new File(output, name + ".tsv");
+    new TableResultWriter().write(list, f);
+    log.info(String.format("Wrote %s rows to %s.", list.size(), f.getPath()));
+  }
+
+  /**
+   * Runs the pipeline, described in the given configuration file.
+   * @param args path to the configuration file, optionally preceded by
+   * the {@link MetricsOptions#METRICS} option (e.g., "--metrics") to
+   * record and report {@link Metrics}.
+   */
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    String metrics = MetricsOptions.METRICS.getOptionName();
+    String config = null;
+    for (String arg: args) {
+      if (arg.equals(metrics) || arg.equalsIgnoreCase(metrics + "=true")) {
+        Metrics.setEnabled(true);
+      } else if (arg.equalsIgnoreCase(metrics + "=false")) {
+        Metrics.setEnabled(false);
+      } else if (config==null) {
+        config = arg;
+      } else {
+        config = null;
+        break;
+      }
+    }
+    if (config==null) {
+      System.err.println("Usage: java " + HeadlessPipeline.class.getName() + " [" + metrics + "] <pipeline.properties>");
+      System.exit(2);
+    }
+    try {
+      int errors = new HeadlessPipeline(new File(config)).run();
+      System.exit(errors>0?1:0);
+    } catch (Exception e) {
+      log.log(Level.SEVERE, "Pipeline failed.", e);
+      System.exit(1);
+    }
+  }
+
+}
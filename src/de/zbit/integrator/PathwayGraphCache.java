@@ -0,0 +1,673 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.integrator;
+
+import java.awt.event.ActionEvent;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import y.base.DataMap;
+import y.base.DataProvider;
+import y.base.Edge;
+import y.base.EdgeMap;
+import y.base.Node;
+import y.base.NodeMap;
+import y.io.GraphMLIOHandler;
+import y.io.graphml.KeyScope;
+import y.io.graphml.KeyType;
+import y.view.Graph2D;
+import y.view.hierarchy.HierarchyManager;
+import de.zbit.graph.io.Graph2Dwriter;
+import de.zbit.graph.io.def.GenericDataMap;
+import de.zbit.gui.GUITools;
+import de.zbit.kegg.KEGGtranslatorOptions;
+import de.zbit.kegg.Translator;
+import de.zbit.kegg.gui.KGMLSelectAndDownload;
+import de.zbit.kegg.io.BatchKEGGtranslator;
+import de.zbit.kegg.io.KEGG2yGraph;
+import de.zbit.kegg.io.KEGGtranslatorIOOptions.Format;
+import de.zbit.util.NotifyingWorker;
+import de.zbit.util.prefs.KeyProvider;
+import de.zbit.util.prefs.Option;
+import de.zbit.util.prefs.SBPreferences;
+import de.zbit.utils.Metrics;
+import de.zbit.utils.UserDirectory;
+
+/**
+ * An application-wide cache of translated KEGG pathway graphs.
+ *
+ * <p>Translated pathways are kept as templates and every caller gets
+ * its own copy of the template graph (see {@link #getGraph(String)}),
+ * which may be modified freely. Concurrent requests for the same
+ * pathway only download and translate it once. Templates are written
+ * as GraphML to {@link #cacheDirName} in the {@link UserDirectory},
+ * such that reopening a pathway (also in later sessions) does not
+ * require any translation.
+ *
+ * <p>Templates are identified by the pathway id and all translator
+ * options that influence the resulting graph. The most recently used
+ * templates are kept in memory, as long as their total number of
+ * nodes and edges does not exceed {@link #maximumRetainedElements}.
+ * All other templates are only softly referenced.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class PathwayGraphCache {
+  public static final transient Logger log = Logger.getLogger(PathwayGraphCache.class.getName());
+
+  /**
+   * Directory (in the {@link UserDirectory}) to persist translated
+   * pathways to.
+   */
+  public final static String cacheDirName = "pathwayCache";
+
+  /**
+   * The only instance of this class.
+   */
+  private static PathwayGraphCache instance = null;
+
+  /**
+   * A translated pathway. Use {@link #createGraph()} to get a graph
+   * that can be modified.
+   */
+  public static class PathwayTemplate {
+    private final String pathwayID;
+    private final Graph2D graph;
+
+    /**
+     * @param pathwayID
+     * @param graph
+     */
+    PathwayTemplate(String pathwayID, Graph2D graph) {
+      super();
+      this.pathwayID = pathwayID;
+      this.graph = graph;
+    }
+
+    /**
+     * @return the pathway id (e.g., "hsa00010").
+     */
+    public String getPathwayID() {
+      return pathwayID;
+    }
+
+    /**
+     * @return number of nodes and edges in this template.
+     */
+    public int size() {
+      return graph.nodeCount()+graph.edgeCount();
+    }
+
+    /**
+     * @return a new copy of the translated graph.
+     */
+    public synchronized Graph2D createGraph() {
+      return copy(graph);
+    }
+  }
+
+  /**
+   * A cached pathway.
+   */
+  private static class Entry {
+    /**
+     * Loads the template (only while loading).
+     */
+    FutureTask<PathwayTemplate> loader;
+    SoftReference<PathwayTemplate> soft;
+    PathwayTemplate strong;
+
+    PathwayTemplate get() {
+      if (strong!=null) return strong;
+      return soft!=null?soft.get():null;
+    }
+  }
+
+  /**
+   * All cached pathways.
+   */
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  /**
+   * Templates that are kept in memory (in access order).
+   */
+  private final LinkedHashMap<String, Entry> retained = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  /**
+   * Total number of nodes and edges in {@link #retained}.
+   */
+  private long retainedElements = 0;
+
+  /**
+   * Maximum number of nodes and edges of all retained templates.
+   */
+  private long maximumRetainedElements = 250000;
+
+  /**
+   * Directory of the persisted templates.
+   */
+  private File cacheDir = new File(UserDirectory.getDirectory(), cacheDirName);
+
+  /*
+   * Statistics
+   */
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong diskHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final static Metrics.Timer TRANSLATION_TIME = Metrics.timer("pathwayCache.translationTime");
+
+  private PathwayGraphCache() {
+    super();
+    Metrics.register("pathwayCache.hits", new Metrics.Gauge() {
+      public Number getValue() {
+        return getHits();
+      }
+    });
+    Metrics.register("pathwayCache.diskHits", new Metrics.Gauge() {
+      public Number getValue() {
+        return getDiskHits();
+      }
+    });
+    Metrics.register("pathwayCache.misses", new Metrics.Gauge() {
+      public Number getValue() {
+        return getMisses();
+      }
+    });
+  }
+
+  /**
+   * @return the only instance of this class.
+   */
+  public synchronized static PathwayGraphCache getInstance() {
+    if (instance==null) {
+      instance = new PathwayGraphCache();
+    }
+    return instance;
+  }
+
+  /**
+   * @param maximumRetainedElements maximum number of nodes and edges
+   * of all templates that are kept in memory.
+   */
+  public synchronized void setMaximumRetainedElements(long maximumRetainedElements) {
+    this.maximumRetainedElements = maximumRetainedElements;
+    trim();
+  }
+
+  /**
+   * @param cacheDir directory to persist translated pathways to
+   * (or <code>null</code> to disable persistence).
+   */
+  public synchronized void setCacheDir(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * @param pathwayID e.g., "hsa00010".
+   * @return a new copy of the translated pathway graph.
+   * @throws Exception if the pathway could not be downloaded or translated.
+   */
+  public Graph2D getGraph(String pathwayID) throws Exception {
+    return getTemplate(pathwayID).createGraph();
+  }
+
+  /**
+   * @param pathwayID e.g., "hsa00010".
+   * @return the translated pathway.
+   * @throws Exception if the pathway could not be downloaded or translated.
+   */
+  public PathwayTemplate getTemplate(String pathwayID) throws Exception {
+    if (pathwayID.startsWith("path:")) pathwayID = pathwayID.substring(5);
+    final String id = pathwayID.trim();
+    final String key = id + "." + getOptionsKey();
+
+    FutureTask<PathwayTemplate> task;
+    boolean runTask = false;
+    synchronized (this) {
+      Entry e = entries.get(key);
+      if (e==null) {
+        e = new Entry();
+        entries.put(key, e);
+      }
+      PathwayTemplate t = e.get();
+      if (t!=null) {
+        hits.incrementAndGet();
+        retain(key, e);
+        return t;
+      }
+      if (e.loader==null) {
+        final File cacheFile = cacheDir!=null?new File(cacheDir, key + ".graphml"):null;
+        e.loader = new FutureTask<PathwayTemplate>(new Callable<PathwayTemplate>() {
+          public PathwayTemplate call() throws Exception {
+            return load(id, cacheFile);
+          }
+        });
+        runTask = true;
+      }
+      task = e.loader;
+    }
+
+    // Load outside of the lock (other threads wait for the same task)
+    if (runTask) task.run();
+    PathwayTemplate t;
+    try {
+      t = task.get();
+    } catch (ExecutionException ex) {
+      synchronized (this) {
+        Entry e = entries.get(key);
+        if (e!=null && e.loader==task) entries.remove(key);
+      }
+      Throwable cause = ex.getCause();
+      if (cause instanceof Exception) throw (Exception) cause;
+      throw ex;
+    }
+
+    synchronized (this) {
+      Entry e = entries.get(key);
+      if (e!=null && e.loader==task) {
+        e.loader = null;
+        e.soft = new SoftReference<PathwayTemplate>(t);
+        retain(key, e);
+      }
+    }
+    return t;
+  }
+
+  /**
+   * Loads a template from disk or translates it.
+   * @param pathwayID
+   * @param cacheFile
+   * @return
+   * @throws Exception
+   */
+  private PathwayTemplate load(String pathwayID, File cacheFile) throws Exception {
+    // Try to read a persisted template
+    if (cacheFile!=null && cacheFile.exists() && cacheFile.length()>0) {
+      try {
+        Graph2D graph = readGraphML(cacheFile);
+        if (graph!=null && !graph.isEmpty()) {
+          diskHits.incrementAndGet();
+          return new PathwayTemplate(pathwayID, graph);
+        }
+      } catch (Throwable e) {
+        log.log(Level.WARNING, "Could not read cached pathway " + cacheFile, e);
+      }
+    }
+
+    // Download and translate the pathway
+    misses.incrementAndGet();
+    long time = System.currentTimeMillis();
+    long start = TRANSLATION_TIME.start();
+    String inputFile;
+    if (KGMLSelectAndDownload.class.getResource("kgml/" + pathwayID + ".xml") != null) {
+      inputFile = KGMLSelectAndDownload.class.getResource("kgml/" + pathwayID + ".xml").getPath();
+    } else {
+      inputFile = KGMLSelectAndDownload.downloadPathway(pathwayID, false);
+    }
+    if (inputFile==null) throw new IOException("Failed to download pathway " + pathwayID + ".");
+
+    KEGG2yGraph translator = createTranslator();
+    Graph2D graph = (Graph2D) translator.translate(new File(inputFile));
+    if (graph==null) throw new Exception("Could not get graph for pathway " + pathwayID);
+    TRANSLATION_TIME.stop(start);
+    log.fine(String.format("Translated pathway %s in %sms.", pathwayID, System.currentTimeMillis()-time));
+
+    // Persist it
+    if (cacheFile!=null) {
+      try {
+        if (!cacheFile.getParentFile().exists()) cacheFile.getParentFile().mkdirs();
+        File temp = new File(cacheFile.getPath() + ".tmp");
+        translator.writeToFile(graph, temp.getPath(), "graphml");
+        if (!temp.renameTo(cacheFile)) temp.delete();
+      } catch (Throwable e) {
+        log.log(Level.FINE, "Could not persist pathway " + pathwayID, e);
+      }
+    }
+
+    return new PathwayTemplate(pathwayID, graph);
+  }
+
+  /**
+   * @return a new KEGGtranslator for yFiles graphs.
+   * @throws Exception
+   */
+  public static KEGG2yGraph createTranslator() throws Exception {
+    KEGG2yGraph translator = (KEGG2yGraph) BatchKEGGtranslator.getTranslator(Format.GraphML, Translator.getManager());
+    if (translator == null) throw new Exception("Could not instantiate KEGGtranslator.");
+    return translator;
+  }
+
+  /**
+   * @return a string, describing all translator options (that might
+   * influence the translated graph).
+   */
+  @SuppressWarnings("rawtypes")
+  private static String getOptionsKey() {
+    SBPreferences prefs = SBPreferences.getPreferencesFor(KEGGtranslatorOptions.class);
+    StringBuilder options = new StringBuilder();
+    for (Option option: KeyProvider.Tools.providedOptions(KEGGtranslatorOptions.class)) {
+      options.append(option.getOptionName());
+      options.append('=');
+      options.append(option.getValue(prefs));
+      options.append('\n');
+    }
+
+    // Keep the key short, since it is also used as file name
+    try {
+      byte[] hash = MessageDigest.getInstance("MD5").digest(options.toString().getBytes("UTF-8"));
+      StringBuilder key = new StringBuilder(hash.length*2);
+      for (byte b: hash) {
+        key.append(Character.forDigit((b>>4)&0xF, 16));
+        key.append(Character.forDigit(b&0xF, 16));
+      }
+      return key.toString();
+    } catch (Exception e) {
+      return Integer.toHexString(options.toString().hashCode());
+    }
+  }
+
+  /**
+   * Keeps the given entry in memory and evicts the least recently
+   * used templates, if required.
+   * @param key
+   * @param e
+   */
+  private synchronized void retain(String key, Entry e) {
+    PathwayTemplate t = e.get();
+    if (t==null) return;
+    if (retained.get(key)==null) {
+      e.strong = t;
+      retained.put(key, e);
+      retainedElements += t.size();
+    }
+    trim();
+  }
+
+  /**
+   * Evicts the least recently used templates from {@link #retained}.
+   */
+  private synchronized void trim() {
+    Iterator<Map.Entry<String, Entry>> it = retained.entrySet().iterator();
+    while (retainedElements>maximumRetainedElements && retained.size()>1 && it.hasNext()) {
+      Entry e = it.next().getValue();
+      if (e.strong!=null) retainedElements -= e.strong.size();
+      e.strong = null;
+      it.remove();
+    }
+  }
+
+  /**
+   * Removes all templates from memory.
+   */
+  public synchronized void clear() {
+    for (Entry e: retained.values()) {
+      e.strong = null;
+    }
+    retained.clear();
+    retainedElements = 0;
+    Iterator<Entry> it = entries.values().iterator();
+    while (it.hasNext()) {
+      if (it.next().loader==null) it.remove();
+    }
+  }
+
+  /**
+   * Removes all templates from memory and disk.
+   */
+  public synchronized void clearDiskCache() {
+    clear();
+    if (cacheDir!=null && cacheDir.isDirectory()) {
+      File[] files = cacheDir.listFiles();
+      if (files!=null) {
+        for (File f: files) {
+          if (f.getName().endsWith(".graphml")) f.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return number of requests, served from memory.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of templates, read from disk.
+   */
+  public long getDiskHits() {
+    return diskHits.get();
+  }
+
+  /**
+   * @return number of translated pathways.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format("%s [pathways=%s, retained=%s, elements=%s, hits=%s, diskHits=%s, misses=%s]",
+      getClass().getSimpleName(), entries.size(), retained.size(), retainedElements, hits, diskHits, misses);
+  }
+
+  /**
+   * Creates a copy of the given graph, including the hierarchy and all
+   * registered node and edge maps.
+   * @param graph
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  private static Graph2D copy(Graph2D graph) {
+    Graph2D copy = (Graph2D) graph.createCopy();
+    Node[] nodes = graph.getNodeArray();
+    Node[] copyNodes = copy.getNodeArray();
+    Edge[] edges = graph.getEdgeArray();
+    Edge[] copyEdges = copy.getEdgeArray();
+
+    // Hierarchy (group nodes)
+    HierarchyManager hm = graph.getHierarchyManager();
+    if (hm!=null) {
+      HierarchyManager copyHm = copy.getHierarchyManager();
+      if (copyHm==null) copyHm = new HierarchyManager(copy);
+      for (int i=0; i<nodes.length; i++) {
+        if (hm.isGroupNode(nodes[i]) && !copyHm.isGroupNode(copyNodes[i])) {
+          copyHm.convertToGroupNode(copyNodes[i]);
+        }
+      }
+      for (int i=0; i<nodes.length; i++) {
+        Node parent = hm.getParentNode(nodes[i]);
+        if (parent!=null) {
+          copyHm.setParentNode(copyNodes[i], copyNodes[parent.index()]);
+        }
+      }
+    }
+
+    // Node and edge maps
+    Map<DataMap, DataMap> copiedMaps = new HashMap<DataMap, DataMap>();
+    for (NodeMap map: graph.getRegisteredNodeMaps()) {
+      NodeMap copyMap = copy.createNodeMap();
+      for (int i=0; i<nodes.length; i++) {
+        Object v = map.get(nodes[i]);
+        if (v!=null) copyMap.set(copyNodes[i], v);
+      }
+      copiedMaps.put(map, copyMap);
+    }
+    for (EdgeMap map: graph.getRegisteredEdgeMaps()) {
+      EdgeMap copyMap = copy.createEdgeMap();
+      for (int i=0; i<edges.length; i++) {
+        Object v = map.get(edges[i]);
+        if (v!=null) copyMap.set(copyEdges[i], v);
+      }
+      copiedMaps.put(map, copyMap);
+    }
+
+    // Data providers (maps are replaced by their copies)
+    GenericDataMap<DataMap, String> mapDescription = (GenericDataMap<DataMap, String>) graph.getDataProvider(Graph2Dwriter.mapDescription);
+    for (Object key: graph.getDataProviderKeys()) {
+      if (key.equals(Graph2Dwriter.mapDescription)) continue;
+      DataProvider dp = graph.getDataProvider(key);
+      DataMap copied = copiedMaps.get(dp);
+      copy.addDataProvider(key, copied!=null?copied:dp);
+    }
+    if (mapDescription!=null) {
+      GenericDataMap<DataMap, String> copyDescription = Graph2Dwriter.addMapDescriptionMapToGraph(copy);
+      for (Map.Entry<DataMap, DataMap> e: copiedMaps.entrySet()) {
+        String desc = mapDescription.getV(e.getKey());
+        if (desc!=null) copyDescription.set(e.getValue(), desc);
+      }
+    }
+
+    return copy;
+  }
+
+  /**
+   * Reads a persisted pathway. All GraphML keys of the file are
+   * registered as node and edge maps (with their name as map description).
+   * @param file
+   * @return
+   * @throws Exception
+   */
+  private static Graph2D readGraphML(File file) throws Exception {
+    Graph2D graph = new Graph2D();
+    graph.setHierarchyManager(new HierarchyManager(graph));
+    GraphMLIOHandler handler = new GraphMLIOHandler();
+    GenericDataMap<DataMap, String> mapDescription = Graph2Dwriter.addMapDescriptionMapToGraph(graph);
+
+    Set<String> registered = new HashSet<String>();
+    for (String[] key: readKeys(file)) {
+      String name = key[0], scope = key[1], type = key[2];
+      if (!registered.add(scope + "\t" + name)) continue;
+      KeyType keyType = KeyType.STRING;
+      if (type.equals("int")) keyType = KeyType.INT;
+      else if (type.equals("double")) keyType = KeyType.DOUBLE;
+      else if (type.equals("boolean")) keyType = KeyType.BOOLEAN;
+
+      if (scope.equals("node")) {
+        NodeMap map = graph.createNodeMap();
+        handler.getGraphMLHandler().addInputDataAcceptor(name, map, KeyScope.NODE, keyType);
+        mapDescription.set(map, name);
+      } else if (scope.equals("edge")) {
+        EdgeMap map = graph.createEdgeMap();
+        handler.getGraphMLHandler().addInputDataAcceptor(name, map, KeyScope.EDGE, keyType);
+        mapDescription.set(map, name);
+      }
+    }
+
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      handler.read(graph, in);
+    } finally {
+      in.close();
+    }
+    return graph;
+  }
+
+  /**
+   * @param file a GraphML file
+   * @return name, scope ("node" or "edge") and type of all custom
+   * (i.e. non-yFiles) keys.
+   * @throws IOException
+   * @throws XMLStreamException
+   */
+  private static List<String[]> readKeys(File file) throws IOException, XMLStreamException {
+    List<String[]> keys = new ArrayList<String[]>();
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      XMLStreamReader r = XMLInputFactory.newInstance().createXMLStreamReader(in);
+      while (r.hasNext()) {
+        if (r.next()!=XMLStreamConstants.START_ELEMENT) continue;
+        String element = r.getLocalName();
+        if (element.equals("graph")) break; // All keys are declared before the graph
+        if (!element.equals("key")) continue;
+        if (r.getAttributeValue(null, "yfiles.type")!=null) continue;
+        String name = r.getAttributeValue(null, "attr.name");
+        String scope = r.getAttributeValue(null, "for");
+        String type = r.getAttributeValue(null, "attr.type");
+        if (name==null || scope==null) continue;
+        keys.add(new String[]{name, scope, type!=null?type:"string"});
+      }
+      r.close();
+    } finally {
+      in.close();
+    }
+    return keys;
+  }
+
+  /**
+   * Creates a worker that gets a pathway from the cache, to be used
+   * by the pathway panels. Publishes the same events as other pathway
+   * importers (e.g., {@link de.zbit.io.GraphMLimporter}).
+   * @param pathwayID
+   * @return
+   */
+  public static NotifyingWorker<Graph2D> createImporter(final String pathwayID) {
+    return new NotifyingWorker<Graph2D>() {
+      @Override
+      protected Graph2D doInBackground() throws Exception {
+        try {
+          publish(new ActionEvent(this, 3, null));
+          Graph2D graph = getInstance().getGraph(pathwayID);
+          publish(new ActionEvent(this, 12, String.format("KEGG pathway '%s'.", pathwayID)));
+          publish(new ActionEvent(graph, 4, null));
+          return graph;
+        } catch (Exception e) {
+          GUITools.showErrorMessage(null, e, "Could not load pathway " + pathwayID + ".");
+          publish(new ActionEvent(this, 2, null)); // Remove this tab
+          publish(new ActionEvent(this, 5, null)); // Remove this from list of listeners
+          return null;
+        }
+      }
+    };
+  }
+
+}
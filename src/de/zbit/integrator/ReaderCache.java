@@ -27,12 +27,16 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import de.zbit.gui.csv.CSVImporterV2;
 import de.zbit.io.NameAndSignalReader;
 import de.zbit.io.SerializableTools;
+import de.zbit.util.Species;
+import de.zbit.utils.Metrics;
 
 /**
  * A cache for configurations for the {@link NameAndSignalReader}.
@@ -44,6 +48,12 @@ import de.zbit.io.SerializableTools;
 public class ReaderCache implements Serializable {
   private static final long serialVersionUID = -4076147191332720931L;
   
+  /*
+   * Metrics
+   */
+  private final static Metrics.Counter HITS = Metrics.counter("readerCache.hits");
+  private final static Metrics.Counter MISSES = Metrics.counter("readerCache.misses");
+  
   /**
    * Filename of the KEGG cache file (implemented just
    * like the browser cache). Must be loaded upon start
@@ -131,7 +141,9 @@ public class ReaderCache implements Serializable {
    * @return {@link ReaderCacheElement}
    */
   public ReaderCacheElement get(File file) {
-    return cache.get(file);
+    ReaderCacheElement e = cache.get(file);
+    (e!=null?HITS:MISSES).inc();
+    return e;
   }
   
   /**
@@ -177,6 +189,27 @@ public class ReaderCache implements Serializable {
     return cache.containsKey(file) && cache.get(file)!=null;
   }
   
+  /**
+   * @param max maximum number of species to return
+   * @return all distinct species of the cached files, most
+   * recently used first.
+   */
+  public synchronized List<Species> getRecentlyUsedSpecies(int max) {
+    List<ReaderCacheElement> list = new ArrayList<ReaderCacheElement>(cache.values());
+    Collections.sort(list, Collections.reverseOrder(ReaderCacheElement.getAgeComparator()));
+    
+    List<Species> ret = new ArrayList<Species>();
+    Set<Integer> taxonIDs = new HashSet<Integer>();
+    for (ReaderCacheElement e: list) {
+      if (ret.size()>=max) break;
+      Species s = e.getOrganism();
+      if (s!=null && taxonIDs.add(s.getNCBITaxonID())) {
+        ret.add(s);
+      }
+    }
+    return ret;
+  }
+  
   /**
    * Cleans the oldest items from the cache to ensure a cache
    * size of maximum {@link #maximumCacheSize} items.
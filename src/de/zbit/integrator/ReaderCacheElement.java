@@ -160,6 +160,14 @@ public class ReaderCacheElement implements Serializable, Comparable<ReaderCacheE
     }
   }
 
+  /**
+   * @return the organism, that has been selected for the file
+   * (might be <code>null</code>).
+   */
+  public Species getOrganism() {
+    return organism;
+  }
+
   /**
    * @param spec
    */
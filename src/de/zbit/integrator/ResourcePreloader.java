@@ -0,0 +1,418 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.integrator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.zbit.data.miRNA.miRNAtargets;
+import de.zbit.gui.IntegratorUITools;
+import de.zbit.io.miRNATargetPartitions;
+import de.zbit.mapper.GO_ID2GO_NameMapper;
+import de.zbit.mapper.KeggPathwayID2PathwayName;
+import de.zbit.mapper.enrichment.GeneID2GO_ID_Mapper;
+import de.zbit.mapper.enrichment.GeneID2ListOfKEGGpathways;
+import de.zbit.util.Species;
+import de.zbit.util.progressbar.AbstractProgressBar;
+import de.zbit.utils.GeneSymbolIndex;
+import de.zbit.utils.MapperRegistry;
+import de.zbit.utils.ParallelUtils;
+
+/**
+ * Restores caches and prefetches frequently required resources in
+ * the background, directly after the application has been started.
+ * <p>The {@link ReaderCache} is loaded first. Afterwards, gene symbol
+ * mappings, KEGG pathway and GO term mappings and experimentally validated
+ * microRNA targets are prefetched for the most recently used species
+ * (according to the {@link ReaderCache}). MSigDB mappings can not be
+ * prefetched, because the user selects the gene set file when starting
+ * the enrichment. All tasks run on the
+ * low-priority {@link ParallelUtils#getBackgroundPool()}.
+ * <p>Mappings are prefetched into the {@link MapperRegistry}, which
+ * decides how long unused mappings are kept in memory. Consumers
+ * acquire them with the <code>acquire...</code> methods (that load
+ * them, if they have not been prefetched or have been reclaimed)
+ * and must release them when done. The {@link ReaderCache} and
+ * microRNA targets are available as {@link Future}.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class ResourcePreloader {
+  public static final transient Logger log = Logger.getLogger(ResourcePreloader.class.getName());
+
+  /**
+   * Number of recently used species to prefetch resources for.
+   */
+  private final static int SPECIES_TO_PREFETCH = 2;
+
+  /**
+   * The only instance of this class.
+   */
+  private static ResourcePreloader instance = null;
+
+  /**
+   * Loads the {@link ReaderCache}.
+   */
+  private final FutureTask<ReaderCache> readerCache;
+
+  /**
+   * Experimentally validated microRNA targets by NCBI taxonomy id.
+   * Each instance can only be taken once (see {@link #takeMicroRNAtargets(Species)}).
+   */
+  private final Map<Integer, FutureTask<miRNAtargets>> microRNAtargets = new ConcurrentHashMap<Integer, FutureTask<miRNAtargets>>();
+
+  /**
+   * True if {@link #start()} has been called.
+   */
+  private boolean started = false;
+
+  private ResourcePreloader() {
+    super();
+    readerCache = new FutureTask<ReaderCache>(new Callable<ReaderCache>() {
+      public ReaderCache call() throws Exception {
+        return ReaderCache.getCache();
+      }
+    });
+  }
+
+  /**
+   * @return the only instance of this class.
+   */
+  public synchronized static ResourcePreloader getInstance() {
+    if (instance==null) {
+      instance = new ResourcePreloader();
+    }
+    return instance;
+  }
+
+  /**
+   * Starts to load the {@link ReaderCache} and, afterwards, to prefetch
+   * the resources of the most recently used species. Does nothing if
+   * already started.
+   */
+  public synchronized void start() {
+    if (started) return;
+    started = true;
+
+    ParallelUtils.getBackgroundPool().execute(new Runnable() {
+      public void run() {
+        readerCache.run();
+        try {
+          List<Species> recent = getReaderCache().get().getRecentlyUsedSpecies(SPECIES_TO_PREFETCH);
+          for (int i=0; i<recent.size(); i++) {
+            // miRNA targets are only prefetched for the most recent species
+            prefetch(recent.get(i), i==0);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          log.log(Level.FINE, "Could not load reader cache.", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * @return the {@link ReaderCache}, once loaded.
+   */
+  public Future<ReaderCache> getReaderCache() {
+    return readerCache;
+  }
+
+  /**
+   * Prefetches all resources for the given species in the background.
+   * @param species
+   * @param microRNAtargets if true, also microRNA targets are prefetched.
+   */
+  public void prefetch(final Species species, boolean microRNAtargets) {
+    if (species==null) return;
+    log.fine("Prefetching resources for " + species.getCommonName());
+
+    GeneSymbolIndex.prefetch(species);
+    ParallelUtils.getBackgroundPool().execute(new Runnable() {
+      public void run() {
+        IntegratorUITools.get2GeneSymbolMapping(species, true);
+      }
+    });
+    prefetch(GeneID2ListOfKEGGpathways.class, species, getKeggPathwayMappingLoader(species, null));
+    prefetch(KeggPathwayID2PathwayName.class, null, getKeggPathwayNamesLoader(null));
+    prefetch(GeneID2GO_ID_Mapper.class, species, getGOMappingLoader(species, null));
+    prefetch(GO_ID2GO_NameMapper.class, species, getGONamesLoader(species, null));
+    // The partitioned file is read quickly and only partially, reading
+    // (and keeping) the full serialized targets would be wasted.
+    if (microRNAtargets && !miRNATargetPartitions.exists(species)) {
+      execute(getMicroRNAtargetsTask(species));
+    }
+  }
+
+  /**
+   * Executes the given task on the background pool, if it
+   * is not already done.
+   * @param task
+   */
+  private static void execute(FutureTask<?> task) {
+    if (!task.isDone()) {
+      ParallelUtils.getBackgroundPool().execute(task);
+    }
+  }
+
+  /**
+   * Loads the given mapper into the {@link MapperRegistry} on the
+   * background pool. The mapper is not acquired, i.e., it may be
+   * reclaimed if it is not used.
+   * @param <T>
+   * @param type
+   * @param species
+   * @param loader
+   */
+  private static <T> void prefetch(final Class<T> type, final Species species, final MapperRegistry.Loader<? extends T> loader) {
+    ParallelUtils.getBackgroundPool().execute(new Runnable() {
+      public void run() {
+        try {
+          MapperRegistry.getInstance().get(type, species, null, loader);
+        } catch (IOException e) {
+          log.log(Level.FINE, "Could not prefetch " + type.getSimpleName(), e);
+        }
+      }
+    });
+  }
+
+  /**
+   * @param species
+   * @param prog
+   * @return a loader for the KEGG pathway mapping.
+   */
+  private static MapperRegistry.Loader<GeneID2ListOfKEGGpathways> getKeggPathwayMappingLoader(final Species species, final AbstractProgressBar prog) {
+    return new MapperRegistry.Loader<GeneID2ListOfKEGGpathways>() {
+      public GeneID2ListOfKEGGpathways load() throws IOException {
+        return new GeneID2ListOfKEGGpathways(species, prog);
+      }
+    };
+  }
+
+  /**
+   * @param prog
+   * @return a loader for the KEGG pathway names.
+   */
+  private static MapperRegistry.Loader<KeggPathwayID2PathwayName> getKeggPathwayNamesLoader(final AbstractProgressBar prog) {
+    return new MapperRegistry.Loader<KeggPathwayID2PathwayName>() {
+      public KeggPathwayID2PathwayName load() throws IOException {
+        return new KeggPathwayID2PathwayName(prog);
+      }
+    };
+  }
+
+  /**
+   * @param species
+   * @param prog
+   * @return a loader for the GO term mapping.
+   */
+  private static MapperRegistry.Loader<GeneID2GO_ID_Mapper> getGOMappingLoader(final Species species, final AbstractProgressBar prog) {
+    return new MapperRegistry.Loader<GeneID2GO_ID_Mapper>() {
+      public GeneID2GO_ID_Mapper load() throws IOException {
+        return new GeneID2GO_ID_Mapper(species, prog);
+      }
+    };
+  }
+
+  /**
+   * @param species
+   * @param prog
+   * @return a loader for the GO term names.
+   */
+  private static MapperRegistry.Loader<GO_ID2GO_NameMapper> getGONamesLoader(final Species species, final AbstractProgressBar prog) {
+    return new MapperRegistry.Loader<GO_ID2GO_NameMapper>() {
+      public GO_ID2GO_NameMapper load() throws IOException {
+        return new GO_ID2GO_NameMapper(false, prog, species.getNCBITaxonID());
+      }
+    };
+  }
+
+  /**
+   * @param species
+   * @return the task that reads the microRNA targets.
+   */
+  private synchronized FutureTask<miRNAtargets> getMicroRNAtargetsTask(final Species species) {
+    FutureTask<miRNAtargets> task = microRNAtargets.get(species.getNCBITaxonID());
+    if (task==null) {
+      task = new FutureTask<miRNAtargets>(new Callable<miRNAtargets>() {
+        public miRNAtargets call() throws Exception {
+          return IntegratorUITools.readMicroRNAtargets(species, false);
+        }
+      });
+      microRNAtargets.put(species.getNCBITaxonID(), task);
+    }
+    return task;
+  }
+
+  /**
+   * Waits for a prefetched resource. If the task has not yet been
+   * started by the background pool, it is executed in the current
+   * thread.
+   * @param <T>
+   * @param task might be <code>null</code>.
+   * @return the resource or <code>null</code> if it has not been
+   * prefetched or could not be loaded.
+   */
+  private static <T> T get(FutureTask<T> task) {
+    if (task==null) return null;
+    // Does nothing if the task is already running or done
+    task.run();
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.log(Level.FINE, "Could not prefetch resource.", e);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the shared KEGG pathway mapping for the given species. If
+   * it has not been prefetched, it is loaded in the current thread.
+   * Call {@link #releaseKeggPathwayMapping(Species)} when done.
+   * @param species
+   * @param prog used if the mapping must be read.
+   * @return the mapping.
+   * @throws IOException
+   */
+  public GeneID2ListOfKEGGpathways acquireKeggPathwayMapping(Species species, AbstractProgressBar prog) throws IOException {
+    return MapperRegistry.getInstance().acquire(GeneID2ListOfKEGGpathways.class, species, null,
+      getKeggPathwayMappingLoader(species, prog));
+  }
+
+  /**
+   * @param species
+   * @see #acquireKeggPathwayMapping(Species, AbstractProgressBar)
+   */
+  public void releaseKeggPathwayMapping(Species species) {
+    MapperRegistry.getInstance().release(GeneID2ListOfKEGGpathways.class, species, null);
+  }
+
+  /**
+   * Returns the shared KEGG pathway names. Call
+   * {@link #releaseKeggPathwayNames()} when done.
+   * @param prog used if the names must be read.
+   * @return the KEGG pathway names.
+   * @throws IOException
+   * @see #acquireKeggPathwayMapping(Species, AbstractProgressBar)
+   */
+  public KeggPathwayID2PathwayName acquireKeggPathwayNames(AbstractProgressBar prog) throws IOException {
+    return MapperRegistry.getInstance().acquire(KeggPathwayID2PathwayName.class, null, null,
+      getKeggPathwayNamesLoader(prog));
+  }
+
+  /**
+   * @see #acquireKeggPathwayNames(AbstractProgressBar)
+   */
+  public void releaseKeggPathwayNames() {
+    MapperRegistry.getInstance().release(KeggPathwayID2PathwayName.class, null, null);
+  }
+
+  /**
+   * Returns the shared GO term mapping for the given species. Call
+   * {@link #releaseGOMapping(Species)} when done.
+   * @param species
+   * @param prog used if the mapping must be read.
+   * @return the mapping.
+   * @throws IOException
+   * @see #acquireKeggPathwayMapping(Species, AbstractProgressBar)
+   */
+  public GeneID2GO_ID_Mapper acquireGOMapping(Species species, AbstractProgressBar prog) throws IOException {
+    return MapperRegistry.getInstance().acquire(GeneID2GO_ID_Mapper.class, species, null,
+      getGOMappingLoader(species, prog));
+  }
+
+  /**
+   * @param species
+   * @see #acquireGOMapping(Species, AbstractProgressBar)
+   */
+  public void releaseGOMapping(Species species) {
+    MapperRegistry.getInstance().release(GeneID2GO_ID_Mapper.class, species, null);
+  }
+
+  /**
+   * Returns the shared GO term names for the given species. Call
+   * {@link #releaseGONames(Species)} when done.
+   * @param species
+   * @param prog used if the names must be read.
+   * @return the GO term names.
+   * @throws IOException
+   * @see #acquireGOMapping(Species, AbstractProgressBar)
+   */
+  public GO_ID2GO_NameMapper acquireGONames(Species species, AbstractProgressBar prog) throws IOException {
+    return MapperRegistry.getInstance().acquire(GO_ID2GO_NameMapper.class, species, null,
+      getGONamesLoader(species, prog));
+  }
+
+  /**
+   * @param species
+   * @see #acquireGONames(Species, AbstractProgressBar)
+   */
+  public void releaseGONames(Species species) {
+    MapperRegistry.getInstance().release(GO_ID2GO_NameMapper.class, species, null);
+  }
+
+  /**
+   * Returns the prefetched, experimentally validated microRNA targets
+   * for the given species. Since targets are usually filtered by
+   * the caller, each prefetched instance is only returned once.
+   * Targets are not prefetched again, such that at most one
+   * additional copy is kept in memory.
+   * @param species
+   * @return all experimentally validated targets or <code>null</code>
+   * if they have not been prefetched or could not be loaded.
+   */
+  public miRNAtargets takeMicroRNAtargets(Species species) {
+    if (species==null) return null;
+    FutureTask<miRNAtargets> task;
+    synchronized (this) {
+      task = microRNAtargets.remove(species.getNCBITaxonID());
+    }
+    return get(task);
+  }
+
+  /**
+   * Discards prefetched microRNA targets for the given species, e.g.,
+   * if they have been read from another source.
+   * @param species
+   */
+  public void discardMicroRNAtargets(Species species) {
+    if (species==null) return;
+    FutureTask<miRNAtargets> task;
+    synchronized (this) {
+      task = microRNAtargets.remove(species.getNCBITaxonID());
+    }
+    if (task!=null) task.cancel(false);
+  }
+
+}
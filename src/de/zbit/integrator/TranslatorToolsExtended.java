@@ -23,6 +23,7 @@
 package de.zbit.integrator;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,8 +39,10 @@ import y.view.NodeRealizer;
 import de.zbit.graph.gui.TranslatorPanel;
 import de.zbit.graph.io.def.GraphMLmaps;
 import de.zbit.gui.IntegratorUITools;
+import de.zbit.mapper.MappingUtils.IdentifierType;
 import de.zbit.mapper.compounds.KeggCompound2InChIKeyMapper;
 import de.zbit.util.TranslatorTools;
+import de.zbit.utils.CompoundIndex;
 
 /**
  * A class that extends translator tools and adds compound functionality that is not naturally
@@ -135,8 +138,28 @@ public class TranslatorToolsExtended extends TranslatorTools{
    * This will initialize the {@link GraphMLmapsExtended#NODE_COMPOUND_ID} mapping.
    */
   public void createNode2InChIKeymapping() {
-    KeggCompound2InChIKeyMapper map = IntegratorUITools.getKegg2InChIKeyMapping();
- 
+    // Prefer the compact compound index over reading the mapper
+    CompoundIndex index = CompoundIndex.getInstance();
+    if (index!=null && index.supports(IdentifierType.KeggCompound)) {
+      createNode2InChIKeymapping(index);
+      return;
+    }
+    
+    KeggCompound2InChIKeyMapper map = IntegratorUITools.getKegg2InChIKeyMapping(true);
+    if (map==null) return;
+    try {
+      createNode2InChIKeymapping(map);
+    } finally {
+      IntegratorUITools.releaseKegg2InChIKeyMapping();
+    }
+  }
+  
+  /**
+   * Initializes the {@link GraphMLmapsExtended#NODE_COMPOUND_ID} mapping
+   * with the given mapper.
+   * @param map
+   */
+  private void createNode2InChIKeymapping(KeggCompound2InChIKeyMapper map) {
     // Assign a space-separated HMDB-id-string to each node
     for (Node n: graph.getNodeArray()) {
       Object KEGG_id = this.getInfo(n, GraphMLmaps.NODE_KEGG_ID);
@@ -168,6 +191,47 @@ public class TranslatorToolsExtended extends TranslatorTools{
     }
   }
   
+  /**
+   * Initializes the {@link GraphMLmapsExtended#NODE_COMPOUND_ID} mapping
+   * with the given index. The KEGG ids of all nodes are resolved at once.
+   * @param index
+   */
+  private void createNode2InChIKeymapping(CompoundIndex index) {
+    // Collect the ids of all nodes
+    Node[] nodes = graph.getNodeArray();
+    int[] firstID = new int[nodes.length+1];
+    List<String> ids = new ArrayList<String>();
+    for (int i=0; i<nodes.length; i++) {
+      firstID[i] = ids.size();
+      Object KEGG_id = this.getInfo(nodes[i], GraphMLmaps.NODE_KEGG_ID);
+      if (KEGG_id!=null) {
+        for (String id: KEGG_id.toString().split("\\|")) { // "|" separated.
+          if (id!=null && id.trim().length()>0) ids.add(id);
+        }
+      }
+    }
+    firstID[nodes.length] = ids.size();
+    
+    // Resolve and assign a "|"-separated InChIKey-string to each node
+    int[][] ordinals = index.lookup(IdentifierType.KeggCompound, ids.toArray(new String[ids.size()]));
+    for (int i=0; i<nodes.length; i++) {
+      StringBuffer idString = new StringBuffer();
+      for (int j=firstID[i]; j<firstID[i+1]; j++) {
+        for (int o: ordinals[j]) {
+          if (idString.length()>0) {
+            idString.append('|');
+          }
+          idString.append(index.getInChIKey(o));
+        }
+      }
+      
+      // Set identifiers
+      if (idString.length()>0) {
+        this.setInfo(nodes[i], GraphMLmapsExtended.NODE_COMPOUND_ID, idString.toString());
+      }
+    }
+  }
+  
   /**
    * Set a unique {@link Color} to all COMPOUND nodes, that are no pathway references. 
    * @param colorForUnaffectedNodes
@@ -38,6 +38,7 @@ import java.util.regex.Pattern;
 import de.zbit.data.NameAndSignals;
 import de.zbit.data.Signal;
 import de.zbit.data.Signal.SignalType;
+import de.zbit.data.id.CompoundID;
 import de.zbit.gui.GUITools;
 import de.zbit.gui.IntegratorUITools;
 import de.zbit.gui.JLabeledComponent;
@@ -54,6 +55,8 @@ import de.zbit.util.ArrayUtils;
 import de.zbit.util.Species;
 import de.zbit.util.objectwrapper.ValuePair;
 import de.zbit.util.objectwrapper.ValueTriplet;
+import de.zbit.utils.CompoundIndex;
+import de.zbit.utils.MapperRegistry;
 
 /**
  * An Abstract extension of {@link NamesAndSignalReader} to read
@@ -96,6 +99,26 @@ public abstract class  AbstractCompoundReader<T extends NameAndSignals> extends
    */
   private AbstractMapper<String, Set<String>> mapper = null;
   
+  /**
+   * The {@link IdentifierType} of the current {@link #mapper}. The
+   * mapper is shared via the {@link MapperRegistry} and must be
+   * released with this type.
+   */
+  private IdentifierType mapperIdType = null;
+  
+  /**
+   * If available, identifiers are resolved with this index instead
+   * of the {@link #mapper}.
+   */
+  private CompoundIndex index = null;
+  
+  /**
+   * Objects (and their identifiers) that are resolved with the
+   * {@link #index} all at once, after reading (see {@link #done(Collection)}).
+   */
+  private List<CompoundID> pendingObjects = new ArrayList<CompoundID>();
+  private List<String> pendingIDs = new ArrayList<String>();
+  
   /**
    * If true, this class will not try to initialize the
    * {@link #mapper}.
@@ -450,25 +473,25 @@ public abstract class  AbstractCompoundReader<T extends NameAndSignals> extends
     // Init Mapper (primary for idType)
     if (!doNotInitializeTheMapper) {
       if (idType!=null && !idType.equals(IdentifierType.InChIKey)) {
-        mapper = MappingUtils.initialize2InChIKeyMapper(idType, getSecondaryProgressBar());
+        acquireMapper(idType);
       } else if (secondID!=null) {
         // Only if primary identifier does not require a mapper,
         // init one for the secondary identifier
-        mapper = MappingUtils.initialize2InChIKeyMapper(secondID.getB(), getSecondaryProgressBar());
+        acquireMapper(secondID.getB());
       }
-      if (mapper!=null) mapper.readMappingData();
     }
     
     /* If you want to initialize additional things, use the init()
      * method! Do not put another method call in here!
      */
     
-    // Read file
-    Collection<T> ret =  super.read(inputCSV);
-    
-    // Free resources
-    mapper = null;
-    return ret;
+    try {
+      // Read file
+      return super.read(inputCSV);
+    } finally {
+      // Free resources
+      releaseMapper();
+    }
   }
   
   /* (non-Javadoc)
@@ -479,17 +502,101 @@ public abstract class  AbstractCompoundReader<T extends NameAndSignals> extends
     // Init Mapper (primary for idType)
     if (!doNotInitializeTheMapper) {
       if (!idType.equals(IdentifierType.InChIKey)) {
-        mapper = MappingUtils.initialize2InChIKeyMapper(idType, getSecondaryProgressBar());
+        acquireMapper(idType);
       }
-      if (mapper!=null) mapper.readMappingData();
     }
     
-    // Read file
-    Collection<T> ret =  super.read(identifiers);
-    
-    // Free resources
+    try {
+      // Read file
+      return super.read(identifiers);
+    } finally {
+      // Free resources
+      releaseMapper();
+    }
+  }
+  
+  /**
+   * Acquires a shared, initialized 2InChIKey mapper from the
+   * {@link MapperRegistry}.
+   * @param type source identifier type
+   * @throws IOException
+   */
+  private void acquireMapper(IdentifierType type) throws IOException {
+    releaseMapper();
+    // Prefer the compact compound index over reading a mapper
+    CompoundIndex idx = CompoundIndex.getInstance();
+    if (idx!=null && idx.supports(type)) {
+      index = idx;
+      mapperIdType = type;
+      return;
+    }
+    mapper = MapperRegistry.get2InChIKeyMapper(type, getSecondaryProgressBar(), true);
+    mapperIdType = type;
+  }
+  
+  /**
+   * Releases the current {@link #mapper}.
+   */
+  private void releaseMapper() {
+    if (mapperIdType!=null && index==null) {
+      MapperRegistry.getInstance().release(AbstractMapper.class, null, mapperIdType);
+    }
+    mapperIdType = null;
     mapper = null;
-    return ret;
+    index = null;
+  }
+  
+  /**
+   * @param id
+   * @return the first InChIKey for the given identifier (see
+   * {@link #mapperIdType}) or <code>null</code> if it could not be mapped.
+   * @throws Exception
+   */
+  private String mapToInChIKey(String id) throws Exception {
+    Set<String> set = null;
+    if (index!=null) {
+      set = index.getInChIKeys(mapperIdType, id);
+    } else if (mapper!=null) {
+      set = mapper.map(id);
+    }
+    return set!=null && set.size()>0?set.iterator().next():null;
+  }
+  
+  /* (non-Javadoc)
+   * @see de.zbit.io.NameAndSignalReader#init()
+   */
+  @Override
+  protected void init() {
+    super.init();
+    pendingObjects.clear();
+    pendingIDs.clear();
+  }
+  
+  /* (non-Javadoc)
+   * @see de.zbit.io.NameAndSignalReader#done(java.util.Collection)
+   */
+  @Override
+  protected void done(Collection<T> ret) {
+    super.done(ret);
+    if (pendingIDs.isEmpty() || index==null) return;
+    
+    // Resolve all identifiers with one (parallel) lookup
+    int[][] ordinals = index.lookup(mapperIdType, pendingIDs.toArray(new String[pendingIDs.size()]));
+    for (int i=0; i<ordinals.length; i++) {
+      if (ordinals[i].length>0) {
+        pendingObjects.get(i).setID(index.getInChIKey(ordinals[i][0]));
+      }
+    }
+    pendingObjects.clear();
+    pendingIDs.clear();
+  }
+  
+  /**
+   * @return true if a mapper or index is available to map
+   * identifiers to InChIKeys.
+   */
+  private boolean hasMapper() {
+    return index!=null || mapper!=null;
   }
   
   /* (non-Javadoc)
@@ -499,11 +606,15 @@ public abstract class  AbstractCompoundReader<T extends NameAndSignals> extends
   protected T createObject(String name, String[] line) throws Exception {
     // Map to GeneID
     String inchikey = null;
+    String idToResolve = null; // Resolved later with the index
     if(name.isEmpty())
     	name = null;
     if (idType!=null && !idType.equals(IdentifierType.InChIKey)) {
-      Set<String> set = mapper.map(name);
-    	if(set!=null)inchikey = set.iterator().next();
+      if (index!=null) {
+        idToResolve = name;
+      } else {
+        inchikey = mapToInChIKey(name);
+      }
     } else {
       // Primary identifier is an inchikey
     	if(inchikeyPattern.matcher(name).matches()){
@@ -515,9 +626,10 @@ public abstract class  AbstractCompoundReader<T extends NameAndSignals> extends
       if (secondID!=null) {
         String secondIdentifier = line[secondID.getA()];
         if(secondIdentifier!=null && !secondIdentifier.isEmpty()){
-	        if (inchikey==null && mapper!=null) {
-	        	Set<String> set = mapper.map(secondIdentifier);
-	        	if(set!=null)inchikey = set.iterator().next();
+	        if (inchikey==null && index!=null) {
+	          idToResolve = secondIdentifier;
+	        } else if (inchikey==null && hasMapper()) {
+	        	inchikey = mapToInChIKey(secondIdentifier);
 	        }
 	        name = secondIdentifier;
         }
@@ -535,6 +647,14 @@ public abstract class  AbstractCompoundReader<T extends NameAndSignals> extends
     
     // Create mRNA
     T m = createObject(name, inchikey, line);
+    if (idToResolve!=null && m!=null) {
+      if (m instanceof CompoundID) {
+        pendingObjects.add((CompoundID) m);
+        pendingIDs.add(idToResolve);
+      } else {
+        m = createObject(name, mapToInChIKey(idToResolve), line);
+      }
+    }
     
     // SecondID is normally the name. If not, still keep this
     // information as additional information.
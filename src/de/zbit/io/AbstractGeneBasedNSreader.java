@@ -52,6 +52,8 @@ import de.zbit.util.ArrayUtils;
 import de.zbit.util.Species;
 import de.zbit.util.objectwrapper.ValuePair;
 import de.zbit.util.objectwrapper.ValueTriplet;
+import de.zbit.utils.MapperRegistry;
+import de.zbit.utils.Metrics;
 
 /**
  * An Abstract extension of {@link NameAndSignalReader} to read
@@ -71,6 +73,12 @@ public abstract class  AbstractGeneBasedNSreader<T extends NameAndSignals> exten
 
   public static final transient Logger log = Logger.getLogger(mRNAReader.class.getName());
   
+  /*
+   * Metrics (identifiers that could or could not be mapped to a gene id)
+   */
+  private final static Metrics.Counter MAPPER_HITS = Metrics.counter("reader.mapper.hits");
+  private final static Metrics.Counter MAPPER_MISSES = Metrics.counter("reader.mapper.misses");
+  
   /**
    * Type of Identifier. Anything else than
    * Numeric (GeneID) will be mapped to this.
@@ -89,6 +97,13 @@ public abstract class  AbstractGeneBasedNSreader<T extends NameAndSignals> exten
    */
   private AbstractMapper<String, Integer> mapper = null;
   
+  /**
+   * The {@link IdentifierType} of the current {@link #mapper}. The
+   * mapper is shared via the {@link MapperRegistry} and must be
+   * released with this type.
+   */
+  private IdentifierType mapperIdType = null;
+  
   /**
    * If true, this class will not try to initialize the
    * {@link #mapper}.
@@ -256,26 +271,7 @@ public abstract class  AbstractGeneBasedNSreader<T extends NameAndSignals> exten
         if (cache!=null) cache.add(ReaderCacheElement.createInstance(c, species));
         
         // Read all columns and types
-        setNameAndIdentifierTypes(exCol[0]);   
-        
-        parseCustomAnnotationColumn(exCol[1]);
-        
-        int offset = 2;
-        List<ExpectedColumn> additional = getAdditionalExpectedColumns(); // Just the size is required
-        if (additional!=null && additional.size()>0) {
-          processAdditionalExpectedColumns(ArrayUtils.asList(exCol, offset, (offset+additional.size()) ));
-          offset+=additional.size();
-        }
-        
-        // Signal columns (assumes all leftover columns are signal columns!)
-        for (int i=offset; i<exCol.length; i++) {
-          if (exCol[i].hasAssignedColumns()) {
-            for (int j=0; j<exCol[i].getAssignedColumns().size(); j++) {
-              addSignalColumn(exCol[i].getAssignedColumns().get(j), 
-                (SignalType) exCol[i].getAssignedType(j), exCol[i].getName().toString());
-            }
-          }
-        }
+        processColumnAssignments(exCol);
         
         try {
           //Utils.saveObject(FileTools.removeFileExtension(c.getApprovedCSVReader().getFilename())+"-reader.dat", this);
@@ -295,6 +291,58 @@ public abstract class  AbstractGeneBasedNSreader<T extends NameAndSignals> exten
   }
 
   
+  /* (non-Javadoc)
+   * @see de.zbit.io.NameAndSignalReader#isImportWithCacheSupported()
+   */
+  @Override
+  public boolean isImportWithCacheSupported() {
+    return true;
+  }
+  
+  /* (non-Javadoc)
+   * @see de.zbit.io.NameAndSignalReader#importWithCache(java.lang.String, de.zbit.integrator.ReaderCache, de.zbit.util.Species)
+   */
+  @Override
+  public Collection<T> importWithCache(String file, ReaderCache cache, Species species) throws IOException, Exception {
+    ReaderCacheElement ci = getConfigurationFromCache(cache, file);
+    CSVReader inputReader = new CSVReader(file);
+    ci.configureReader(inputReader);
+    ExpectedColumn[] exCol = getExpectedColumns();
+    ci.configureExpectedColumns(exCol);
+    
+    this.species = species!=null?species:ci.getOrganism();
+    processColumnAssignments(exCol);
+    return read(inputReader);
+  }
+  
+  /**
+   * Configures this reader according to the assigned columns.
+   * @param exCol all {@link #getExpectedColumns()} with assignments
+   * from the user (or cache).
+   */
+  private void processColumnAssignments(ExpectedColumn[] exCol) {
+    setNameAndIdentifierTypes(exCol[0]);   
+    
+    parseCustomAnnotationColumn(exCol[1]);
+    
+    int offset = 2;
+    List<ExpectedColumn> additional = getAdditionalExpectedColumns(); // Just the size is required
+    if (additional!=null && additional.size()>0) {
+      processAdditionalExpectedColumns(ArrayUtils.asList(exCol, offset, (offset+additional.size()) ));
+      offset+=additional.size();
+    }
+    
+    // Signal columns (assumes all leftover columns are signal columns!)
+    for (int i=offset; i<exCol.length; i++) {
+      if (exCol[i].hasAssignedColumns()) {
+        for (int j=0; j<exCol[i].getAssignedColumns().size(); j++) {
+          addSignalColumn(exCol[i].getAssignedColumns().get(j), 
+            (SignalType) exCol[i].getAssignedType(j), exCol[i].getName().toString());
+        }
+      }
+    }
+  }
+  
   /**
    * With this method, complex column assignment dependencies
    * can be checked manually. E.g. if you have dependencies like
@@ -439,25 +487,25 @@ public abstract class  AbstractGeneBasedNSreader<T extends NameAndSignals> exten
     // Init Mapper (primary for idType)
     if (!doNotInitializeTheMapper) {
       if (idType!=null && !idType.equals(IdentifierType.NCBI_GeneID)) {
-        mapper = MappingUtils.initialize2GeneIDMapper(idType, getSecondaryProgressBar(), species);
+        acquireMapper(idType);
       } else if (secondID!=null) {
         // Only if primary identifier does not require a mapper,
         // init one for the secondary identifier
-        mapper = MappingUtils.initialize2GeneIDMapper(secondID.getB(), getSecondaryProgressBar(), species);
+        acquireMapper(secondID.getB());
       }
-      if (mapper!=null) mapper.readMappingData();
     }
     
     /* If you want to initialize additional things, use the init()
      * method! Do not put another method call in here!
      */
     
-    // Read file
-    Collection<T> ret =  super.read(inputCSV);
-    
-    // Free resources
-    mapper = null;
-    return ret;
+    try {
+      // Read file
+      return super.read(inputCSV);
+    } finally {
+      // Free resources
+      releaseMapper();
+    }
   }
   
   /* (non-Javadoc)
@@ -468,17 +516,41 @@ public abstract class  AbstractGeneBasedNSreader<T extends NameAndSignals> exten
     // Init Mapper (primary for idType)
     if (!doNotInitializeTheMapper) {
       if (!idType.equals(IdentifierType.NCBI_GeneID)) {
-        mapper = MappingUtils.initialize2GeneIDMapper(idType, getSecondaryProgressBar(), species);
+        acquireMapper(idType);
       }
-      if (mapper!=null) mapper.readMappingData();
     }
     
-    // Read file
-    Collection<T> ret =  super.read(identifiers);
-    
-    // Free resources
+    try {
+      // Read file
+      return super.read(identifiers);
+    } finally {
+      // Free resources
+      releaseMapper();
+    }
+  }
+  
+  /**
+   * Acquires a shared, initialized 2GeneID mapper from the
+   * {@link MapperRegistry}. Mappers are thus only read once, also
+   * if many files of the same species are imported.
+   * @param type source identifier type
+   * @throws IOException
+   */
+  private void acquireMapper(IdentifierType type) throws IOException {
+    releaseMapper();
+    mapper = MapperRegistry.get2GeneIDMapper(type, species, getSecondaryProgressBar(), true);
+    mapperIdType = type;
+  }
+  
+  /**
+   * Releases the current {@link #mapper}.
+   */
+  private void releaseMapper() {
+    if (mapperIdType!=null) {
+      MapperRegistry.getInstance().release(AbstractMapper.class, species, mapperIdType);
+      mapperIdType = null;
+    }
     mapper = null;
-    return ret;
   }
   
   /* (non-Javadoc)
@@ -490,6 +562,7 @@ public abstract class  AbstractGeneBasedNSreader<T extends NameAndSignals> exten
     Integer geneID = null;
     if (idType!=null && !idType.equals(IdentifierType.NCBI_GeneID)) {
       geneID = mapper.map(name);
+      (geneID!=null?MAPPER_HITS:MAPPER_MISSES).inc();
     } else {
       // Primary identifier is a gene id.
       try {
@@ -498,6 +571,7 @@ public abstract class  AbstractGeneBasedNSreader<T extends NameAndSignals> exten
       } catch (NumberFormatException e) {
         String warning = String.format("Could not parse GeneID from String '%s'.", name);
         logWarning(warning);
+        PARSE_ERRORS.inc();
         
         geneID=null;
       }
@@ -508,6 +582,7 @@ public abstract class  AbstractGeneBasedNSreader<T extends NameAndSignals> exten
         String secondIdentifier = line[secondID.getA()];
         if (geneID==null && mapper!=null) {
           geneID = mapper.map(secondIdentifier);
+          (geneID!=null?MAPPER_HITS:MAPPER_MISSES).inc();
         }
         name = secondIdentifier;
       }
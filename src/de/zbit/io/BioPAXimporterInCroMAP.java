@@ -22,13 +22,22 @@
 package de.zbit.io;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import de.zbit.gui.GUITools;
 import de.zbit.gui.IntegratorUITools;
 import de.zbit.kegg.io.KEGGtranslatorIOOptions.Format;
+import de.zbit.kegg.parser.pathway.Entry;
+import de.zbit.kegg.parser.pathway.EntryType;
+import de.zbit.kegg.parser.pathway.Pathway;
+import de.zbit.kegg.parser.pathway.ext.EntryExtended;
+import de.zbit.util.DatabaseIdentifiers.IdentifierDatabases;
 import de.zbit.sbvc.io.BioPAXImporter;
 import de.zbit.util.Species;
+import de.zbit.utils.GeneSymbolIndex;
 
 /**
  * General input handler for BioPAX files.
@@ -41,6 +50,7 @@ import de.zbit.util.Species;
  * @version $Rev$
  */
 public class BioPAXimporterInCroMAP extends BioPAXImporter {
+  public static final transient Logger log = Logger.getLogger(BioPAXimporterInCroMAP.class.getName());
 
   /**
    * @param biopaxFile
@@ -64,7 +74,54 @@ public class BioPAXimporterInCroMAP extends BioPAXImporter {
    */
   @Override
   protected Species letUserSelectSpecies() {
-    return IntegratorUITools.showOrganismSelectorDialog(null);
+    Species spec = IntegratorUITools.showOrganismSelectorDialog(null);
+    // Load the shared symbol index early, such that later mappings
+    // and GraphML imports of this species can reuse it.
+    GeneSymbolIndex.prefetch(spec);
+    return spec;
+  }
+
+  /**
+   * Maps the labels of all gene products without an entrez gene
+   * identifier with one batch call to the shared {@link GeneSymbolIndex}.
+   * @see de.zbit.sbvc.io.BioPAXImporter#mapGeneSymbolsToEntrez(de.zbit.kegg.parser.pathway.Pathway, de.zbit.util.Species)
+   */
+  @Override
+  protected boolean mapGeneSymbolsToEntrez(Pathway keggPathway, Species spec) {
+    if (spec==null || !keggPathway.isSetEntries()) return false;
+    
+    // Collect all labels first
+    List<EntryExtended> entries = new ArrayList<EntryExtended>();
+    List<String> labels = new ArrayList<String>();
+    for (Entry e : keggPathway.getEntries()) {
+      if (!(e instanceof EntryExtended) || !e.hasGraphics()) continue;
+      if (e.getType()==EntryType.compound || e.getType()==EntryType.map || e.getType()==EntryType.group) continue;
+      EntryExtended ee = (EntryExtended) e;
+      String label = e.getGraphics().getName();
+      if (label!=null && label.trim().length()>0 && !ee.isSetIdentifierForDatabase(IdentifierDatabases.EntrezGene)) {
+        entries.add(ee);
+        labels.add(label);
+      }
+    }
+    if (labels.isEmpty()) return false;
+    
+    // Map them at once
+    Integer[] ids;
+    try {
+      ids = GeneSymbolIndex.getInstance(spec).map(labels.toArray(new String[labels.size()]));
+    } catch (Exception e) {
+      log.log(Level.WARNING, "Could not map gene symbols to entrez.", e);
+      return false;
+    }
+    
+    boolean addedEntrez = false;
+    for (int i=0; i<ids.length; i++) {
+      if (ids[i]!=null && ids[i]>0) {
+        entries.get(i).addDatabaseIdentifier(IdentifierDatabases.EntrezGene, ids[i].toString());
+        addedEntrez = true;
+      }
+    }
+    return addedEntrez;
   }
 
   /* (non-Javadoc)
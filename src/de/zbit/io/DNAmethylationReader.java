@@ -22,12 +22,20 @@
 package de.zbit.io;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 
 import de.zbit.data.methylation.DNAmethylation;
 import de.zbit.gui.GUITools;
 import de.zbit.gui.csv.CSVImporterV2;
 import de.zbit.gui.csv.ExpectedColumn;
+import de.zbit.io.dna_methylation.importer.DNAmethRawData;
+import de.zbit.io.dna_methylation.importer.DNAmethRawProbe;
+import de.zbit.sequence.region.Region;
 
 
 /**
@@ -35,6 +43,10 @@ import de.zbit.gui.csv.ExpectedColumn;
  * 
  * <p>Can also map data to gene or gene promoters during reading.</p>
  * 
+ * <p>If raw signals of treated and control samples are assigned, all
+ * probes are bin-packed and each bin is tested for differential
+ * methylation (see {@link DNAmethRawData}).</p>
+ * 
  * @author Clemens Wrzodek
  * @version $Rev$
  */
@@ -49,6 +61,24 @@ public class DNAmethylationReader extends AbstractGeneAndRegionBasedNSreader<DNA
    */
   protected int chromosomeAndPositionCol=-1;
   
+  /**
+   * Columns with raw signals of treated and control samples
+   * (<code>null</code> if not assigned).
+   */
+  protected int[] rawTreatmentCols=null;
+  protected int[] rawControlCols=null;
+  
+  /**
+   * Raw signals of all probes that have been read. Key is the probe
+   * that has been added to the result.
+   */
+  private transient Map<DNAmethylation, DNAmethRawProbe> rawProbes=null;
+  
+  /**
+   * Use the moderated t test for less than this number of samples per group.
+   */
+  private final static int MIN_SAMPLES_FOR_WELCH = 3;
+  
   
   /* (non-Javadoc)
    * @see de.zbit.io.AbstractGeneAndRegionBasedNSreader#createObject(java.lang.String, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.String, java.lang.String[])
@@ -78,9 +108,90 @@ public class DNAmethylationReader extends AbstractGeneAndRegionBasedNSreader<DNA
       m = toGeneMapper.map(m);
     }
     
+    // Remember raw signals
+    if (m!=null && rawProbes!=null) {
+      Integer id = m.getID();
+      if (id!=null && id>0 && m.getStart()!=Region.DEFAULT_START) {
+        rawProbes.put(m, new DNAmethRawProbe(id, m.getStart(),
+          new float[][]{parseRawSignals(line, rawTreatmentCols)},
+          new float[][]{parseRawSignals(line, rawControlCols)}));
+      }
+    }
+    
     return m;
   }
   
+  /**
+   * @param line
+   * @param cols
+   * @return the signals in the given columns ({@link Float#NaN} if
+   * a signal can not be parsed).
+   */
+  private float[] parseRawSignals(String[] line, int[] cols) {
+    float[] ret = new float[cols.length];
+    char decimalSeparator = getDecimalSeparator();
+    for (int i=0; i<cols.length; i++) {
+      ret[i] = Float.NaN;
+      if (cols[i]<line.length) {
+        try {
+          ret[i] = Float.parseFloat(line[cols[i]].trim().replace(decimalSeparator, '.'));
+        } catch (NumberFormatException e) {
+          // Keep NaN
+        }
+      }
+    }
+    return ret;
+  }
+  
+  /**
+   * @return true if raw signals of treated and control samples
+   * have been assigned.
+   */
+  public boolean isRawData() {
+    return rawTreatmentCols!=null && rawControlCols!=null;
+  }
+  
+  /* (non-Javadoc)
+   * @see de.zbit.io.AbstractGeneAndRegionBasedNSreader#init()
+   */
+  @Override
+  protected void init() {
+    super.init();
+    rawProbes = isRawData() ? new IdentityHashMap<DNAmethylation, DNAmethRawProbe>() : null;
+  }
+  
+  /* (non-Javadoc)
+   * @see de.zbit.io.AbstractGeneAndRegionBasedNSreader#done(java.util.Collection)
+   */
+  @Override
+  protected void done(Collection<DNAmethylation> ret) {
+    super.done(ret);
+    if (rawProbes==null) return;
+    
+    // Only probes of the final result (the file may have been read twice)
+    List<DNAmethRawProbe> probes = new ArrayList<DNAmethRawProbe>(ret.size());
+    for (DNAmethylation m: ret) {
+      DNAmethRawProbe probe = rawProbes.get(m);
+      if (probe!=null) probes.add(probe);
+    }
+    rawProbes = null;
+    if (probes.isEmpty()) {
+      logWarning("No probe with raw signals could be assigned to a gene.");
+      return;
+    }
+    
+    // Replace all probes by tested bins
+    try {
+      DNAmethRawData raw = new DNAmethRawData(probes);
+      raw.setModerated(Math.min(rawTreatmentCols.length, rawControlCols.length)<MIN_SAMPLES_FOR_WELCH);
+      List<DNAmethylation> bins = raw.generateProcessedData();
+      ret.clear();
+      ret.addAll(bins);
+    } catch (Exception e) {
+      log.log(Level.WARNING, "Could not test raw DNA methylation data.", e);
+    }
+  }
+  
   /* (non-Javadoc)
    * @see de.zbit.io.AbstractGeneAndRegionBasedNSreader#getAdditionalExpectedColumns()
    */
@@ -92,6 +203,10 @@ public class DNAmethylationReader extends AbstractGeneAndRegionBasedNSreader<DNA
     // This should be done in additionalColumnAssignmentCheck().
     exp.add(cp);
     
+    // Raw signals (multiple samples per group)
+    exp.add(new ExpectedColumn("Raw treatment samples", null, false, true, false, false));
+    exp.add(new ExpectedColumn("Raw control samples", null, false, true, false, false));
+    
     return exp;
   }
   
@@ -156,10 +271,33 @@ public class DNAmethylationReader extends AbstractGeneAndRegionBasedNSreader<DNA
     super.processAdditionalExpectedColumns(additional);
     
     // Assign probe start/ end. If only one is assigned, assign to start!
-    ExpectedColumn chrAndPos = additional.get(additional.size()-1); // = 3
+    ExpectedColumn chrAndPos = additional.get(additional.size()-3); // = 3
     if (chrAndPos.hasAssignedColumns()) {
       chromosomeAndPositionCol = chrAndPos.getAssignedColumn();
     }
+    
+    // Raw signals are only used, if both groups are assigned
+    ExpectedColumn treatments = additional.get(additional.size()-2);
+    ExpectedColumn controls = additional.get(additional.size()-1);
+    if (treatments.hasAssignedColumns() && controls.hasAssignedColumns()) {
+      rawTreatmentCols = toArray(treatments.getAssignedColumns());
+      rawControlCols = toArray(controls.getAssignedColumns());
+    } else {
+      rawTreatmentCols = null;
+      rawControlCols = null;
+    }
+  }
+  
+  /**
+   * @param cols
+   * @return the given columns as array.
+   */
+  private static int[] toArray(List<Integer> cols) {
+    int[] ret = new int[cols.size()];
+    for (int i=0; i<ret.length; i++) {
+      ret[i] = cols.get(i);
+    }
+    return ret;
   }
   
   /* (non-Javadoc)
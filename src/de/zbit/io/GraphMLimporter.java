@@ -25,6 +25,8 @@ import java.awt.event.ActionEvent;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import javax.swing.SwingWorker;
@@ -43,10 +45,9 @@ import de.zbit.graph.io.def.GenericDataMap;
 import de.zbit.graph.io.def.GraphMLmaps;
 import de.zbit.gui.GUITools;
 import de.zbit.gui.IntegratorUITools;
-import de.zbit.mapper.GeneSymbol2GeneIDMapper;
 import de.zbit.util.NotifyingWorker;
 import de.zbit.util.Species;
-import de.zbit.util.StringUtil;
+import de.zbit.utils.GeneSymbolIndex;
 
 /**
  * A {@link SwingWorker} that handles imports of GraphML and GML files.
@@ -131,8 +132,8 @@ public class GraphMLimporter extends NotifyingWorker<Graph2D> {
   }
   
   /**
-   * Uses a {@link GeneSymbol2GeneIDMapper} to map the node labels
-   * to entrez gene ids.
+   * Uses the shared {@link GeneSymbolIndex} to map the node labels
+   * to entrez gene ids. All labels are mapped at once, in parallel.
    * @param graph
    * @param entrezIds
    * @param organism @param organism in non-scientific format ("human", "mouse" or "rat").
@@ -140,9 +141,11 @@ public class GraphMLimporter extends NotifyingWorker<Graph2D> {
    * @throws Exception 
    */
   public static boolean mapNodesToEntrez(Graph2D graph, NodeMap entrezIds, String organism) throws Exception {
-    GeneSymbol2GeneIDMapper mapper = new GeneSymbol2GeneIDMapper(organism);
     boolean containsEntrez = false;
     
+    // Collect all labels that need a mapping
+    List<Node> nodes = new ArrayList<Node>();
+    List<String> labels = new ArrayList<String>();
     for (Node n: graph.getNodeArray()) {
       // Does it already contain a mapping?
       if (entrezIds.get(n)!=null) {
@@ -150,28 +153,22 @@ public class GraphMLimporter extends NotifyingWorker<Graph2D> {
         continue;
       }
       
-      // Try to map node labels to entrez
       NodeRealizer nr = graph.getRealizer(n);
       String l = nr==null?null:nr.getLabelText();
-      
       if (l!=null && l.length()>0) {
-        Integer entrez = mapper.map(l);
-        if (entrez==null) entrez = mapper.map(StringUtil.firstLetterUpperCase(l));
-        if (entrez==null) {
-          // A little customized for MM graphs: "SYMBOL (SYMBOL, SYMBOL,....)".
-          String[] split = l.split("[\\s,\\(\\)]");
-          for (int i=0; i<split.length; i++) {
-            split[i] = split[i].trim(); 
-            if (split[i].length()<1) continue;
-            entrez = mapper.map(split[i]);
-            if (entrez==null) entrez = mapper.map(StringUtil.firstLetterUpperCase(split[i]));
-            if (entrez!=null) break;
-          }
-        }
-        if (entrez!=null) {
-          entrezIds.set(n, entrez.toString());
-          containsEntrez = true;
-        }
+        nodes.add(n);
+        labels.add(l);
+      }
+    }
+    if (labels.size()<1) return containsEntrez;
+    
+    // Map node labels to entrez
+    GeneSymbolIndex index = GeneSymbolIndex.getInstance(organism);
+    Integer[] entrez = index.map(labels.toArray(new String[labels.size()]));
+    for (int i=0; i<entrez.length; i++) {
+      if (entrez[i]!=null) {
+        entrezIds.set(nodes.get(i), entrez[i].toString());
+        containsEntrez = true;
       }
     }
     
@@ -50,6 +50,7 @@ import de.zbit.util.Species;
 import de.zbit.util.objectwrapper.ValuePair;
 import de.zbit.util.objectwrapper.ValueTriplet;
 import de.zbit.util.progressbar.AbstractProgressBar;
+import de.zbit.utils.Metrics;
 
 /**
  * A generic class to read data, consisting of name and signals.
@@ -68,6 +69,14 @@ public abstract class NameAndSignalReader<T extends NameAndSignals> implements S
 
   public static final transient Logger log = Logger.getLogger(NameAndSignalReader.class.getName());
   
+  /*
+   * Metrics
+   */
+  private final static Metrics.Timer READ_TIME = Metrics.timer("reader.time");
+  private final static Metrics.Counter ROWS = Metrics.counter("reader.rows");
+  private final static Metrics.Histogram ROWS_PER_SECOND = Metrics.histogram("reader.rowsPerSecond");
+  protected final static Metrics.Counter PARSE_ERRORS = Metrics.counter("reader.parseErrors");
+  
   /**
    * Required: Column that contains the name
    */
@@ -162,6 +171,51 @@ public abstract class NameAndSignalReader<T extends NameAndSignals> implements S
    */
   public abstract Collection<T> importWithGUI(Component parent, String file, ReaderCache cache);
   
+  /**
+   * Import a file without any user interaction. The input format, column
+   * assignments and species are taken from a previous import of the same
+   * file with {@link #importWithGUI(Component, String, ReaderCache)}.
+   * <p>Readers that support this must override this method and
+   * {@link #isImportWithCacheSupported()}.
+   * @param file
+   * @param cache must contain a configuration for <code>file</code>.
+   * @param species if not null, overwrites the species from the cache.
+   * @return
+   * @throws IOException if no configuration is available or this
+   * reader can only import files with a GUI.
+   * @throws Exception
+   * @see #getConfigurationFromCache(ReaderCache, String)
+   */
+  public Collection<T> importWithCache(String file, ReaderCache cache, Species species) throws IOException, Exception {
+    throw new IOException(getClass().getSimpleName() + " can only import files with a GUI.");
+  }
+  
+  /**
+   * @return true if this reader implements
+   * {@link #importWithCache(String, ReaderCache, Species)}.
+   */
+  public boolean isImportWithCacheSupported() {
+    return false;
+  }
+  
+  /**
+   * Can be used by extending classes to implement
+   * {@link #importWithCache(String, ReaderCache, Species)}.
+   * @param cache
+   * @param file
+   * @return the cached configuration for <code>file</code>.
+   * @throws IOException if <code>cache</code> does not contain
+   * <code>file</code>.
+   */
+  protected ReaderCacheElement getConfigurationFromCache(ReaderCache cache, String file) throws IOException {
+    File inputFile = new File(file);
+    if (cache==null || !cache.contains(inputFile)) {
+      throw new IOException("No import configuration available for '" + inputFile.getName() +
+        "'. Please import this file once with the graphical user interface.");
+    }
+    return cache.get(inputFile);
+  }
+  
   /**
    * Can be used by extending classes to handle cache load queries.
    * @param cache current {@link ReaderCache} instance
@@ -319,6 +373,8 @@ public abstract class NameAndSignalReader<T extends NameAndSignals> implements S
    * reading the input data to the desired format impossible.
    */
   public Collection<T> read(CSVReader r) throws IOException, Exception {
+    long start = READ_TIME.start();
+    
     // Guess decimal separator
     guessDecimalSeparator(r);
     
@@ -351,6 +407,10 @@ public abstract class NameAndSignalReader<T extends NameAndSignals> implements S
     
     done(ret);
     ((ArrayList<T>)ret).trimToSize();
+    
+    long time = READ_TIME.stop(start);
+    ROWS.add(ret.size());
+    if (time>0) ROWS_PER_SECOND.update((long) (ret.size()*1E9/time));
     return ret;
   }
   
@@ -463,6 +523,7 @@ public abstract class NameAndSignalReader<T extends NameAndSignals> implements S
               log.log(Level.WARNING, "Error while parsing signal number." + e.getMessage(), e);
             }
             errornousNumbersInSignals++;
+            PARSE_ERRORS.inc();
             if (line[vp.getA()].indexOf(getOtherDecimalSeparator())>=0){
               // Count errors that could poentiatlly get fixed
               errornousNumbersThatCouldBeFixed++;
@@ -43,6 +43,7 @@ import de.zbit.integrator.ReaderCacheElement;
 import de.zbit.io.csv.CSVReader;
 import de.zbit.mapper.AbstractMapper;
 import de.zbit.mapper.SNPid2GeneIDmapper;
+import de.zbit.sequence.region.Chromosome;
 import de.zbit.util.Species;
 
 /**
@@ -74,6 +75,16 @@ public class SNPReader extends NameAndSignalReader<SNP> {
    */
   private Set<String> issuedWarnings = new HashSet<String>();
   
+  /**
+   * Optional genomic position of the SNP (-1 if not available).
+   */
+  private int positionCol = -1;
+  
+  /**
+   * Optional chromosome of the SNP (-1 if not available).
+   */
+  private int chromosomeCol = -1;
+  
   /**
    * This is ONLY for use in combination with {@link #importWithGUI(String)} afterwards.
    */
@@ -100,6 +111,10 @@ public class SNPReader extends NameAndSignalReader<SNP> {
     list.add(NameAndSignalReader.getCustomAnnotationColumn());
     list.addAll(NameAndSignalReader.getExpectedSignalColumns(1));
     
+    // Optional position (required for joins by region)
+    list.add(new ExpectedColumn("Position", false));
+    list.add(new ExpectedColumn("Chromosome", false, Chromosome.chromosome_regex_with_forced_prefix));
+    
     return list.toArray(new ExpectedColumn[0]);
   }
 
@@ -135,7 +150,7 @@ public class SNPReader extends NameAndSignalReader<SNP> {
         
         // Signal columns
         int offset = 2;
-        for (int i=offset; i<exCol.length; i++) {
+        for (int i=offset; i<exCol.length-2; i++) {
           if (exCol[i].hasAssignedColumns()) {
             for (int j=0; j<exCol[i].getAssignedColumns().size(); j++) {
               addSignalColumn(exCol[i].getAssignedColumns().get(j), 
@@ -144,6 +159,14 @@ public class SNPReader extends NameAndSignalReader<SNP> {
           }
         }
         
+        // Position and chromosome
+        if (exCol[exCol.length-2].hasAssignedColumns()) {
+          positionCol = exCol[exCol.length-2].getAssignedColumn();
+        }
+        if (exCol[exCol.length-1].hasAssignedColumns()) {
+          chromosomeCol = exCol[exCol.length-1].getAssignedColumn();
+        }
+        
         try {
           return read(c.getApprovedCSVReader());
         } catch (Exception e) {
@@ -234,6 +257,16 @@ public class SNPReader extends NameAndSignalReader<SNP> {
     if (geneID==null || geneID<=0) geneID=GeneID.default_geneID;
     SNP snp = new SNP(name, geneID);
     
+    // Set the position
+    if (positionCol>=0 && chromosomeCol>=0 && positionCol<line.length && chromosomeCol<line.length) {
+      try {
+        snp.setStart(Integer.parseInt(line[positionCol].trim()));
+        snp.setChromosome(line[chromosomeCol]);
+      } catch (NumberFormatException e) {
+        snp.unsetProbeStart();
+      }
+    }
+    
     return snp;
   }
   
@@ -0,0 +1,294 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import de.zbit.utils.Metrics;
+
+/**
+ * A read-only {@link List} whose elements are stored in a file instead
+ * of on the heap. The elements are serialized in pages of
+ * {@link #ROWS_PER_PAGE} elements, each page is compressed on its own.
+ * Pages are read on demand and only the {@link #CACHED_PAGES} most
+ * recently used pages are kept in memory. Thus, a table that shows
+ * this list only reads the visible rows.
+ *
+ * <p>Elements are COPIES of the written elements, i.e., changes
+ * on an element are not written back. Use {@link #readAll()} to get
+ * all elements back on the heap.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ * @param <T> type of the elements
+ */
+public class SpilledList<T> extends AbstractList<T> implements RandomAccess {
+  public static final transient Logger log = Logger.getLogger(SpilledList.class.getName());
+
+  /**
+   * Number of elements that are serialized (and read) together.
+   */
+  public final static int ROWS_PER_PAGE = 1024;
+
+  /**
+   * Number of pages that are kept in memory.
+   */
+  private final static int CACHED_PAGES = 8;
+
+  private final static Metrics.Counter PAGE_READS = Metrics.counter("datasets.pageReads");
+
+  /**
+   * The file with all pages.
+   */
+  private final File file;
+
+  /**
+   * Number of elements.
+   */
+  private final int size;
+
+  /**
+   * Start of every page in the {@link #file}. The last value
+   * is the size of the file.
+   */
+  private final long[] offsets;
+
+  /**
+   * Positional reads on this channel are thread-safe.
+   */
+  private FileChannel channel=null;
+
+  /**
+   * Recently read pages (in access order).
+   */
+  private final Map<Integer, Object[]> pages = new LinkedHashMap<Integer, Object[]>(16, 0.75f, true) {
+    private static final long serialVersionUID = 7829542178325627531L;
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+      return size()>CACHED_PAGES;
+    }
+  };
+
+  private SpilledList(File file, int size, long[] offsets) {
+    super();
+    this.file = file;
+    this.size = size;
+    this.offsets = offsets;
+  }
+
+  /**
+   * Writes all elements to <code>f</code>.
+   * @param <T>
+   * @param data elements must be {@link java.io.Serializable}.
+   * @param f is overwritten.
+   * @return a list that reads the elements from <code>f</code>.
+   * @throws IOException
+   */
+  public static <T> SpilledList<T> write(List<? extends T> data, File f) throws IOException {
+    int n = data.size();
+    long[] offsets = new long[(n+ROWS_PER_PAGE-1)/ROWS_PER_PAGE+1];
+    RandomAccessFile out = new RandomAccessFile(f, "rw");
+    try {
+      out.setLength(0);
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream(1<<16);
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try {
+        for (int page=0; page<offsets.length-1; page++) {
+          offsets[page] = out.getFilePointer();
+          int from = page*ROWS_PER_PAGE;
+          int to = Math.min(n, from+ROWS_PER_PAGE);
+          
+          buffer.reset();
+          deflater.reset();
+          DeflaterOutputStream deflate = new DeflaterOutputStream(buffer, deflater, 1<<16);
+          ObjectOutputStream oos = new ObjectOutputStream(deflate);
+          oos.writeInt(to-from);
+          for (int i=from; i<to; i++) {
+            oos.writeObject(data.get(i));
+          }
+          oos.flush();
+          deflate.finish();
+          out.write(buffer.toByteArray());
+        }
+      } finally {
+        deflater.end();
+      }
+      offsets[offsets.length-1] = out.getFilePointer();
+    } finally {
+      out.close();
+    }
+    return new SpilledList<T>(f, n, offsets);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractList#get(int)
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public T get(int index) {
+    if (index<0 || index>=size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    int page = index/ROWS_PER_PAGE;
+    Object[] rows;
+    synchronized (pages) {
+      rows = pages.get(page);
+    }
+    if (rows==null) {
+      try {
+        rows = readPage(page);
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not read rows from " + file, e);
+      }
+      synchronized (pages) {
+        pages.put(page, rows);
+      }
+    }
+    return (T) rows[index-page*ROWS_PER_PAGE];
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#size()
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Reads all elements. Pages are not cached.
+   * @return a new list with all elements.
+   * @throws IOException
+   */
+  @SuppressWarnings("unchecked")
+  public List<T> readAll() throws IOException {
+    List<T> ret = new ArrayList<T>(size);
+    for (int page=0; page<offsets.length-1; page++) {
+      Object[] rows;
+      synchronized (pages) {
+        rows = pages.get(page);
+      }
+      if (rows==null) rows = readPage(page);
+      for (Object o: rows) {
+        ret.add((T) o);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @param page
+   * @return all elements of the given page.
+   * @throws IOException
+   */
+  private Object[] readPage(int page) throws IOException {
+    int length = (int) (offsets[page+1]-offsets[page]);
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    FileChannel channel = getChannel();
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offsets[page]+buffer.position())<0) {
+        throw new IOException("Unexpected end of " + file);
+      }
+    }
+    PAGE_READS.inc();
+    
+    ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(
+      new ByteArrayInputStream(buffer.array())));
+    try {
+      Object[] rows = new Object[in.readInt()];
+      for (int i=0; i<rows.length; i++) {
+        rows[i] = in.readObject();
+      }
+      return rows;
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @return the channel to read from the {@link #file}.
+   * @throws IOException
+   */
+  private synchronized FileChannel getChannel() throws IOException {
+    if (channel==null) {
+      channel = new RandomAccessFile(file, "r").getChannel();
+    }
+    return channel;
+  }
+
+  /**
+   * @return the size of the file in bytes.
+   */
+  public long getFileSize() {
+    return offsets[offsets.length-1];
+  }
+
+  /**
+   * Closes and deletes the file. The list must not be used
+   * afterwards.
+   */
+  public synchronized void delete() {
+    synchronized (pages) {
+      pages.clear();
+    }
+    try {
+      if (channel!=null) channel.close();
+    } catch (IOException e) {
+      log.log(Level.FINE, "Could not close " + file, e);
+    }
+    channel = null;
+    if (!file.delete() && file.exists()) {
+      file.deleteOnExit();
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#toString()
+   */
+  @Override
+  public String toString() {
+    return String.format("%s [size=%s, pages=%s, file=%s (%s bytes)]", getClass().getSimpleName(),
+      size, offsets.length-1, file.getName(), getFileSize());
+  }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import de.zbit.data.TableResult;
+import de.zbit.gui.customcomponents.TableResultTableModel;
+import de.zbit.util.progressbar.AbstractProgressBar;
+import de.zbit.utils.ParallelUtils;
+
+/**
+ * Writes {@link TableResult}s as tab- or comma-separated file. In contrast
+ * to writing a {@link javax.swing.JTable}, values are taken directly from
+ * the data (see {@link TableResult#getObjectAtColumn(int)}), but formatted
+ * like in a {@link TableResultTableModel}.
+ *
+ * <p>Rows are split into chunks that are formatted (and optionally
+ * compressed) in parallel. The chunks are written in order through a
+ * {@link FileChannel}. Compressed chunks are independent gzip members,
+ * which can be read by any gzip implementation as one file.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class TableResultWriter {
+  public static final transient Logger log = Logger.getLogger(TableResultWriter.class.getName());
+
+  /**
+   * Number of rows that are formatted in one task.
+   */
+  public final static int ROWS_PER_CHUNK = 2048;
+
+  private final static Charset charset = Charset.forName("UTF-8");
+
+  /**
+   * Separates columns. Usually a tab or comma.
+   */
+  private char separator = '\t';
+
+  /**
+   * If true, the output is gzip compressed.
+   */
+  private boolean compress = false;
+
+  /**
+   * If true, the first column is the (1-based) row index, like in
+   * {@link TableResultTableModel}.
+   */
+  private boolean includeRowIndex = false;
+
+  /**
+   * Optional progress bar. Shows the current write speed.
+   */
+  private AbstractProgressBar progress;
+
+  public TableResultWriter() {
+    this(null);
+  }
+
+  /**
+   * @param progress may be null.
+   */
+  public TableResultWriter(AbstractProgressBar progress) {
+    super();
+    this.progress = progress;
+  }
+
+  /**
+   * Creates a new writer, that chooses the separator and
+   * compression based on the file extension (".csv" for comma-separated
+   * files and ".gz" for compressed files).
+   * @param f
+   * @param progress may be null.
+   * @return
+   */
+  public static TableResultWriter forFile(File f, AbstractProgressBar progress) {
+    TableResultWriter w = new TableResultWriter(progress);
+    String name = f.getName().toLowerCase();
+    if (name.endsWith(".gz")) {
+      w.setCompress(true);
+      name = name.substring(0, name.length()-3);
+    }
+    if (name.endsWith(".csv")) {
+      w.setSeparator(',');
+    }
+    return w;
+  }
+
+  /**
+   * @param separator e.g., tab or comma.
+   */
+  public void setSeparator(char separator) {
+    this.separator = separator;
+  }
+
+  /**
+   * @return the column separator.
+   */
+  public char getSeparator() {
+    return separator;
+  }
+
+  /**
+   * @param compress if true, the output is gzip compressed.
+   */
+  public void setCompress(boolean compress) {
+    this.compress = compress;
+  }
+
+  /**
+   * @return true if the output is gzip compressed.
+   */
+  public boolean isCompress() {
+    return compress;
+  }
+
+  /**
+   * @param includeRowIndex if true, the first column is the (1-based)
+   * index of each row in the data (see {@link TableResultTableModel#isRowIndexIncluded()}).
+   */
+  public void setIncludeRowIndex(boolean includeRowIndex) {
+    this.includeRowIndex = includeRowIndex;
+  }
+
+  /**
+   * @return true if the first column is the row index.
+   */
+  public boolean isIncludeRowIndex() {
+    return includeRowIndex;
+  }
+
+  /**
+   * Writes all <code>data</code> to <code>f</code>.
+   * @param data
+   * @param f
+   * @return number of written bytes.
+   * @throws IOException
+   */
+  public long write(List<? extends TableResult> data, File f) throws IOException {
+    return write(data, null, f);
+  }
+
+  /**
+   * Writes the given rows of <code>data</code> to <code>f</code>.
+   * @param data
+   * @param rows indices in <code>data</code> to write, in this order
+   * (e.g., the view order of a sorted and filtered table). If null,
+   * all rows are written.
+   * @param f
+   * @return number of written bytes.
+   * @throws IOException
+   */
+  public long write(final List<? extends TableResult> data, final int[] rows, File f) throws IOException {
+    long time = System.currentTimeMillis();
+    final int n = rows!=null?rows.length:data.size();
+    int chunks = (n+ROWS_PER_CHUNK-1)/ROWS_PER_CHUNK;
+    if (progress!=null) {
+      progress.reset();
+      progress.setNumberOfTotalCalls(chunks+1);
+    }
+
+    FileOutputStream out = new FileOutputStream(f);
+    FileChannel channel = out.getChannel();
+    long written = 0;
+    try {
+      // Header
+      final String[] columnNames = getColumnNames(data.size()>0?data.get(0):null);
+      written += writeChunk(channel, encode(formatHeader(columnNames)), time, written);
+
+      // Format ahead, but only a limited number of chunks to bound memory
+      boolean inline = ParallelUtils.isWorkerThread();
+      int lookahead = Math.max(2, ParallelUtils.getNumberOfThreads()*2);
+      LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+      int nextChunk = 0;
+      try {
+        for (int chunk=0; chunk<chunks; chunk++) {
+          byte[] bytes;
+          if (inline) {
+            bytes = formatChunk(data, rows, columnNames, chunk*ROWS_PER_CHUNK, Math.min(n, (chunk+1)*ROWS_PER_CHUNK));
+          } else {
+            while (nextChunk<chunks && pending.size()<lookahead) {
+              final int from = nextChunk*ROWS_PER_CHUNK;
+              final int to = Math.min(n, from+ROWS_PER_CHUNK);
+              pending.add(ParallelUtils.getComputePool().submit(new Callable<byte[]>() {
+                public byte[] call() throws Exception {
+                  return formatChunk(data, rows, columnNames, from, to);
+                }
+              }));
+              nextChunk++;
+            }
+            bytes = pending.removeFirst().get();
+          }
+          written += writeChunk(channel, bytes, time, written);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Export interrupted.");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+        throw new IOException(e.getCause());
+      } finally {
+        ParallelUtils.cancelAll(pending);
+      }
+
+      channel.force(false);
+    } finally {
+      out.close();
+    }
+
+    log.fine(String.format("Wrote %s rows (%s bytes) to '%s' in %sms.", n, written, f.getName(), System.currentTimeMillis()-time));
+    return written;
+  }
+
+  /**
+   * Writes all bytes and updates the progress bar.
+   * @param channel
+   * @param bytes
+   * @param start time of the start of writing.
+   * @param writtenBefore bytes written before this chunk.
+   * @return number of written bytes.
+   * @throws IOException
+   */
+  private long writeChunk(FileChannel channel, byte[] bytes, long start, long writtenBefore) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    if (progress!=null) {
+      long millis = Math.max(1, System.currentTimeMillis()-start);
+      progress.DisplayBar(formatRate((writtenBefore+bytes.length)*1000d/millis));
+    }
+    return bytes.length;
+  }
+
+  /**
+   * @param row example row, may be null.
+   * @return the names of all columns of the data (without the row index).
+   */
+  private static String[] getColumnNames(TableResult row) {
+    if (row==null) return new String[0];
+    String[] names = new String[row.getColumnCount()];
+    for (int col=0; col<names.length; col++) {
+      names[col] = row.getColumnName(col);
+    }
+    return names;
+  }
+
+  /**
+   * @param columnNames see {@link #getColumnNames(TableResult)}.
+   * @return the header line.
+   */
+  private String formatHeader(String[] columnNames) {
+    StringBuilder sb = new StringBuilder();
+    if (includeRowIndex) {
+      sb.append('#');
+      if (columnNames.length>0) sb.append(separator);
+    }
+    for (int col=0; col<columnNames.length; col++) {
+      if (col>0) sb.append(separator);
+      if (columnNames[col]!=null) appendValue(sb, columnNames[col]);
+    }
+    sb.append('\n');
+    return sb.toString();
+  }
+
+  /**
+   * Formats (and compresses) the given rows.
+   * @param data
+   * @param rows see {@link #write(List, int[], File)}.
+   * @param columnNames see {@link #getColumnNames(TableResult)}.
+   * @param from
+   * @param to
+   * @return
+   * @throws IOException
+   */
+  private byte[] formatChunk(List<? extends TableResult> data, int[] rows, String[] columnNames, int from, int to) throws IOException {
+    StringBuilder sb = new StringBuilder((to-from)*64);
+    for (int i=from; i<to; i++) {
+      int r = rows!=null?rows[i]:i;
+      TableResult row = TableResultTableModel.peek(data, r);
+      if (includeRowIndex) {
+        // Same as in the table
+        sb.append(r+1);
+        if (row.getColumnCount()>0) sb.append(separator);
+      }
+      for (int col=0; col<row.getColumnCount(); col++) {
+        if (col>0) sb.append(separator);
+        Object o = TableResultTableModel.getValueAt(row, col);
+        if (col<columnNames.length) {
+          o = TableResultTableModel.replaceNotFoundGeneID(o, columnNames[col]);
+        }
+        if (o!=null) appendValue(sb, o.toString());
+      }
+      sb.append('\n');
+    }
+    return encode(sb.toString());
+  }
+
+  /**
+   * Appends the value and escapes separators.
+   * @param sb
+   * @param value
+   */
+  private void appendValue(StringBuilder sb, String value) {
+    if (separator=='\t') {
+      // No quoting in tab-separated files
+      sb.append(value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+    } else if (value.indexOf(separator)>=0 || value.indexOf('"')>=0 ||
+        value.indexOf('\n')>=0 || value.indexOf('\r')>=0) {
+      sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+    } else {
+      sb.append(value);
+    }
+  }
+
+  /**
+   * @param s
+   * @return the encoded (and compressed) bytes of <code>s</code>.
+   * @throws IOException
+   */
+  private byte[] encode(String s) throws IOException {
+    byte[] bytes = s.getBytes(charset);
+    if (!compress) return bytes;
+
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length/4+64);
+    OutputStream gz = new GZIPOutputStream(buffer, 8192);
+    gz.write(bytes);
+    gz.close();
+    return buffer.toByteArray();
+  }
+
+  /**
+   * @param bytesPerSecond
+   * @return a human readable speed.
+   */
+  private static String formatRate(double bytesPerSecond) {
+    if (bytesPerSecond>=1024*1024) {
+      return String.format("%.1f MB/s", bytesPerSecond/(1024*1024));
+    } else if (bytesPerSecond>=1024) {
+      return String.format("%.1f KB/s", bytesPerSecond/1024);
+    }
+    return String.format("%.0f B/s", bytesPerSecond);
+  }
+
+}
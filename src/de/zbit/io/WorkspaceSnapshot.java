@@ -0,0 +1,645 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import java.awt.Component;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+import de.zbit.data.NameAndSignals;
+import de.zbit.data.PairedNSList;
+import de.zbit.data.Signal.SignalType;
+import de.zbit.gui.IntegratorUI;
+import de.zbit.gui.tabs.IntegratorTab;
+import de.zbit.gui.tabs.IntegratorTabWithTable;
+import de.zbit.gui.tabs.NSTimeSeriesTab;
+import de.zbit.gui.tabs.NameAndSignalsTab;
+import de.zbit.math.TimeSeriesModel;
+import de.zbit.util.Species;
+import de.zbit.util.objectwrapper.ValueTriplet;
+import de.zbit.util.progressbar.AbstractProgressBar;
+
+/**
+ * A snapshot of all opened {@link NameAndSignalsTab}s (including
+ * enrichments, paired data and time series with their models) that can
+ * be saved and restored in another session.
+ *
+ * <p>The file consists of a header, one block per tab and an index.
+ * Each block is a gzip compressed, serialized copy of the data of one
+ * tab and is written as soon as it is serialized. The index stores
+ * names, species, tab relationships and the position of each block. On
+ * restore, only the index is read immediately. All tabs are created
+ * directly and the blocks are memory mapped and decoded in background,
+ * in parallel.
+ *
+ * <p>Objects that are shared between tabs (e.g., the source lists of
+ * {@link PairedNSList}s or the genes of enrichments) are stored only in
+ * the block of the first tab. Later blocks store references to the tab
+ * and row instead, which are resolved to the same instances on restore.
+ * Rows of {@link PairedNSList}s are created lazily and are not referenced.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class WorkspaceSnapshot {
+  public static final transient Logger log = Logger.getLogger(WorkspaceSnapshot.class.getName());
+
+  /**
+   * Magic number at the start and end of each workspace file.
+   */
+  private final static int MAGIC = 0x49435753; // "ICWS"
+
+  /**
+   * File format version.
+   */
+  private final static int VERSION = 2;
+
+  /**
+   * Size of the trailer (index offset and magic number).
+   */
+  private final static int TRAILER_SIZE = 8+4;
+
+  /**
+   * Describes one tab in the index of a workspace file.
+   */
+  private static class TabEntry implements Serializable {
+    private static final long serialVersionUID = 3954119283746212830L;
+
+    String name;
+    String toolTip;
+    Species species;
+    /**
+     * Position of the data block in the file.
+     */
+    long offset;
+    long length;
+    /**
+     * Index of {@link IntegratorTab#getSourceTab()} or -1.
+     */
+    int sourceTab = -1;
+    /**
+     * Indices of {@link IntegratorTabWithTable#getTableChangeListeners()}.
+     */
+    int[] listeners;
+
+    /*
+     * Only for time series tabs
+     */
+    boolean isTimeSeries = false;
+    String timeUnit;
+    Double[] timePoints;
+    String[] timePointNames;
+    SignalType[] timePointTypes;
+    Class<? extends TimeSeriesModel> modelMethod;
+  }
+
+  /**
+   * Reference to a row of a tab that has been written before (or
+   * to its whole data, if {@link #row} is -1).
+   */
+  private static class TabRowReference implements Serializable {
+    private static final long serialVersionUID = -2214938459120562013L;
+
+    int tab;
+    int row;
+
+    TabRowReference(int tab, int row) {
+      super();
+      this.tab = tab;
+      this.row = row;
+    }
+  }
+
+  /**
+   * Tabs to save.
+   */
+  private final List<NameAndSignalsTab> tabs = new ArrayList<NameAndSignalsTab>();
+
+  /**
+   * Index entry for each element in {@link #tabs}.
+   */
+  private final List<TabEntry> entries = new ArrayList<TabEntry>();
+
+  /**
+   * Collects all opened data tabs of the given <code>ui</code>. Tabs that
+   * are not yet ready and other tabs (e.g., pathways and charts) are skipped.
+   * Must be called on the event dispatch thread.
+   * @param ui
+   */
+  public WorkspaceSnapshot(IntegratorUI ui) {
+    super();
+    JTabbedPane pane = ui.getTabbedPane();
+    for (int i=0; i<pane.getTabCount(); i++) {
+      Component c = pane.getComponentAt(i);
+      if (c instanceof NameAndSignalsTab && ((NameAndSignalsTab) c).isReady()) {
+        NameAndSignalsTab tab = (NameAndSignalsTab) c;
+        TabEntry e = new TabEntry();
+        e.name = pane.getTitleAt(i);
+        e.toolTip = pane.getToolTipTextAt(i);
+        e.species = tab.getSpecies();
+        if (tab instanceof NSTimeSeriesTab) {
+          NSTimeSeriesTab ts = (NSTimeSeriesTab) tab;
+          e.isTimeSeries = true;
+          e.timeUnit = ts.getTimeUnit();
+          e.modelMethod = ts.getModelMethod();
+          List<ValueTriplet<Double, String, SignalType>> tp = ts.getTimePoints();
+          if (tp!=null) {
+            e.timePoints = new Double[tp.size()];
+            e.timePointNames = new String[tp.size()];
+            e.timePointTypes = new SignalType[tp.size()];
+            for (int j=0; j<tp.size(); j++) {
+              e.timePoints[j] = tp.get(j).getA();
+              e.timePointNames[j] = tp.get(j).getB();
+              e.timePointTypes[j] = tp.get(j).getC();
+            }
+          }
+        }
+        tabs.add(tab);
+        entries.add(e);
+      } else {
+        log.fine("Not saving tab '" + pane.getTitleAt(i) + "' in workspace.");
+      }
+    }
+
+    // Relationships between tabs
+    for (int i=0; i<tabs.size(); i++) {
+      NameAndSignalsTab tab = tabs.get(i);
+      entries.get(i).sourceTab = tabs.indexOf(tab.getSourceTab());
+      Set<IntegratorTabWithTable> listeners = tab.getTableChangeListeners();
+      List<Integer> indices = new ArrayList<Integer>();
+      if (listeners!=null) {
+        for (IntegratorTabWithTable l: listeners) {
+          int idx = tabs.indexOf(l);
+          if (idx>=0) indices.add(idx);
+        }
+      }
+      entries.get(i).listeners = new int[indices.size()];
+      for (int j=0; j<indices.size(); j++) {
+        entries.get(i).listeners[j] = indices.get(j);
+      }
+    }
+  }
+
+  /**
+   * @return number of tabs in this snapshot.
+   */
+  public int getNumberOfTabs() {
+    return tabs.size();
+  }
+
+  /**
+   * Writes this snapshot to <code>f</code>. The data of one tab after
+   * another is serialized and written.
+   * @param f
+   * @param progress may be null.
+   * @return number of written bytes.
+   * @throws IOException
+   */
+  public long write(File f, AbstractProgressBar progress) throws IOException {
+    long time = System.currentTimeMillis();
+    if (progress!=null) {
+      progress.reset();
+      progress.setNumberOfTotalCalls(tabs.size()+1);
+    }
+
+    FileOutputStream fos = new FileOutputStream(f);
+    CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(fos, 1<<16));
+    try {
+      DataOutputStream dos = new DataOutputStream(out);
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.flush();
+
+      // One block per tab. Objects of previous tabs are written as references.
+      Map<Object, TabRowReference> shared = new IdentityHashMap<Object, TabRowReference>();
+      for (int i=0; i<tabs.size(); i++) {
+        NameAndSignalsTab tab = tabs.get(i);
+        Collection<? extends NameAndSignals> original = tab.getData();
+        Collection<? extends NameAndSignals> data = original;
+        if (data!=null && !(data instanceof PairedNSList) && !(data instanceof ArrayList)) {
+          data = new ArrayList<NameAndSignals>(data);
+        }
+        List<TimeSeriesModel> models = null;
+        if (tab instanceof NSTimeSeriesTab && ((NSTimeSeriesTab) tab).getGeneModels()!=null) {
+          models = new ArrayList<TimeSeriesModel>(((NSTimeSeriesTab) tab).getGeneModels());
+        }
+
+        TabEntry e = entries.get(i);
+        e.offset = out.getCount();
+        writeBlock(out, shared, data, models);
+        e.length = out.getCount()-e.offset;
+        addReferences(shared, i, original, data);
+        if (progress!=null) progress.DisplayBar("Saved " + e.name);
+      }
+
+      // Index and trailer
+      long indexOffset = out.getCount();
+      writeBlock(out, null, (Object) entries.toArray(new TabEntry[0]));
+      dos.writeLong(indexOffset);
+      dos.writeInt(MAGIC);
+      dos.flush();
+      fos.getChannel().force(false);
+      if (progress!=null) progress.finished();
+    } finally {
+      fos.close();
+    }
+
+    log.fine(String.format("Saved workspace with %s tabs (%s bytes) in %sms.", tabs.size(), out.getCount(), System.currentTimeMillis()-time));
+    return out.getCount();
+  }
+
+  /**
+   * Registers the data and all rows of the <code>tab</code>-th tab
+   * as shared objects, which are written as references in later blocks.
+   * If an object is contained in more than one tab, the first tab is kept.
+   * @param shared
+   * @param tab
+   * @param original data of the tab.
+   * @param written data as it has been written (maybe a copy of
+   * <code>original</code>).
+   */
+  private static void addReferences(Map<Object, TabRowReference> shared, int tab,
+    Collection<? extends NameAndSignals> original, Collection<? extends NameAndSignals> written) {
+    if (written==null) return;
+    // Only the written collection can be restored with the same type
+    if (original==written && !shared.containsKey(written)) {
+      shared.put(written, new TabRowReference(tab, -1));
+    }
+    // Iterating would create all lazy pairs
+    if (written instanceof PairedNSList) return;
+    int row=0;
+    for (NameAndSignals ns: written) {
+      if (!shared.containsKey(ns)) {
+        shared.put(ns, new TabRowReference(tab, row));
+      }
+      row++;
+    }
+  }
+
+  /**
+   * Writes all <code>objects</code> as one gzip compressed block.
+   * @param out is not closed.
+   * @param shared objects of previous tabs, that are written as references.
+   * May be null.
+   * @param objects
+   * @throws IOException
+   */
+  private static void writeBlock(OutputStream out, final Map<Object, TabRowReference> shared, Object... objects) throws IOException {
+    ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(out, 1<<16)) {
+      {
+        enableReplaceObject(shared!=null && shared.size()>0);
+      }
+      /* (non-Javadoc)
+       * @see java.io.ObjectOutputStream#replaceObject(java.lang.Object)
+       */
+      @Override
+      protected Object replaceObject(Object obj) throws IOException {
+        TabRowReference ref = shared.get(obj);
+        return ref!=null?ref:obj;
+      }
+    };
+    for (Object o: objects) {
+      oos.writeObject(o);
+    }
+    oos.close();
+  }
+
+  /**
+   * Restores all tabs from the given workspace file and adds them to
+   * <code>ui</code>. The tabs are returned immediately and show a loading
+   * panel until the data has been decoded in background.
+   * Must be called on the event dispatch thread.
+   * @param ui
+   * @param f
+   * @return all restored tabs.
+   * @throws IOException
+   */
+  public static List<NameAndSignalsTab> read(IntegratorUI ui, File f) throws IOException {
+    TabEntry[] entries;
+    ByteBuffer[] blocks;
+    RandomAccessFile raf = new RandomAccessFile(f, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      if (size<8+TRAILER_SIZE) throw new IOException("Not a workspace file: " + f.getName());
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 8);
+      ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size-TRAILER_SIZE, TRAILER_SIZE);
+      if (header.getInt()!=MAGIC || trailer.getInt(8)!=MAGIC) {
+        throw new IOException("Not a workspace file: " + f.getName());
+      }
+      int version = header.getInt();
+      if (version<1 || version>VERSION) {
+        throw new IOException("Unsupported workspace file version " + version + ".");
+      }
+
+      // Read the index
+      long indexOffset = trailer.getLong(0);
+      try {
+        entries = (TabEntry[]) readBlock(channel.map(FileChannel.MapMode.READ_ONLY,
+          indexOffset, size-TRAILER_SIZE-indexOffset), null, null)[0];
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+
+      // Mappings stay valid after closing the channel
+      blocks = new ByteBuffer[entries.length];
+      for (int i=0; i<entries.length; i++) {
+        blocks[i] = channel.map(FileChannel.MapMode.READ_ONLY, entries[i].offset, entries[i].length);
+      }
+    } finally {
+      raf.close();
+    }
+
+    // Create tabs, data is decoded in background. References only point
+    // to previous tabs, whose workers are started before.
+    BlockReader[] readers = new BlockReader[entries.length];
+    for (int i=0; i<entries.length; i++) {
+      readers[i] = new BlockReader(blocks[i], readers);
+    }
+    List<NameAndSignalsTab> tabs = new ArrayList<NameAndSignalsTab>(entries.length);
+    for (int i=0; i<entries.length; i++) {
+      TabEntry e = entries[i];
+      BlockReader worker = readers[i];
+      String message = "Restoring " + e.name;
+      NameAndSignalsTab tab;
+      if (e.isTimeSeries) {
+        NSTimeSeriesTab ts = new NSTimeSeriesTab(ui, worker, message, e.species);
+        ts.setTimeUnit(e.timeUnit);
+        ts.setModelMethod(e.modelMethod);
+        if (e.timePoints!=null) {
+          List<ValueTriplet<Double, String, SignalType>> tp = new ArrayList<ValueTriplet<Double, String, SignalType>>(e.timePoints.length);
+          for (int j=0; j<e.timePoints.length; j++) {
+            tp.add(new ValueTriplet<Double, String, SignalType>(e.timePoints[j], e.timePointNames[j], e.timePointTypes[j]));
+          }
+          ts.setTimePoints(tp);
+        }
+        worker.setTimeSeriesTab(ts);
+        tab = ts;
+      } else {
+        tab = new NameAndSignalsTab(ui, worker, message, e.species);
+      }
+      ui.addTab(tab, e.name, e.toolTip);
+      tabs.add(tab);
+    }
+
+    // Restore relationships
+    for (int i=0; i<entries.length; i++) {
+      if (entries[i].sourceTab>=0) {
+        tabs.get(i).setSourceTab(tabs.get(entries[i].sourceTab));
+      }
+      for (int l: entries[i].listeners) {
+        tabs.get(i).addTableChangeListener(tabs.get(l));
+      }
+    }
+
+    log.fine(String.format("Restoring %s tabs from workspace '%s'.", tabs.size(), f.getName()));
+    return tabs;
+  }
+
+  /**
+   * Decodes all objects from a block.
+   * @param block
+   * @param progress may be null.
+   * @param tabs to resolve references to rows of other tabs. Blocks
+   * until the referenced tabs are decoded. May be null.
+   * @return
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  private static Object[] readBlock(ByteBuffer block, AbstractProgressBar progress, final BlockReader[] tabs) throws IOException, ClassNotFoundException {
+    List<Object> ret = new ArrayList<Object>(2);
+    ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new ByteBufferInputStream(block, progress), 1<<16)) {
+      {
+        enableResolveObject(tabs!=null);
+      }
+      /* (non-Javadoc)
+       * @see java.io.ObjectInputStream#resolveObject(java.lang.Object)
+       */
+      @Override
+      protected Object resolveObject(Object obj) throws IOException {
+        if (!(obj instanceof TabRowReference)) return obj;
+        TabRowReference ref = (TabRowReference) obj;
+        Collection<? extends NameAndSignals> data;
+        try {
+          data = tabs[ref.tab].get();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        } catch (ExecutionException e) {
+          throw new IOException("Could not restore referenced tab.", e.getCause());
+        }
+        return ref.row<0?data:((List<?>) data).get(ref.row);
+      }
+    };
+    try {
+      while (true) {
+        try {
+          ret.add(in.readObject());
+        } catch (EOFException e) {
+          break;
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return ret.toArray();
+  }
+
+  /**
+   * Decodes the data of one tab in background. Must be public to allow
+   * {@link NameAndSignalsTab} to set the progress bar.
+   */
+  public static class BlockReader extends SwingWorker<Collection<? extends NameAndSignals>, Void> {
+    private final ByteBuffer block;
+    /**
+     * Readers of all tabs, to resolve references.
+     */
+    private final BlockReader[] tabs;
+    private AbstractProgressBar progress = null;
+    /**
+     * Only set for time series tabs. Is set on the event dispatch
+     * thread, before the models are passed to it.
+     */
+    private NSTimeSeriesTab timeSeriesTab = null;
+
+    BlockReader(ByteBuffer block, BlockReader[] tabs) {
+      super();
+      this.block = block;
+      this.tabs = tabs;
+    }
+
+    /**
+     * Invoked by {@link NameAndSignalsTab}.
+     * @param progress
+     */
+    public void setProgressBar(AbstractProgressBar progress) {
+      this.progress = progress;
+    }
+
+    void setTimeSeriesTab(NSTimeSeriesTab timeSeriesTab) {
+      this.timeSeriesTab = timeSeriesTab;
+    }
+
+    /* (non-Javadoc)
+     * @see javax.swing.SwingWorker#doInBackground()
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    protected Collection<? extends NameAndSignals> doInBackground() throws Exception {
+      Object[] objects = readBlock(block, progress, tabs);
+      if (objects.length>1 && objects[1]!=null) {
+        final List<TimeSeriesModel> models = (List<TimeSeriesModel>) objects[1];
+        // Runs before the tab is informed that this worker is done
+        SwingUtilities.invokeLater(new Runnable() {
+          public void run() {
+            if (timeSeriesTab!=null) timeSeriesTab.setGeneModels(models);
+          }
+        });
+      }
+      return (Collection<? extends NameAndSignals>) objects[0];
+    }
+  }
+
+  /**
+   * Reads a (memory mapped) {@link ByteBuffer} and displays the progress.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+    private final AbstractProgressBar progress;
+    private int lastPercent = -1;
+
+    ByteBufferInputStream(ByteBuffer buffer, AbstractProgressBar progress) {
+      super();
+      this.buffer = buffer;
+      this.progress = progress;
+      if (progress!=null) {
+        progress.reset();
+        progress.setNumberOfTotalCalls(100);
+      }
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#read()
+     */
+    @Override
+    public int read() throws IOException {
+      if (!buffer.hasRemaining()) return -1;
+      return buffer.get() & 0xFF;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len==0) return 0;
+      if (!buffer.hasRemaining()) return -1;
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      if (progress!=null && buffer.capacity()>0) {
+        int percent = (int) (buffer.position()*100L/buffer.capacity());
+        if (percent>lastPercent) {
+          lastPercent = percent;
+          progress.setCallNr(percent);
+        }
+      }
+      return len;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#available()
+     */
+    @Override
+    public int available() throws IOException {
+      return buffer.remaining();
+    }
+  }
+
+  /**
+   * Counts all written bytes. Closing this stream only flushes the
+   * underlying stream, which allows to write multiple gzip blocks.
+   */
+  private static class CountingOutputStream extends FilterOutputStream {
+    private long count = 0;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterOutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterOutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count+=len;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterOutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+}
@@ -22,13 +22,11 @@
 package de.zbit.io.dna_methylation.importer;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
-
-import de.zbit.util.ArrayUtils;
 
 /**
- * Unused.
+ * Raw signals of one (or a window of multiple) DNA methylation
+ * probe(s). All signals are stored in primitive arrays, one
+ * array per observation.
  * @author Clemens Wrzodek
  * @version $Rev$
  */
@@ -46,15 +44,31 @@ public class DNAmethRawProbe implements Serializable, Comparable<DNAmethRawProbe
    */
   public DNAmethRawProbe() {
     super();
-    geneID=-1; position=0;
-    matched_treatments = new ArrayList<List<Float>>();
-    matched_treatments = new ArrayList<List<Float>>();
+    geneID=-1; position=0; end=0;
+    matched_treatments = new float[0][];
+    matched_controls = new float[0][];
   }
   
   public DNAmethRawProbe(int geneID, int position) {
     this();
     this.geneID = geneID;
     this.position = position;
+    this.end = position;
+  }
+  
+  /**
+   * @param geneID
+   * @param position
+   * @param treatments for each observation, all signals from treated probes.
+   * @param controls for each observation, all signals from control probes.
+   */
+  public DNAmethRawProbe(int geneID, int position, float[][] treatments, float[][] controls) {
+    this(geneID, position);
+    if (treatments.length!=controls.length) {
+      throw new IllegalArgumentException("Number of observations for treatments and controls differ.");
+    }
+    this.matched_treatments = treatments;
+    this.matched_controls = controls;
   }
   
   /**
@@ -67,19 +81,24 @@ public class DNAmethRawProbe implements Serializable, Comparable<DNAmethRawProbe
    */
   int position;
   
-  // TODO: Test difference to doubles
   /**
-   * For each observation, a list of contained signals,
+   * Position of the last probe (equals {@link #position} for a single
+   * probe).
+   */
+  int end;
+  
+  /**
+   * For each observation, all contained signals,
    * coming from a treated probe.
    * Note: Indices must be matched with {@link #matched_controls}
    */
-  List<List<Float>> matched_treatments;
+  float[][] matched_treatments;
   /**
-   * For each observation, a list of contained signals,
+   * For each observation, all contained signals,
    * coming from a control probe.
    * Note: Indices must be matched with {@link #matched_treatments}
    */
-  List<List<Float>> matched_controls;
+  float[][] matched_controls;
   
   
   /* (non-Javadoc)
@@ -103,15 +122,37 @@ public class DNAmethRawProbe implements Serializable, Comparable<DNAmethRawProbe
   /**
    * @param probe any probe of the same dataset. This means, the number
    * and indices of {@link #matched_controls} and {@link #matched_treatments}
-   * must be exactly the same!
+   * must be exactly the same! If this probe has no observations
+   * yet, all observations of <code>probe</code> are copied.
    */
   public void addSignals(DNAmethRawProbe probe) {
-    for (int i=0; i<matched_treatments.size(); i++) {
-      matched_treatments.get(i).addAll(probe.matched_treatments.get(i));
+    end = Math.max(end, probe.end);
+    matched_treatments = append(matched_treatments, probe.matched_treatments);
+    matched_controls = append(matched_controls, probe.matched_controls);
+  }
+
+  /**
+   * @param target
+   * @param source
+   * @return <code>target</code> with all signals of <code>source</code>
+   * appended to each observation.
+   */
+  private static float[][] append(float[][] target, float[][] source) {
+    if (target.length==0) {
+      target = new float[source.length][];
+      for (int i=0; i<source.length; i++) {
+        target[i] = source[i].clone();
+      }
+      return target;
     }
-    for (int i=0; i<matched_controls.size(); i++) {
-      matched_controls.get(i).addAll(probe.matched_controls.get(i));
+    
+    for (int i=0; i<target.length; i++) {
+      float[] merged = new float[target[i].length + source[i].length];
+      System.arraycopy(target[i], 0, merged, 0, target[i].length);
+      System.arraycopy(source[i], 0, merged, target[i].length, source[i].length);
+      target[i] = merged;
     }
+    return target;
   }
 
   /**
@@ -120,27 +161,39 @@ public class DNAmethRawProbe implements Serializable, Comparable<DNAmethRawProbe
    * @return
    */
   public double[] getObservationAsDoubleArray(int i, boolean treatment) {
-    List<Float> list;
-    if (treatment) list = matched_treatments.get(i);
-    else list = matched_controls.get(i);
-    
-    return ArrayUtils.toDoubleArray(list);
+    return getObservationAsDoubleArray(i, treatment, false);
+  }
+
+  /**
+   * @param i observation index
+   * @param treatment if true, returnes treatmens, if false, controls will be returned
+   * @param log2 if true, values are logarithmized to base 2.
+   * @return
+   */
+  public double[] getObservationAsDoubleArray(int i, boolean treatment, boolean log2) {
+    float[] values = treatment?matched_treatments[i]:matched_controls[i];
+    double[] ret = new double[values.length];
+    for (int j=0; j<values.length; j++) {
+      ret[j] = log2?getLog2(values[j]):values[j];
+    }
+    return ret;
   }
 
   /**
    * Logarithmizes all signals in this probe, to base 2.
    */
   public void log2TransformSignals() {
-    for (int i=0; i<matched_treatments.size(); i++) {
-      for (int j=0; j<matched_treatments.get(i).size(); j++) {
-        double newVal = Math.log(matched_treatments.get(i).get(j).doubleValue())/ln2;
-        matched_treatments.get(i).set(j, new Float(newVal) );
-      }
-    }
-    for (int i=0; i<matched_controls.size(); i++) {
-      for (int j=0; j<matched_controls.get(i).size(); j++) {
-        double newVal = Math.log(matched_controls.get(i).get(j).doubleValue())/ln2;
-        matched_controls.get(i).set(j, new Float(newVal) );
+    log2Transform(matched_treatments);
+    log2Transform(matched_controls);
+  }
+  
+  /**
+   * @param values
+   */
+  private static void log2Transform(float[][] values) {
+    for (float[] observation: values) {
+      for (int j=0; j<observation.length; j++) {
+        observation[j] = (float) getLog2(observation[j]);
       }
     }
   }
@@ -157,25 +210,27 @@ public class DNAmethRawProbe implements Serializable, Comparable<DNAmethRawProbe
    * @return number of observations (equals size of {@link #matched_controls}).
    */
   public int getNumberOfObservations() {
-    return matched_controls.size();
+    return matched_controls.length;
   }
 
   /**
    * @return true if this probe collection contains any signal below 0.
    */
   public boolean containsValuesBelowZero() {
-    for (int i=0; i<matched_treatments.size(); i++) {
-      for (int j=0; j<matched_treatments.get(i).size(); j++) {
-        if ((matched_treatments.get(i).get(j))<0) return true;
-      }
-    }
-    for (int i=0; i<matched_controls.size(); i++) {
-      for (int j=0; j<matched_controls.get(i).size(); j++) {
-        if ((matched_controls.get(i).get(j))<0) return true;
+    return containsValuesBelowZero(matched_treatments) || containsValuesBelowZero(matched_controls);
+  }
+  
+  /**
+   * @param values
+   * @return true if any value is below 0.
+   */
+  private static boolean containsValuesBelowZero(float[][] values) {
+    for (float[] observation: values) {
+      for (float v: observation) {
+        if (v<0) return true;
       }
     }
     return false;
   }
   
-  
 }
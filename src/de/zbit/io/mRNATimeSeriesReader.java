@@ -106,6 +106,23 @@ public class mRNATimeSeriesReader extends AbstractGeneBasedNSreader<mRNATimeSeri
 		return timePoints;
 	}
 
+	/* (non-Javadoc)
+	 * @see de.zbit.io.AbstractGeneBasedNSreader#importWithCache(java.lang.String, de.zbit.integrator.ReaderCache, de.zbit.util.Species)
+	 */
+	@Override
+	public Collection<mRNATimeSeries> importWithCache(String file, ReaderCache cache, Species species) throws IOException, Exception {
+		// Time points and the time unit are not stored in the cache
+		throw new IOException(getClass().getSimpleName() + " can only import files with a GUI.");
+	}
+
+	/* (non-Javadoc)
+	 * @see de.zbit.io.AbstractGeneBasedNSreader#isImportWithCacheSupported()
+	 */
+	@Override
+	public boolean isImportWithCacheSupported() {
+		return false;
+	}
+
 	/* (non-Javadoc)
 	 * @see de.zbit.io.NameAndSignalReader#importWithGUI(java.awt.Component, java.lang.String, de.zbit.integrator.ReaderCache)
 	 */
@@ -116,18 +116,7 @@ public class miRNAReader extends NameAndSignalReader<miRNA> {
         if (cache!=null) cache.add(ReaderCacheElement.createInstance(c, species));
         
         // Read all columns and types
-        nameCol = exCol[0].getAssignedColumn();
-        probeNameCol = exCol[1].getAssignedColumn();
-        parseCustomAnnotationColumn(exCol[2]);
-        for (int i=3; i<exCol.length; i++) {
-          // Signals are left-over
-          if (exCol[i].hasAssignedColumns()) {
-            for (int j=0; j<exCol[i].getAssignedColumns().size(); j++) {
-              addSignalColumn(exCol[i].getAssignedColumns().get(j), 
-                (SignalType) exCol[i].getAssignedType(j), exCol[i].getName().toString());
-            }
-          }
-        }
+        processColumnAssignments(exCol);
         
         try {
           //Utils.saveObject(FileTools.removeFileExtension(c.getApprovedCSVReader().getFilename())+"-reader.dat", this);
@@ -146,6 +135,50 @@ public class miRNAReader extends NameAndSignalReader<miRNA> {
     return null;
   }
   
+  /* (non-Javadoc)
+   * @see de.zbit.io.NameAndSignalReader#isImportWithCacheSupported()
+   */
+  @Override
+  public boolean isImportWithCacheSupported() {
+    return true;
+  }
+  
+  /* (non-Javadoc)
+   * @see de.zbit.io.NameAndSignalReader#importWithCache(java.lang.String, de.zbit.integrator.ReaderCache, de.zbit.util.Species)
+   */
+  @Override
+  public Collection<miRNA> importWithCache(String file, ReaderCache cache, Species species) throws IOException, Exception {
+    ReaderCacheElement ci = getConfigurationFromCache(cache, file);
+    CSVReader inputReader = new CSVReader(file);
+    ci.configureReader(inputReader);
+    ExpectedColumn[] exCol = getExpectedColumns();
+    ci.configureExpectedColumns(exCol);
+    
+    this.species = species!=null?species:ci.getOrganism();
+    processColumnAssignments(exCol);
+    return read(inputReader);
+  }
+  
+  /**
+   * Configures this reader according to the assigned columns.
+   * @param exCol all {@link #getExpectedColumns()} with assignments
+   * from the user (or cache).
+   */
+  private void processColumnAssignments(ExpectedColumn[] exCol) {
+    nameCol = exCol[0].getAssignedColumn();
+    probeNameCol = exCol[1].getAssignedColumn();
+    parseCustomAnnotationColumn(exCol[2]);
+    for (int i=3; i<exCol.length; i++) {
+      // Signals are left-over
+      if (exCol[i].hasAssignedColumns()) {
+        for (int j=0; j<exCol[i].getAssignedColumns().size(); j++) {
+          addSignalColumn(exCol[i].getAssignedColumns().get(j), 
+            (SignalType) exCol[i].getAssignedType(j), exCol[i].getName().toString());
+        }
+      }
+    }
+  }
+  
   /**
    * This is ONLY for use in combination with {@link #importWithGUI(String)} afterwards.
    */
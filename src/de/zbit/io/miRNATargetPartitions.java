@@ -0,0 +1,441 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.zbit.data.miRNA.miRNAtarget;
+import de.zbit.data.miRNA.miRNAtargets;
+import de.zbit.util.SortedArrayList;
+import de.zbit.util.Species;
+
+/**
+ * Reads and writes {@link miRNAtargets} in files that are partitioned
+ * by the source database of the targets (e.g., miRTarBase or TargetScan).
+ * In contrast to serialized {@link miRNAtargets} objects, only the
+ * requested sources must be read.
+ *
+ * <p>The file starts with a small index header (magic number, version and,
+ * for each partition, the source name, number of targets and size in
+ * bytes), followed by the partitions in the same order. Each partition
+ * is gzip compressed and contains all miRNAs with their targets, sorted
+ * by target gene id. The targets of all selected partitions are combined
+ * with a k-way merge.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class miRNATargetPartitions {
+  public static final transient Logger log = Logger.getLogger(miRNATargetPartitions.class.getName());
+
+  /**
+   * Identifies partitioned target files.
+   */
+  private final static int MAGIC = 0x6D695450; // "miTP"
+
+  private final static int VERSION = 1;
+
+  /**
+   * Known source databases. The source of a target is the first
+   * element of this list, its source string starts with.
+   */
+  public final static String[] SOURCES = new String[]{
+    "miRecords", "miRTarBase", "TarBase", "ElMMo", "DIANA", "TargetScan"};
+
+  /**
+   * Partition for all targets of unknown sources.
+   */
+  public final static String OTHER_SOURCES = "Other";
+
+  /**
+   * @param species
+   * @return the resource of the partitioned target file for the given species.
+   * The files are generated from the serialized targets with {@link #main(String[])}
+   * by the "miRNA-partitions" target of the build script.
+   */
+  public static String getFileName(Species species) {
+    return "miRNA_targets/" + species.getNCBITaxonID() + "_partitioned.dat";
+  }
+
+  /**
+   * @param species
+   * @return true if a partitioned target file is available for the
+   * given species.
+   */
+  public static boolean exists(Species species) {
+    InputStream in = OpenFile.searchFileAndGetInputStream(getFileName(species));
+    if (in==null) return false;
+    try {
+      in.close();
+    } catch (IOException e) {
+      // Only checked for existence
+    }
+    return true;
+  }
+
+  /**
+   * @param t
+   * @return the partition (one of {@link #SOURCES} or {@link #OTHER_SOURCES})
+   * of the given target.
+   */
+  public static String getPartition(miRNAtarget t) {
+    if (t.getSource()!=null) {
+      for (String source: SOURCES) {
+        if (t.getSource().startsWith(source)) return source;
+      }
+    }
+    return OTHER_SOURCES;
+  }
+
+  /**
+   * Writes the given targets in a partitioned file.
+   * @param targets
+   * @param out
+   * @throws IOException
+   */
+  public static void write(miRNAtargets targets, File out) throws IOException {
+    // Split targets by source (miRNAs sorted by name)
+    Map<String, Map<String, List<miRNAtarget>>> partitions = new LinkedHashMap<String, Map<String, List<miRNAtarget>>>();
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    Map<String, Collection<miRNAtarget>> all = targets.getTargetList();
+    if (all!=null) {
+      for (Map.Entry<String, Collection<miRNAtarget>> e: all.entrySet()) {
+        for (miRNAtarget t: e.getValue()) {
+          String partition = getPartition(t);
+          Map<String, List<miRNAtarget>> p = partitions.get(partition);
+          if (p==null) {
+            p = new TreeMap<String, List<miRNAtarget>>();
+            partitions.put(partition, p);
+          }
+          List<miRNAtarget> list = p.get(e.getKey());
+          if (list==null) {
+            list = new ArrayList<miRNAtarget>();
+            p.put(e.getKey(), list);
+          }
+          list.add(t);
+          Integer c = counts.get(partition);
+          counts.put(partition, c==null?1:c+1);
+        }
+      }
+    }
+
+    // Compress all partitions
+    List<String> names = new ArrayList<String>(partitions.keySet());
+    List<byte[]> data = new ArrayList<byte[]>(names.size());
+    for (String name: names) {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      DataOutputStream w = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(buffer)));
+      Map<String, List<miRNAtarget>> p = partitions.get(name);
+      w.writeInt(p.size());
+      for (Map.Entry<String, List<miRNAtarget>> e: p.entrySet()) {
+        miRNAtarget[] sorted = e.getValue().toArray(new miRNAtarget[0]);
+        Arrays.sort(sorted);
+        w.writeUTF(e.getKey());
+        w.writeInt(sorted.length);
+        for (miRNAtarget t: sorted) {
+          w.writeInt(t.getTarget());
+          w.writeBoolean(t.isExperimental());
+          w.writeBoolean(t.getSource()!=null);
+          if (t.getSource()!=null) w.writeUTF(t.getSource());
+          w.writeFloat(t.getPValue());
+        }
+      }
+      w.close();
+      data.add(buffer.toByteArray());
+    }
+
+    // Write header and partitions
+    DataOutputStream w = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)));
+    try {
+      w.writeInt(MAGIC);
+      w.writeInt(VERSION);
+      w.writeInt(names.size());
+      for (int i=0; i<names.size(); i++) {
+        w.writeUTF(names.get(i));
+        w.writeInt(counts.get(names.get(i)));
+        w.writeLong(data.get(i).length);
+      }
+      for (byte[] bytes: data) {
+        w.write(bytes);
+      }
+    } finally {
+      w.close();
+    }
+    log.fine(String.format("Wrote %s partitions (%s) to '%s'.", names.size(), counts, out.getName()));
+  }
+
+  /**
+   * Reads the targets of the given sources from the partitioned target
+   * file of the given species.
+   * @param species
+   * @param sources elements of {@link #SOURCES}.
+   * @param onlyExperimental if true, predicted targets are skipped.
+   * @return the targets or null if no partitioned file is available
+   * for the species.
+   * @throws IOException
+   */
+  public static miRNAtargets read(Species species, Collection<String> sources, boolean onlyExperimental) throws IOException {
+    InputStream in = OpenFile.searchFileAndGetInputStream(getFileName(species));
+    if (in==null) return null;
+    try {
+      return read(in, sources, onlyExperimental);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads the targets of the given sources from a partitioned target file.
+   * All other partitions are skipped.
+   * @param input
+   * @param sources elements of {@link #SOURCES} (or {@link #OTHER_SOURCES}).
+   * @param onlyExperimental if true, predicted targets are skipped.
+   * @return
+   * @throws IOException
+   */
+  public static miRNAtargets read(InputStream input, Collection<String> sources, boolean onlyExperimental) throws IOException {
+    long time = System.currentTimeMillis();
+    DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+    if (in.readInt()!=MAGIC) throw new IOException("No partitioned microRNA target file.");
+    int version = in.readInt();
+    if (version>VERSION) throw new IOException("Unsupported version of microRNA target file: " + version);
+
+    // Read index
+    int n = in.readInt();
+    String[] names = new String[n];
+    long[] sizes = new long[n];
+    for (int i=0; i<n; i++) {
+      names[i] = in.readUTF();
+      in.readInt(); // number of targets
+      sizes[i] = in.readLong();
+    }
+
+    // Read selected partitions, skip all others
+    Set<String> selected = new HashSet<String>(sources);
+    List<Map<String, miRNAtarget[]>> partitions = new ArrayList<Map<String, miRNAtarget[]>>();
+    for (int i=0; i<n; i++) {
+      if (selected.contains(names[i])) {
+        InputStream partition = new BoundedInputStream(in, sizes[i]);
+        try {
+          partitions.add(readPartition(partition, onlyExperimental));
+        } finally {
+          partition.close();
+        }
+      } else {
+        skipFully(in, sizes[i]);
+      }
+    }
+
+    // Merge partitions per miRNA
+    Set<String> miRNAs = new HashSet<String>();
+    for (Map<String, miRNAtarget[]> p: partitions) {
+      miRNAs.addAll(p.keySet());
+    }
+    miRNAtargets ret = new miRNAtargets();
+    List<miRNAtarget[]> runs = new ArrayList<miRNAtarget[]>(partitions.size());
+    for (String miRNA: miRNAs) {
+      runs.clear();
+      for (Map<String, miRNAtarget[]> p: partitions) {
+        miRNAtarget[] run = p.get(miRNA);
+        if (run!=null && run.length>0) runs.add(run);
+      }
+      Collection<miRNAtarget> merged = merge(runs);
+      if (merged.size()>0) ret.setTargets(miRNA, merged);
+    }
+
+    log.fine(String.format("Read %s microRNAs from %s partitions in %sms.", ret.size(), partitions.size(), System.currentTimeMillis()-time));
+    return ret;
+  }
+
+  /**
+   * @param in
+   * @param onlyExperimental
+   * @return miRNA to targets, sorted by gene id.
+   * @throws IOException
+   */
+  private static Map<String, miRNAtarget[]> readPartition(InputStream in, boolean onlyExperimental) throws IOException {
+    DataInputStream r = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+    int miRNAs = r.readInt();
+    Map<String, miRNAtarget[]> ret = new HashMap<String, miRNAtarget[]>(miRNAs*4/3+1);
+    for (int i=0; i<miRNAs; i++) {
+      String miRNA = r.readUTF();
+      int size = r.readInt();
+      miRNAtarget[] targets = new miRNAtarget[size];
+      int k=0;
+      for (int j=0; j<size; j++) {
+        int target = r.readInt();
+        boolean experimental = r.readBoolean();
+        String source = r.readBoolean()?r.readUTF():null;
+        float pValue = r.readFloat();
+        if (onlyExperimental && !experimental) continue;
+        targets[k++] = new miRNAtarget(target, experimental, source, pValue);
+      }
+      if (k<size) targets = Arrays.copyOf(targets, k);
+      if (k>0) ret.put(miRNA, targets);
+    }
+    return ret;
+  }
+
+  /**
+   * K-way merge of sorted runs. Duplicates (equal targets in more than
+   * one run) are only kept once.
+   * @param runs sorted by {@link miRNAtarget#compareTo(miRNAtarget)}.
+   * @return all targets in sorted order.
+   */
+  private static Collection<miRNAtarget> merge(List<miRNAtarget[]> runs) {
+    int total=0;
+    for (miRNAtarget[] run: runs) {
+      total+=run.length;
+    }
+    List<miRNAtarget> ret = new ArrayList<miRNAtarget>(total);
+
+    // Only few sources, hence a linear search for the minimum is fastest
+    int[] pos = new int[runs.size()];
+    miRNAtarget last = null;
+    while (true) {
+      int min = -1;
+      for (int i=0; i<pos.length; i++) {
+        if (pos[i]<runs.get(i).length &&
+            (min<0 || runs.get(i)[pos[i]].compareTo(runs.get(min)[pos[min]])<0)) {
+          min = i;
+        }
+      }
+      if (min<0) break;
+      miRNAtarget t = runs.get(min)[pos[min]++];
+      if (last==null || last.compareTo(t)!=0) {
+        ret.add(t);
+        last = t;
+      }
+    }
+    
+    // Appending in sorted order is cheap
+    SortedArrayList<miRNAtarget> sorted = new SortedArrayList<miRNAtarget>();
+    for (miRNAtarget t: ret) {
+      sorted.add(t);
+    }
+    return sorted;
+  }
+
+  /**
+   * Skips exactly <code>n</code> bytes.
+   * @param in
+   * @param n
+   * @throws IOException
+   */
+  private static void skipFully(InputStream in, long n) throws IOException {
+    while (n>0) {
+      long skipped = in.skip(n);
+      if (skipped<=0) {
+        if (in.read()<0) throw new IOException("Unexpected end of microRNA target file.");
+        skipped = 1;
+      }
+      n-=skipped;
+    }
+  }
+
+  /**
+   * Limits reading from the underlying stream to a partition. Closing
+   * this stream does not close the underlying stream.
+   */
+  private static class BoundedInputStream extends InputStream {
+    private final InputStream in;
+    private long remaining;
+
+    BoundedInputStream(InputStream in, long size) {
+      this.in = in;
+      this.remaining = size;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#read()
+     */
+    @Override
+    public int read() throws IOException {
+      if (remaining<=0) return -1;
+      int b = in.read();
+      if (b>=0) remaining--;
+      return b;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining<=0) return -1;
+      int r = in.read(b, off, (int) Math.min(len, remaining));
+      if (r>0) remaining-=r;
+      return r;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+      // Skip the rest of this partition
+      skipFully(in, remaining);
+      remaining = 0;
+    }
+  }
+
+  /**
+   * Converts serialized {@link miRNAtargets} files (e.g.,
+   * "miRNA_targets/9606.dat" and "miRNA_targets/9606_HC.dat") to one
+   * partitioned file.
+   * @param args output file, followed by all input files.
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length<2) {
+      System.out.println("Usage: miRNATargetPartitions <output file> <serialized miRNAtargets file>...");
+      return;
+    }
+    miRNAtargets all = new miRNAtargets();
+    for (int i=1; i<args.length; i++) {
+      all.addAll((miRNAtargets) SerializableTools.loadGZippedObject(OpenFile.searchFileAndGetInputStream(args[i])));
+    }
+    write(all, new File(args[0]));
+  }
+
+}
@@ -33,7 +33,6 @@ import de.zbit.data.miRNA.miRNAtargets;
 import de.zbit.io.csv.CSVReader;
 import de.zbit.io.csv.CSVwriteableIO;
 import de.zbit.mapper.AbstractMapper;
-import de.zbit.mapper.MappingUtils;
 import de.zbit.mapper.MappingUtils.IdentifierType;
 import de.zbit.util.Species;
 import de.zbit.util.StringUtil;
@@ -41,6 +40,7 @@ import de.zbit.util.logging.LogUtil;
 import de.zbit.util.objectwrapper.ValuePair;
 import de.zbit.util.progressbar.AbstractProgressBar;
 import de.zbit.util.progressbar.ProgressBar;
+import de.zbit.utils.MapperRegistry;
 
 /**
  * miRNA Target data reader.
@@ -216,12 +216,9 @@ public class miRNATargetReader {
     log.config("colRef: " + (col_Reference>=0?col_Reference:predictionAlgorithm) + ", col_species: " + col_Species);
     if (col_pValueOrScore>=0) log.config("colpValueOrScore: " + col_pValueOrScore);
     
-    AbstractMapper<String, Integer> mapper = MappingUtils.initialize2GeneIDMapper(targetIDtype, progress, species);
-    if (mapper!=null) {
-      mapper.initialize();
-      if (!mapper.isReady()) {
-        throw new IOException("Could not read mapping data to map " + targetIDtype + " on entrez gene ids.");
-      }
+    AbstractMapper<String, Integer> mapper = MapperRegistry.get2GeneIDMapper(targetIDtype, species, progress, false);
+    if (mapper!=null && !mapper.isReady()) {
+      throw new IOException("Could not read mapping data to map " + targetIDtype + " on entrez gene ids.");
     }
     
     // Read data
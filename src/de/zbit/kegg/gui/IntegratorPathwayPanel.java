@@ -71,6 +71,7 @@ import de.zbit.gui.customcomponents.TableResultTableModel;
 import de.zbit.gui.layout.LayoutHelper;
 import de.zbit.gui.tabs.IntegratorChartTab;
 import de.zbit.integrator.GraphMLmapsExtended;
+import de.zbit.integrator.PathwayGraphCache;
 import de.zbit.kegg.io.KEGGtranslatorIOOptions.Format;
 import de.zbit.kegg.parser.pathway.Pathway;
 import de.zbit.mapper.GeneID2GeneSymbolMapper;
@@ -135,6 +136,19 @@ public class IntegratorPathwayPanel extends TranslatorGraphPanel implements Spec
     super(pathwayImporter, Format.JPG, translationResult);
   }
   
+  /**
+   * Creates a panel for the given KEGG pathway, that takes the
+   * translated graph from the {@link PathwayGraphCache}.
+   * @param pathwayID
+   * @param translationResult
+   * @return
+   */
+  public static IntegratorPathwayPanel createFromCache(String pathwayID, ActionListener translationResult) {
+    IntegratorPathwayPanel panel = new IntegratorPathwayPanel(PathwayGraphCache.createImporter(pathwayID), translationResult);
+    TranslatorPanelTools.setupBackgroundImage(panel);
+    return panel;
+  }
+  
   
   /* (non-Javadoc)
    * @see de.zbit.kegg.gui.TranslatorGraphLayerPanel#isDetailPanelAvailable()
@@ -0,0 +1,185 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.zbit.data.EnrichmentObject;
+import de.zbit.util.objectwrapper.ValuePair;
+import de.zbit.utils.IndexSort;
+
+/**
+ * Base class for rank-based FDR correction methods. All methods
+ * are implemented on top of {@link #getQvalues(double[])}, which
+ * works on primitive arrays and sorts in O(n log n) (in parallel
+ * for large inputs).
+ * <p>As before, {@link #pVal_adjust(List)} and {@link #setQvalue(List)}
+ * sort the given list ascending by pValue.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public abstract class AbstractFDRCorrection implements FDRCorrection {
+  public static final transient Logger log = Logger.getLogger(AbstractFDRCorrection.class.getName());
+
+  /* (non-Javadoc)
+   * @see de.zbit.math.FDRCorrection#getQvalues(double[])
+   */
+  public double[] getQvalues(double[] pValues) {
+    int[] order = sortAscending(pValues);
+    double[] qValues = new double[pValues.length];
+    getQvalues(pValues, order, countNonNaN(pValues), qValues);
+    return qValues;
+  }
+
+  /**
+   * Calculates the qValues.
+   * @param pValues
+   * @param order permutation that sorts <code>pValues</code> ascending
+   * (NaNs at the end).
+   * @param m number of non-NaN pValues. All indices after
+   * <code>m</code> in <code>order</code> point to NaNs.
+   * @param qValues target array (same length as <code>pValues</code>).
+   * NaN pValues must result in NaN qValues.
+   */
+  protected abstract void getQvalues(double[] pValues, int[] order, int m, double[] qValues);
+
+  /**
+   * @param values
+   * @return a permutation that sorts <code>values</code> ascending,
+   * with all NaNs at the end.
+   */
+  protected static int[] sortAscending(double[] values) {
+    int[] order = IndexSort.identity(values.length);
+    IndexSort.IndexComparator c = IndexSort.createComparator(values, true);
+    try {
+      IndexSort.parallelSort(order, c);
+    } catch (ExecutionException e) {
+      log.log(Level.FINE, "Parallel sorting failed, sorting sequentially.", e);
+      order = IndexSort.identity(values.length);
+      IndexSort.sort(order, c);
+    }
+    return order;
+  }
+
+  /**
+   * @param values
+   * @return number of values that are not NaN.
+   */
+  protected static int countNonNaN(double[] values) {
+    int m=0;
+    for (double v: values) {
+      if (!Double.isNaN(v)) m++;
+    }
+    return m;
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.math.FDRCorrection#getQvalues(java.util.List)
+   */
+  public List<Double> getQvalues(List<Number> values) {
+    double[] pValues = new double[values.size()];
+    int i=0;
+    for (Number n: values) {
+      pValues[i++] = n.doubleValue();
+    }
+
+    double[] qValues = getQvalues(pValues);
+
+    List<Double> ret = new ArrayList<Double>(qValues.length);
+    for (double q: qValues) {
+      ret.add(q);
+    }
+    return ret;
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.math.FDRCorrection#pVal_adjust(java.util.List)
+   */
+  public <ID extends Comparable<? super ID>> void pVal_adjust(List<ValuePair<ID, Double>> pValues) {
+    if (pValues.size()<1) return;
+
+    // Get all pValues at once (pValues might be a LinkedList)
+    double[] p = new double[pValues.size()];
+    int i=0;
+    for (ValuePair<ID, Double> vp: pValues) {
+      p[i++] = vp.getB();
+    }
+
+    int[] order = sortAscending(p);
+    double[] q = new double[p.length];
+    getQvalues(p, order, countNonNaN(p), q);
+
+    // Overwrite pValues with qValues and sort ascending
+    reorder(pValues, order);
+    i=0;
+    for (ValuePair<ID, Double> vp: pValues) {
+      vp.setB(q[order[i++]]);
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.math.FDRCorrection#setQvalue(java.util.List)
+   */
+  public <EnrichIDType> void setQvalue(List<EnrichmentObject<EnrichIDType>> enrichments) {
+    if (enrichments.size()<1) return;
+
+    // Get all pValues at once (enrichments might be a LinkedList)
+    double[] p = new double[enrichments.size()];
+    int i=0;
+    for (EnrichmentObject<EnrichIDType> eo: enrichments) {
+      p[i++] = eo.getPValue().doubleValue();
+    }
+
+    int[] order = sortAscending(p);
+    double[] q = new double[p.length];
+    getQvalues(p, order, countNonNaN(p), q);
+
+    // Set qValues and sort ascending
+    reorder(enrichments, order);
+    i=0;
+    for (EnrichmentObject<EnrichIDType> eo: enrichments) {
+      eo.setQValue(q[order[i++]]);
+    }
+  }
+
+  /**
+   * Sorts the given list according to the permutation in one pass.
+   * @param <T>
+   * @param list
+   * @param order new element at position i is the old element at <code>order[i]</code>.
+   */
+  private static <T> void reorder(List<T> list, int[] order) {
+    List<T> copy = new ArrayList<T>(list);
+    ListIterator<T> it = list.listIterator();
+    for (int i=0; i<order.length; i++) {
+      it.next();
+      it.set(copy.get(order[i]));
+    }
+  }
+
+}
@@ -21,87 +21,44 @@
  */
 package de.zbit.math;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-import de.zbit.data.EnrichmentObject;
-import de.zbit.data.Signal;
-import de.zbit.data.Signal.SignalType;
-import de.zbit.util.objectwrapper.ValuePair;
-
 /**
  * Implementation of the Benjamini and Hochberg FDR correction method.
+ * @see for example <a href="http://www.silicongenetics.com/Support/GeneSpring/GSnotes/analysis_guides/mtc.pdf">here</a>
  * @author Clemens Wrzodek
  * @version $Rev$
  */
-public class BenjaminiHochberg implements FDRCorrection {
-  
+public class BenjaminiHochberg extends AbstractFDRCorrection {
   
   /**
-   * Adjust pValues according to Benjamini and Hochberg
-   * @see for example <a href="http://www.silicongenetics.com/Support/GeneSpring/GSnotes/analysis_guides/mtc.pdf">here</a>
-   * @param pValues a {@link ValuePair} of any identifier and the pValue. The identifier
-   * is required, because the list is sorted and pValues are overwritten with qValues.
+   * Apply (pVal*N/Rank) BH correction.
+   * @see de.zbit.math.AbstractFDRCorrection#getQvalues(double[], int[], int, double[])
    */
-  public <ID extends Comparable<? super ID>> void pVal_adjust(
-    List<ValuePair<ID, Double>> pValues) {
-    if (pValues.size()<1) return;
-    
-    // Sort ascending
-    Collections.sort(pValues, pValues.iterator().next().getComparator_OnlyCompareB());
-    int m = pValues.size();
-    
-    // Apply (pVal*N/Rank) BH correction
-    double last_q = pValues.get(m-1).getB();
-    for (int i = (m-1); i > 0; i--) {
-      ValuePair<ID, Double> vp = pValues.get(i-1);
-      double q = vp.getB()*m/i;
-      
-      last_q = Math.min(Math.min(q, last_q), 1);
-      vp.setB(last_q);
-    }
+  @Override
+  protected void getQvalues(double[] pValues, int[] order, int m, double[] qValues) {
+    adjust(pValues, order, m, 1d, qValues);
   }
-
-  /* (non-Javadoc)
-   * @see de.zbit.math.Correction#getQvalues(java.util.List)
-   */
-  public List<Double> getQvalues(List<Number> values) {
-    // Create a list with identifiers and double values
-    List<ValuePair<Integer, Double>> pValues = new ArrayList<ValuePair<Integer, Double>>();
-    for (int i=0; i<values.size(); i++) {
-      pValues.add(new ValuePair<Integer, Double>( Integer.valueOf(i), new Double(values.get(i).doubleValue()) ));
-    }
-    
-    // Adjust pValues
-    pVal_adjust(pValues);
-    
-    // Re-order to preserve original ordering
-    Collections.sort(pValues, pValues.iterator().next().getComparator_OnlyCompareA());
-    
-    // Return qValues
-    return ValuePair.getListOfB(pValues);
-  }
-
-  /* (non-Javadoc)
-   * @see de.zbit.math.Correction#setQvalue(java.util.List)
+  
+  /**
+   * Applies the (factor*pVal*N/Rank) BH correction.
+   * @param pValues
+   * @param order permutation that sorts <code>pValues</code> ascending
+   * @param m number of non-NaN pValues
+   * @param factor additional multiplier for all values (e.g., pi0)
+   * @param qValues target array
    */
-  public <EnrichIDType> void setQvalue(List<EnrichmentObject<EnrichIDType>> enrichments) {
-    // Sort ascending
-    Collections.sort(enrichments, Signal.getComparator(EnrichmentObject.signalNameForPvalues, SignalType.pValue));
-    int m = enrichments.size();
-    
-    // Biggest value doesn't change
-    EnrichmentObject<?> vp = enrichments.get(m-1);
-    vp.setQValue(vp.getPValue().doubleValue());
-    
-    // Apply (pVal*N/Rank) BH correction
-    for (int i = (m-1); i > 0; i--) {
-      vp = enrichments.get(i-1);
-      double q = vp.getPValue().doubleValue()*m/i;
+  static void adjust(double[] pValues, int[] order, int m, double factor, double[] qValues) {
+    // Biggest value doesn't change (only by factor)
+    double last_q = 1;
+    for (int i = (m-1); i>=0; i--) {
+      double q = factor*pValues[order[i]]*m/(i+1);
       
       // (1) Preserve monotonicity and (2) do never set a value greater than one 
-      vp.setQValue(Math.min(Math.min(q, enrichments.get(i).getQValue().doubleValue()), 1));
+      last_q = Math.min(q, last_q);
+      qValues[order[i]] = last_q;
     }
-  }  
+    for (int i=m; i<order.length; i++) {
+      qValues[order[i]] = Double.NaN;
+    }
+  }
+  
 }
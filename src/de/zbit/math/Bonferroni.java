@@ -72,6 +72,21 @@ public class Bonferroni implements FDRCorrection {
     return ret;
   }
 
+  /* (non-Javadoc)
+   * @see de.zbit.math.FDRCorrection#getQvalues(double[])
+   */
+  public double[] getQvalues(double[] pValues) {
+    int multiplier = sourceListSize;
+    if (multiplier==0) multiplier = pValues.length;
+    
+    double[] ret = new double[pValues.length];
+    for (int i=0; i<pValues.length; i++) {
+      ret[i] = Math.min(pValues[i]*multiplier, 1);
+    }
+    
+    return ret;
+  }
+
   /* (non-Javadoc)
    * @see de.zbit.math.Correction#pVal_adjust(java.util.List)
    */
@@ -21,15 +21,6 @@
  */
 package de.zbit.math;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-import de.zbit.data.EnrichmentObject;
-import de.zbit.data.Signal;
-import de.zbit.data.Signal.SignalType;
-import de.zbit.util.objectwrapper.ValuePair;
-
 /**
  * Implementation of the Bonferroni-Holm FDR correction method. Also known as
  * "Bonferroni step-down".
@@ -38,7 +29,7 @@ import de.zbit.util.objectwrapper.ValuePair;
  * @author Clemens Wrzodek
  * @version $Rev$
  */
-public class BonferroniHolm implements FDRCorrection {
+public class BonferroniHolm extends AbstractFDRCorrection {
 
 
   /**
@@ -64,79 +55,24 @@ public class BonferroniHolm implements FDRCorrection {
   }
 
   /**
-   * Adjust pValues according to Bonferroni-Holm
-   * @see for example <a href="http://www.silicongenetics.com/Support/GeneSpring/GSnotes/analysis_guides/mtc.pdf">here</a>
-   * @param pValues a {@link ValuePair} of any identifier and the pValue. The identifier
-   * is required, because the list is sorted and pValues are overwritten with qValues.
+   * Apply the Bonferroni-Holm step-down correction.
+   * @see de.zbit.math.AbstractFDRCorrection#getQvalues(double[], int[], int, double[])
    */
-  public <ID extends Comparable<? super ID>> void pVal_adjust(
-    List<ValuePair<ID, Double>> pValues) {
-    if (pValues.size()<1) return;
-    
-    // Sort ascending
-    Collections.sort(pValues, pValues.iterator().next().getComparator_OnlyCompareB());
-    int m = sourceListSize==0?pValues.size():Math.max(sourceListSize, pValues.size());
+  @Override
+  protected void getQvalues(double[] pValues, int[] order, int m, double[] qValues) {
+    int n = Math.max(sourceListSize, m);
     
-    // Apply (pVal*N/Rank) BH correction
-    double lastQ=Double.NaN;
-    for (int i = 0; i <pValues.size(); i++) {
-      ValuePair<ID, Double> vp = pValues.get(i);
-      double q = vp.getB()*(m-i);
-      
-      if (Double.isNaN(lastQ)) {
-        lastQ = q;
-      } 
+    double lastQ=0;
+    for (int i = 0; i<m; i++) {
+      double q = pValues[order[i]]*(n-i);
       
       // (1) Preserve monotonicity and (2) do never set a value greater than one 
-      vp.setB(Math.min(Math.max(q, lastQ), 1));
-      lastQ = vp.getB().doubleValue();
+      lastQ = Math.min(Math.max(q, lastQ), 1);
+      qValues[order[i]] = lastQ;
     }
-  }
-
-  /* (non-Javadoc)
-   * @see de.zbit.math.Correction#getQvalues(java.util.List)
-   */
-  public List<Double> getQvalues(List<Number> values) {
-    // Create a list with identifiers and double values
-    List<ValuePair<Integer, Double>> pValues = new ArrayList<ValuePair<Integer, Double>>();
-    for (int i=0; i<values.size(); i++) {
-      pValues.add(new ValuePair<Integer, Double>( Integer.valueOf(i), new Double(values.get(i).doubleValue()) ));
+    for (int i=m; i<order.length; i++) {
+      qValues[order[i]] = Double.NaN;
     }
-    
-    // Adjust pValues
-    pVal_adjust(pValues);
-    
-    // Re-order to preserve original ordering
-    Collections.sort(pValues, pValues.iterator().next().getComparator_OnlyCompareA());
-    
-    // Return qValues
-    return ValuePair.getListOfB(pValues);
   }
   
-  /* (non-Javadoc)
-   * @see de.zbit.math.Correction#setQvalue(java.util.List)
-   */
-  public <EnrichIDType> void setQvalue(List<EnrichmentObject<EnrichIDType>> enrichments) {
-    if (enrichments.size()<1) return;
-    
-    // Sort ascending
-    Collections.sort(enrichments, Signal.getComparator(EnrichmentObject.signalNameForPvalues, SignalType.pValue));
-    int m = sourceListSize==0?enrichments.size():Math.max(sourceListSize, enrichments.size());
-    
-    // Apply (pVal*N/Rank) BH correction
-    double lastQ=Double.NaN;
-    for (int i = 0; i <enrichments.size(); i++) {
-      EnrichmentObject<?> vp = enrichments.get(i);
-      double q = vp.getPValue().doubleValue()*(m-i);
-      
-      if (Double.isNaN(lastQ)) {
-        lastQ = q;
-      } 
-      
-      // (1) Preserve monotonicity and (2) do never set a value greater than one 
-      vp.setQValue(Math.min(Math.max(q, lastQ), 1));
-      lastQ = vp.getQValue().doubleValue();
-    }
-  }  
-  
 }
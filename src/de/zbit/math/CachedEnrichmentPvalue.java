@@ -0,0 +1,85 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.math;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe table of pValues that wraps another {@link EnrichmentPvalue}
+ * calculator. Each pValue is only calculated once, which makes it
+ * possible to share one calculator between many enrichments with
+ * the same genome and gene list sizes.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class CachedEnrichmentPvalue implements EnrichmentPvalue {
+
+  /**
+   * The actual calculator (not thread-safe).
+   */
+  private final EnrichmentPvalue calculator;
+
+  /**
+   * All calculated pValues (key is t&lt;&lt;32 | r).
+   */
+  private final Map<Long, Double> table = new ConcurrentHashMap<Long, Double>();
+
+  /**
+   * @param calculator
+   */
+  public CachedEnrichmentPvalue(EnrichmentPvalue calculator) {
+    super();
+    this.calculator = calculator;
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.math.EnrichmentPvalue#getGenomeSize()
+   */
+  public int getGenomeSize() {
+    return calculator.getGenomeSize();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.math.EnrichmentPvalue#getGeneListSize()
+   */
+  public int getGeneListSize() {
+    return calculator.getGeneListSize();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.math.EnrichmentPvalue#getPvalue(int, int)
+   */
+  public double getPvalue(int t, int r) {
+    Long key = (((long) t)<<32) | (r & 0xFFFFFFFFL);
+    Double p = table.get(key);
+    if (p==null) {
+      synchronized (calculator) {
+        p = calculator.getPvalue(t, r);
+      }
+      table.put(key, p);
+    }
+    return p;
+  }
+
+}
@@ -42,6 +42,7 @@ import de.zbit.util.objectwrapper.ValueTriplet;
  * @version $Rev$
  */
 public class CubicSplineInterpolation extends TimeSeriesModel {
+	private static final long serialVersionUID = 1L;
 	
 	// Following arrays hold the information for every third order polynomial
 	// The third order polynomial q_i between points [x_i, y_i] and [x_(i+1), y_(i+1)] can be written as:
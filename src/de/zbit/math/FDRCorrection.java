@@ -53,6 +53,15 @@ public interface FDRCorrection {
    */
   public List<Double> getQvalues(List<Number> values);
   
+  /**
+   * Return an array with statistical corrected qValues for the given pValues
+   * (same indices as in the input array). This is the fastest method
+   * and should be preferred for large numbers of tests.
+   * @param pValues
+   * @return qValues
+   */
+  public double[] getQvalues(double[] pValues);
+  
   /**
    * Adjust pValues according to the current statistical FDR correction method
    * and set the directly via {@link EnrichmentObject#setQValue(double)}
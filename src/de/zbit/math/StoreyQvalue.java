@@ -0,0 +1,94 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.math;
+
+/**
+ * Implementation of the q-value method by Storey and Tibshirani.
+ * The qValues are the {@link BenjaminiHochberg} values, multiplied
+ * by an estimate of the proportion of true null hypotheses (pi0).
+ * <p>pi0 is estimated for a single, fixed lambda as
+ * #{p &gt; lambda} / ((1-lambda) * m).
+ * @see <a href="http://www.pnas.org/content/100/16/9440">Storey and Tibshirani (2003)</a>
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class StoreyQvalue extends AbstractFDRCorrection {
+
+  /**
+   * Tuning parameter for the estimation of pi0.
+   */
+  private double lambda;
+
+  public StoreyQvalue() {
+    this(0.5);
+  }
+
+  /**
+   * @param lambda tuning parameter for the estimation of pi0
+   * (0 &lt;= lambda &lt; 1). A value of 0 results in the
+   * {@link BenjaminiHochberg} correction.
+   */
+  public StoreyQvalue(double lambda) {
+    super();
+    if (lambda<0 || lambda>=1) {
+      throw new IllegalArgumentException("Lambda must be in [0, 1).");
+    }
+    this.lambda = lambda;
+  }
+
+  /**
+   * @param pValues
+   * @return the estimated proportion of true null hypotheses. If no
+   * p-value is above lambda, the estimate is unusable and 1 is returned
+   * (i.e., {@link BenjaminiHochberg}).
+   */
+  public double getPi0(double[] pValues) {
+    return getPi0(pValues, countNonNaN(pValues));
+  }
+
+  /**
+   * @param pValues
+   * @param m number of non-NaN pValues
+   * @return the estimated proportion of true null hypotheses.
+   */
+  private double getPi0(double[] pValues, int m) {
+    if (m<1) return 1;
+    int above=0;
+    for (double p: pValues) {
+      if (p>lambda) above++;
+    }
+    if (above==0) {
+      // pi0=0 would make every q-value 0. Fall back to Benjamini-Hochberg.
+      return 1;
+    }
+    return Math.min((double)above / ((1-lambda)*m), 1);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.math.AbstractFDRCorrection#getQvalues(double[], int[], int, double[])
+   */
+  @Override
+  protected void getQvalues(double[] pValues, int[] order, int m, double[] qValues) {
+    BenjaminiHochberg.adjust(pValues, order, m, getPi0(pValues, m), qValues);
+  }
+
+}
@@ -71,6 +71,7 @@ import de.zbit.util.progressbar.AbstractProgressBar;
 // grep -H -R -l "^import y." ./
 
 public class TimeFit extends TimeSeriesModel {
+	private static final long serialVersionUID = 1L;
 	/**
 	 * Order of the basis polynomials (i.e. for cubic polynomial order = 4)
 	 */
@@ -217,17 +218,17 @@ public class TimeFit extends TimeSeriesModel {
 	/**
 	 * Contains number of models chosen by the user
 	 */
-	private JFormattedTextField numModelTextField;
+	private transient JFormattedTextField numModelTextField;
 
 	/**
 	 * Contains maximal iteration number per model chosen by the user
 	 */
-	private JFormattedTextField maxIterTextField;
+	private transient JFormattedTextField maxIterTextField;
 
 	/**
 	 * Contains number of classes chosen by the user
 	 */
-	private JFormattedTextField numClassesTextField;
+	private transient JFormattedTextField numClassesTextField;
 	
 	/**
 	 * Constructor does nothing. So that an object of this class can be instanced by
@@ -47,6 +47,7 @@ import de.zbit.util.objectwrapper.ValueTriplet;
  */
 
 public class TimeFitModel extends TimeSeriesModel {
+	private static final long serialVersionUID = 1L;
 
 	//RealMatrix s;
 	ArrayList<Point2D> controlPoints;
@@ -21,6 +21,7 @@
  */
 package de.zbit.math;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
 
@@ -38,7 +39,8 @@ import de.zbit.util.objectwrapper.ValueTriplet;
  * @author Felix Bartusch
  * @version $Rev$
  */
-public abstract class TimeSeriesModel {
+public abstract class TimeSeriesModel implements Serializable {
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * Name of the modeled gene.
@@ -23,25 +23,169 @@ package de.zbit.math;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.math3.special.Beta;
+import org.apache.commons.math3.special.Erf;
+import org.apache.commons.math3.special.Gamma;
+
+import de.zbit.data.NameAndSignals;
+import de.zbit.data.Signal;
+import de.zbit.data.Signal.SignalType;
+import de.zbit.utils.ParallelUtils;
 
 
 /**
- * Implementation of Welch's t test.
- * 
- * Currently only calculates the "t". Does not calculate the
- * degrees of freedom and does not perform any lookup in a
- * table, to get a p-value.
- * 
- * <P>XXX:THIS CLASS IS CURRENTLY UNUSED!
- * 
+ * Implementation of Welch's t test and the moderated t test
+ * (empirical Bayes, as introduced by Smyth for limma).
+ *
+ * <p>Tests are vectorised, i.e., one test is performed for each
+ * row of a (probes x samples) matrix. All rows are processed in
+ * parallel and results are returned as primitive arrays (see
+ * {@link Result}), that can directly be corrected with, e.g.,
+ * {@link BenjaminiHochberg#getQvalues(double[])}.
+ * <p>NaN values are ignored.
+ *
  * @see http://www.socialresearchmethods.net/kb/stat_t.php
  * @see http://en.wikipedia.org/wiki/Welch%27s_t_test
+ * @see <a href="http://www.ncbi.nlm.nih.gov/pubmed/16646809">Smyth (2004)</a>
  * @author Clemens Wrzodek
  * @version $Rev$
  */
 public class Ttest {
-  
-  
+
+  /**
+   * Results of a vectorised t test. All arrays contain one
+   * value per test (row of the input matrix).
+   */
+  public static class Result {
+    /**
+     * Difference of means (group1 - group2). This is the
+     * fold change for logarithmized data.
+     */
+    private final double[] difference;
+    private final double[] t;
+    private final double[] df;
+    private final double[] pValue;
+
+    Result(int size) {
+      super();
+      difference = new double[size];
+      t = new double[size];
+      df = new double[size];
+      pValue = new double[size];
+    }
+
+    /**
+     * @return difference of means (group1 - group2). This is the
+     * fold change for logarithmized data.
+     */
+    public double[] getDifference() {
+      return difference;
+    }
+
+    /**
+     * @return t statistics
+     */
+    public double[] getT() {
+      return t;
+    }
+
+    /**
+     * @return degrees of freedom
+     */
+    public double[] getDegreesOfFreedom() {
+      return df;
+    }
+
+    /**
+     * @return two-sided pValues
+     */
+    public double[] getPValues() {
+      return pValue;
+    }
+
+    /**
+     * @param correction
+     * @return pValues, corrected with the given method.
+     */
+    public double[] getQValues(FDRCorrection correction) {
+      return correction.getQvalues(pValue);
+    }
+
+    /**
+     * @return number of tests
+     */
+    public int size() {
+      return pValue.length;
+    }
+
+    /**
+     * Adds the fold changes (difference of means), pValues and
+     * qValues as {@link Signal}s to the given objects.
+     * @param ns one object per test (in the same order as the input rows).
+     * @param observationName name for all signals
+     * @param correction method to calculate qValues or <code>null</code>
+     * to skip qValues.
+     */
+    public void addSignals(List<? extends NameAndSignals> ns, String observationName, FDRCorrection correction) {
+      if (ns.size()!=size()) {
+        throw new IllegalArgumentException("Number of objects must match the number of tests.");
+      }
+      double[] qValue = correction!=null?getQValues(correction):null;
+      int i=0;
+      for (NameAndSignals n: ns) {
+        n.addSignal(difference[i], observationName, SignalType.FoldChange);
+        n.addSignal(pValue[i], observationName, SignalType.pValue);
+        if (qValue!=null) {
+          n.addSignal(qValue[i], observationName, SignalType.qValue);
+        }
+        i++;
+      }
+    }
+  }
+
+  /**
+   * Number of (non-NaN) values, mean and variance of one group,
+   * for each row.
+   */
+  private static class GroupStatistics {
+    final int[] n;
+    final double[] mean;
+    final double[] var;
+
+    GroupStatistics(int size) {
+      n = new int[size];
+      mean = new double[size];
+      var = new double[size];
+    }
+
+    /**
+     * Sets the statistics of one row (Welford's algorithm).
+     * @param row
+     * @param values
+     * @param columns indices in <code>values</code> or
+     * <code>null</code> to use all values.
+     */
+    void set(int row, double[] values, int[] columns) {
+      int count=0;
+      double m=0, m2=0;
+      int size = columns!=null?columns.length:(values!=null?values.length:0);
+      for (int i=0; i<size; i++) {
+        double v = values[columns!=null?columns[i]:i];
+        if (Double.isNaN(v)) continue;
+        count++;
+        double delta = v-m;
+        m += delta/count;
+        m2 += delta*(v-m);
+      }
+      n[row] = count;
+      mean[row] = count>0?m:Double.NaN;
+      var[row] = count>1?m2/(count-1):Double.NaN;
+    }
+  }
+
+
   /**
    * Calculates the median of the given values.
    * @param values sorted array!
@@ -49,7 +193,7 @@ public class Ttest {
    */
   public static double medianOfSortedArray(double[] values) {
     if (values==null || values.length<1) return Double.NaN;
-    
+
     if (values.length%2!=0) {
       return values[values.length/2];
     } else {
@@ -57,7 +201,7 @@ public class Ttest {
       return (values[upper-1]+(values[upper]-values[upper-1])/2);
     }
   }
-  
+
   /**
    * Calculates the median of the given values.
    * @param values sorted list!
@@ -65,7 +209,7 @@ public class Ttest {
    */
   public static <T extends Number> double medianOfSortedList(List<T> values) {
     if (values==null || values.size()<1) return Double.NaN;
-    
+
     if (values.size()%2!=0) {
       return values.get(values.size()/2).doubleValue();
     } else {
@@ -75,7 +219,7 @@ public class Ttest {
       return (umo+(u-umo)/2);
     }
   }
-  
+
   /**
    * Calculates the median of the given values.
    * @param values sorted array!
@@ -83,7 +227,7 @@ public class Ttest {
    */
   public static <T extends Number> double medianOfSortedArray(T[] values) {
     if (values==null || values.length<1) return Double.NaN;
-    
+
     if (values.length%2!=0) {
       return values[values.length/2].doubleValue();
     } else {
@@ -93,38 +237,293 @@ public class Ttest {
       return (umo+(u-umo)/2);
     }
   }
-  
-  
+
+
+  /**
+   * @param arr1
+   * @param arr2
+   * @return Welch's t statistic for the two given samples.
+   */
   static double getT(double[] arr1, double[] arr2) {
-    Arrays.sort(arr1);
-    Arrays.sort(arr2);
-    
     // Calculate the nominator
     double mean1 = MathUtils.mean(arr1);
     double mean2 = MathUtils.mean(arr2);
-    
+
     double nominator = mean1-mean2;
-    
-    
+
+
     // Calculate the denominator
     double var1= MathUtils.variance(arr1, mean1);
     double var2= MathUtils.variance(arr2, mean2);
-    
+
     double denominator = Math.sqrt(var1/(double)arr1.length + var2/(double)arr2.length);
-    
+
     // return t-value
     return (nominator/ denominator);
   }
-  
-  
+
+  /**
+   * Two-sided pValue of a t statistic.
+   * @param t
+   * @param df degrees of freedom (may be {@link Double#POSITIVE_INFINITY}).
+   * @return pValue
+   */
+  public static double getPValue(double t, double df) {
+    if (Double.isNaN(t) || Double.isNaN(df) || df<=0) return Double.NaN;
+    if (Double.isInfinite(t)) return 0;
+    if (Double.isInfinite(df)) {
+      // Normal distribution
+      return Erf.erfc(Math.abs(t)/Math.sqrt(2));
+    }
+    return Beta.regularizedBeta(df/(df+t*t), df/2, 0.5);
+  }
+
+  /**
+   * Performs one Welch's t test for each row of the given matrix.
+   * @param matrix (tests x samples) matrix
+   * @param group1 column indices of the first group (e.g., treatments)
+   * @param group2 column indices of the second group (e.g., controls)
+   * @return results
+   * @throws ExecutionException
+   */
+  public static Result welch(double[][] matrix, int[] group1, int[] group2) throws ExecutionException {
+    return welch(summarize(matrix, group1), summarize(matrix, group2));
+  }
+
+  /**
+   * Performs one Welch's t test for each row of the given arrays.
+   * The number of values may differ between rows.
+   * @param group1 values of the first group (e.g., treatments), one row per test.
+   * @param group2 values of the second group (e.g., controls), one row per test.
+   * @return results
+   * @throws ExecutionException
+   */
+  public static Result welch(double[][] group1, double[][] group2) throws ExecutionException {
+    return welch(summarize(group1, null), summarize(group2, null));
+  }
+
+  /**
+   * Performs one moderated t test for each row of the given matrix.
+   * @param matrix (tests x samples) matrix
+   * @param group1 column indices of the first group (e.g., treatments)
+   * @param group2 column indices of the second group (e.g., controls)
+   * @return results
+   * @throws ExecutionException
+   */
+  public static Result moderated(double[][] matrix, int[] group1, int[] group2) throws ExecutionException {
+    return moderated(summarize(matrix, group1), summarize(matrix, group2));
+  }
+
+  /**
+   * Performs one moderated t test for each row of the given arrays.
+   * The number of values may differ between rows.
+   * @param group1 values of the first group (e.g., treatments), one row per test.
+   * @param group2 values of the second group (e.g., controls), one row per test.
+   * @return results
+   * @throws ExecutionException
+   */
+  public static Result moderated(double[][] group1, double[][] group2) throws ExecutionException {
+    return moderated(summarize(group1, null), summarize(group2, null));
+  }
+
+  /**
+   * @param rows
+   * @param columns columns to use or <code>null</code> to use all.
+   * @return statistics for each row.
+   * @throws ExecutionException
+   */
+  private static GroupStatistics summarize(final double[][] rows, final int[] columns) throws ExecutionException {
+    final GroupStatistics s = new GroupStatistics(rows.length);
+    ParallelUtils.parallelFor(0, rows.length, new ParallelUtils.RangeTask() {
+      public void run(int from, int to) {
+        for (int i=from; i<to; i++) {
+          s.set(i, rows[i], columns);
+        }
+      }
+    });
+    return s;
+  }
+
+  /**
+   * @param g1
+   * @param g2
+   * @return Welch's t test results for all rows.
+   * @throws ExecutionException
+   */
+  private static Result welch(final GroupStatistics g1, final GroupStatistics g2) throws ExecutionException {
+    final Result r = new Result(g1.n.length);
+    ParallelUtils.parallelFor(0, r.size(), new ParallelUtils.RangeTask() {
+      public void run(int from, int to) {
+        for (int i=from; i<to; i++) {
+          double se1 = g1.var[i]/g1.n[i];
+          double se2 = g2.var[i]/g2.n[i];
+          double se = se1+se2;
+          r.difference[i] = g1.mean[i]-g2.mean[i];
+          r.t[i] = r.difference[i]/Math.sqrt(se);
+          // Welch-Satterthwaite equation
+          r.df[i] = (se*se) / (se1*se1/(g1.n[i]-1) + se2*se2/(g2.n[i]-1));
+          r.pValue[i] = getPValue(r.t[i], r.df[i]);
+        }
+      }
+    });
+    return r;
+  }
+
+  /**
+   * Squeezes the pooled variance of each row towards a common
+   * prior, estimated from all rows.
+   * @param g1
+   * @param g2
+   * @return moderated t test results for all rows.
+   * @throws ExecutionException
+   */
+  private static Result moderated(final GroupStatistics g1, final GroupStatistics g2) throws ExecutionException {
+    final int size = g1.n.length;
+
+    // Pooled variances and residual degrees of freedom
+    final double[] s2 = new double[size];
+    final int[] d = new int[size];
+    ParallelUtils.parallelFor(0, size, new ParallelUtils.RangeTask() {
+      public void run(int from, int to) {
+        for (int i=from; i<to; i++) {
+          d[i] = g1.n[i]+g2.n[i]-2;
+          if (d[i]<1 || g1.n[i]<1 || g2.n[i]<1) {
+            s2[i] = Double.NaN;
+          } else {
+            double ss = (g1.n[i]>1?g1.var[i]*(g1.n[i]-1):0) + (g2.n[i]>1?g2.var[i]*(g2.n[i]-1):0);
+            s2[i] = ss/d[i];
+          }
+        }
+      }
+    });
+
+    // Estimate prior
+    double[] prior = fitFDist(s2, d);
+    final double d0 = prior[0];
+    final double s02 = prior[1];
+
+    final Result r = new Result(size);
+    ParallelUtils.parallelFor(0, size, new ParallelUtils.RangeTask() {
+      public void run(int from, int to) {
+        for (int i=from; i<to; i++) {
+          r.difference[i] = g1.mean[i]-g2.mean[i];
+          double post;
+          if (Double.isNaN(s2[i])) {
+            r.t[i] = Double.NaN;
+            r.df[i] = Double.NaN;
+          } else {
+            if (Double.isInfinite(d0)) {
+              post = s02;
+            } else {
+              post = (d0*s02 + d[i]*s2[i]) / (d0+d[i]);
+            }
+            r.t[i] = r.difference[i] / Math.sqrt(post * (1d/g1.n[i] + 1d/g2.n[i]));
+            r.df[i] = d0+d[i];
+          }
+          r.pValue[i] = getPValue(r.t[i], r.df[i]);
+        }
+      }
+    });
+    return r;
+  }
+
+  /**
+   * Moment estimation of the parameters of a scaled F-distribution,
+   * given the variances and degrees of freedom (as in limma).
+   * @param s2 sample variances
+   * @param d degrees of freedom of each variance
+   * @return prior degrees of freedom (might be infinite) and prior variance.
+   */
+  private static double[] fitFDist(double[] s2, int[] d) {
+    // Count valid values and get median
+    int n=0;
+    for (int i=0; i<s2.length; i++) {
+      if (!Double.isNaN(s2[i]) && !Double.isInfinite(s2[i]) && d[i]>0) n++;
+    }
+    if (n<2) return new double[]{0, 0};
+    double[] valid = new double[n];
+    n=0;
+    for (int i=0; i<s2.length; i++) {
+      if (!Double.isNaN(s2[i]) && !Double.isInfinite(s2[i]) && d[i]>0) valid[n++] = s2[i];
+    }
+    Arrays.sort(valid);
+    double median = medianOfSortedArray(valid);
+    if (median==0) median = 1;
+    double offset = 1e-5*median;
+
+    // Mean and variance of log-variances
+    double[] e = new double[n];
+    double emean=0, trigammaMean=0;
+    n=0;
+    for (int i=0; i<s2.length; i++) {
+      if (Double.isNaN(s2[i]) || Double.isInfinite(s2[i]) || d[i]<=0) continue;
+      double half = d[i]/2d;
+      e[n] = Math.log(Math.max(s2[i], offset)) - Gamma.digamma(half) + Math.log(half);
+      emean += e[n];
+      trigammaMean += Gamma.trigamma(half);
+      n++;
+    }
+    emean /= n;
+    trigammaMean /= n;
+    double evar=0;
+    for (int i=0; i<n; i++) {
+      evar += (e[i]-emean)*(e[i]-emean);
+    }
+    evar = evar/(n-1) - trigammaMean;
+
+    if (evar>0) {
+      double d0 = 2*trigammaInverse(evar);
+      return new double[]{d0, Math.exp(emean + Gamma.digamma(d0/2) - Math.log(d0/2))};
+    } else {
+      return new double[]{Double.POSITIVE_INFINITY, Math.exp(emean)};
+    }
+  }
+
+  /**
+   * Solves trigamma(y) = x for y (Newton iteration, as in limma).
+   * @param x
+   * @return y
+   */
+  private static double trigammaInverse(double x) {
+    if (x>1e7) return 1/Math.sqrt(x);
+    if (x<1e-6) return 1/x;
+
+    double y = 0.5 + 1/x;
+    for (int iter=0; iter<50; iter++) {
+      double tri = Gamma.trigamma(y);
+      double dif = tri*(1-tri/x)/tetragamma(y);
+      y += dif;
+      if (-dif/y < 1e-8) break;
+    }
+    return y;
+  }
+
+  /**
+   * Second derivative of the digamma function, using the
+   * recurrence relation and the asymptotic expansion.
+   * @param x (x&gt;0)
+   * @return tetragamma(x)
+   */
+  private static double tetragamma(double x) {
+    double ret=0;
+    while (x<6) {
+      ret -= 2/(x*x*x);
+      x++;
+    }
+    double x2 = 1/(x*x);
+    ret += -x2 - x2/x - x2*x2*(0.5 - x2*(1d/6 - x2*(1d/6 - x2*(0.3 - x2*5d/6))));
+    return ret;
+  }
+
+
   /**
    * @param args
    */
   public static void main(String[] args) {
     double[] arr1 = new double[]{1.350879, 14.473533, 4.155654, 8.080748, 6.311774, 2.267002, 2.367196};
     double[] arr2 = new double[]{10.421462, 5.632722, 7.794428, 2.759809, 10.159160, 7.478680};
-    
+
     System.out.println(getT(arr1, arr2));
   }
-  
+
 }
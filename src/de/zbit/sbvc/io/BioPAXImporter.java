@@ -132,6 +132,7 @@ public class BioPAXImporter extends NotifyingWorker<Object> {
       // 5. Ensure that we have entrez ids (try to map others, augments the KGML ids)
       if (spec!=null) {
         boolean containsEntrez = BioPAXpathway.checkForEntrezGeneIDs(keggPathway, spec, getProgressBar());
+        containsEntrez |= mapGeneSymbolsToEntrez(keggPathway, spec);
         if (!containsEntrez) {
           showWarningThatNoEntrezIDsAreInThePathway();
         }
@@ -187,6 +188,19 @@ public class BioPAXImporter extends NotifyingWorker<Object> {
     return;
   }
 
+  /**
+   * Overwrite or implement this method to add entrez gene
+   * identifiers to all entries without such an identifier, based on
+   * their (gene symbol) labels.
+   * @param keggPathway
+   * @param spec
+   * @return <code>TRUE</code> if at least one entrez gene identifier
+   * has been added.
+   */
+  protected boolean mapGeneSymbolsToEntrez(Pathway keggPathway, Species spec) {
+    return false;
+  }
+
   /**
    * Overwrite or implement this method to ask the
    * user for a species if none could be infered from
@@ -0,0 +1,231 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an animated PNG (APNG) with an 8-bit palette. All frames
+ * after the first one only contain the changed region and are
+ * blended over the previous frame.
+ *
+ * <p>Since the number of frames is unknown while streaming, the
+ * animation control chunk is written with a placeholder and
+ * updated when the film is closed.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class APNGFilmEncoder extends FilmEncoder {
+
+  private final static byte[] PNG_SIGNATURE = new byte[]{(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final OutputStream out;
+
+  /**
+   * Position of the data of the acTL chunk in the file.
+   */
+  private long animationControlPosition=-1;
+
+  /**
+   * Sequence number for fcTL and fdAT chunks.
+   */
+  private int sequenceNumber=0;
+
+  /**
+   * Number of bytes written to {@link #out}.
+   */
+  private long bytesWritten=0;
+
+  /**
+   * @param output
+   * @param timeBetweenFramesMS
+   * @param loopContinuously
+   * @throws IOException
+   */
+  public APNGFilmEncoder(File output, int timeBetweenFramesMS, boolean loopContinuously) throws IOException {
+    super(output, timeBetweenFramesMS, loopContinuously);
+    file = new RandomAccessFile(output, "rw");
+    file.setLength(0);
+    channel = file.getChannel();
+    out = new BufferedOutputStream(Channels.newOutputStream(channel), 1<<16);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#writeHeader()
+   */
+  @Override
+  protected void writeHeader() throws IOException {
+    write(PNG_SIGNATURE);
+
+    ByteBuffer ihdr = ByteBuffer.allocate(13);
+    ihdr.putInt(width).putInt(height);
+    ihdr.put((byte) 8).put((byte) 3); // 8 bit, indexed color
+    ihdr.put((byte) 0).put((byte) 0).put((byte) 0);
+    writeChunk("IHDR", ihdr.array());
+
+    // Frame count is updated on close
+    animationControlPosition = bytesWritten + 8;
+    writeChunk("acTL", createAnimationControl(0));
+
+    writeChunk("PLTE", palette.toRGBTriplets(palette.getSize()));
+    writeChunk("tRNS", new byte[]{0}); // Only the first entry is transparent
+  }
+
+  /**
+   * @param numberOfFrames
+   * @return data of the acTL chunk.
+   */
+  private byte[] createAnimationControl(int numberOfFrames) {
+    ByteBuffer actl = ByteBuffer.allocate(8);
+    actl.putInt(numberOfFrames);
+    actl.putInt(loopContinuously ? 0 : 1);
+    return actl.array();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#encodeFrame(int, byte[], java.awt.Rectangle)
+   */
+  @Override
+  protected byte[] encodeFrame(int frameNumber, byte[] pixels, Rectangle region) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(pixels.length/4+64);
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    DeflaterOutputStream zip = new DeflaterOutputStream(buf, deflater, 1<<15);
+    for (int y=0; y<region.height; y++) {
+      zip.write(0); // filter type none
+      zip.write(pixels, y*region.width, region.width);
+    }
+    zip.close();
+    deflater.end();
+    return buf.toByteArray();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#writeEncodedFrame(de.zbit.utils.FilmEncoder.EncodedFrame)
+   */
+  @Override
+  protected void writeEncodedFrame(EncodedFrame frame) throws IOException {
+    Rectangle r = frame.region;
+    ByteBuffer fctl = ByteBuffer.allocate(26);
+    fctl.putInt(sequenceNumber++);
+    fctl.putInt(r.width).putInt(r.height);
+    fctl.putInt(r.x).putInt(r.y);
+    fctl.putShort((short) timeBetweenFramesMS).putShort((short) 1000);
+    fctl.put((byte) 0); // APNG_DISPOSE_OP_NONE
+    fctl.put((byte) (frame.frameNumber==0 ? 0 : 1)); // first SOURCE, then OVER
+    writeChunk("fcTL", fctl.array());
+
+    if (frame.frameNumber==0) {
+      writeChunk("IDAT", frame.data);
+    } else {
+      ByteBuffer fdat = ByteBuffer.allocate(frame.data.length+4);
+      fdat.putInt(sequenceNumber++);
+      fdat.put(frame.data);
+      writeChunk("fdAT", fdat.array());
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#writeTrailer(int)
+   */
+  @Override
+  protected void writeTrailer(int numberOfFrames) throws IOException {
+    if (palette!=null) {
+      writeChunk("IEND", new byte[0]);
+    }
+    out.flush();
+
+    // Update the number of frames in the acTL chunk
+    if (animationControlPosition>=0) {
+      byte[] actl = createAnimationControl(numberOfFrames);
+      ByteBuffer chunk = ByteBuffer.allocate(12);
+      chunk.put(actl);
+      chunk.putInt((int) crc("acTL", actl));
+      chunk.flip();
+      channel.write(chunk, animationControlPosition);
+    }
+    out.close();
+    file.close();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#closeOutput()
+   */
+  @Override
+  protected void closeOutput() throws IOException {
+    try {
+      out.close();
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Writes a PNG chunk.
+   * @param type
+   * @param data
+   * @throws IOException
+   */
+  private void writeChunk(String type, byte[] data) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putInt(data.length);
+    header.put(type.getBytes("US-ASCII"));
+    write(header.array());
+    write(data);
+    ByteBuffer crc = ByteBuffer.allocate(4);
+    crc.putInt((int) crc(type, data));
+    write(crc.array());
+  }
+
+  /**
+   * @param type
+   * @param data
+   * @return the CRC of a chunk
+   * @throws IOException
+   */
+  private static long crc(String type, byte[] data) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(type.getBytes("US-ASCII"));
+    crc.update(data);
+    return crc.getValue();
+  }
+
+  private void write(byte[] b) throws IOException {
+    out.write(b);
+    bytesWritten += b.length;
+  }
+
+}
@@ -0,0 +1,775 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import de.zbit.mapper.MappingUtils.IdentifierType;
+
+/**
+ * A compact, memory-mapped index to resolve compound identifiers
+ * (HMDB, KEGG, PubChem, LIPID MAPS, ChEBI and compound names or
+ * synonyms) to InChIKeys.
+ *
+ * <p>The index is built once from the merged compound database dumps
+ * that are created by the scripts in the <code>scripts/</code> folder
+ * (<code>CompoundData.txt</code> and <code>CompoundSynonyms.txt</code>,
+ * see <code>merge_synonyms.py</code>) and stored in a binary file.
+ * By default, the dumps are expected and the binary file is written
+ * in the {@link UserDirectory} (see {@link #setSourceFiles(File, File, File)}).
+ * This file contains all InChIKeys (sorted, such that each InChIKey
+ * is identified by an <code>int</code> ordinal) and one sorted
+ * dictionary of normalized identifiers to ordinals per identifier type.
+ * The binary file is memory-mapped and all lookups are binary searches
+ * on the mapped file, i.e. the index does not consume heap space and
+ * can be shared by all readers and pathway visualizations.
+ *
+ * <p>If the dumps are not available, {@link #getInstance()} returns
+ * <code>null</code> and callers should fall back to the common mappers.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class CompoundIndex {
+  public static final transient Logger log = Logger.getLogger(CompoundIndex.class.getName());
+
+  /**
+   * Default merged compound database (see <code>merge_synonyms.py</code>).
+   */
+  public final static String compoundDataFileName = "CompoundData.txt";
+
+  /**
+   * Default merged compound synonyms (see <code>merge_synonyms.py</code>).
+   */
+  public final static String compoundSynonymsFileName = "CompoundSynonyms.txt";
+
+  /**
+   * Default file to store the binary index.
+   */
+  public final static String indexFileName = "compoundIndex.dat";
+
+  /**
+   * Identifies binary index files.
+   */
+  private final static int MAGIC = 0x43504458;
+
+  /**
+   * Version of the binary format.
+   */
+  private final static int VERSION = 1;
+
+  /**
+   * Returned if an identifier is unknown.
+   */
+  private final static int[] NOT_FOUND = new int[0];
+
+  private final static Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Separates multiple values in the merged dumps ("|" or "||").
+   */
+  private final static Pattern VALUE_SEPARATOR = Pattern.compile("\\|+");
+
+  private final static Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private final static Pattern ASCII = Pattern.compile("\\p{ASCII}+");
+
+  /**
+   * All identifier types that are contained in the index and the
+   * corresponding column in the merged dump.
+   */
+  private final static Map<IdentifierType, String> COLUMNS = new EnumMap<IdentifierType, String>(IdentifierType.class);
+  static {
+    COLUMNS.put(IdentifierType.CompoundName, "Name");
+    COLUMNS.put(IdentifierType.HMDB, "HMDB");
+    COLUMNS.put(IdentifierType.LIPIDMAPS, "LMID");
+    COLUMNS.put(IdentifierType.KeggCompound, "Kegg");
+    COLUMNS.put(IdentifierType.CHEBI, "CHEBI");
+    COLUMNS.put(IdentifierType.PC_compound, "PC_compound");
+  }
+
+  /*
+   * Default source files (see {@link #setSourceFiles(File, File, File)}).
+   */
+  private static File compoundData = new File(UserDirectory.getDirectory(), compoundDataFileName);
+  private static File compoundSynonyms = new File(UserDirectory.getDirectory(), compoundSynonymsFileName);
+  private static File indexFile = new File(UserDirectory.getDirectory(), indexFileName);
+
+  /**
+   * Loads the shared instance.
+   */
+  private static FutureTask<CompoundIndex> instance = null;
+
+  /**
+   * A table of strings, stored in the mapped file as number of
+   * strings, (n+1) offsets and the UTF-8 encoded strings.
+   */
+  private static class StringTable {
+    int size;
+    int offsets;
+    int data;
+  }
+
+  /**
+   * A sorted table of normalized identifiers with one ordinal
+   * per identifier.
+   */
+  private static class Dictionary extends StringTable {
+    int ordinals;
+  }
+
+  /**
+   * The memory-mapped index file.
+   */
+  private final MappedByteBuffer buffer;
+
+  /**
+   * All InChIKeys (the position is the ordinal).
+   */
+  private final StringTable inchikeys;
+
+  /**
+   * One dictionary per identifier type.
+   */
+  private final Map<IdentifierType, Dictionary> dictionaries = new EnumMap<IdentifierType, Dictionary>(IdentifierType.class);
+
+  /**
+   * @param file binary index file (see {@link #build(File, File, File)}).
+   * @throws IOException
+   */
+  private CompoundIndex(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if (channel.size()>Integer.MAX_VALUE) {
+        throw new IOException("Compound index is too large: " + file.getName());
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      // The mapping stays valid after closing the channel
+      raf.close();
+    }
+
+    if (buffer.getInt(0)!=MAGIC || buffer.getInt(4)!=VERSION) {
+      throw new IOException("Invalid compound index: " + file.getName());
+    }
+    // 8: sum of source file sizes; 16: last modification of sources
+    int pos = 24;
+    inchikeys = new StringTable();
+    pos = readStringTable(pos, inchikeys);
+    int types = buffer.getInt(pos);
+    pos+=4;
+    for (int i=0; i<types; i++) {
+      int ordinal = buffer.getInt(pos);
+      if (ordinal<0 || ordinal>=IdentifierType.values().length) {
+        throw new IOException("Invalid compound index: " + file.getName());
+      }
+      IdentifierType type = IdentifierType.values()[ordinal];
+      Dictionary d = new Dictionary();
+      pos = readStringTable(pos+4, d);
+      d.ordinals = pos;
+      pos += 4*d.size;
+      dictionaries.put(type, d);
+    }
+  }
+
+  /**
+   * @param pos
+   * @param table
+   * @return position after the table.
+   */
+  private int readStringTable(int pos, StringTable table) {
+    table.size = buffer.getInt(pos);
+    table.offsets = pos+4;
+    table.data = table.offsets + 4*(table.size+1);
+    return table.data + buffer.getInt(table.offsets + 4*table.size);
+  }
+
+  /**
+   * Changes the files that are used by {@link #getInstance()}. Must be
+   * called before the first call to {@link #getInstance()}.
+   * @param compoundData merged compound database
+   * @param compoundSynonyms merged synonyms (might be <code>null</code>)
+   * @param indexFile binary index file
+   */
+  public synchronized static void setSourceFiles(File compoundData, File compoundSynonyms, File indexFile) {
+    CompoundIndex.compoundData = compoundData;
+    CompoundIndex.compoundSynonyms = compoundSynonyms;
+    CompoundIndex.indexFile = indexFile;
+    instance = null;
+  }
+
+  /**
+   * Returns the shared index. The binary index is (re-)built if it
+   * does not exist or is older than the merged dumps. If the index
+   * is currently loaded by another thread, this method waits for it.
+   * @return the shared index or <code>null</code> if neither the
+   * merged compound dumps nor a binary index are available.
+   */
+  public static CompoundIndex getInstance() {
+    FutureTask<CompoundIndex> f;
+    synchronized (CompoundIndex.class) {
+      if (instance==null) {
+        final File data = compoundData;
+        final File synonyms = compoundSynonyms;
+        final File index = indexFile;
+        instance = new FutureTask<CompoundIndex>(new Callable<CompoundIndex>() {
+          public CompoundIndex call() throws Exception {
+            return load(data, synonyms, index);
+          }
+        });
+      }
+      f = instance;
+    }
+
+    // Does nothing if the task is already running or done
+    f.run();
+    try {
+      return f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.log(Level.WARNING, "Could not load compound index.", e.getCause());
+    }
+    return null;
+  }
+
+  /**
+   * @param data
+   * @param synonyms
+   * @param index
+   * @return the index or <code>null</code> if it is not available.
+   * @throws IOException
+   */
+  private static CompoundIndex load(File data, File synonyms, File index) throws IOException {
+    if (data.canRead() && (!index.canRead() || isOutdated(index, data, synonyms))) {
+      build(data, synonyms, index);
+    }
+    if (!index.canRead()) {
+      log.fine("No compound database dump available for the compound index.");
+      return null;
+    }
+    return new CompoundIndex(index);
+  }
+
+  /**
+   * @param index
+   * @param sources
+   * @return true if the <code>index</code> has been built from other
+   * versions of the <code>sources</code>.
+   * @throws IOException
+   */
+  private static boolean isOutdated(File index, File... sources) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+    try {
+      if (in.readInt()!=MAGIC || in.readInt()!=VERSION) return true;
+      return in.readLong()!=getTotalLength(sources) || in.readLong()!=getLastModified(sources);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static long getTotalLength(File... files) {
+    long l=0;
+    for (File f: files) {
+      if (f!=null) l+=f.length();
+    }
+    return l;
+  }
+
+  private static long getLastModified(File... files) {
+    long l=0;
+    for (File f: files) {
+      if (f!=null) l=Math.max(l, f.lastModified());
+    }
+    return l;
+  }
+
+  /**
+   * Normalizes an identifier, such that different spellings of the
+   * same identifier result in the same key (e.g., "HMDB00001" and
+   * "HMDB0000001", "CHEBI:15377" and "15377" or different cases
+   * of compound names).
+   * @param type
+   * @param id
+   * @return the normalized identifier or <code>null</code> if
+   * <code>id</code> is empty.
+   */
+  public static String normalize(IdentifierType type, String id) {
+    if (id==null) return null;
+    id = id.trim();
+    if (id.length()<1) return null;
+
+    switch (type) {
+      case HMDB:
+      case CHEBI:
+      case PC_compound:
+        // Only the number is relevant
+        int start=0;
+        while (start<id.length() && !Character.isDigit(id.charAt(start))) start++;
+        while (start<id.length()-1 && id.charAt(start)=='0') start++;
+        id = id.substring(start);
+        break;
+      case KeggCompound:
+        id = id.toUpperCase();
+        if (id.startsWith("CPD:")) id = id.substring(4);
+        break;
+      case InChIKey:
+        id = id.toUpperCase();
+        if (id.startsWith("INCHIKEY=")) id = id.substring(9);
+        break;
+      case CompoundName:
+        id = WHITESPACE.matcher(id.toLowerCase()).replaceAll(" ");
+        break;
+      default:
+        id = id.toUpperCase();
+    }
+    return id.length()>0?id:null;
+  }
+
+  /**
+   * @param type
+   * @return true if identifiers of the given type can be resolved
+   * with this index.
+   */
+  public boolean supports(IdentifierType type) {
+    return type!=null && (type.equals(IdentifierType.InChIKey) || dictionaries.containsKey(type));
+  }
+
+  /**
+   * @return number of InChIKeys in this index.
+   */
+  public int size() {
+    return inchikeys.size;
+  }
+
+  /**
+   * @param ordinal
+   * @return the InChIKey with the given ordinal.
+   */
+  public String getInChIKey(int ordinal) {
+    return getString(inchikeys, ordinal);
+  }
+
+  /**
+   * Resolves an identifier to the ordinals of all matching InChIKeys.
+   * @param type
+   * @param id
+   * @return ordinals of all InChIKeys for <code>id</code> (sorted
+   * ascending) or an empty array if <code>id</code> is unknown.
+   * @see #getInChIKey(int)
+   */
+  public int[] lookup(IdentifierType type, String id) {
+    String key = normalize(type, id);
+    if (key==null) return NOT_FOUND;
+    byte[] bytes = key.getBytes(UTF8);
+
+    if (type.equals(IdentifierType.InChIKey)) {
+      int i = lowerBound(inchikeys, bytes);
+      if (i<inchikeys.size && compare(inchikeys, i, bytes)==0) {
+        return new int[]{i};
+      }
+      return NOT_FOUND;
+    }
+
+    Dictionary d = dictionaries.get(type);
+    if (d==null) return NOT_FOUND;
+    int from = lowerBound(d, bytes);
+    int to = from;
+    while (to<d.size && compare(d, to, bytes)==0) to++;
+    if (from==to) return NOT_FOUND;
+
+    int[] ret = new int[to-from];
+    for (int i=from; i<to; i++) {
+      ret[i-from] = buffer.getInt(d.ordinals + 4*i);
+    }
+    return ret;
+  }
+
+  /**
+   * Resolves many identifiers at once (in parallel).
+   * @param type
+   * @param ids
+   * @return for every identifier in <code>ids</code> the ordinals of
+   * all matching InChIKeys (see {@link #lookup(IdentifierType, String)}).
+   */
+  public int[][] lookup(final IdentifierType type, final String[] ids) {
+    final int[][] ret = new int[ids.length][];
+    ParallelUtils.RangeTask task = new ParallelUtils.RangeTask() {
+      public void run(int from, int to) {
+        for (int i=from; i<to; i++) {
+          ret[i] = lookup(type, ids[i]);
+        }
+      }
+    };
+    try {
+      ParallelUtils.parallelFor(0, ids.length, task);
+    } catch (ExecutionException e) {
+      log.log(Level.FINE, "Parallel lookup failed, resolving sequentially.", e);
+      try {
+        task.run(0, ids.length);
+      } catch (Exception e1) {
+        // Not thrown by the task
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @param type
+   * @param id
+   * @return all InChIKeys for the given identifier or <code>null</code>
+   * if the identifier is unknown (like the common compound mappers).
+   */
+  public Set<String> getInChIKeys(IdentifierType type, String id) {
+    return toInChIKeys(lookup(type, id));
+  }
+
+  /**
+   * @param ordinals
+   * @return the InChIKeys or <code>null</code> if <code>ordinals</code>
+   * is empty.
+   */
+  public Set<String> toInChIKeys(int[] ordinals) {
+    if (ordinals.length<1) return null;
+    Set<String> ret = new LinkedHashSet<String>(ordinals.length*2);
+    for (int o: ordinals) {
+      ret.add(getInChIKey(o));
+    }
+    return ret;
+  }
+
+  /**
+   * @param table
+   * @param i
+   * @return the <code>i</code>th string of the table.
+   */
+  private String getString(StringTable table, int i) {
+    int start = buffer.getInt(table.offsets + 4*i);
+    int end = buffer.getInt(table.offsets + 4*(i+1));
+    byte[] bytes = new byte[end-start];
+    for (int j=0; j<bytes.length; j++) {
+      bytes[j] = buffer.get(table.data + start + j);
+    }
+    return new String(bytes, UTF8);
+  }
+
+  /**
+   * @param table
+   * @param key
+   * @return the first position in <code>table</code> that is not
+   * smaller than <code>key</code>.
+   */
+  private int lowerBound(StringTable table, byte[] key) {
+    int low=0, high=table.size;
+    while (low<high) {
+      int mid = (low+high)>>>1;
+      if (compare(table, mid, key)<0) {
+        low = mid+1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Compares the <code>i</code>th string of the table with the given
+   * key (unsigned, byte-wise) without creating any objects.
+   * @param table
+   * @param i
+   * @param key
+   * @return see {@link Comparable#compareTo(Object)}.
+   */
+  private int compare(StringTable table, int i, byte[] key) {
+    int start = table.data + buffer.getInt(table.offsets + 4*i);
+    int len = table.data + buffer.getInt(table.offsets + 4*(i+1)) - start;
+    int n = Math.min(len, key.length);
+    for (int j=0; j<n; j++) {
+      int c = (buffer.get(start+j)&0xFF) - (key[j]&0xFF);
+      if (c!=0) return c;
+    }
+    return len-key.length;
+  }
+
+  /**
+   * Unsigned, byte-wise comparison (must be equal to
+   * {@link #compare(StringTable, int, byte[])}).
+   * @param a
+   * @param b
+   * @return see {@link Comparable#compareTo(Object)}.
+   */
+  private static int compare(byte[] a, byte[] b) {
+    int n = Math.min(a.length, b.length);
+    for (int j=0; j<n; j++) {
+      int c = (a[j]&0xFF) - (b[j]&0xFF);
+      if (c!=0) return c;
+    }
+    return a.length-b.length;
+  }
+
+  /**
+   * Collects normalized identifiers and ordinals for one dictionary.
+   */
+  private static class Postings {
+    byte[][] keys = new byte[1024][];
+    int[] ordinals = new int[1024];
+    int size=0;
+
+    void add(String key, int ordinal) {
+      if (key==null) return;
+      if (size==keys.length) {
+        keys = Arrays.copyOf(keys, size*2);
+        ordinals = Arrays.copyOf(ordinals, size*2);
+      }
+      keys[size] = key.getBytes(UTF8);
+      ordinals[size++] = ordinal;
+    }
+  }
+
+  /**
+   * Builds the binary index from the merged compound dumps.
+   * @param compoundData merged compound database with the columns
+   * <code>InChIKey, Name, HMDB, LMID, Kegg, CHEBI, PC_compound</code>.
+   * @param compoundSynonyms merged synonyms (InChIKey followed by any
+   * number of synonyms). Might be <code>null</code>.
+   * @param indexFile target file.
+   * @throws IOException
+   */
+  public static void build(File compoundData, File compoundSynonyms, File indexFile) throws IOException {
+    long start = System.currentTimeMillis();
+
+    // 1. Collect and sort all InChIKeys
+    TreeSet<String> keySet = new TreeSet<String>();
+    BufferedReader in = open(compoundData);
+    try {
+      int col = indexOf(in.readLine().split("\t"), "InChIKey");
+      String line;
+      while ((line=in.readLine())!=null) {
+        String[] fields = line.split("\t");
+        String key = col<fields.length?normalize(IdentifierType.InChIKey, fields[col]):null;
+        // Only ASCII keys (such that the sort order equals the byte order)
+        if (key!=null && ASCII.matcher(key).matches()) keySet.add(key);
+      }
+    } finally {
+      in.close();
+    }
+    String[] keys = keySet.toArray(new String[keySet.size()]);
+    keySet = null;
+
+    // 2. Collect all identifiers
+    Map<IdentifierType, Postings> postings = new EnumMap<IdentifierType, Postings>(IdentifierType.class);
+    in = open(compoundData);
+    try {
+      String[] header = in.readLine().split("\t");
+      int col = indexOf(header, "InChIKey");
+      Map<IdentifierType, Integer> columns = new EnumMap<IdentifierType, Integer>(IdentifierType.class);
+      for (Map.Entry<IdentifierType, String> e: COLUMNS.entrySet()) {
+        int c = indexOf(header, e.getValue());
+        if (c>=0) {
+          columns.put(e.getKey(), c);
+          postings.put(e.getKey(), new Postings());
+        }
+      }
+      String line;
+      while ((line=in.readLine())!=null) {
+        String[] fields = line.split("\t");
+        int ordinal = getOrdinal(keys, fields, col);
+        if (ordinal<0) continue;
+        for (Map.Entry<IdentifierType, Integer> e: columns.entrySet()) {
+          if (e.getValue()>=fields.length) continue;
+          Postings p = postings.get(e.getKey());
+          for (String id: VALUE_SEPARATOR.split(fields[e.getValue()])) {
+            p.add(normalize(e.getKey(), id), ordinal);
+          }
+        }
+      }
+    } finally {
+      in.close();
+    }
+
+    // Synonyms are added to the compound names
+    if (compoundSynonyms!=null && compoundSynonyms.canRead()) {
+      Postings names = postings.get(IdentifierType.CompoundName);
+      if (names==null) {
+        names = new Postings();
+        postings.put(IdentifierType.CompoundName, names);
+      }
+      in = open(compoundSynonyms);
+      try {
+        in.readLine(); // Header
+        String line;
+        while ((line=in.readLine())!=null) {
+          String[] fields = line.split("\t");
+          int ordinal = getOrdinal(keys, fields, 0);
+          if (ordinal<0) continue;
+          for (int i=1; i<fields.length; i++) {
+            names.add(normalize(IdentifierType.CompoundName, fields[i]), ordinal);
+          }
+        }
+      } finally {
+        in.close();
+      }
+    }
+
+    // 3. Write the index (to a temporary file first)
+    File tmp = new File(indexFile.getPath() + ".tmp");
+    File dir = indexFile.getAbsoluteFile().getParentFile();
+    if (dir!=null && !dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir.getPath());
+    }
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1<<16));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(getTotalLength(compoundData, compoundSynonyms));
+      out.writeLong(getLastModified(compoundData, compoundSynonyms));
+
+      byte[][] keyBytes = new byte[keys.length][];
+      for (int i=0; i<keys.length; i++) {
+        keyBytes[i] = keys[i].getBytes(UTF8);
+      }
+      writeStringTable(out, keyBytes, IndexSort.identity(keys.length), keys.length);
+
+      out.writeInt(postings.size());
+      for (Map.Entry<IdentifierType, Postings> e: postings.entrySet()) {
+        out.writeInt(e.getKey().ordinal());
+        writeDictionary(out, e.getValue());
+      }
+    } finally {
+      out.close();
+    }
+    if (indexFile.exists() && !indexFile.delete() || !tmp.renameTo(indexFile)) {
+      throw new IOException("Could not write compound index to " + indexFile.getPath());
+    }
+
+    log.info(String.format("Built compound index with %s InChIKeys in %s ms.", keys.length, System.currentTimeMillis()-start));
+  }
+
+  /**
+   * Sorts the postings by key and ordinal and writes them as
+   * {@link Dictionary}. Duplicates are removed.
+   * @param out
+   * @param p
+   * @throws IOException
+   */
+  private static void writeDictionary(DataOutputStream out, final Postings p) throws IOException {
+    int[] order = IndexSort.identity(p.size);
+    IndexSort.IndexComparator c = new IndexSort.IndexComparator() {
+      public int compare(int a, int b) {
+        int r = CompoundIndex.compare(p.keys[a], p.keys[b]);
+        if (r!=0) return r;
+        return p.ordinals[a]<p.ordinals[b]?-1:(p.ordinals[a]==p.ordinals[b]?0:1);
+      }
+    };
+    try {
+      IndexSort.parallelSort(order, c);
+    } catch (ExecutionException e) {
+      order = IndexSort.identity(p.size);
+      IndexSort.sort(order, c);
+    }
+
+    // Remove duplicates
+    int size=0;
+    for (int i=0; i<order.length; i++) {
+      if (size==0 || c.compare(order[size-1], order[i])!=0) {
+        order[size++] = order[i];
+      }
+    }
+
+    writeStringTable(out, p.keys, order, size);
+    for (int i=0; i<size; i++) {
+      out.writeInt(p.ordinals[order[i]]);
+    }
+  }
+
+  /**
+   * @param out
+   * @param strings
+   * @param order the strings to write (in this order)
+   * @param size number of elements in <code>order</code> to write.
+   * @throws IOException
+   */
+  private static void writeStringTable(DataOutputStream out, byte[][] strings, int[] order, int size) throws IOException {
+    out.writeInt(size);
+    int offset=0;
+    out.writeInt(offset);
+    for (int i=0; i<size; i++) {
+      offset+=strings[order[i]].length;
+      out.writeInt(offset);
+    }
+    for (int i=0; i<size; i++) {
+      out.write(strings[order[i]]);
+    }
+  }
+
+  /**
+   * @param keys sorted InChIKeys
+   * @param fields
+   * @param col InChIKey column
+   * @return the ordinal of the InChIKey in the given line or -1.
+   */
+  private static int getOrdinal(String[] keys, String[] fields, int col) {
+    if (col<0 || col>=fields.length) return -1;
+    String key = normalize(IdentifierType.InChIKey, fields[col]);
+    if (key==null) return -1;
+    int i = Arrays.binarySearch(keys, key);
+    return i>=0?i:-1;
+  }
+
+  private static int indexOf(String[] header, String column) {
+    for (int i=0; i<header.length; i++) {
+      if (header[i].trim().equalsIgnoreCase(column)) return i;
+    }
+    return -1;
+  }
+
+  private static BufferedReader open(File f) throws IOException {
+    return new BufferedReader(new InputStreamReader(new FileInputStream(f), UTF8), 1<<16);
+  }
+
+}
@@ -0,0 +1,449 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+/**
+ * A streaming film encoder. Frames are quantized to a shared
+ * global {@link FilmPalette} and encoded concurrently on the
+ * {@link ParallelUtils#getComputePool()}, while the encoded frames
+ * are written to disk in order as soon as they are available.
+ * Thus, only a few frames are held in memory at any time.
+ *
+ * <p>Consecutive frames of a pathway film usually differ only in a
+ * few recolored nodes. Implementations that support it
+ * ({@link #useDeltaFrames()}) only encode the bounding box of all
+ * changed pixels and mark unchanged pixels within this box as
+ * transparent.
+ *
+ * <p>Use {@link #create(Format, File, int, boolean)} to get an encoder.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public abstract class FilmEncoder implements Closeable {
+  public static final transient Logger log = Logger.getLogger(FilmEncoder.class.getName());
+
+  /**
+   * All supported output formats.
+   * @author Clemens Wrzodek
+   */
+  public static enum Format {
+    /** An animated GIF file. */
+    GIF("gif", "Animated GIF"),
+    /** An animated PNG file. */
+    APNG("png", "Animated PNG"),
+    /** A directory with one PNG file per frame. */
+    FRAME_DIRECTORY(null, "Directory with one PNG image per frame");
+
+    private final String extension;
+    private final String description;
+
+    private Format(String extension, String description) {
+      this.extension = extension;
+      this.description = description;
+    }
+
+    /**
+     * @return the file extension (without dot) or <code>null</code>
+     * if this format writes a directory.
+     */
+    public String getExtension() {
+      return extension;
+    }
+
+    /**
+     * @return a {@link FileFilter} for this format.
+     */
+    public FileFilter getFileFilter() {
+      if (extension!=null) {
+        return new FileNameExtensionFilter(description + " (*." + extension + ")", extension);
+      }
+      return new FileFilter() {
+        @Override
+        public boolean accept(File f) {
+          return f.isDirectory();
+        }
+        @Override
+        public String getDescription() {
+          return description;
+        }
+      };
+    }
+
+    /**
+     * @param filter
+     * @return the format that belongs to the given filter
+     * (by description) or <code>null</code>.
+     */
+    public static Format fromFileFilter(FileFilter filter) {
+      if (filter==null) return null;
+      for (Format f: values()) {
+        if (f.getFileFilter().getDescription().equals(filter.getDescription())) {
+          return f;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Output file or directory.
+   */
+  protected final File output;
+
+  /**
+   * Time between frames in milliseconds.
+   */
+  protected final int timeBetweenFramesMS;
+
+  /**
+   * Whether the film should loop repeatedly.
+   */
+  protected final boolean loopContinuously;
+
+  /**
+   * Dimension of the film (taken from the first frame).
+   */
+  protected int width=-1, height=-1;
+
+  /**
+   * The global palette (built from the first frame and the
+   * {@link #reservedColors}).
+   */
+  protected FilmPalette palette=null;
+
+  /**
+   * Colors that are always contained in the {@link #palette}.
+   */
+  private Color[] reservedColors=null;
+
+  /**
+   * Number of submitted frames.
+   */
+  private int frameCount=0;
+
+  /**
+   * Quantized pixels of the last submitted frame.
+   */
+  private Future<byte[]> lastQuantized=null;
+
+  /**
+   * Encoded frames that have not yet been written.
+   */
+  private final LinkedList<Future<EncodedFrame>> pending = new LinkedList<Future<EncodedFrame>>();
+
+  /**
+   * Maximum number of frames being encoded at the same time.
+   */
+  private final int maxPending = ParallelUtils.getNumberOfThreads()*2;
+
+  /**
+   * An encoded frame, ready to be written.
+   */
+  protected static class EncodedFrame {
+    /** Number of this frame, starting at 0. */
+    final int frameNumber;
+    /** The region of this frame. */
+    final Rectangle region;
+    /** The encoded pixel data. */
+    final byte[] data;
+
+    EncodedFrame(int frameNumber, Rectangle region, byte[] data) {
+      this.frameNumber = frameNumber;
+      this.region = region;
+      this.data = data;
+    }
+  }
+
+  /**
+   * @param output
+   * @param timeBetweenFramesMS
+   * @param loopContinuously
+   */
+  protected FilmEncoder(File output, int timeBetweenFramesMS, boolean loopContinuously) {
+    super();
+    this.output = output;
+    this.timeBetweenFramesMS = timeBetweenFramesMS;
+    this.loopContinuously = loopContinuously;
+  }
+
+  /**
+   * Creates a new encoder.
+   * @param format output format
+   * @param output file or directory (for {@link Format#FRAME_DIRECTORY}).
+   * @param timeBetweenFramesMS the time between frames in milliseconds
+   * @param loopContinuously whether the film should loop repeatedly
+   * @return
+   * @throws IOException
+   */
+  public static FilmEncoder create(Format format, File output, int timeBetweenFramesMS,
+    boolean loopContinuously) throws IOException {
+    if (format==Format.APNG) {
+      return new APNGFilmEncoder(output, timeBetweenFramesMS, loopContinuously);
+    } else if (format==Format.FRAME_DIRECTORY) {
+      return new FrameDirectoryFilmEncoder(output, timeBetweenFramesMS, loopContinuously);
+    } else {
+      return new GIFFilmEncoder(output, timeBetweenFramesMS, loopContinuously);
+    }
+  }
+
+  /**
+   * Colors that do not appear in the first frame, but in later frames,
+   * must be reserved in the global palette. Else, they are mapped to
+   * the nearest color of the first frame. Must be called before the
+   * first frame is written.
+   * @param colors e.g., the {@link SignalColor#getColorScale(int)} that
+   * is used to color the frames.
+   */
+  public synchronized void setReservedColors(Color... colors) {
+    if (palette!=null) {
+      throw new IllegalStateException("The palette has already been built.");
+    }
+    this.reservedColors = colors;
+  }
+
+  /**
+   * Adds a frame to the film. Quantization and encoding is done
+   * asynchronously. This method only blocks if too many frames are
+   * pending.
+   * <p>All frames are cropped or padded to the dimension of the
+   * first frame.
+   * @param image
+   * @throws IOException
+   */
+  public synchronized void writeFrame(final BufferedImage image) throws IOException {
+    if (palette==null) {
+      width = image.getWidth();
+      height = image.getHeight();
+      palette = new FilmPalette(image, reservedColors);
+      writeHeader();
+    }
+
+    final int frameNumber = frameCount++;
+    final Future<byte[]> previous = useDeltaFrames() ? lastQuantized : null;
+    final Future<byte[]> current = ParallelUtils.getComputePool().submit(new Callable<byte[]>() {
+      public byte[] call() throws Exception {
+        return palette.quantize(image, width, height);
+      }
+    });
+    // The pool processes tasks in submission order, thus the quantization
+    // tasks are always started before the encoding task waits for them.
+    Future<EncodedFrame> encoded = ParallelUtils.getComputePool().submit(new Callable<EncodedFrame>() {
+      public EncodedFrame call() throws Exception {
+        byte[] pixels = current.get();
+        Rectangle region;
+        if (previous!=null) {
+          region = extractChangedRegion(previous.get(), pixels);
+          pixels = cropAndMask(previous.get(), pixels, region);
+        } else {
+          region = new Rectangle(0, 0, width, height);
+        }
+        return new EncodedFrame(frameNumber, region, encodeFrame(frameNumber, pixels, region));
+      }
+    });
+    lastQuantized = current;
+    pending.add(encoded);
+
+    while (pending.size()>maxPending) {
+      writeNextPending();
+    }
+  }
+
+  /**
+   * Writes the oldest pending frame (blocks until it is encoded).
+   * @throws IOException
+   */
+  private void writeNextPending() throws IOException {
+    Future<EncodedFrame> next = pending.removeFirst();
+    try {
+      writeEncodedFrame(next.get());
+    } catch (InterruptedException e) {
+      cancelPending();
+      Thread.currentThread().interrupt();
+      throw new IOException("Film export interrupted.");
+    } catch (ExecutionException e) {
+      cancelPending();
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Cancels and forgets all frames that have not yet been written.
+   */
+  private void cancelPending() {
+    ParallelUtils.cancelAll(pending);
+    pending.clear();
+  }
+
+  /**
+   * Finishes the film. Blocks until all frames are written.
+   * This also closes the underlying file, even if writing failed.
+   */
+  public synchronized void close() throws IOException {
+    boolean finished = false;
+    try {
+      while (pending.size()>0) {
+        writeNextPending();
+      }
+      writeTrailer(frameCount);
+      finished = true;
+    } finally {
+      cancelPending();
+      lastQuantized = null;
+      try {
+        closeOutput();
+      } catch (IOException e) {
+        // Do not hide the original exception
+        if (finished) throw e;
+        log.log(Level.FINE, "Could not close " + output.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * @return number of frames written so far.
+   */
+  public synchronized int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * @param previous
+   * @param current
+   * @return the bounding box of all changed pixels. If nothing changed,
+   * a single pixel at (0,0) is returned.
+   */
+  private Rectangle extractChangedRegion(byte[] previous, byte[] current) {
+    int minX=width, minY=height, maxX=-1, maxY=-1;
+    for (int y=0; y<height; y++) {
+      int offset = y*width;
+      int first=-1, last=-1;
+      for (int x=0; x<width; x++) {
+        if (previous[offset+x]!=current[offset+x]) {
+          if (first<0) first=x;
+          last=x;
+        }
+      }
+      if (first>=0) {
+        minY = Math.min(minY, y);
+        maxY = y;
+        minX = Math.min(minX, first);
+        maxX = Math.max(maxX, last);
+      }
+    }
+    if (maxX<0) {
+      return new Rectangle(0, 0, 1, 1);
+    }
+    return new Rectangle(minX, minY, maxX-minX+1, maxY-minY+1);
+  }
+
+  /**
+   * @param previous
+   * @param current
+   * @param region
+   * @return the pixels of the given region, with all unchanged pixels set
+   * to {@link FilmPalette#TRANSPARENT_INDEX}.
+   */
+  private byte[] cropAndMask(byte[] previous, byte[] current, Rectangle region) {
+    byte[] ret = new byte[region.width*region.height];
+    int i=0;
+    for (int y=region.y; y<region.y+region.height; y++) {
+      int offset = y*width;
+      for (int x=region.x; x<region.x+region.width; x++) {
+        byte b = current[offset+x];
+        ret[i++] = (b==previous[offset+x]) ? (byte) FilmPalette.TRANSPARENT_INDEX : b;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return true if frames after the first should only contain the changed
+   * region. Else, all frames are passed in full size to
+   * {@link #encodeFrame(int, byte[], Rectangle)}.
+   */
+  protected boolean useDeltaFrames() {
+    return true;
+  }
+
+  /**
+   * Called once with the first frame, after {@link #width}, {@link #height}
+   * and {@link #palette} have been initialized.
+   * @throws IOException
+   */
+  protected abstract void writeHeader() throws IOException;
+
+  /**
+   * Encodes a frame. This method is called concurrently from multiple
+   * threads and must not write to the output.
+   * @param frameNumber number of the frame, starting at 0.
+   * @param pixels palette indices of all pixels in the region, row by row.
+   * @param region location of the pixels in the film.
+   * @return the encoded frame data.
+   * @throws IOException
+   */
+  protected abstract byte[] encodeFrame(int frameNumber, byte[] pixels, Rectangle region) throws IOException;
+
+  /**
+   * Writes an encoded frame. Called sequentially in frame order.
+   * @param frame
+   * @throws IOException
+   */
+  protected abstract void writeEncodedFrame(EncodedFrame frame) throws IOException;
+
+  /**
+   * Finishes and closes the output.
+   * @param numberOfFrames total number of frames.
+   * @throws IOException
+   */
+  protected abstract void writeTrailer(int numberOfFrames) throws IOException;
+
+  /**
+   * Closes the output, if it is still open (e.g., because writing
+   * failed). Called after {@link #writeTrailer(int)}, thus, it must
+   * be allowed to close the output twice.
+   * @throws IOException
+   */
+  protected void closeOutput() throws IOException {
+    // Nothing to do
+  }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+/**
+ * A global, immutable color palette for all frames of a film.
+ *
+ * <p>Pathway pictures consist of a small set of colors. Thus, the
+ * palette is built once (with 5 bits per channel) from colors that are
+ * known in advance (e.g., the {@link SignalColor#getColorScale(int)}
+ * used to color nodes in later frames) and the most frequent colors of
+ * the first frame. A lookup table from every 15-bit color to the nearest
+ * palette entry is precomputed. Afterwards, quantizing a pixel is a single
+ * array access and frames can be quantized concurrently.
+ *
+ * <p>Palette index {@link #TRANSPARENT_INDEX} is reserved for
+ * transparent pixels (i.e., pixels that did not change since the
+ * last frame).
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class FilmPalette {
+
+  /**
+   * Index of the transparent color.
+   */
+  public final static int TRANSPARENT_INDEX = 0;
+
+  /**
+   * Maximum number of entries (including the transparent one).
+   */
+  public final static int MAX_COLORS = 256;
+
+  /**
+   * Red, green and blue of every palette entry.
+   */
+  private final byte[] red, green, blue;
+
+  /**
+   * Number of used palette entries (including {@link #TRANSPARENT_INDEX}).
+   */
+  private final int size;
+
+  /**
+   * Index of the most frequent color in the first frame (usually
+   * the background).
+   */
+  private final int background;
+
+  /**
+   * Maps each 15-bit color to a palette index.
+   */
+  private final byte[] lookup;
+
+  /**
+   * Builds a palette from the most frequent colors in the given image.
+   * @param image
+   */
+  public FilmPalette(BufferedImage image) {
+    this(image, (Color[]) null);
+  }
+
+  /**
+   * Builds a palette that contains all <code>reservedColors</code> and
+   * the most frequent colors in the given image.
+   * @param image the first frame
+   * @param reservedColors colors that will appear in later frames. At
+   * most half of the palette is used for these colors. May be null.
+   */
+  public FilmPalette(BufferedImage image, Color... reservedColors) {
+    // Create a histogram of 15-bit colors
+    int[] histogram = new int[1<<15];
+    long[] sumR = new long[1<<15], sumG = new long[1<<15], sumB = new long[1<<15];
+    int w = image.getWidth(), h = image.getHeight();
+    int[] row = new int[w];
+    for (int y=0; y<h; y++) {
+      image.getRGB(0, y, w, 1, row, 0, w);
+      for (int rgb: row) {
+        int key = toKey(rgb);
+        histogram[key]++;
+        sumR[key]+=(rgb>>16)&0xFF;
+        sumG[key]+=(rgb>>8)&0xFF;
+        sumB[key]+=rgb&0xFF;
+      }
+    }
+
+    // Take the most frequent colors
+    int used=0;
+    for (int c: histogram) if (c>0) used++;
+    long[] sorted = new long[used];
+    int j=0;
+    for (int key=0; key<histogram.length; key++) {
+      if (histogram[key]>0) {
+        // Sort descending by count, ties by key
+        sorted[j++] = (((long)(Integer.MAX_VALUE-histogram[key]))<<16) | key;
+      }
+    }
+    Arrays.sort(sorted);
+
+    red = new byte[MAX_COLORS];
+    green = new byte[MAX_COLORS];
+    blue = new byte[MAX_COLORS];
+    boolean[] inPalette = new boolean[1<<15];
+    int i=1;
+    
+    // Reserved colors first
+    if (reservedColors!=null) {
+      for (Color c: reservedColors) {
+        if (i>MAX_COLORS/2) break;
+        if (c==null || inPalette[toKey(c.getRGB())]) continue;
+        inPalette[toKey(c.getRGB())] = true;
+        red[i] = (byte) c.getRed();
+        green[i] = (byte) c.getGreen();
+        blue[i] = (byte) c.getBlue();
+        i++;
+      }
+    }
+    
+    // Fill the remaining entries with the most frequent colors
+    for (j=0; j<sorted.length && i<MAX_COLORS; j++) {
+      int key = (int) (sorted[j] & 0xFFFF);
+      if (inPalette[key]) continue;
+      inPalette[key] = true;
+      red[i] = (byte) (sumR[key]/histogram[key]);
+      green[i] = (byte) (sumG[key]/histogram[key]);
+      blue[i] = (byte) (sumB[key]/histogram[key]);
+      i++;
+    }
+    size = Math.max(2, i);
+
+    // Precompute the nearest palette entry for every 15-bit color
+    lookup = new byte[1<<15];
+    for (int key=0; key<lookup.length; key++) {
+      lookup[key] = (byte) findNearest(((key>>10)&0x1F)<<3 | 4, ((key>>5)&0x1F)<<3 | 4, (key&0x1F)<<3 | 4);
+    }
+    background = sorted.length>0 ? lookup[(int) (sorted[0] & 0xFFFF)]&0xFF : 1;
+  }
+
+  /**
+   * @param rgb
+   * @return the 15-bit key of the given color.
+   */
+  private static int toKey(int rgb) {
+    return ((rgb>>9)&0x7C00) | ((rgb>>6)&0x3E0) | ((rgb>>3)&0x1F);
+  }
+
+  /**
+   * @param r
+   * @param g
+   * @param b
+   * @return the index of the palette entry that is nearest to the given color.
+   */
+  private int findNearest(int r, int g, int b) {
+    int best = 1, bestDist = Integer.MAX_VALUE;
+    for (int i=1; i<size; i++) {
+      int dr = r-(red[i]&0xFF), dg = g-(green[i]&0xFF), db = b-(blue[i]&0xFF);
+      int dist = 2*dr*dr + 4*dg*dg + 3*db*db;
+      if (dist<bestDist) {
+        bestDist = dist;
+        best = i;
+        if (dist==0) break;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Quantizes the given image to this palette. Thread-safe.
+   * @param image
+   * @param width width of the resulting frame (image is cropped or padded)
+   * @param height height of the resulting frame (image is cropped or padded)
+   * @return one palette index per pixel, row by row.
+   */
+  public byte[] quantize(BufferedImage image, int width, int height) {
+    byte[] indices = new byte[width*height];
+    int w = Math.min(width, image.getWidth());
+    int h = Math.min(height, image.getHeight());
+    // Pad with the most frequent color (usually the background)
+    if (w<width || h<height) {
+      Arrays.fill(indices, (byte) background);
+    }
+    int[] row = new int[w];
+    for (int y=0; y<h; y++) {
+      image.getRGB(0, y, w, 1, row, 0, w);
+      int offset = y*width;
+      for (int x=0; x<w; x++) {
+        indices[offset+x] = lookup[toKey(row[x])];
+      }
+    }
+    return indices;
+  }
+
+  /**
+   * @return number of used palette entries (including the transparent one).
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @return number of bits required to address all entries of this
+   * palette (at least 1).
+   */
+  public int getBitDepth() {
+    int bits = 1;
+    while ((1<<bits)<size) bits++;
+    return bits;
+  }
+
+  /**
+   * @return an 8-bit {@link IndexColorModel} for this palette with
+   * {@link #TRANSPARENT_INDEX} being transparent.
+   */
+  public IndexColorModel createColorModel() {
+    return new IndexColorModel(8, size, red, green, blue, TRANSPARENT_INDEX);
+  }
+
+  /**
+   * @param entries number of entries to write (unused entries are black).
+   * @return the palette as consecutive RGB triplets.
+   */
+  public byte[] toRGBTriplets(int entries) {
+    byte[] ret = new byte[entries*3];
+    for (int i=0; i<Math.min(entries, MAX_COLORS); i++) {
+      ret[i*3] = red[i];
+      ret[i*3+1] = green[i];
+      ret[i*3+2] = blue[i];
+    }
+    return ret;
+  }
+
+}
@@ -21,19 +21,31 @@
  */
 package de.zbit.utils;
 
-import java.util.HashSet;
+import java.awt.BorderLayout;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.AbstractButton;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JTable;
+import javax.swing.JTextField;
 import javax.swing.RowFilter;
+import javax.swing.SwingWorker;
 import javax.swing.table.TableRowSorter;
 import javax.swing.treetable.JTreeTable;
 
 import de.zbit.data.HeterogeneousData;
+import de.zbit.gui.GUITools;
 import de.zbit.gui.actions.listeners.EnrichmentActionListener;
+import de.zbit.gui.customcomponents.TableModelSnapshot;
+import de.zbit.gui.customcomponents.TableResultRowSorter;
 import de.zbit.gui.table.JTableFilter;
 import de.zbit.gui.tabs.IntegratorTabWithTable;
 
@@ -54,7 +66,7 @@ public class FilterNSTable {
    * @param filterToglleButton OPTIONAL button that reflects the currently filtered state. May be null!
    */
   @SuppressWarnings({ "unchecked", "rawtypes" })
-  public static void filterToggleTable(IntegratorTabWithTable parent, AbstractButton filterToglleButton) {
+  public static void filterToggleTable(final IntegratorTabWithTable parent, final AbstractButton filterToglleButton) {
     JTable tb = (JTable) parent.getVisualization();
     
     boolean isCurrentlyFiltered = isTableFiltered(tb);
@@ -69,7 +81,10 @@ public class FilterNSTable {
           log.warning("Cannot unfilter table with model " + ((JTreeTable)tb).getTree().getModel().getClass());
         }
       } else {
-        if ((tb.getRowSorter()!=null) && (tb.getRowSorter() instanceof TableRowSorter)) {
+        if (tb.getRowSorter() instanceof TableResultRowSorter) {
+          ((TableResultRowSorter)tb.getRowSorter()).setVisibleModelRows(null);
+          ((TableResultRowSorter)tb.getRowSorter()).setRowFilter(null);
+        } else if ((tb.getRowSorter()!=null) && (tb.getRowSorter() instanceof TableRowSorter)) {
           ((TableRowSorter)tb.getRowSorter()).setRowFilter(null);
         } else {
           log.warning("Cannot unfilter JTable.");
@@ -89,60 +104,107 @@ public class FilterNSTable {
         ((JTreeTable) tb).collapseAll();
       }
       
-      // Show and evalutes the filter dialog
-      JTableFilter f = EnrichmentActionListener.showJTableFilter(parent);
-      List<Integer> genesToShow = f==null? null: f.getSelectedRows();
-      if (genesToShow==null) {
+      // Show the filter dialog on a copy of the table. Evaluating the
+      // filter may take a while and must not block the EDT.
+      final TableModelSnapshot snapshot = new TableModelSnapshot(tb.getModel());
+      final JTableFilter f = EnrichmentActionListener.showJTableFilter(parent, new JTable(snapshot));
+      if (f==null) {
         if (filterToglleButton!=null) {
           filterToglleButton.setSelected(false); // Table is currently NOT filtered
         }
         return;
       }
       
-      // The first row is always the root node, simply ignore it!
-      // Remove 0 and all else -1;
-      if (tb instanceof JTreeTable && ((JTreeTable)tb).getTree().isRootVisible() ) {
-        if (genesToShow.size()>0 && genesToShow.get(0).equals(0))  {
-          genesToShow.remove(0);
+      final JTable table = tb;
+      SwingWorker<BitSet, Void> worker = new SwingWorker<BitSet, Void>() {
+        @Override
+        protected BitSet doInBackground() throws Exception {
+          List<Integer> selected = f.getSelectedRows();
+          if (selected==null) return null;
+          BitSet rows = new BitSet(snapshot.getRowCount());
+          for (Integer row: selected) {
+            if (row!=null && row>=0) rows.set(row);
+          }
+          return rows;
         }
-        for (int i=0; i<genesToShow.size();i++) {
-          genesToShow.set(i, genesToShow.get(i)-1);
+        @Override
+        protected void done() {
+          BitSet rows = null;
+          try {
+            rows = get();
+          } catch (Exception e) {
+            log.log(Level.WARNING, "Could not filter the table.", e);
+          }
+          if (rows!=null && table.getModel().getRowCount()!=snapshot.getRowCount()) {
+            log.warning("Table changed while filtering. Filter has not been applied.");
+            rows = null;
+          }
+          boolean filtered = rows!=null && applyFilter(table, rows);
+          if (filterToglleButton!=null) {
+            filterToglleButton.setSelected(filtered);
+          }
+          
+          // The row sorter updates the table by itself. Rebuilding it would drop the filter.
+          if (!(table.getRowSorter() instanceof TableResultRowSorter)) {
+            parent.rebuildTable();
+          }
         }
+      };
+      worker.execute();
+      return;
+    }
+    
+    // The row sorter updates the table by itself. Rebuilding it would drop the filter.
+    if (!(tb.getRowSorter() instanceof TableResultRowSorter)) {
+      parent.rebuildTable();
+    }
+  }
+  
+  /**
+   * Restricts the given table to the given rows. Must be called
+   * from the event dispatch thread.
+   * @param tb
+   * @param rows indices of all visible rows in the current table view.
+   * @return false if the table could not be filtered.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static boolean applyFilter(JTable tb, final BitSet rows) {
+    if (tb instanceof JTreeTable) {
+      // The first row is always the root node, simply ignore it!
+      // Remove 0 and all else -1;
+      int offset = ((JTreeTable)tb).getTree().isRootVisible() ? 1 : 0;
+      List<Integer> genesToShow = new ArrayList<Integer>(rows.cardinality());
+      for (int row=rows.nextSetBit(offset); row>=0; row=rows.nextSetBit(row+1)) {
+        genesToShow.add(row-offset);
       }
       
-      // Apply the filter
-      if (tb instanceof JTreeTable) {
-        if (((JTreeTable)tb).getTree().getModel() instanceof HeterogeneousData) {
-          ((HeterogeneousData)((JTreeTable)tb).getTree().getModel()).setVisibleRows(genesToShow);
-        } else {
-          log.warning("Cannot test if table is filtered with model " + ((JTreeTable)tb).getTree().getModel().getClass());
-        }
+      if (((JTreeTable)tb).getTree().getModel() instanceof HeterogeneousData) {
+        ((HeterogeneousData)((JTreeTable)tb).getTree().getModel()).setVisibleRows(genesToShow);
       } else {
-        // The following is correct, but the table does not propagate to the
-        // JTree in JTreeTable!
-        final Set<Integer> rowsToKeep = new HashSet<Integer>(f.getSelectedRows());
-        
-        // Perform the filtering
-        TableRowSorter sorter = new TableRowSorter(tb.getModel());
-        for (int i=0; i<tb.getColumnCount(); i++) {
-          sorter.setSortable(i, false);
-        }
-        tb.setRowSorter(sorter);
-        sorter.setRowFilter(new RowFilter() {
-          @Override
-          public boolean include(Entry entry) {
-            return (rowsToKeep.contains(entry.getIdentifier()));
-          }
-        });
+        log.warning("Cannot test if table is filtered with model " + ((JTreeTable)tb).getTree().getModel().getClass());
+        return false;
       }
+    } else if (tb.getRowSorter() instanceof TableResultRowSorter) {
+      // Filters in the background and keeps the current sort order
+      ((TableResultRowSorter)tb.getRowSorter()).setVisibleModelRows(rows);
+    } else {
+      // The following is correct, but the table does not propagate to the
+      // JTree in JTreeTable!
       
-      // Select button
-      if (filterToglleButton!=null) {
-        filterToglleButton.setSelected(true); // Table is currently filtered
+      // Perform the filtering
+      TableRowSorter sorter = new TableRowSorter(tb.getModel());
+      for (int i=0; i<tb.getColumnCount(); i++) {
+        sorter.setSortable(i, false);
       }
+      tb.setRowSorter(sorter);
+      sorter.setRowFilter(new RowFilter() {
+        @Override
+        public boolean include(Entry entry) {
+          return rows.get((Integer) entry.getIdentifier());
+        }
+      });
     }
-    
-    parent.rebuildTable();
+    return true;
   }
 
   /**
@@ -161,7 +223,9 @@ public class FilterNSTable {
       }
     } else {
       //log.warning("Cannot test if table is filtered with table " + tb.getClass());
-      if ((tb.getRowSorter()!=null) && (tb.getRowSorter() instanceof TableRowSorter)) {
+      if (tb.getRowSorter() instanceof TableResultRowSorter) {
+        return ((TableResultRowSorter)tb.getRowSorter()).isFiltered();
+      } else if ((tb.getRowSorter()!=null) && (tb.getRowSorter() instanceof TableRowSorter)) {
         if (((TableRowSorter)tb.getRowSorter()).getRowFilter()!=null) {
           return true;
         } else {
@@ -173,4 +237,84 @@ public class FilterNSTable {
     
     return isCurrentlyFiltered;
   }
+  
+  /**
+   * Searches the table with the {@link TableSearchIndex} of the
+   * <code>parent</code> tab. Shows a dialog to enter a query and then
+   * selects all rows that contain a value or word, starting with this
+   * query (ignoring case). Optionally, the table is filtered to the
+   * matching rows.
+   * @param parent {@link IntegratorTabWithTable} containing the table to be searched.
+   * @param filterToglleButton OPTIONAL button that reflects the currently filtered state. May be null!
+   * @return false if the table can not be searched with an index (e.g.,
+   * {@link JTreeTable}s or the index is still being built). The caller
+   * should use the default table search instead.
+   */
+  public static boolean searchTable(IntegratorTabWithTable parent, AbstractButton filterToglleButton) {
+    if (!(parent.getVisualization() instanceof JTable)) return false;
+    JTable tb = (JTable) parent.getVisualization();
+    if (tb instanceof JTreeTable || !(tb.getRowSorter() instanceof TableResultRowSorter)) return false;
+    
+    // Index is built in the background. Do not block the EDT.
+    Future<TableSearchIndex> f = parent.getSearchIndex();
+    TableSearchIndex index = null;
+    if (f==null || !f.isDone() || f.isCancelled()) return false;
+    try {
+      index = f.get();
+    } catch (Exception e) {
+      log.log(Level.WARNING, "Could not build search index.", e);
+      return false;
+    }
+    
+    // Ask for the query
+    JTextField query = new JTextField(20);
+    JCheckBox filterRows = new JCheckBox("Show only matching rows");
+    JPanel p = new JPanel(new BorderLayout());
+    p.add(new JLabel("Search for names, identifiers or annotations starting with:"), BorderLayout.NORTH);
+    p.add(query, BorderLayout.CENTER);
+    p.add(filterRows, BorderLayout.SOUTH);
+    if (JOptionPane.showConfirmDialog(parent, p, "Search table", JOptionPane.OK_CANCEL_OPTION)!=JOptionPane.OK_OPTION ||
+        query.getText().trim().length()<1) {
+      return true;
+    }
+    
+    int[] rows = index.findPrefix(query.getText());
+    if (rows.length<1) {
+      GUITools.showMessage(String.format("No rows contain \"%s\".", query.getText().trim()), "Search table");
+      return true;
+    }
+    
+    // Filter and select the matching rows
+    TableResultRowSorter sorter = (TableResultRowSorter) tb.getRowSorter();
+    if (filterRows.isSelected()) {
+      List<Integer> toShow = new ArrayList<Integer>(rows.length);
+      for (int row: rows) {
+        toShow.add(row);
+      }
+      sorter.setVisibleModelRows(toShow);
+      if (filterToglleButton!=null) {
+        filterToglleButton.setSelected(true);
+      }
+    }
+    
+    // The sorter filters in the background. Select rows in the new view.
+    final JTable table = tb;
+    final int[] modelRows = rows;
+    sorter.invokeWhenApplied(new Runnable() {
+      public void run() {
+        table.clearSelection();
+        int first = -1;
+        for (int row: modelRows) {
+          int viewRow = table.convertRowIndexToView(row);
+          if (viewRow<0) continue; // Hidden by another filter
+          table.addRowSelectionInterval(viewRow, viewRow);
+          if (first<0 || viewRow<first) first = viewRow;
+        }
+        if (first>=0) {
+          table.scrollRectToVisible(table.getCellRect(first, 0, true));
+        }
+      }
+    });
+    return true;
+  }
 }
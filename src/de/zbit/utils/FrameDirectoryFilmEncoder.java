@@ -0,0 +1,113 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes every frame of a film as palette PNG image into a directory
+ * (<code>frame_0001.png</code>, <code>frame_0002.png</code>, ...).
+ * The frames are encoded concurrently and written in order.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class FrameDirectoryFilmEncoder extends FilmEncoder {
+
+  /**
+   * @param output the directory (is created if it does not exist).
+   * @param timeBetweenFramesMS
+   * @param loopContinuously
+   * @throws IOException
+   */
+  public FrameDirectoryFilmEncoder(File output, int timeBetweenFramesMS, boolean loopContinuously) throws IOException {
+    super(output, timeBetweenFramesMS, loopContinuously);
+    if (!output.exists() && !output.mkdirs()) {
+      throw new IOException("Could not create directory " + output.getPath());
+    }
+    if (!output.isDirectory()) {
+      throw new IOException(output.getPath() + " is not a directory.");
+    }
+  }
+
+  /**
+   * Every frame is a complete image.
+   */
+  @Override
+  protected boolean useDeltaFrames() {
+    return false;
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#writeHeader()
+   */
+  @Override
+  protected void writeHeader() throws IOException {
+    // Nothing to do
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#encodeFrame(int, byte[], java.awt.Rectangle)
+   */
+  @Override
+  protected byte[] encodeFrame(int frameNumber, byte[] pixels, Rectangle region) throws IOException {
+    BufferedImage image = new BufferedImage(region.width, region.height,
+      BufferedImage.TYPE_BYTE_INDEXED, palette.createColorModel());
+    image.getRaster().setDataElements(0, 0, region.width, region.height, pixels);
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(pixels.length/4+1024);
+    if (!ImageIO.write(image, "png", buf)) {
+      throw new IOException("No PNG image writer available.");
+    }
+    return buf.toByteArray();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#writeEncodedFrame(de.zbit.utils.FilmEncoder.EncodedFrame)
+   */
+  @Override
+  protected void writeEncodedFrame(EncodedFrame frame) throws IOException {
+    File f = new File(output, String.format("frame_%04d.png", frame.frameNumber+1));
+    OutputStream out = new FileOutputStream(f);
+    try {
+      out.write(frame.data);
+    } finally {
+      out.close();
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#writeTrailer(int)
+   */
+  @Override
+  protected void writeTrailer(int numberOfFrames) throws IOException {
+    // Nothing to do
+  }
+
+}
@@ -0,0 +1,273 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes an animated GIF with a single global color table. All frames
+ * after the first one only contain the changed region.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class GIFFilmEncoder extends FilmEncoder {
+
+  /**
+   * Maximum number of LZW codes.
+   */
+  private final static int MAX_CODES = 4096;
+
+  /**
+   * Size of the LZW hash table (prime).
+   */
+  private final static int HASH_SIZE = 5003;
+
+  private OutputStream out=null;
+
+  /**
+   * Number of bits of the global color table.
+   */
+  private int colorBits;
+
+  /**
+   * @param output
+   * @param timeBetweenFramesMS
+   * @param loopContinuously
+   * @throws IOException
+   */
+  public GIFFilmEncoder(File output, int timeBetweenFramesMS, boolean loopContinuously) throws IOException {
+    super(output, timeBetweenFramesMS, loopContinuously);
+    out = new BufferedOutputStream(new FileOutputStream(output), 1<<16);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#writeHeader()
+   */
+  @Override
+  protected void writeHeader() throws IOException {
+    colorBits = palette.getBitDepth();
+    out.write("GIF89a".getBytes("US-ASCII"));
+
+    // Logical screen descriptor with global color table
+    writeShort(out, width);
+    writeShort(out, height);
+    out.write(0x80 | ((colorBits-1)<<4) | (colorBits-1));
+    out.write(0); // background color index
+    out.write(0); // pixel aspect ratio
+    out.write(palette.toRGBTriplets(1<<colorBits));
+
+    // NETSCAPE2.0 application extension (loop count)
+    int loop = loopContinuously ? 0 : 1;
+    out.write(0x21);
+    out.write(0xFF);
+    out.write(11);
+    out.write("NETSCAPE2.0".getBytes("US-ASCII"));
+    out.write(3);
+    out.write(1);
+    writeShort(out, loop);
+    out.write(0);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#encodeFrame(int, byte[], java.awt.Rectangle)
+   */
+  @Override
+  protected byte[] encodeFrame(int frameNumber, byte[] pixels, Rectangle region) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(pixels.length/4+64);
+
+    // Graphic control extension
+    buf.write(0x21);
+    buf.write(0xF9);
+    buf.write(4);
+    buf.write((1<<2) | 1); // Do not dispose, transparent color present
+    writeShort(buf, timeBetweenFramesMS/10);
+    buf.write(FilmPalette.TRANSPARENT_INDEX);
+    buf.write(0);
+
+    // Image descriptor
+    buf.write(0x2C);
+    writeShort(buf, region.x);
+    writeShort(buf, region.y);
+    writeShort(buf, region.width);
+    writeShort(buf, region.height);
+    buf.write(0); // no local color table, not interlaced
+
+    compress(pixels, Math.max(2, colorBits), buf);
+    return buf.toByteArray();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#writeEncodedFrame(de.zbit.utils.FilmEncoder.EncodedFrame)
+   */
+  @Override
+  protected void writeEncodedFrame(EncodedFrame frame) throws IOException {
+    out.write(frame.data);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#writeTrailer(int)
+   */
+  @Override
+  protected void writeTrailer(int numberOfFrames) throws IOException {
+    if (palette!=null) {
+      out.write(0x3B);
+    }
+    out.close();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.utils.FilmEncoder#closeOutput()
+   */
+  @Override
+  protected void closeOutput() throws IOException {
+    out.close();
+  }
+
+  /**
+   * Writes a little-endian short.
+   * @param out
+   * @param value
+   * @throws IOException
+   */
+  private static void writeShort(OutputStream out, int value) throws IOException {
+    out.write(value & 0xFF);
+    out.write((value >> 8) & 0xFF);
+  }
+
+  /**
+   * LZW-compresses the given pixels and writes them as GIF data
+   * sub-blocks (including minimum code size and block terminator).
+   * @param pixels
+   * @param minCodeSize
+   * @param out
+   */
+  private static void compress(byte[] pixels, int minCodeSize, ByteArrayOutputStream out) {
+    out.write(minCodeSize);
+    BlockWriter writer = new BlockWriter(out);
+
+    int clearCode = 1<<minCodeSize;
+    int endCode = clearCode+1;
+    int nextCode = endCode+1;
+    int codeSize = minCodeSize+1;
+
+    // Open-addressing hash from (prefix code, pixel) to code
+    int[] hashKeys = new int[HASH_SIZE];
+    int[] hashCodes = new int[HASH_SIZE];
+    Arrays.fill(hashKeys, -1);
+
+    writer.writeCode(clearCode, codeSize);
+    int prefix = pixels[0] & 0xFF;
+    for (int i=1; i<pixels.length; i++) {
+      int pixel = pixels[i] & 0xFF;
+      int key = (prefix<<8) | pixel;
+      int h = ((pixel<<12) ^ prefix) % HASH_SIZE;
+      while (hashKeys[h]>=0 && hashKeys[h]!=key) {
+        h = (h+1) % HASH_SIZE;
+      }
+      if (hashKeys[h]==key) {
+        prefix = hashCodes[h];
+        continue;
+      }
+
+      writer.writeCode(prefix, codeSize);
+      if (nextCode>=(1<<codeSize) && codeSize<12) {
+        codeSize++;
+      }
+      if (nextCode<MAX_CODES) {
+        hashKeys[h] = key;
+        hashCodes[h] = nextCode++;
+      } else {
+        // Dictionary is full
+        writer.writeCode(clearCode, codeSize);
+        Arrays.fill(hashKeys, -1);
+        nextCode = endCode+1;
+        codeSize = minCodeSize+1;
+      }
+      prefix = pixel;
+    }
+    writer.writeCode(prefix, codeSize);
+    if (nextCode>=(1<<codeSize) && codeSize<12) {
+      codeSize++;
+    }
+    writer.writeCode(endCode, codeSize);
+    writer.finish();
+  }
+
+  /**
+   * Packs variable-length codes into GIF data sub-blocks.
+   */
+  private static class BlockWriter {
+    private final ByteArrayOutputStream out;
+    private final byte[] block = new byte[255];
+    private int blockSize=0;
+    private int bitBuffer=0;
+    private int bitCount=0;
+
+    BlockWriter(ByteArrayOutputStream out) {
+      this.out = out;
+    }
+
+    void writeCode(int code, int codeSize) {
+      bitBuffer |= code << bitCount;
+      bitCount += codeSize;
+      while (bitCount>=8) {
+        writeByte(bitBuffer & 0xFF);
+        bitBuffer >>>= 8;
+        bitCount -= 8;
+      }
+    }
+
+    private void writeByte(int b) {
+      block[blockSize++] = (byte) b;
+      if (blockSize==block.length) {
+        flushBlock();
+      }
+    }
+
+    private void flushBlock() {
+      if (blockSize>0) {
+        out.write(blockSize);
+        out.write(block, 0, blockSize);
+        blockSize=0;
+      }
+    }
+
+    void finish() {
+      if (bitCount>0) {
+        writeByte(bitBuffer & 0xFF);
+        bitBuffer=0;
+        bitCount=0;
+      }
+      flushBlock();
+      out.write(0); // block terminator
+    }
+  }
+
+}
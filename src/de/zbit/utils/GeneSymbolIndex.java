@@ -0,0 +1,290 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import de.zbit.gui.IntegratorUITools;
+import de.zbit.mapper.AbstractMapper;
+import de.zbit.mapper.GeneSymbol2GeneIDMapper;
+import de.zbit.mapper.MappingUtils.IdentifierType;
+import de.zbit.util.Species;
+import de.zbit.util.StringUtil;
+
+/**
+ * A shared, species-specific index to map (free-text) gene symbols
+ * to entrez gene ids. The underlying {@link GeneSymbol2GeneIDMapper}
+ * is acquired from the {@link MapperRegistry}, such that it is shared
+ * with all readers of gene symbols. All lookups are remembered under their
+ * upper-case key, such that the different spellings of a symbol
+ * ("ACTB", "Actb", "actb") only have to be resolved once.
+ *
+ * <p>Use {@link #map(String[])} to map many labels at once. All labels
+ * are tokenized once and resolved in parallel.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class GeneSymbolIndex {
+  public static final transient Logger log = Logger.getLogger(GeneSymbolIndex.class.getName());
+
+  /**
+   * Splits labels like "SYMBOL (SYMBOL, SYMBOL,....)" into single symbols.
+   */
+  private final static Pattern TOKEN_SEPARATOR = Pattern.compile("[\\s,\\(\\)]");
+
+  /**
+   * Marks symbols that can not be mapped in {@link #resolved}.
+   */
+  private final static Integer NOT_FOUND = Integer.MIN_VALUE;
+
+  /**
+   * One index per organism (common name).
+   */
+  private final static Map<String, FutureTask<GeneSymbolIndex>> instances = new HashMap<String, FutureTask<GeneSymbolIndex>>();
+
+  private final AbstractMapper<String, Integer> mapper;
+
+  /**
+   * All resolved symbols (key is the upper-case symbol).
+   */
+  private final Map<String, Integer> resolved = new ConcurrentHashMap<String, Integer>();
+
+  /**
+   * @param mapper
+   */
+  private GeneSymbolIndex(AbstractMapper<String, Integer> mapper) {
+    this.mapper = mapper;
+  }
+
+  /**
+   * @param species
+   * @return the shared index for the given species.
+   * @throws IOException if the mapping could not be read.
+   * @see #getInstance(String)
+   */
+  public static GeneSymbolIndex getInstance(Species species) throws IOException {
+    return getInstance(species.getCommonName());
+  }
+
+  /**
+   * Returns the shared index for the given organism. If the index is
+   * currently loaded by another thread, this method waits for it.
+   * @param organism in non-scientific format ("human", "mouse" or "rat").
+   * @return the shared index for the given organism.
+   * @throws IOException if the mapping could not be read.
+   */
+  public static GeneSymbolIndex getInstance(String organism) throws IOException {
+    FutureTask<GeneSymbolIndex> f = getTask(organism);
+    // Does nothing if the task is already running or done
+    f.run();
+    try {
+      return f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      synchronized (instances) {
+        // Allow a retry
+        if (instances.get(organism)==f) instances.remove(organism);
+      }
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Starts loading the index for the given species on the
+   * {@link ParallelUtils#getBackgroundPool()}, if it is not yet
+   * available.
+   * @param species
+   */
+  public static void prefetch(Species species) {
+    if (species==null) return;
+    FutureTask<GeneSymbolIndex> f = getTask(species.getCommonName());
+    if (!f.isDone()) {
+      ParallelUtils.getBackgroundPool().execute(f);
+    }
+  }
+
+  /**
+   * @param organism
+   * @return the (shared) task that loads the index of the given organism.
+   */
+  private static FutureTask<GeneSymbolIndex> getTask(final String organism) {
+    synchronized (instances) {
+      FutureTask<GeneSymbolIndex> f = instances.get(organism);
+      if (f==null) {
+        f = new FutureTask<GeneSymbolIndex>(new Callable<GeneSymbolIndex>() {
+          public GeneSymbolIndex call() throws Exception {
+            log.fine(String.format("Loading gene symbol index for '%s'.", organism));
+            // The index is kept for the whole session and thus, never releases the mapper
+            return new GeneSymbolIndex(MapperRegistry.get2GeneIDMapper(IdentifierType.GeneSymbol,
+              getSpecies(organism), null, true));
+          }
+        });
+        instances.put(organism, f);
+      }
+      return f;
+    }
+  }
+
+  /**
+   * @param organism in non-scientific format ("human", "mouse" or "rat").
+   * @return the supported {@link Species} with the given common name.
+   * @throws IOException if the organism is not supported.
+   */
+  private static Species getSpecies(String organism) throws IOException {
+    for (Species species: IntegratorUITools.organisms) {
+      if (species.getCommonName().equalsIgnoreCase(organism)) {
+        return species;
+      }
+    }
+    throw new IOException(String.format("Unsupported organism '%s'.", organism));
+  }
+
+  /**
+   * @return the underlying mapper.
+   */
+  public AbstractMapper<String, Integer> getMapper() {
+    return mapper;
+  }
+
+  /**
+   * Maps a single gene symbol, ignoring the case of the symbol.
+   * @param symbol
+   * @return the entrez gene id or <code>null</code> if none is available.
+   */
+  public Integer mapSymbol(String symbol) {
+    if (symbol==null) return null;
+    symbol = symbol.trim();
+    if (symbol.length()<1) return null;
+
+    String key = symbol.toUpperCase();
+    Integer entrez = resolved.get(key);
+    if (entrez==null) {
+      entrez = lookup(symbol);
+      if (entrez==null && !symbol.equals(key)) {
+        entrez = lookup(key);
+      }
+      resolved.put(key, entrez==null?NOT_FOUND:entrez);
+    }
+    return entrez==NOT_FOUND?null:entrez;
+  }
+
+  /**
+   * Queries the mapper with the given symbol and its
+   * first-letter-uppercase variant (e.g., for mouse symbols).
+   * @param symbol
+   * @return
+   */
+  private Integer lookup(String symbol) {
+    try {
+      Integer entrez = mapper.map(symbol);
+      if (entrez==null) {
+        String variant = StringUtil.firstLetterUpperCase(symbol.toLowerCase());
+        if (!variant.equals(symbol)) {
+          entrez = mapper.map(variant);
+        }
+      }
+      return entrez;
+    } catch (Exception e) {
+      log.log(Level.FINE, "Could not map " + symbol, e);
+      return null;
+    }
+  }
+
+  /**
+   * Maps a free-text label. If the complete label is no known symbol,
+   * the first token that is a known symbol is used (customized for labels
+   * like "SYMBOL (SYMBOL, SYMBOL,....)").
+   * @param label
+   * @return the entrez gene id or <code>null</code> if none is available.
+   */
+  public Integer map(String label) {
+    Integer entrez = mapSymbol(label);
+    if (entrez==null && label!=null) {
+      for (String token: TOKEN_SEPARATOR.split(label)) {
+        entrez = mapSymbol(token);
+        if (entrez!=null) break;
+      }
+    }
+    return entrez;
+  }
+
+  /**
+   * Maps all given labels in parallel (see {@link #map(String)}).
+   * Every distinct label is only processed once.
+   * @param labels
+   * @return the entrez gene ids (or <code>null</code>), in the same
+   * order as <code>labels</code>.
+   * @throws ExecutionException
+   */
+  public Integer[] map(final String[] labels) throws ExecutionException {
+    // Process every label only once
+    final Map<String, Integer> labelIndex = new HashMap<String, Integer>();
+    final List<String> distinct = new ArrayList<String>();
+    final int[] position = new int[labels.length];
+    for (int i=0; i<labels.length; i++) {
+      if (labels[i]==null) {
+        position[i] = -1;
+        continue;
+      }
+      Integer index = labelIndex.get(labels[i]);
+      if (index==null) {
+        index = distinct.size();
+        labelIndex.put(labels[i], index);
+        distinct.add(labels[i]);
+      }
+      position[i] = index;
+    }
+
+    final Integer[] distinctIds = new Integer[distinct.size()];
+    ParallelUtils.parallelFor(0, distinctIds.length, new ParallelUtils.RangeTask() {
+      public void run(int from, int to) {
+        for (int i=from; i<to; i++) {
+          distinctIds[i] = map(distinct.get(i));
+        }
+      }
+    });
+
+    Integer[] ret = new Integer[labels.length];
+    for (int i=0; i<labels.length; i++) {
+      ret[i] = position[i]<0 ? null : distinctIds[position[i]];
+    }
+    return ret;
+  }
+
+}
@@ -28,6 +28,15 @@ import java.awt.image.*;
 import java.io.*;
 import java.util.Iterator;
 
+/**
+ * Writes a sequence of images as animated GIF, using ImageIO's
+ * GIF writer. Every frame is palettized and compressed in full
+ * size on the calling thread.
+ * 
+ * @deprecated use {@link FilmEncoder}, which encodes frames in
+ * parallel with a global palette and only stores changed regions.
+ */
+@Deprecated
 public class GifSequenceWriter {
   protected ImageWriter gifWriter;
   protected ImageWriteParam imageWriteParam;
@@ -0,0 +1,243 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Stable sorting of primitive index arrays (permutations), without
+ * boxing any values. Used to sort columnar data, e.g. to get the
+ * order of a <code>double[]</code> of p-values.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class IndexSort {
+
+  /**
+   * Arrays smaller than this are sorted with insertion sort.
+   */
+  private final static int INSERTION_SORT_THRESHOLD = 16;
+
+  /**
+   * Compares two indices.
+   */
+  public static interface IndexComparator {
+    /**
+     * @param a
+     * @param b
+     * @return a negative integer, zero, or a positive integer as the
+     * element at index <code>a</code> is less than, equal to, or greater
+     * than the element at index <code>b</code>.
+     */
+    public int compare(int a, int b);
+  }
+
+  /**
+   * @param n
+   * @return the identity permutation <code>0, 1, ..., n-1</code>.
+   */
+  public static int[] identity(int n) {
+    int[] ret = new int[n];
+    for (int i=0; i<n; i++) {
+      ret[i]=i;
+    }
+    return ret;
+  }
+
+  /**
+   * Stable sort of the given indices.
+   * @param indices will be sorted in-place
+   * @param c
+   */
+  public static void sort(int[] indices, IndexComparator c) {
+    sort(indices, 0, indices.length, c);
+  }
+
+  /**
+   * Stable sort of a range of the given indices.
+   * @param indices will be sorted in-place
+   * @param from inclusive
+   * @param to exclusive
+   * @param c
+   */
+  public static void sort(int[] indices, int from, int to, IndexComparator c) {
+    int[] buffer = new int[to-from];
+    mergeSort(indices, buffer, from, to, c);
+  }
+
+  /**
+   * Stable sort of the given indices, using all threads of the
+   * {@link ParallelUtils#getComputePool()}. Chunks of the array are
+   * sorted concurrently and merged pairwise afterwards.
+   * <p>The comparator must be thread-safe (e.g., only read from
+   * primitive arrays).
+   * @param indices will be sorted in-place
+   * @param c
+   * @throws ExecutionException if the comparator failed.
+   */
+  public static void parallelSort(final int[] indices, final IndexComparator c) throws ExecutionException {
+    // Sort chunks
+    final List<int[]> runs = Collections.synchronizedList(new ArrayList<int[]>());
+    ParallelUtils.parallelFor(0, indices.length, new ParallelUtils.RangeTask() {
+      public void run(int from, int to) {
+        sort(indices, from, to, c);
+        runs.add(new int[]{from, to});
+      }
+    });
+    
+    List<int[]> current = new ArrayList<int[]>(runs);
+    Collections.sort(current, new Comparator<int[]>() {
+      public int compare(int[] o1, int[] o2) {
+        return o1[0]-o2[0];
+      }
+    });
+    
+    // Merge adjacent runs until only one is left
+    while (current.size()>1) {
+      List<int[]> next = new ArrayList<int[]>(current.size()/2+1);
+      List<Future<Void>> futures = new ArrayList<Future<Void>>(current.size()/2);
+      for (int i=0; i<current.size(); i+=2) {
+        if (i+1>=current.size()) {
+          next.add(current.get(i));
+          continue;
+        }
+        final int from = current.get(i)[0];
+        final int mid = current.get(i)[1];
+        final int to = current.get(i+1)[1];
+        futures.add(ParallelUtils.getComputePool().submit(new Callable<Void>() {
+          public Void call() {
+            merge(indices, new int[mid-from], from, mid, to, c);
+            return null;
+          }
+        }));
+        next.add(new int[]{from, to});
+      }
+      ParallelUtils.waitForAll(futures);
+      current = next;
+    }
+  }
+
+  /**
+   * @param values
+   * @param ascending
+   * @return a permutation that sorts the given values. NaNs are
+   * sorted to the end, independent of the sort order.
+   */
+  public static int[] sortByValue(final double[] values, final boolean ascending) {
+    int[] indices = identity(values.length);
+    sort(indices, createComparator(values, ascending));
+    return indices;
+  }
+
+  /**
+   * @param values
+   * @param ascending
+   * @return a comparator for indices of the given array. NaNs are
+   * always sorted to the end.
+   */
+  public static IndexComparator createComparator(final double[] values, final boolean ascending) {
+    return new IndexComparator() {
+      public int compare(int a, int b) {
+        double va = values[a], vb = values[b];
+        boolean na = Double.isNaN(va), nb = Double.isNaN(vb);
+        if (na || nb) {
+          return na==nb ? 0 : (na ? 1 : -1);
+        }
+        int r = Double.compare(va, vb);
+        return ascending ? r : -r;
+      }
+    };
+  }
+
+  /**
+   * @param indices
+   * @return the permutation that reverses <code>indices</code>, i.e.
+   * <code>ret[indices[i]] = i</code>.
+   */
+  public static int[] invert(int[] indices) {
+    int[] ret = new int[indices.length];
+    for (int i=0; i<indices.length; i++) {
+      ret[indices[i]] = i;
+    }
+    return ret;
+  }
+
+  /**
+   * Merges two consecutive, sorted ranges of <code>indices</code>.
+   * @param indices
+   * @param buffer at least as large as the first range.
+   * @param from
+   * @param mid
+   * @param to
+   * @param c
+   */
+  static void merge(int[] indices, int[] buffer, int from, int mid, int to, IndexComparator c) {
+    if (c.compare(indices[mid-1], indices[mid])<=0) return; // Already sorted
+    int leftLength = mid-from;
+    System.arraycopy(indices, from, buffer, 0, leftLength);
+    int i=0, j=mid, k=from;
+    while (i<leftLength && j<to) {
+      if (c.compare(indices[j], buffer[i])<0) {
+        indices[k++] = indices[j++];
+      } else {
+        indices[k++] = buffer[i++];
+      }
+    }
+    while (i<leftLength) {
+      indices[k++] = buffer[i++];
+    }
+  }
+
+  /**
+   * @param indices
+   * @param buffer
+   * @param from
+   * @param to
+   * @param c
+   */
+  private static void mergeSort(int[] indices, int[] buffer, int from, int to, IndexComparator c) {
+    if (to-from<=INSERTION_SORT_THRESHOLD) {
+      for (int i=from+1; i<to; i++) {
+        int v = indices[i];
+        int j=i-1;
+        while (j>=from && c.compare(indices[j], v)>0) {
+          indices[j+1] = indices[j];
+          j--;
+        }
+        indices[j+1] = v;
+      }
+      return;
+    }
+    int mid = (from+to)>>>1;
+    mergeSort(indices, buffer, from, mid, c);
+    mergeSort(indices, buffer, mid, to, c);
+    merge(indices, buffer, from, mid, to, c);
+  }
+
+}
@@ -0,0 +1,536 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import de.zbit.mapper.AbstractMapper;
+import de.zbit.mapper.MappingUtils;
+import de.zbit.mapper.MappingUtils.IdentifierType;
+import de.zbit.util.Species;
+import de.zbit.util.progressbar.AbstractProgressBar;
+
+/**
+ * A registry for shared mapper instances. Mappers are identified
+ * by their type, species and identifier type and every mapper
+ * is only read once, also if requested concurrently.
+ *
+ * <p>Mappers that are in use (see {@link #acquire(Class, Species, Object, Loader)}
+ * and {@link #release(Class, Species, Object)}) are always kept in memory.
+ * Of all unused mappers, the {@link #maximumRetained} most recently
+ * used ones are kept in memory, as long as enough memory is available.
+ * All other mappers are only softly referenced and thus, can be
+ * reclaimed by the garbage collector.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class MapperRegistry {
+  public static final transient Logger log = Logger.getLogger(MapperRegistry.class.getName());
+
+  /**
+   * Loads a mapper on a cache miss.
+   * @param <T> type of the mapper
+   */
+  public static interface Loader<T> {
+    /**
+     * @return the readily initialized mapper (or <code>null</code>
+     * if no mapper is required).
+     * @throws IOException
+     */
+    public T load() throws IOException;
+  }
+
+  /**
+   * The only instance of this class.
+   */
+  private static MapperRegistry instance = null;
+
+  /**
+   * Identifies a mapper.
+   */
+  private static class Key {
+    final Class<?> type;
+    final Integer taxonID;
+    final Object idType;
+
+    Key(Class<?> type, Species species, Object idType) {
+      this.type = type;
+      this.taxonID = species!=null?species.getNCBITaxonID():null;
+      this.idType = idType;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+      int hash = type.hashCode();
+      if (taxonID!=null) hash = hash*31 + taxonID.hashCode();
+      if (idType!=null) hash = hash*31 + idType.hashCode();
+      return hash;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) return false;
+      Key o = (Key) obj;
+      return type.equals(o.type) && (taxonID==null?o.taxonID==null:taxonID.equals(o.taxonID)) &&
+        (idType==null?o.idType==null:idType.equals(o.idType));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return type.getSimpleName() + (taxonID!=null?" " + taxonID:"") + (idType!=null?" " + idType:"");
+    }
+  }
+
+  /**
+   * A registered mapper.
+   */
+  private static class Entry {
+    /**
+     * Loads the mapper (only while loading).
+     */
+    FutureTask<Object> loader;
+    /**
+     * Reference to the loaded mapper.
+     */
+    SoftReference<Object> soft;
+    /**
+     * Strong reference, if the mapper is in use or retained.
+     */
+    Object strong;
+    /**
+     * Number of users (see {@link MapperRegistry#acquire(Class, Species, Object, Loader)}).
+     */
+    int references=0;
+
+    /**
+     * @return the mapper or <code>null</code> if it is not loaded
+     * or has been reclaimed.
+     */
+    Object get() {
+      if (strong!=null) return strong;
+      return soft!=null?soft.get():null;
+    }
+  }
+
+  /**
+   * All registered mappers.
+   */
+  private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+
+  /**
+   * Unused mappers that are kept in memory (in access order).
+   */
+  private final LinkedHashMap<Key, Entry> retained = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+  /**
+   * Maximum number of unused mappers that are kept in memory.
+   */
+  private int maximumRetained = 4;
+
+  /**
+   * Unused mappers are only kept in memory, if less than this
+   * fraction of the maximum memory is in use.
+   */
+  private final static double MAXIMUM_MEMORY_USAGE = 0.75;
+
+  /**
+   * Mapper types that are never kept in memory, if unused.
+   */
+  private final Set<Class<?>> neverRetain = new HashSet<Class<?>>();
+
+  /*
+   * Statistics
+   */
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong loadTime = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final static Metrics.Timer LOAD_TIME = Metrics.timer("mapper.loadTime");
+
+  private MapperRegistry() {
+    super();
+    Metrics.register("mapper.hits", new Metrics.Gauge() {
+      public Number getValue() {
+        return getHits();
+      }
+    });
+    Metrics.register("mapper.misses", new Metrics.Gauge() {
+      public Number getValue() {
+        return getMisses();
+      }
+    });
+    Metrics.register("mapper.evictions", new Metrics.Gauge() {
+      public Number getValue() {
+        return getEvictions();
+      }
+    });
+  }
+
+  /**
+   * @return the only instance of this class.
+   */
+  public synchronized static MapperRegistry getInstance() {
+    if (instance==null) {
+      instance = new MapperRegistry();
+    }
+    return instance;
+  }
+
+  /**
+   * @param maximumRetained maximum number of unused mappers that
+   * are kept in memory.
+   */
+  public synchronized void setMaximumRetained(int maximumRetained) {
+    this.maximumRetained = maximumRetained;
+    ensureRetainedSize();
+  }
+
+  /**
+   * Unused mappers of the given type are never kept in memory
+   * (i.e., only softly referenced). Use this for very large mappers.
+   * @param type
+   */
+  public synchronized void setNeverRetain(Class<?> type) {
+    neverRetain.add(type);
+    Iterator<Map.Entry<Key, Entry>> it = retained.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Key, Entry> e = it.next();
+      if (e.getKey().type.equals(type)) {
+        e.getValue().strong = null;
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns a shared mapper. The mapper is not marked as in use.
+   * @param <T>
+   * @param type type of the mapper
+   * @param species species of the mapper or <code>null</code>
+   * @param idType identifier type (or any other qualifier) of the
+   * mapper or <code>null</code>
+   * @param loader loads the mapper if it is not available
+   * @return the mapper
+   * @throws IOException
+   */
+  public <T> T get(Class<T> type, Species species, Object idType, Loader<? extends T> loader) throws IOException {
+    return get(new Key(type, species, idType), loader, false);
+  }
+
+  /**
+   * Returns a shared mapper and marks it as in use, until
+   * {@link #release(Class, Species, Object)} is called.
+   * @see #get(Class, Species, Object, Loader)
+   */
+  public <T> T acquire(Class<T> type, Species species, Object idType, Loader<? extends T> loader) throws IOException {
+    return get(new Key(type, species, idType), loader, true);
+  }
+
+  /**
+   * Marks a mapper as no longer in use by the caller.
+   * @param type
+   * @param species
+   * @param idType
+   * @see #acquire(Class, Species, Object, Loader)
+   */
+  public synchronized void release(Class<?> type, Species species, Object idType) {
+    Key key = new Key(type, species, idType);
+    Entry e = entries.get(key);
+    if (e==null || e.references<1) return;
+    e.references--;
+    if (e.references==0) {
+      retain(key, e);
+    }
+  }
+
+  /**
+   * @param key
+   * @param loader
+   * @param acquire
+   * @return the mapper
+   * @throws IOException
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T get(final Key key, final Loader<? extends T> loader, boolean acquire) throws IOException {
+    FutureTask<Object> task;
+    synchronized (this) {
+      Entry e = entries.get(key);
+      Object mapper = e!=null?e.get():null;
+      if (mapper!=null) {
+        hits.incrementAndGet();
+        use(key, e, mapper, acquire);
+        return (T) mapper;
+      }
+
+      if (e==null) {
+        e = new Entry();
+        entries.put(key, e);
+      }
+      if (e.loader==null) {
+        misses.incrementAndGet();
+        e.loader = new FutureTask<Object>(new Callable<Object>() {
+          public Object call() throws Exception {
+            long start = System.nanoTime();
+            Object mapper = loader.load();
+            long time = System.nanoTime()-start;
+            loadTime.addAndGet(time);
+            LOAD_TIME.update(time);
+            log.fine(String.format("Loaded %s in %s ms.", key, time/1000000));
+            return mapper;
+          }
+        });
+      } else {
+        // Currently loaded by another thread
+        hits.incrementAndGet();
+      }
+      task = e.loader;
+    }
+
+    // Load outside of the lock (does nothing if already running)
+    task.run();
+    Object mapper;
+    try {
+      mapper = task.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ex);
+    } catch (ExecutionException ex) {
+      synchronized (this) {
+        Entry e = entries.get(key);
+        if (e!=null && e.loader==task) e.loader = null; // Allow a retry
+      }
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw new IOException(ex.getCause());
+    }
+
+    synchronized (this) {
+      Entry e = entries.get(key);
+      if (e==null) {
+        // Another thread already removed the entry, because the
+        // loader returned no mapper (i.e., mapper is null, too).
+        return (T) mapper;
+      }
+      if (e.loader==task) {
+        e.loader = null;
+        e.soft = mapper!=null?new SoftReference<Object>(mapper):null;
+      }
+      if (mapper!=null) {
+        use(key, e, mapper, acquire);
+      } else if (e.references<1) {
+        entries.remove(key);
+      }
+    }
+    return (T) mapper;
+  }
+
+  /**
+   * Marks the given entry as most recently used (must be called
+   * while holding the lock).
+   * @param key
+   * @param e
+   * @param mapper
+   * @param acquire
+   */
+  private void use(Key key, Entry e, Object mapper, boolean acquire) {
+    e.strong = mapper;
+    if (acquire) {
+      e.references++;
+      retained.remove(key);
+    } else if (e.references<1) {
+      retain(key, e);
+    }
+  }
+
+  /**
+   * Keeps an unused mapper in memory, if possible (must be called
+   * while holding the lock).
+   * @param key
+   * @param e
+   */
+  private void retain(Key key, Entry e) {
+    if (neverRetain.contains(key.type)) {
+      e.strong = null;
+      return;
+    }
+    retained.put(key, e);
+    ensureRetainedSize();
+  }
+
+  /**
+   * Removes the strong references of the least recently used
+   * mappers, if too many mappers are retained or not enough
+   * memory is available.
+   */
+  private void ensureRetainedSize() {
+    Runtime rt = Runtime.getRuntime();
+    boolean lowMemory = (rt.totalMemory()-rt.freeMemory()) > rt.maxMemory()*MAXIMUM_MEMORY_USAGE;
+    Iterator<Map.Entry<Key, Entry>> it = retained.entrySet().iterator();
+    while (it.hasNext() && (retained.size()>maximumRetained || (lowMemory && retained.size()>1))) {
+      Map.Entry<Key, Entry> e = it.next();
+      e.getValue().strong = null;
+      it.remove();
+      evictions.incrementAndGet();
+      log.finer("Mapper " + e.getKey() + " may now be reclaimed.");
+    }
+  }
+
+  /**
+   * Returns a shared, initialized mapper from any identifier type
+   * to entrez gene ids.
+   * @param idType
+   * @param species
+   * @param prog used if the mapper must be read
+   * @param acquire if true, the mapper must be released afterwards
+   * (see {@link #release(Class, Species, Object)} with
+   * {@link AbstractMapper} as type).
+   * @return the mapper or <code>null</code> if <code>idType</code>
+   * requires no mapping.
+   * @throws IOException
+   * @see MappingUtils#initialize2GeneIDMapper(IdentifierType, AbstractProgressBar, Species)
+   */
+  @SuppressWarnings("unchecked")
+  public static AbstractMapper<String, Integer> get2GeneIDMapper(final IdentifierType idType,
+    final Species species, final AbstractProgressBar prog, boolean acquire) throws IOException {
+    Loader<AbstractMapper<String, Integer>> loader = new Loader<AbstractMapper<String, Integer>>() {
+      public AbstractMapper<String, Integer> load() throws IOException {
+        AbstractMapper<String, Integer> mapper = MappingUtils.initialize2GeneIDMapper(idType, prog, species);
+        initialize(mapper);
+        return mapper;
+      }
+    };
+    MapperRegistry r = getInstance();
+    return (AbstractMapper<String, Integer>) (acquire?r.acquire(AbstractMapper.class, species, idType, loader):
+      r.get(AbstractMapper.class, species, idType, loader));
+  }
+
+  /**
+   * Returns a shared, initialized mapper from any compound identifier
+   * type to InChIKeys.
+   * @param idType
+   * @param prog used if the mapper must be read
+   * @param acquire if true, the mapper must be released afterwards
+   * (see {@link #release(Class, Species, Object)} with
+   * {@link AbstractMapper} as type and no species).
+   * @return the mapper or <code>null</code> if <code>idType</code>
+   * requires no mapping.
+   * @throws IOException
+   * @see MappingUtils#initialize2InChIKeyMapper(IdentifierType, AbstractProgressBar)
+   */
+  @SuppressWarnings("unchecked")
+  public static AbstractMapper<String, Set<String>> get2InChIKeyMapper(final IdentifierType idType,
+    final AbstractProgressBar prog, boolean acquire) throws IOException {
+    Loader<AbstractMapper<String, Set<String>>> loader = new Loader<AbstractMapper<String, Set<String>>>() {
+      public AbstractMapper<String, Set<String>> load() throws IOException {
+        AbstractMapper<String, Set<String>> mapper = MappingUtils.initialize2InChIKeyMapper(idType, prog);
+        initialize(mapper);
+        return mapper;
+      }
+    };
+    MapperRegistry r = getInstance();
+    return (AbstractMapper<String, Set<String>>) (acquire?r.acquire(AbstractMapper.class, null, idType, loader):
+      r.get(AbstractMapper.class, null, idType, loader));
+  }
+
+  /**
+   * Reads the mapping data of the given mapper.
+   * @param mapper might be <code>null</code>.
+   * @throws IOException
+   */
+  private static void initialize(AbstractMapper<?, ?> mapper) throws IOException {
+    if (mapper==null) return;
+    try {
+      mapper.readMappingData();
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * @return number of requests that could be served from memory.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of requests that required to load a mapper.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return total time spent loading mappers in milliseconds.
+   */
+  public long getLoadTime() {
+    return loadTime.get()/1000000;
+  }
+
+  /**
+   * @return number of mappers that have been released to the
+   * garbage collector.
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public synchronized String toString() {
+    int inUse=0, loaded=0;
+    for (Entry e: entries.values()) {
+      if (e.references>0) inUse++;
+      if (e.get()!=null) loaded++;
+    }
+    return String.format("%s [mappers loaded=%s, in use=%s, retained=%s, hits=%s, misses=%s, load time=%s ms, evictions=%s]",
+      getClass().getSimpleName(), loaded, inUse, retained.size(), getHits(), getMisses(), getLoadTime(), getEvictions());
+  }
+
+}
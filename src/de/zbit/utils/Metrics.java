@@ -0,0 +1,667 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Lightweight runtime metrics (counters, timers and histograms) of
+ * Integrator, e.g., rows read per second, enrichment terms scored or
+ * pathway nodes colored.
+ * 
+ * <p>Metrics are disabled by default. While disabled, every update is
+ * a single read of a volatile field and {@link Timer#start()} does not
+ * even query the system clock. Thus, metrics may be put on any code
+ * path. Metrics are created once and should be kept in static fields:
+ * <pre>
+ * private final static Metrics.Timer READ_TIME = Metrics.timer("reader.time");
+ * ...
+ * long start = READ_TIME.start();
+ * // Do something
+ * READ_TIME.stop(start);
+ * </pre>
+ * 
+ * <p>All metrics are exposed as attributes of the MBean {@link #OBJECT_NAME}
+ * (see {@link #registerMBean()}), where they can also be enabled at
+ * runtime, and can periodically be written to the log (see
+ * {@link #startReporter(int)}).
+ * 
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class Metrics {
+  public static final transient Logger log = Logger.getLogger(Metrics.class.getName());
+  
+  /**
+   * Name of the MBean that exposes all metrics.
+   */
+  public final static String OBJECT_NAME = "de.zbit.integrator:type=Metrics";
+  
+  /**
+   * Provides a value that is computed elsewhere (e.g., the
+   * statistics of a cache).
+   */
+  public static interface Gauge {
+    /**
+     * @return the current value.
+     */
+    public Number getValue();
+  }
+  
+  /**
+   * If false, all updates are ignored.
+   */
+  private static volatile boolean enabled = false;
+  
+  /**
+   * All metrics by name.
+   */
+  private final static ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+  
+  /**
+   * Writes the metrics periodically to the log (see {@link #startReporter(int)}).
+   */
+  private static ScheduledExecutorService reporter = null;
+  
+  /**
+   * Values of the last report, to report only changed values.
+   */
+  private static SortedMap<String, Number> lastReport = null;
+  
+  /**
+   * Time of the last report in nanoseconds.
+   */
+  private static long lastReportTime;
+  
+  /**
+   * Utility class.
+   */
+  private Metrics() {
+    super();
+  }
+  
+  /**
+   * Any named metric.
+   */
+  public static abstract class Metric {
+    /**
+     * Unique name (e.g., "reader.rows").
+     */
+    private final String name;
+    
+    Metric(String name) {
+      super();
+      this.name = name;
+    }
+    
+    /**
+     * @return the unique name of this metric.
+     */
+    public String getName() {
+      return name;
+    }
+    
+    /**
+     * Adds all values of this metric to <code>values</code>.
+     * Single-valued metrics use their name, all others append
+     * the kind of value (e.g., "reader.time.mean").
+     * @param values
+     */
+    abstract void addValues(Map<String, Number> values);
+    
+    /**
+     * Resets this metric to its initial state.
+     */
+    abstract void reset();
+  }
+  
+  /**
+   * Counts events (e.g., parsed rows or parse errors).
+   */
+  public static class Counter extends Metric {
+    private final AtomicLong count = new AtomicLong();
+    
+    Counter(String name) {
+      super(name);
+    }
+    
+    /**
+     * Increments this counter by one.
+     */
+    public void inc() {
+      if (enabled) count.incrementAndGet();
+    }
+    
+    /**
+     * Increments this counter by <code>n</code>.
+     * @param n
+     */
+    public void add(long n) {
+      if (enabled) count.addAndGet(n);
+    }
+    
+    /**
+     * @return the current count.
+     */
+    public long getCount() {
+      return count.get();
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.utils.Metrics.Metric#addValues(java.util.Map)
+     */
+    @Override
+    void addValues(Map<String, Number> values) {
+      values.put(getName(), getCount());
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.utils.Metrics.Metric#reset()
+     */
+    @Override
+    void reset() {
+      count.set(0);
+    }
+  }
+  
+  /**
+   * Records the distribution of non-negative values (e.g., rows
+   * per second). Values are counted in buckets of powers of two,
+   * which is why percentiles are only accurate up to a factor of two.
+   */
+  public static class Histogram extends Metric {
+    /**
+     * Bucket <code>i</code> counts values in [2^(i-1), 2^i).
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(65);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    Histogram(String name) {
+      super(name);
+    }
+    
+    /**
+     * Records a value. Negative values are recorded as zero.
+     * @param value
+     */
+    public void update(long value) {
+      if (!enabled) return;
+      if (value<0) value = 0;
+      buckets.incrementAndGet(64-Long.numberOfLeadingZeros(value));
+      count.incrementAndGet();
+      sum.addAndGet(value);
+      long m;
+      while (value>(m=max.get()) && !max.compareAndSet(m, value));
+    }
+    
+    /**
+     * @return number of recorded values.
+     */
+    public long getCount() {
+      return count.get();
+    }
+    
+    /**
+     * @return sum of all recorded values.
+     */
+    public long getSum() {
+      return sum.get();
+    }
+    
+    /**
+     * @return the mean of all recorded values.
+     */
+    public double getMean() {
+      long c = count.get();
+      return c>0?sum.get()/(double)c:0;
+    }
+    
+    /**
+     * @return the largest recorded value.
+     */
+    public long getMax() {
+      return max.get();
+    }
+    
+    /**
+     * @param p e.g., 0.95
+     * @return upper bound of the bucket that contains the
+     * <code>p</code> percentile.
+     */
+    public long getPercentile(double p) {
+      long total = count.get();
+      if (total<1) return 0;
+      long rank = (long) Math.ceil(total*p);
+      long seen = 0;
+      for (int i=0; i<buckets.length(); i++) {
+        seen += buckets.get(i);
+        if (seen>=Math.max(1, rank)) {
+          long upper = i==0?0:(i>=63?Long.MAX_VALUE:(1L<<i)-1);
+          return Math.min(upper, getMax());
+        }
+      }
+      return getMax();
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.utils.Metrics.Metric#addValues(java.util.Map)
+     */
+    @Override
+    void addValues(Map<String, Number> values) {
+      values.put(getName() + ".count", getCount());
+      values.put(getName() + ".mean", getMean());
+      values.put(getName() + ".p50", getPercentile(0.5));
+      values.put(getName() + ".p95", getPercentile(0.95));
+      values.put(getName() + ".max", getMax());
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.utils.Metrics.Metric#reset()
+     */
+    @Override
+    void reset() {
+      for (int i=0; i<buckets.length(); i++) {
+        buckets.set(i, 0);
+      }
+      count.set(0);
+      sum.set(0);
+      max.set(0);
+    }
+  }
+  
+  /**
+   * Measures durations. Values are recorded in nanoseconds and
+   * reported in milliseconds.
+   */
+  public static class Timer extends Histogram {
+    
+    Timer(String name) {
+      super(name);
+    }
+    
+    /**
+     * @return the start time for {@link #stop(long)} or 0 if metrics
+     * are disabled.
+     */
+    public long start() {
+      return enabled?System.nanoTime():0;
+    }
+    
+    /**
+     * Records the time since <code>start</code>.
+     * @param start as returned by {@link #start()}.
+     * @return the recorded time in nanoseconds or 0 if nothing has
+     * been recorded.
+     */
+    public long stop(long start) {
+      if (start==0 || !enabled) return 0;
+      long time = System.nanoTime()-start;
+      update(time);
+      return time;
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.utils.Metrics.Histogram#addValues(java.util.Map)
+     */
+    @Override
+    void addValues(Map<String, Number> values) {
+      values.put(getName() + ".count", getCount());
+      values.put(getName() + ".totalMs", getSum()/1000000);
+      values.put(getName() + ".meanMs", getMean()/1000000);
+      values.put(getName() + ".p95Ms", getPercentile(0.95)/1000000d);
+      values.put(getName() + ".maxMs", getMax()/1000000d);
+    }
+  }
+  
+  /**
+   * Wraps a {@link Gauge}.
+   */
+  private static class GaugeMetric extends Metric {
+    private final Gauge gauge;
+    
+    GaugeMetric(String name, Gauge gauge) {
+      super(name);
+      this.gauge = gauge;
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.utils.Metrics.Metric#addValues(java.util.Map)
+     */
+    @Override
+    void addValues(Map<String, Number> values) {
+      try {
+        Number value = gauge.getValue();
+        if (value!=null) values.put(getName(), value);
+      } catch (Throwable t) {
+        log.log(Level.FINE, "Could not read gauge " + getName(), t);
+      }
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.utils.Metrics.Metric#reset()
+     */
+    @Override
+    void reset() {
+      // Values are maintained by the owner of the gauge
+    }
+  }
+  
+  /**
+   * @param name
+   * @return the counter with the given name.
+   */
+  public static Counter counter(String name) {
+    return get(name, Counter.class);
+  }
+  
+  /**
+   * @param name
+   * @return the histogram with the given name.
+   */
+  public static Histogram histogram(String name) {
+    return get(name, Histogram.class);
+  }
+  
+  /**
+   * @param name
+   * @return the timer with the given name.
+   */
+  public static Timer timer(String name) {
+    return get(name, Timer.class);
+  }
+  
+  /**
+   * Registers a gauge. An existing gauge with the same name is
+   * replaced.
+   * @param name
+   * @param gauge
+   */
+  public static void register(String name, Gauge gauge) {
+    Metric old = metrics.put(name, new GaugeMetric(name, gauge));
+    if (old!=null && !(old instanceof GaugeMetric)) {
+      metrics.put(name, old);
+      throw new IllegalArgumentException(String.format("Metric '%s' is no gauge.", name));
+    }
+  }
+  
+  /**
+   * @param name
+   * @param type
+   * @return the existing or a new metric with the given name.
+   * @throws IllegalArgumentException if a metric of another type
+   * with the same name exists.
+   */
+  private static <T extends Metric> T get(String name, Class<T> type) {
+    Metric m = metrics.get(name);
+    if (m==null) {
+      if (type.equals(Counter.class)) m = new Counter(name);
+      else if (type.equals(Timer.class)) m = new Timer(name);
+      else m = new Histogram(name);
+      Metric old = metrics.putIfAbsent(name, m);
+      if (old!=null) m = old;
+    }
+    if (!m.getClass().equals(type)) {
+      throw new IllegalArgumentException(String.format("Metric '%s' is a %s.", name, m.getClass().getSimpleName()));
+    }
+    return type.cast(m);
+  }
+  
+  /**
+   * @return true if metrics are recorded.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+  
+  /**
+   * @param enabled if false, all updates are ignored.
+   */
+  public static void setEnabled(boolean enabled) {
+    Metrics.enabled = enabled;
+  }
+  
+  /**
+   * Resets all metrics (gauges are not affected).
+   */
+  public static void reset() {
+    for (Metric m : metrics.values()) {
+      m.reset();
+    }
+  }
+  
+  /**
+   * @return the current values of all metrics, sorted by name.
+   */
+  public static SortedMap<String, Number> getValues() {
+    SortedMap<String, Number> values = new TreeMap<String, Number>();
+    for (Metric m : metrics.values()) {
+      m.addValues(values);
+    }
+    return values;
+  }
+  
+  /**
+   * Registers the metrics MBean ({@link #OBJECT_NAME}) at the platform
+   * MBean server. Does nothing, if it is already registered.
+   */
+  public synchronized static void registerMBean() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new MetricsMBean(), name);
+      }
+    } catch (Exception e) {
+      log.log(Level.WARNING, "Could not register metrics MBean.", e);
+    }
+  }
+  
+  /**
+   * Periodically writes all changed metrics to the log. Replaces a
+   * running reporter.
+   * @param periodInSeconds
+   */
+  public synchronized static void startReporter(int periodInSeconds) {
+    stopReporter();
+    if (periodInSeconds<1) return;
+    reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Metrics reporter");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+      }
+    });
+    reporter.scheduleAtFixedRate(new Runnable() {
+      public void run() {
+        report();
+      }
+    }, periodInSeconds, periodInSeconds, TimeUnit.SECONDS);
+  }
+  
+  /**
+   * Stops the reporter (see {@link #startReporter(int)}).
+   */
+  public synchronized static void stopReporter() {
+    if (reporter!=null) {
+      reporter.shutdownNow();
+      reporter = null;
+    }
+  }
+  
+  /**
+   * Writes all values that changed since the last report to the log.
+   * For counters, also the rate per second is given.
+   */
+  public synchronized static void report() {
+    long now = System.nanoTime();
+    double seconds = lastReport!=null?(now-lastReportTime)/1E9:0;
+    SortedMap<String, Number> values = getValues();
+    
+    List<String> lines = new ArrayList<String>();
+    for (Map.Entry<String, Number> e : values.entrySet()) {
+      Number old = lastReport!=null?lastReport.get(e.getKey()):null;
+      if (old!=null && old.equals(e.getValue())) continue;
+      
+      Metric m = metrics.get(e.getKey());
+      if (m instanceof Counter && old!=null && seconds>0) {
+        long delta = e.getValue().longValue()-old.longValue();
+        lines.add(String.format("  %s=%s (+%s, %.1f/s)", e.getKey(), e.getValue(), delta, delta/seconds));
+      } else {
+        lines.add(String.format("  %s=%s", e.getKey(), e.getValue()));
+      }
+    }
+    lastReport = values;
+    lastReportTime = now;
+    
+    if (lines.size()>0) {
+      StringBuilder sb = new StringBuilder("Metrics:");
+      for (String line : lines) {
+        sb.append('\n').append(line);
+      }
+      log.info(sb.toString());
+    }
+  }
+  
+  /**
+   * Exposes all metrics as read-only attributes. Additionally, the
+   * "Enabled" attribute and a "reset" operation are provided.
+   */
+  private static class MetricsMBean implements DynamicMBean {
+    private final static String ENABLED = "Enabled";
+    private final static String RESET = "reset";
+    
+    /* (non-Javadoc)
+     * @see javax.management.DynamicMBean#getAttribute(java.lang.String)
+     */
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      if (ENABLED.equals(attribute)) return isEnabled();
+      Number value = getValues().get(attribute);
+      if (value==null) throw new AttributeNotFoundException(attribute);
+      return value;
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.management.DynamicMBean#setAttribute(javax.management.Attribute)
+     */
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException {
+      if (!ENABLED.equals(attribute.getName())) {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only.");
+      }
+      if (!(attribute.getValue() instanceof Boolean)) {
+        throw new InvalidAttributeValueException(String.valueOf(attribute.getValue()));
+      }
+      setEnabled((Boolean) attribute.getValue());
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.management.DynamicMBean#getAttributes(java.lang.String[])
+     */
+    public AttributeList getAttributes(String[] attributes) {
+      SortedMap<String, Number> values = getValues();
+      AttributeList list = new AttributeList();
+      for (String attribute : attributes) {
+        if (ENABLED.equals(attribute)) {
+          list.add(new Attribute(attribute, isEnabled()));
+        } else if (values.containsKey(attribute)) {
+          list.add(new Attribute(attribute, values.get(attribute)));
+        }
+      }
+      return list;
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.management.DynamicMBean#setAttributes(javax.management.AttributeList)
+     */
+    public AttributeList setAttributes(AttributeList attributes) {
+      AttributeList set = new AttributeList();
+      for (Object o : attributes) {
+        Attribute a = (Attribute) o;
+        try {
+          setAttribute(a);
+          set.add(a);
+        } catch (Exception e) {
+          log.log(Level.FINE, "Could not set " + a.getName(), e);
+        }
+      }
+      return set;
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.management.DynamicMBean#invoke(java.lang.String, java.lang.Object[], java.lang.String[])
+     */
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+      if (RESET.equals(actionName)) {
+        reset();
+        return null;
+      }
+      throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.management.DynamicMBean#getMBeanInfo()
+     */
+    public MBeanInfo getMBeanInfo() {
+      SortedMap<String, Number> values = getValues();
+      List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>(values.size()+1);
+      attributes.add(new MBeanAttributeInfo(ENABLED, Boolean.class.getName(), "If true, metrics are recorded.", true, true, true));
+      for (Map.Entry<String, Number> e : values.entrySet()) {
+        attributes.add(new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(), e.getKey(), true, false, false));
+      }
+      MBeanOperationInfo reset = new MBeanOperationInfo(RESET, "Resets all metrics.",
+        new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+      return new MBeanInfo(Metrics.class.getName(), "Runtime metrics of Integrator.",
+        attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{reset}, null);
+    }
+  }
+  
+}
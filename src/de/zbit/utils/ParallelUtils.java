@@ -0,0 +1,208 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Provides a shared pool of worker threads and simple means
+ * to split index ranges over those threads.
+ *
+ * <p>All threads are daemon threads, so the pools never prevent
+ * the application from exiting.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class ParallelUtils {
+  public static final transient Logger log = Logger.getLogger(ParallelUtils.class.getName());
+
+  /**
+   * Ranges smaller than this are processed in the calling thread.
+   */
+  public final static int MIN_CHUNK_SIZE = 1024;
+
+  /**
+   * Pool for computational work.
+   */
+  private static ExecutorService computePool = null;
+
+  /**
+   * Pool for low-priority background work (preloading, cleaning caches, ...).
+   */
+  private static ExecutorService backgroundPool = null;
+
+  /**
+   * A simple callback for {@link #parallelFor(int, int, RangeTask)}.
+   */
+  public static interface RangeTask {
+    /**
+     * Process all indices from <code>from</code> (inclusive) to
+     * <code>to</code> (exclusive).
+     * @param from
+     * @param to
+     * @throws Exception
+     */
+    public void run(int from, int to) throws Exception;
+  }
+
+  /**
+   * @return number of available processors.
+   */
+  public static int getNumberOfThreads() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @return the shared pool for computational work. The pool contains
+   * one thread per available processor.
+   */
+  public static synchronized ExecutorService getComputePool() {
+    if (computePool==null) {
+      computePool = Executors.newFixedThreadPool(getNumberOfThreads(),
+        createThreadFactory("InCroMAP-worker", Thread.NORM_PRIORITY));
+    }
+    return computePool;
+  }
+
+  /**
+   * @return the shared pool for low-priority background work.
+   */
+  public static synchronized ExecutorService getBackgroundPool() {
+    if (backgroundPool==null) {
+      backgroundPool = Executors.newFixedThreadPool(Math.max(1, getNumberOfThreads()/2),
+        createThreadFactory("InCroMAP-background", Thread.MIN_PRIORITY));
+    }
+    return backgroundPool;
+  }
+
+  /**
+   * @param prefix name prefix for all threads
+   * @param priority thread priority
+   * @return a factory for named daemon threads.
+   */
+  public static ThreadFactory createThreadFactory(final String prefix, final int priority) {
+    return new ThreadFactory() {
+      private final AtomicInteger counter = new AtomicInteger(0);
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+        t.setDaemon(true);
+        t.setPriority(priority);
+        return t;
+      }
+    };
+  }
+
+  /**
+   * Splits the range from <code>from</code> to <code>to</code> in
+   * chunks and processes them in parallel on the {@link #getComputePool()}.
+   * Blocks until all chunks are done.
+   * @param from inclusive
+   * @param to exclusive
+   * @param task
+   * @throws ExecutionException if any chunk failed.
+   */
+  public static void parallelFor(int from, int to, final RangeTask task) throws ExecutionException {
+    int size = to-from;
+    if (size<=0) return;
+    int chunks = Math.min(getNumberOfThreads()*4, (size+MIN_CHUNK_SIZE-1)/MIN_CHUNK_SIZE);
+
+    // Small ranges or calls from within the pool are processed directly.
+    if (chunks<=1 || isWorkerThread()) {
+      try {
+        task.run(from, to);
+      } catch (Exception e) {
+        throw new ExecutionException(e);
+      }
+      return;
+    }
+
+    int chunkSize = (size+chunks-1)/chunks;
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(chunks);
+    for (int start=from; start<to; start+=chunkSize) {
+      final int s = start;
+      final int e = Math.min(to, start+chunkSize);
+      futures.add(getComputePool().submit(new Callable<Void>() {
+        public Void call() throws Exception {
+          task.run(s, e);
+          return null;
+        }
+      }));
+    }
+    waitForAll(futures);
+  }
+
+  /**
+   * Waits for all given futures. If any failed, the remaining
+   * ones are cancelled and the first exception is thrown.
+   * @param <T>
+   * @param futures
+   * @return all results in the same order as the futures.
+   * @throws ExecutionException
+   */
+  public static <T> List<T> waitForAll(List<Future<T>> futures) throws ExecutionException {
+    List<T> ret = new ArrayList<T>(futures.size());
+    try {
+      for (Future<T> f: futures) {
+        ret.add(f.get());
+      }
+    } catch (InterruptedException e) {
+      cancelAll(futures);
+      Thread.currentThread().interrupt();
+      throw new ExecutionException(e);
+    } catch (ExecutionException e) {
+      cancelAll(futures);
+      throw e;
+    }
+    return ret;
+  }
+
+  /**
+   * Cancels all given futures.
+   * @param futures
+   */
+  public static void cancelAll(List<? extends Future<?>> futures) {
+    for (Future<?> f: futures) {
+      f.cancel(true);
+    }
+  }
+
+  /**
+   * @return true if the current thread belongs to the
+   * {@link #getComputePool()}. Used to avoid nested parallelization
+   * (and thus, dead-locks in bounded pools). Background threads may
+   * still distribute their work on the compute pool.
+   */
+  public static boolean isWorkerThread() {
+    return Thread.currentThread().getName().startsWith("InCroMAP-worker");
+  }
+
+}
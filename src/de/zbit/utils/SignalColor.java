@@ -60,6 +60,17 @@ public class SignalColor {
    */
   AbstractRescale lblue;
   
+  /**
+   * Smallest and largest value that gets a distinct color.
+   */
+  private double minValue, maxValue;
+  
+  /**
+   * True if the colors are distributed logarithmically between
+   * {@link #minValue} and {@link #maxValue} (p-values).
+   */
+  private boolean logarithmicScale;
+  
   /**
    * Initiate a color gradient scale, based on the {@link Signal} values from 
    * the given <code>nsList</code>. The colors and the value for the maximum
@@ -144,6 +155,9 @@ public class SignalColor {
       
       // Make a symmetric min and max (-3 to +3) instead of -2.9 to + 3.2 because of better coloring then.
       minMax = new double[]{-maxFC.doubleValue(), maxFC.doubleValue()};
+      minValue = minMax[0];
+      maxValue = minMax[1];
+      logarithmicScale = false;
       
       // Initiate color rescalers
       if (dataIsLogarithmized) {
@@ -164,6 +178,10 @@ public class SignalColor {
       // Ensure a valid number for p-values 
       if (isPvalue && (maxFC<0 || maxFC>1)) {maxFC = 0.0005;}
       
+      minValue = maxFC;
+      maxValue = 1;
+      logarithmicScale = true;
+      
       // Initiate color rescalers for P-values 
       lred = new LogarithmicRescale(maxFC, 1, 10, getColorChannel(0, gradientColors));
       lgreen = new LogarithmicRescale(maxFC, 1, 10, getColorChannel(1, gradientColors));
@@ -186,6 +204,30 @@ public class SignalColor {
   }
   
 
+  /**
+   * Samples the whole color scale, e.g., to build a color palette
+   * that contains all colors this instance might return.
+   * @param steps number of colors (at least 2).
+   * @return <code>steps</code> colors, from the color for the minimum
+   * to the color for the maximum value.
+   */
+  public Color[] getColorScale(int steps) {
+    steps = Math.max(2, steps);
+    Color[] ret = new Color[steps];
+    for (int i=0; i<steps; i++) {
+      double f = i/(double)(steps-1);
+      double d;
+      if (logarithmicScale) {
+        double logMin = Math.log(Math.max(minValue, Double.MIN_NORMAL));
+        d = Math.exp(logMin + f*(Math.log(maxValue)-logMin));
+      } else {
+        d = minValue + f*(maxValue-minValue);
+      }
+      ret[i] = getColor(d);
+    }
+    return ret;
+  }
+  
   /**
    * Returns a value between 0 and 255.
    * @param lcolor configured rescaler for the color
@@ -0,0 +1,457 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.swing.SwingUtilities;
+
+import de.zbit.data.NameAndSignals;
+import de.zbit.data.Signal;
+import de.zbit.data.TableResult;
+import de.zbit.data.id.GeneID;
+import de.zbit.gui.customcomponents.TableResultTableModel;
+
+/**
+ * A search index over the rows of a table of {@link TableResult}s.
+ * The index is a sorted dictionary of lower-cased keys, each pointing
+ * to all rows that contain this key. Keys are names, unique labels, gene
+ * ids and all textual columns (e.g., additional data) of each row. Values
+ * that consist of multiple words are also indexed word by word.
+ *
+ * <p>Exact and prefix queries require only a binary search in the
+ * dictionary (see {@link #findExact(String)} and {@link #findPrefix(String)}).
+ * Rows are indices in the indexed collection (i.e., model indices).
+ * If some rows change, {@link #update(String[][], BitSet)} creates a new
+ * index from this one, reading only the changed rows.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class TableSearchIndex {
+  public static final transient Logger log = Logger.getLogger(TableSearchIndex.class.getName());
+
+  /**
+   * Values are split into words at these characters.
+   */
+  private final static Pattern wordSeparator = Pattern.compile("[\\s,;|/()\\[\\]\"]+");
+
+  /**
+   * Values that are longer than this are only indexed word by word.
+   */
+  private final static int MAXIMUM_KEY_LENGTH = 128;
+
+  /**
+   * Maximum number of rows, whose keys are read at once in the event
+   * dispatch thread (see {@link #getKeys(List, BitSet)}).
+   */
+  private final static int ROWS_PER_SNAPSHOT = 2000;
+
+  /**
+   * Number of indexed rows.
+   */
+  private final int rows;
+
+  /**
+   * All keys (sorted, unique and lower-cased).
+   */
+  private final String[] keys;
+
+  /**
+   * Rows of key <code>i</code> are <code>postings[offsets[i]]</code>
+   * to <code>postings[offsets[i+1]-1]</code> (sorted).
+   */
+  private final int[] offsets;
+  private final int[] postings;
+
+  /**
+   * A list of (key, row) pairs.
+   */
+  private static class Pairs {
+    final String[] keys;
+    final int[] rows;
+    int size = 0;
+
+    Pairs(int capacity) {
+      keys = new String[capacity];
+      rows = new int[capacity];
+    }
+
+    void add(String key, int row) {
+      keys[size] = key;
+      rows[size++] = row;
+    }
+
+    /**
+     * @return the order of all pairs, sorted by key and row.
+     */
+    int[] sort() {
+      int[] order = IndexSort.identity(size);
+      IndexSort.parallelSort(order, new IndexSort.IndexComparator() {
+        public int compare(int a, int b) {
+          int r = keys[a].compareTo(keys[b]);
+          if (r!=0) return r;
+          return rows[a]<rows[b]?-1:(rows[a]==rows[b]?0:1);
+        }
+      });
+      return order;
+    }
+  }
+
+  /**
+   * Builds a new index over all given rows. Values are read in the
+   * event dispatch thread (see {@link #getKeys(List, BitSet)}), the
+   * index is sorted in the current thread.
+   * @param data
+   * @throws ExecutionException
+   */
+  public TableSearchIndex(Collection<? extends TableResult> data) throws ExecutionException {
+    this(getKeys(asRandomAccessList(data), null));
+  }
+
+  /**
+   * Builds a new index.
+   * @param rowKeys keys of every row.
+   */
+  private TableSearchIndex(String[][] rowKeys) {
+    super();
+    long time = System.currentTimeMillis();
+    rows = rowKeys.length;
+    int n=0;
+    for (String[] k: rowKeys) {
+      if (k!=null) n+=k.length;
+    }
+    Pairs pairs = new Pairs(n);
+    for (int i=0; i<rows; i++) {
+      if (rowKeys[i]==null) continue;
+      for (String k: rowKeys[i]) {
+        pairs.add(k, i);
+      }
+      rowKeys[i] = null;
+    }
+
+    // Create the dictionary
+    int[] order = pairs.sort();
+    int unique=0;
+    for (int i=0; i<n; i++) {
+      if (i==0 || !pairs.keys[order[i]].equals(pairs.keys[order[i-1]])) unique++;
+    }
+    keys = new String[unique];
+    offsets = new int[unique+1];
+    postings = new int[n];
+    int k=-1;
+    for (int i=0; i<n; i++) {
+      String key = pairs.keys[order[i]];
+      if (k<0 || !key.equals(keys[k])) {
+        keys[++k] = key;
+        offsets[k] = i;
+      }
+      postings[i] = pairs.rows[order[i]];
+    }
+    offsets[unique] = n;
+
+    log.fine(String.format("Built search index with %s keys for %s rows in %sms.",
+      unique, rows, System.currentTimeMillis()-time));
+  }
+
+  /**
+   * Creates an index from (key, row) pairs that are already sorted by
+   * key and row.
+   * @param rows number of rows.
+   * @param pairs
+   */
+  private TableSearchIndex(int rows, Pairs pairs) {
+    super();
+    this.rows = rows;
+    int unique=0;
+    for (int i=0; i<pairs.size; i++) {
+      if (i==0 || !pairs.keys[i].equals(pairs.keys[i-1])) unique++;
+    }
+    keys = new String[unique];
+    offsets = new int[unique+1];
+    postings = new int[pairs.size];
+    int k=-1;
+    for (int i=0; i<pairs.size; i++) {
+      if (k<0 || !pairs.keys[i].equals(keys[k])) {
+        keys[++k] = pairs.keys[i];
+        offsets[k] = i;
+      }
+      postings[i] = pairs.rows[i];
+    }
+    offsets[unique] = pairs.size;
+  }
+
+  /**
+   * Creates a new index, in which the keys of all <code>changedRows</code>
+   * are replaced. All other rows are taken from this index, such that
+   * only the changed rows must be read.
+   * @param rowKeys keys of (at least) all changed rows, as returned by
+   * {@link #getKeys(List, BitSet)}.
+   * @param changedRows
+   * @return the updated index (this index is not modified).
+   */
+  public TableSearchIndex update(String[][] rowKeys, BitSet changedRows) {
+    long time = System.currentTimeMillis();
+
+    // Pairs of all changed rows
+    int m=0;
+    for (int r=changedRows.nextSetBit(0); r>=0 && r<rows; r=changedRows.nextSetBit(r+1)) {
+      if (rowKeys[r]!=null) m+=rowKeys[r].length;
+    }
+    Pairs added = new Pairs(m);
+    for (int r=changedRows.nextSetBit(0); r>=0 && r<rows; r=changedRows.nextSetBit(r+1)) {
+      if (rowKeys[r]==null) continue;
+      for (String k: rowKeys[r]) {
+        added.add(k, r);
+      }
+    }
+    int[] order = added.sort();
+
+    // Merge with the pairs of all unchanged rows (both are sorted)
+    Pairs merged = new Pairs(postings.length+m);
+    int k=0, j=0;
+    for (int i=0; i<postings.length || j<m;) {
+      if (i<postings.length) {
+        while (offsets[k+1]<=i) k++;
+        if (changedRows.get(postings[i])) {
+          i++;
+          continue;
+        }
+      }
+      boolean takeOld;
+      if (i>=postings.length) {
+        takeOld = false;
+      } else if (j>=m) {
+        takeOld = true;
+      } else {
+        int r = keys[k].compareTo(added.keys[order[j]]);
+        takeOld = r<0 || (r==0 && postings[i]<added.rows[order[j]]);
+      }
+      if (takeOld) {
+        merged.add(keys[k], postings[i++]);
+      } else {
+        merged.add(added.keys[order[j]], added.rows[order[j++]]);
+      }
+    }
+
+    TableSearchIndex ret = new TableSearchIndex(rows, merged);
+    log.fine(String.format("Updated search index for %s changed rows in %sms.",
+      changedRows.cardinality(), System.currentTimeMillis()-time));
+    return ret;
+  }
+
+  /**
+   * Reads the keys of the given rows. Since rows are modified in the
+   * event dispatch thread, they are also read there. If called from
+   * another thread, at most {@link #ROWS_PER_SNAPSHOT} rows are read
+   * at once, such that the user interface stays responsive.
+   * @param list
+   * @param rows rows to read or null to read all rows.
+   * @return keys of each row (null for all rows that have not been read).
+   * @throws ExecutionException if the current thread has been interrupted.
+   */
+  public static String[][] getKeys(final List<? extends TableResult> list, final BitSet rows) throws ExecutionException {
+    final String[][] rowKeys = new String[list.size()][];
+    final int[] next = new int[]{rows!=null?rows.nextSetBit(0):0};
+    Runnable snapshot = new Runnable() {
+      public void run() {
+        for (int n=0; n<ROWS_PER_SNAPSHOT && next[0]>=0 && next[0]<rowKeys.length; n++) {
+          int i = next[0];
+          Set<String> k = getKeys(TableResultTableModel.peek(list, i));
+          rowKeys[i] = k.toArray(new String[k.size()]);
+          next[0] = rows!=null?rows.nextSetBit(i+1):i+1;
+        }
+      }
+    };
+    while (next[0]>=0 && next[0]<rowKeys.length) {
+      if (SwingUtilities.isEventDispatchThread()) {
+        snapshot.run();
+        continue;
+      }
+      if (Thread.currentThread().isInterrupted()) {
+        throw new ExecutionException(new InterruptedException());
+      }
+      try {
+        SwingUtilities.invokeAndWait(snapshot);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ExecutionException(e);
+      } catch (InvocationTargetException e) {
+        throw new ExecutionException(e.getCause());
+      }
+    }
+    return rowKeys;
+  }
+
+  /**
+   * @param <T>
+   * @param data
+   * @return <code>data</code> if it is a {@link List} with fast random
+   * access, else a copy of it.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> List<T> asRandomAccessList(Collection<T> data) {
+    if (data instanceof List && data instanceof RandomAccess) {
+      return (List<T>) data;
+    }
+    return new ArrayList<T>(data);
+  }
+
+  /**
+   * @param row
+   * @return all keys for the given row.
+   */
+  private static Set<String> getKeys(TableResult row) {
+    Set<String> keys = new LinkedHashSet<String>();
+    if (row==null) return keys;
+    if (row instanceof NameAndSignals) {
+      addKey(keys, ((NameAndSignals) row).getName());
+      addKey(keys, ((NameAndSignals) row).getUniqueLabel());
+    }
+    if (row instanceof GeneID) {
+      Integer id = ((GeneID) row).getID();
+      if (id!=null && !id.equals(GeneID.default_geneID)) addKey(keys, id.toString());
+    }
+
+    // All textual columns
+    for (int i=0; i<row.getColumnCount(); i++) {
+      Object o = row.getObjectAtColumn(i);
+      if (o==null || o instanceof Number || o instanceof Signal) continue;
+      addKey(keys, o.toString());
+    }
+    return keys;
+  }
+
+  /**
+   * Adds the given value and all its words.
+   * @param keys
+   * @param value
+   */
+  private static void addKey(Set<String> keys, String value) {
+    if (value==null) return;
+    value = value.trim().toLowerCase();
+    if (value.length()<1) return;
+    if (value.length()<=MAXIMUM_KEY_LENGTH) keys.add(value);
+    for (String word: wordSeparator.split(value)) {
+      if (word.length()>1 && word.length()<=MAXIMUM_KEY_LENGTH) keys.add(word);
+    }
+  }
+
+  /**
+   * @return number of indexed rows.
+   */
+  public int getNumberOfRows() {
+    return rows;
+  }
+
+  /**
+   * @return number of unique keys.
+   */
+  public int getNumberOfKeys() {
+    return keys.length;
+  }
+
+  /**
+   * @param query
+   * @return all rows that contain a value or word, equal to <code>query</code>
+   * (ignoring case), sorted.
+   */
+  public int[] findExact(String query) {
+    if (query==null) return new int[0];
+    String key = query.trim().toLowerCase();
+    int i = lowerBound(key);
+    if (i>=keys.length || !keys[i].equals(key)) return new int[0];
+    int[] ret = new int[offsets[i+1]-offsets[i]];
+    System.arraycopy(postings, offsets[i], ret, 0, ret.length);
+    return ret;
+  }
+
+  /**
+   * @param query
+   * @return all rows that contain a value or word, starting with <code>query</code>
+   * (ignoring case), sorted.
+   */
+  public int[] findPrefix(String query) {
+    if (query==null) return new int[0];
+    String prefix = query.trim().toLowerCase();
+    int from = lowerBound(prefix);
+    int to = from;
+    while (to<keys.length && keys[to].startsWith(prefix)) to++;
+    if (from==to) return new int[0];
+    if (to==from+1) return findExact(keys[from]);
+
+    // Union of all postings
+    BitSet hits = new BitSet(rows);
+    for (int i=offsets[from]; i<offsets[to]; i++) {
+      hits.set(postings[i]);
+    }
+    int[] ret = new int[hits.cardinality()];
+    int k=0;
+    for (int i=hits.nextSetBit(0); i>=0; i=hits.nextSetBit(i+1)) {
+      ret[k++] = i;
+    }
+    return ret;
+  }
+
+  /**
+   * @param prefix
+   * @param max maximum number of returned keys.
+   * @return all keys, starting with <code>prefix</code> (e.g., for
+   * auto completion).
+   */
+  public List<String> getKeysWithPrefix(String prefix, int max) {
+    prefix = prefix.trim().toLowerCase();
+    List<String> ret = new ArrayList<String>();
+    for (int i=lowerBound(prefix); i<keys.length && ret.size()<max && keys[i].startsWith(prefix); i++) {
+      ret.add(keys[i]);
+    }
+    return ret;
+  }
+
+  /**
+   * @param key
+   * @return the index of the first key &gt;= <code>key</code>.
+   */
+  private int lowerBound(String key) {
+    int lo=0, hi=keys.length;
+    while (lo<hi) {
+      int mid = (lo+hi)>>>1;
+      if (keys[mid].compareTo(key)<0) {
+        lo = mid+1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of Integrator, a program integratively analyze
+ * heterogeneous microarray datasets. This includes enrichment-analysis,
+ * pathway-based visualization as well as creating special tabular
+ * views and many other features. Please visit the project homepage at
+ * <http://www.cogsys.cs.uni-tuebingen.de/software/InCroMAP> to
+ * obtain the latest version of Integrator.
+ *
+ * Copyright (C) 2011-2015 by the University of Tuebingen, Germany.
+ *
+ * Integrator is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.utils;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+/**
+ * Locates the per-user directory, in which Integrator keeps
+ * caches and derived data files (e.g., the {@link CompoundIndex}).
+ * The directory is <code>~/.InCroMAP</code>, unless the system
+ * property {@value #DIRECTORY_PROPERTY} points to another location.
+ *
+ * @author Clemens Wrzodek
+ * @version $Rev$
+ */
+public class UserDirectory {
+  public static final transient Logger log = Logger.getLogger(UserDirectory.class.getName());
+
+  /**
+   * System property to change the user directory.
+   */
+  public final static String DIRECTORY_PROPERTY = "incromap.userdir";
+
+  /**
+   * Name of the default directory in the user's home.
+   */
+  private final static String DEFAULT_DIRECTORY_NAME = ".InCroMAP";
+
+  /**
+   * @return the user directory (not necessarily existing).
+   */
+  public static File getDirectory() {
+    String dir = System.getProperty(DIRECTORY_PROPERTY);
+    if (dir!=null && dir.trim().length()>0) {
+      return new File(dir.trim());
+    }
+    return new File(System.getProperty("user.home"), DEFAULT_DIRECTORY_NAME);
+  }
+
+  /**
+   * @param name file or sub directory name
+   * @return the file with the given name in the user directory.
+   * The user directory is created, if it does not yet exist.
+   */
+  public static File getFile(String name) {
+    File dir = getDirectory();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      log.warning("Could not create user directory " + dir.getPath());
+    }
+    return new File(dir, name);
+  }
+
+}
@@ -24,6 +24,7 @@ package de.zbit.visualization;
 import java.awt.Color;
 import java.awt.Insets;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -75,12 +76,9 @@ import de.zbit.gui.tabs.IntegratorTab;
 import de.zbit.gui.tabs.NameAndSignalsTab;
 import de.zbit.integrator.GraphMLmapsExtended;
 import de.zbit.integrator.NameAndSignal2PWTools;
+import de.zbit.integrator.PathwayGraphCache;
 import de.zbit.io.FileTools;
-import de.zbit.kegg.Translator;
-import de.zbit.kegg.gui.KGMLSelectAndDownload;
-import de.zbit.kegg.io.BatchKEGGtranslator;
 import de.zbit.kegg.io.KEGG2yGraph;
-import de.zbit.kegg.io.KEGGtranslatorIOOptions.Format;
 import de.zbit.kegg.parser.pathway.EntryType;
 import de.zbit.math.rescale.AbstractRescale;
 import de.zbit.math.rescale.LinearRescale;
@@ -94,6 +92,7 @@ import de.zbit.util.objectwrapper.ValuePair;
 import de.zbit.util.objectwrapper.ValueTriplet;
 import de.zbit.util.prefs.SBPreferences;
 import de.zbit.util.progressbar.AbstractProgressBar;
+import de.zbit.utils.Metrics;
 import de.zbit.utils.SignalColor;
 
 /**
@@ -115,6 +114,12 @@ import de.zbit.utils.SignalColor;
 public class VisualizeDataInPathway {
   public static final transient Logger log = Logger.getLogger(VisualizeDataInPathway.class.getName());
   
+  /*
+   * Metrics
+   */
+  private final static Metrics.Timer COLOR_TIME = Metrics.timer("visualization.colorTime");
+  private final static Metrics.Counter NODES_COLORED = Metrics.counter("visualization.nodesColored");
+  
   /**
    * SBPreferences object to store all preferences for this class.
    */
@@ -1232,6 +1237,7 @@ public class VisualizeDataInPathway {
    */
   @SuppressWarnings("unchecked")
   public int colorNodesAccordingToSignals(SignalColor recolorer, String tabName, String experimentName, SignalType type) {
+    long start = COLOR_TIME.start();
     boolean inputContainedMicroRNAnodes=false;
     boolean inputContainedCompoundNodes=false;
     boolean inputContainedGeneNodes=false;
@@ -1349,7 +1355,10 @@ public class VisualizeDataInPathway {
       graph.getRealizer(n).setFillColor(colorForUnaffectedNodes);
     }
     
-    return graph.getNodeArray().length-nodesToResetColor.size();
+    int nodesColored = graph.getNodeArray().length-nodesToResetColor.size();
+    NODES_COLORED.add(nodesColored);
+    COLOR_TIME.stop(start);
+    return nodesColored;
   }
   
 
@@ -1373,11 +1382,13 @@ public class VisualizeDataInPathway {
       @Override
       protected Integer doInBackground() throws Exception {
 
-        // Prepare KEGGtranslator
+        // Prepare KEGGtranslator (only required for writing)
         log.info("Batch creating pathway pictures...");
-        KEGG2yGraph translator = (KEGG2yGraph) BatchKEGGtranslator.getTranslator(Format.GraphML, Translator.getManager());
-        if (translator == null) {
-          GUITools.showErrorMessage(null, "Could not instantiate KEGGtranslator.");
+        KEGG2yGraph translator;
+        try {
+          translator = PathwayGraphCache.createTranslator();
+        } catch (Exception e) {
+          GUITools.showErrorMessage(null, e);
           return 0;
         }
         
@@ -1386,6 +1397,7 @@ public class VisualizeDataInPathway {
           IntegratorUITools.groupCompatibleSignals(Arrays.asList(observations));
         
         // Color every pathway and signal combination
+        // (graphs of the current pathway for all species, templates are shared application-wide)
         Map<String, Graph2D> pathwayCache = new HashMap<String, Graph2D>();
         AbstractProgressBar bar = IntegratorUI.getInstance().getStatusBar().showProgress();
         bar.setNumberOfTotalCalls(pathwayIDs.length*grouped.size());
@@ -1393,6 +1405,7 @@ public class VisualizeDataInPathway {
         boolean askedToAnnotateMiRNAs = false;
         for (String pw : pathwayIDs) {
           String pwNumber = Utils.getNumberFromStringRevAsString(pw.length(), pw);
+          pathwayCache.clear();
           for (List<ValueTriplet<NameAndSignalsTab, String, SignalType>> obs: grouped) {
             bar.DisplayBar();
             
@@ -1406,29 +1419,19 @@ public class VisualizeDataInPathway {
               String pathwayID = keggAbbr+pwNumber;
               Graph2D graph = pathwayCache.get(pathwayID);
               if (graph==null) {
-                String inputFile;
                 try {
-                  if (KGMLSelectAndDownload.class.getResource("kgml/" + pathwayID + ".xml") != null) {
-                    inputFile = KGMLSelectAndDownload.class.getResource("kgml/" + pathwayID + ".xml").getPath();
-                  } else {
-                    inputFile = KGMLSelectAndDownload.downloadPathway(pathwayID, false);
-                  }
-                  if (inputFile==null) throw new Exception("Failed to download pathway.");
-                } catch (Throwable t) {
-                  GUITools.showErrorMessage(null, t);
+                  graph = PathwayGraphCache.getInstance().getGraph(pathwayID);
+                } catch (IOException e) {
+                  // Download failed
+                  GUITools.showErrorMessage(null, e);
                   // Do not display error again for every observation.
                   bar.setCallNr(bar.getCallNumber()+(grouped.size()-1));
                   break;
-                }
-                try {
-                  graph = (Graph2D) translator.translate(new File(inputFile));
                 } catch (Throwable e) {
+                  // Continue with the next pathway
                   log.log(Level.SEVERE, "Could not translate graph for pathway " + pathwayID, e);
-                  continue;
-                }
-                if (graph==null) {
-                  log.severe("Could not get graph for pathway " + pathwayID);
-                  continue;
+                  bar.setCallNr(bar.getCallNumber()+(grouped.size()-1));
+                  break;
                 }
                 pathwayCache.put(pathwayID, graph);
               }
@@ -49,12 +49,12 @@ import org.jfree.data.general.SeriesChangeEvent;
 import org.jfree.data.xy.DefaultIntervalXYDataset;
 import org.jfree.data.xy.XYDataset;
 
+import de.zbit.data.GenomicPositionIndex;
 import de.zbit.data.NameAndSignals;
 import de.zbit.data.Signal;
 import de.zbit.data.Signal.MergeType;
 import de.zbit.data.Signal.SignalType;
 import de.zbit.data.genes.GenericGene;
-import de.zbit.data.id.GeneID;
 import de.zbit.data.miRNA.miRNA;
 import de.zbit.graph.SymbolAxisWithArbitraryStart;
 import de.zbit.graph.XYGenesBarRenderer;
@@ -296,24 +296,14 @@ public class VisualizeGenesInChartTab {
     }
     XYGenesBarRenderer rend = (XYGenesBarRenderer) genesPlot.getRenderer();
     
-    // Create a lookup-table
-    Map<Integer, GenericGene> geneIDLookUp = new HashMap<Integer, GenericGene>();
-    for (GenericGene g: rend.getGenesInRegion()) {
-      geneIDLookUp.put(g.getID(), g);
-    }
-    
-    // Now match all NS to its gene
+    // Match all genes to their NS, using the gene-ID index of the dataset
+    GenomicPositionIndex<? extends NameAndSignals> index = GenomicPositionIndex.getIndex(dataSource.getData());
     Map<GenericGene, List<NameAndSignals>> gene2Ns = new HashMap<GenericGene, List<NameAndSignals>>();
-    for (NameAndSignals ns : dataSource.getData()) {
-      if (ns instanceof GeneID) {
-        // we also WANT miRNA here to map to its geneID, not the target!
-        int gId = ((GeneID) ns).getID();
-        if (gId>0) {
-          GenericGene match = geneIDLookUp.get(gId);
-          if (match!=null) {
-            miRNA.addToList(gene2Ns, match, ns);
-          }
-        }
+    for (GenericGene g: rend.getGenesInRegion()) {
+      // we also WANT miRNA here to map to its geneID, not the target!
+      if (g.getID()<=0) continue;
+      for (int row : index.getRowsForGeneID(g.getID())) {
+        miRNA.addToList(gene2Ns, g, (NameAndSignals) index.get(row));
       }
     }
     
@@ -34,17 +34,15 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
-import javax.imageio.stream.FileImageOutputStream;
-import javax.imageio.stream.ImageOutputStream;
 import javax.swing.JFileChooser;
 import javax.swing.filechooser.FileFilter;
-import javax.swing.filechooser.FileNameExtensionFilter;
 
 import y.io.IOHandler;
 import y.io.JPGIOHandler;
@@ -71,7 +69,8 @@ import de.zbit.math.TimeSeriesModel;
 import de.zbit.util.NotifyingWorker;
 import de.zbit.util.Species;
 import de.zbit.util.prefs.SBPreferences;
-import de.zbit.utils.GifSequenceWriter;
+import de.zbit.utils.FilmEncoder;
+import de.zbit.utils.Metrics;
 import de.zbit.utils.SignalColor;
 import de.zbit.visualization.VisualizeTimeSeriesListener.VTSAction;
 import de.zbit.kegg.gui.IntegratorPathwayPanel;
@@ -92,6 +91,12 @@ public class VisualizeTimeSeries {
 
   public static final transient Logger log = Logger.getLogger(TranslatorPanel.class.getName());
 
+	/*
+	 * Metrics
+	 */
+	private final static Metrics.Timer FRAME_TIME = Metrics.timer("visualization.frameTime");
+	private final static Metrics.Counter FRAMES = Metrics.counter("visualization.framesRendered");
+
 	/**
 	 * The view showing the film.
 	 * Acts as view in the MVC-Pattern.
@@ -242,14 +247,20 @@ public class VisualizeTimeSeries {
 				enrichments = new ArrayList<List<EnrichmentObject<String>>>(numFrames);
 				
 				try {
+					List<List<mRNA>> enrichmentInput = new ArrayList<List<mRNA>>(numFrames);
 					for(int i = 0; i < numFrames; i++) {
 						// Model mRNA data
 						ArrayList<mRNA> modelValues = computeModelValues(timePoints[i]);
 						mRNA.add(i, modelValues);
 						
-						// Compute the enrichment
-						List<EnrichmentObject<String>> e = computeEnrichment(mRNA.get(i), mapFrameToTimePoint(i+1)); // because frame is 1 indexed
-						enrichments.add(i, e);
+						// Get the input for the enrichment
+						enrichmentInput.add(getEnrichmentInput(mRNA.get(i), mapFrameToTimePoint(i+1))); // because frame is 1 indexed
+					}
+					
+					// Compute the enrichments of all time points at once
+					List<List<EnrichmentObject<String>>> e = computeEnrichments(enrichmentInput);
+					for(int i = 0; i < numFrames; i++) {
+						enrichments.add(i, e.get(i));
 						
 						// Update the progress bar
 						publish(new ActionEvent(transPanel.getDocument(), i, VTSAction.IMAGE_GENERATED.toString()));					
@@ -292,30 +303,43 @@ public class VisualizeTimeSeries {
 	}
 
 	/**
-	 * Compute a pathway enrichment at a certain time point.
+	 * Get the genes for the pathway enrichment at a certain time point.
 	 * @param timePoint for which a pathway enrichment is computed
-	 * @return the pathway enrichment
+	 * @return the differentially expressed genes (might be empty)
 	 */
-	private List<EnrichmentObject<String>> computeEnrichment(List<mRNA> modelValues, double timePoint) {
+	private List<mRNA> getEnrichmentInput(List<mRNA> modelValues, double timePoint) {
 
 		// sort model values by their signal
 		Collections.sort(modelValues, Signal.getComparator(generateExperimentName(timePoint), signalType));
 		modelValues = filterGenes(modelValues, generateExperimentName(timePoint), cutoff, signalType);
 
-		// compute the pathway enrichment for the given time point
-		List<EnrichmentObject<String>> l=null;
+		if(modelValues.size() == 0) {
+			GUITools.showErrorMessage(view, "There is no differential expressed gene for timepoint "
+					+ String.format("%.2f", timePoint) + timeUnit + ". Maybe the cutoff value is too high.");
+		}
+		return modelValues;
+	}
+
+	/**
+	 * Compute the pathway enrichments of all time points at once. The
+	 * KEGG annotation is only used once and all time points are
+	 * processed concurrently.
+	 * @param enrichmentInput the differentially expressed genes for each time point
+	 * @return the pathway enrichment for each time point (<code>null</code>
+	 * for time points without differentially expressed genes)
+	 */
+	private List<List<EnrichmentObject<String>>> computeEnrichments(List<List<mRNA>> enrichmentInput) {
+		List<List<EnrichmentObject<String>>> l = new ArrayList<List<EnrichmentObject<String>>>(enrichmentInput.size());
 		try {
-			if(modelValues.size() != 0) {
-				// TODO something throws a NullPointer exception here
-//				if(enrich == null)
-//					System.out.println("Enrich null");
-				l = enrich.getEnrichments(modelValues, null, null, false);
-			} else {
-				GUITools.showErrorMessage(view, "There is no differential expressed gene for timepoint "
-						+ String.format("%.2f", timePoint) + timeUnit + ". Maybe the cutoff value is too high.");
-			}		
+			List<List<EnrichmentObject<String>>> batch = enrich.getBatchEnrichments(enrichmentInput, null, null, false).getEnrichments();
+			for(int i = 0; i < enrichmentInput.size(); i++) {
+				l.add(enrichmentInput.get(i).size() != 0 ? batch.get(i) : null);
+			}
 		} catch (Throwable e) {
 			GUITools.showErrorMessage(null, e);
+			while (l.size() < enrichmentInput.size()) {
+				l.add(null);
+			}
 		}
 		return l;
 	}
@@ -327,6 +351,7 @@ public class VisualizeTimeSeries {
 	 * @return a pathway image
 	 */
 	private BufferedImage generatePathwayImage(int frame) {
+		long start = FRAME_TIME.start();
 
 		// Color the graph according to the current frame
 		colorPathway(enrichments.get(frame-1), mRNA.get(frame-1), mapFrameToTimePoint(frame));
@@ -381,6 +406,8 @@ public class VisualizeTimeSeries {
 			controller.actionPerformed(new ActionEvent(e, 0, VTSAction.SHOW_VIDEO_FAILED.toString()));
 		}
 
+		FRAMES.inc();
+		FRAME_TIME.stop(start);
 		return image;
 	}
 
@@ -504,6 +531,20 @@ public class VisualizeTimeSeries {
 	}
 
 
+	/**
+	 * All colors nodes can get in {@link #colorPathway(List, List, double)},
+	 * i.e., the color scales of the enrichment and the modelled signals.
+	 * @return sampled colors of both scales
+	 */
+	private Color[] getColorScale() {
+		SignalColor enrichmentColors = new SignalColor(null, null, visualizePValue ? SignalType.pValue : SignalType.qValue);
+		SignalColor signalColors = new SignalColor(null, null, getSignalType());
+		List<Color> colors = new ArrayList<Color>();
+		colors.addAll(Arrays.asList(signalColors.getColorScale(64)));
+		colors.addAll(Arrays.asList(enrichmentColors.getColorScale(32)));
+		return colors.toArray(new Color[colors.size()]);
+	}
+
 	/**
 	 * Filter out null gene models. E.g models without valid GeneID.
 	 * @param geneModels to be filtered
@@ -729,13 +770,12 @@ public class VisualizeTimeSeries {
 	}
 
 	/**
-	 * Export the generated film to file.
+	 * Export the generated film to file. The film is written either as
+	 * animated GIF, animated PNG or as directory of single frames
+	 * (see {@link FilmEncoder.Format}). Frames are encoded concurrently
+	 * and streamed to disk while the next frames are rendered.
 	 */
   public void exportFilm() {
-    // You can add all codecs, which are supported by xuggler.
-    // http://stackoverflow.com/questions/9727590/what-codecs-does-xuggler-support
-    // The extension has to be in round brackets (the extension is parsed from
-    // that)
     NotifyingWorker<Void> exporter = new NotifyingWorker<Void>() {
 
       @Override
@@ -743,17 +783,16 @@ public class VisualizeTimeSeries {
         publish(new ActionEvent(this, numFrames,
             VTSAction.START_GENERATE_FILM.toString()));
 
-        String format = ".gif";
-
-        FileNameExtensionFilter filter = new FileNameExtensionFilter(
-            format + " files", format.substring(1)); // substring: because first
-                                               // character is '.'
+        FileFilter gifFilter = FilmEncoder.Format.GIF.getFileFilter();
 
         // Let the user choose the output destination
         File saveDir = GUIOptions.SAVE_DIR.getValue(SBPreferences
             .getPreferencesFor(GUIOptions.class));
         JFileChooser fc = GUITools.createJFileChooser(saveDir.toString(),
-            false, false, JFileChooser.FILES_ONLY, filter);
+            false, false, JFileChooser.FILES_ONLY, gifFilter);
+        fc.addChoosableFileFilter(FilmEncoder.Format.APNG.getFileFilter());
+        fc.addChoosableFileFilter(FilmEncoder.Format.FRAME_DIRECTORY.getFileFilter());
+        fc.setFileFilter(gifFilter);
 
         if (fc.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) {
           publish(new ActionEvent(this, 0, VTSAction.END_EXPORT_FILM.toString()));
@@ -762,14 +801,21 @@ public class VisualizeTimeSeries {
 
         // Check file
         File f = fc.getSelectedFile();
+        FilmEncoder.Format format = FilmEncoder.Format.fromFileFilter(fc.getFileFilter());
+        if (format == null) {
+          format = FilmEncoder.Format.GIF;
+        }
 
-        // Attach (correct) file extension.
-        String path = FileTools.trimExtension(f.getPath()) + format;
+        // Attach (correct) file extension. Frame directories have no extension.
+        String path = FileTools.trimExtension(f.getPath());
+        if (format.getExtension() != null) {
+          path += "." + format.getExtension();
+        }
         f = new File(path);
 
         // Check if file exists and is writable
         boolean showOverride = f.exists();
-        if (!f.exists())
+        if (!f.exists() && format != FilmEncoder.Format.FRAME_DIRECTORY)
           try {
             f.createNewFile();
           } catch (IOException e) {
@@ -778,7 +824,8 @@ public class VisualizeTimeSeries {
                 VTSAction.END_EXPORT_FILM.toString()));
             return null;
           }
-        if (!f.canWrite() || f.isDirectory()) {
+        if (f.exists() && (!f.canWrite() ||
+            (f.isDirectory() != (format == FilmEncoder.Format.FRAME_DIRECTORY)))) {
           GUITools.showNowWritingAccessWarning(view, f);
           publish(new ActionEvent(this, 0, VTSAction.END_EXPORT_FILM.toString()));
           return null;
@@ -790,30 +837,25 @@ public class VisualizeTimeSeries {
           return null;
         }
 
-        // generate first image to infer image type
-        BufferedImage pathwayImage;
-        pathwayImage = generatePathwayImage(1);
-        ImageOutputStream outputStream = new FileImageOutputStream(f);
-        // File exists, we can now write to it!
-        GifSequenceWriter writer = new GifSequenceWriter(outputStream,
-            pathwayImage.getType(), TIME_PER_FRAME, false);
-        writer.writeToSequence(pathwayImage);
-
-        // Generate frame for frame and encode them. The last frame has to be
-        // handled manually. Why?
-        // Read the comment a few lines below.
-        for (int i = 2; i < numFrames; i++) {
-          pathwayImage = generatePathwayImage(i); // first frame has the number
-                                                  // 1
-
-          writer.writeToSequence(pathwayImage);
-          publish(new ActionEvent(this, i, VTSAction.IMAGE_GENERATED.toString()));
+        // File exists, we can now write to it! The global palette is
+        // built from the first frame and all colors nodes can get.
+        FilmEncoder writer = FilmEncoder.create(format, f, TIME_PER_FRAME, false);
+        try {
+          writer.setReservedColors(getColorScale());
+          writer.writeFrame(generatePathwayImage(1));
+
+          // Generate frame for frame. Rendering has to be done sequentially,
+          // because all frames are colored in the same graph. The encoding
+          // is done in parallel by the writer.
+          for (int i = 2; i < numFrames; i++) {
+            writer.writeFrame(generatePathwayImage(i)); // first frame has the number 1
+            publish(new ActionEvent(this, i, VTSAction.IMAGE_GENERATED.toString()));
+          }
+        } finally {
+          // Close the writer. Film is now succesfully exported.
+          writer.close();
         }
 
-        // Close the writer. Film is now succesfully exported.
-        writer.close();
-        outputStream.close();
-
         publish(new ActionEvent(this, 0, VTSAction.END_EXPORT_FILM.toString()));
 
         return null;
@@ -822,7 +864,6 @@ public class VisualizeTimeSeries {
     exporter.addActionListener(controller);
     exporter.execute();
   }
-
 	
 	/**
 	 * Select the BH correction method for multiple hypothesis testing